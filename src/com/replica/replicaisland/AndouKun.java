@@ -168,6 +168,8 @@ public class AndouKun extends Activity implements SensorEventListener {
         mExtrasUnlocked = prefs.getBoolean(PreferenceConstants.PREFERENCE_EXTRAS_UNLOCKED, false);
         mDifficulty = prefs.getInt(PreferenceConstants.PREFERENCE_DIFFICULTY, getIntent().getIntExtra("difficulty", 1));
 
+        mGame.setTextureStreaming(
+                prefs.getBoolean(PreferenceConstants.PREFERENCE_TEXTURE_STREAMING, false));
         mGame.bootstrap(this, dm.widthPixels, dm.heightPixels, defaultWidth, defaultHeight, mDifficulty);
         mGLSurfaceView.setRenderer(mGame.getRenderer());
         
@@ -308,6 +310,14 @@ public class AndouKun extends Activity implements SensorEventListener {
         final int tiltSensitivity = prefs.getInt(PreferenceConstants.PREFERENCE_TILT_SENSITIVITY, 50);
         final int movementSensitivity = prefs.getInt(PreferenceConstants.PREFERENCE_MOVEMENT_SENSITIVITY, 100);
         final boolean onScreenControls = prefs.getBoolean(PreferenceConstants.PREFERENCE_SCREEN_CONTROLS, false);
+        final boolean fixedTimeStep = prefs.getBoolean(PreferenceConstants.PREFERENCE_FIXED_TIME_STEP, false);
+        // List preferences are stored as strings.
+        int textureBudget = 0;
+        try {
+            textureBudget = Integer.parseInt(prefs.getString(PreferenceConstants.PREFERENCE_TEXTURE_BUDGET, "0"));
+        } catch (NumberFormatException e) {
+            // Keep the default.
+        }
 
         final int leftKey = prefs.getInt(PreferenceConstants.PREFERENCE_LEFT_KEY, KeyEvent.KEYCODE_DPAD_LEFT);
         final int rightKey = prefs.getInt(PreferenceConstants.PREFERENCE_RIGHT_KEY, KeyEvent.KEYCODE_DPAD_RIGHT);
@@ -318,6 +328,8 @@ public class AndouKun extends Activity implements SensorEventListener {
         mGame.setControlOptions(clickAttack, tiltControls, tiltSensitivity, movementSensitivity, onScreenControls);
         mGame.setKeyConfig(leftKey, rightKey, jumpKey, attackKey);
         mGame.setSafeMode(safeMode);
+        mGame.setFixedTimeStep(fixedTimeStep);
+        mGame.setTextureBudget(textureBudget);
         
         if (mSensorManager != null) {
             Sensor orientation = mSensorManager.getDefaultSensor(Sensor.TYPE_ORIENTATION);
@@ -344,18 +356,7 @@ public class AndouKun extends Activity implements SensorEventListener {
     public boolean onTouchEvent(MotionEvent event) {
     	if (!mGame.isPaused()) {
     		mGame.onTouchEvent(event);
-	    	
-	        final long time = System.currentTimeMillis();
-	        if (event.getAction() == MotionEvent.ACTION_MOVE && time - mLastTouchTime < 32) {
-		        // Sleep so that the main thread doesn't get flooded with UI events.
-		        try {
-		            Thread.sleep(32);
-		        } catch (InterruptedException e) {
-		            // No big deal if this sleep is interrupted.
-		        }
-		        mGame.getRenderer().waitDrawingComplete();
-	        }
-	        mLastTouchTime = time;
+	        mLastTouchTime = System.currentTimeMillis();
     	}
         return true;
     }
@@ -388,12 +389,6 @@ public class AndouKun extends Activity implements SensorEventListener {
     		}
     	} else {
 		    result = mGame.onKeyDownEvent(keyCode);
-		    // Sleep so that the main thread doesn't get flooded with UI events.
-		    try {
-		        Thread.sleep(4);
-		    } catch (InterruptedException e) {
-		        // No big deal if this sleep is interrupted.
-		    }
     	}
         return result;
     }
@@ -409,12 +404,6 @@ public class AndouKun extends Activity implements SensorEventListener {
 	        }
     	} else {
     		result = mGame.onKeyUpEvent(keyCode);
-	        // Sleep so that the main thread doesn't get flooded with UI events.
-	        try {
-	            Thread.sleep(4);
-	        } catch (InterruptedException e) {
-	            // No big deal if this sleep is interrupted.
-	        }
     	}
         return result;
     }
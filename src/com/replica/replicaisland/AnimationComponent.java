@@ -262,7 +262,7 @@ public class AnimationComponent extends GameComponent {
                     if (mLandThump != null && sound != null) {
                         // modulate the sound slightly to avoid sounding too similar
                         sound.play(mLandThump, false, SoundSystem.PRIORITY_HIGH, 1.0f, 
-                                (float)(Math.random() * 0.5f) + 0.75f); 
+                                (Utils.random() * 0.5f) + 0.75f); 
                         mLandThumpDelay = gameTime + LAND_THUMP_DELAY;
                     }
                 }
@@ -0,0 +1,419 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import android.content.Context;
+
+import com.replica.replicaisland.GameObject.ActionType;
+import com.replica.replicaisland.GameObjectFactory.GameObjectType;
+
+/**
+ * A compiled description of the shared "static data" (animations, collision volumes and shared
+ * components) that every instance of a type of game object points at, for each type that
+ * GameObjectFactory builds static data for, plus the factory's component pool sizes.  The file is generated from the factory's own spawn methods by
+ * ArchetypeCompiler (in tools/benchmarks), so it always describes exactly what the code would
+ * build.  When a library is installed in the factory, static data is built from it in one pass
+ * over a flat buffer rather than by the spawn method's inline setup code.  Static data is built
+ * when a type is first needed, which for the types a level refers to is while the level is
+ * pre-warmed (see GameObjectFactory.prewarm()).
+ *
+ * Per-object state (size, activation radius, life and the components each instance carries) is
+ * not described here: the spawn methods still set it up for every object they spawn.
+ *
+ * The file is big-endian, as written by DataOutputStream:
+ *
+ *   int MAGIC, int VERSION
+ *   byte string length + ASCII bytes, for:
+ *     short count, drawable resource names
+ *     short count, component class names, each followed by a short pool size
+ *   short type count, then for each type with static data:
+ *     name, int block length, then the block:
+ *       byte volume list count, then for each list a byte volume count and each volume:
+ *       byte shape, byte hit type, then sphere: radius, center x, y or box: offset x, y, width,
+ *       height (floats)
+ *       byte entry count, then each entry as a kind byte plus its fields (see buildStaticData())
+ *
+ * Texture names are resolved to resource ids when the file is loaded; a file that names a
+ * drawable the build doesn't have is rejected so that the factory falls back to its inline setup.
+ */
+public class ArchetypeLibrary extends BaseObject {
+    public static final int MAGIC = 0x52494152; // "RIAR"
+    public static final int VERSION = 2;
+
+    public static final int VOLUME_SPHERE = 0;
+    public static final int VOLUME_BOX = 1;
+
+    public static final int ENTRY_ANIMATION = 0;
+    public static final int ENTRY_UPDATE_RECORD = 1;
+    public static final int ENTRY_GRAVITY = 2;
+    public static final int ENTRY_MOVEMENT = 3;
+    public static final int ENTRY_PHYSICS = 4;
+    public static final int ENTRY_SIMPLE_PHYSICS = 5;
+    public static final int ENTRY_SOLID_SURFACE = 6;
+    public static final int ENTRY_POP_OUT = 7;
+    public static final int ENTRY_RENDER = 8;
+    public static final int ENTRY_CAMERA_BIAS = 9;
+    public static final int ENTRY_GHOST = 10;
+
+    // Marks a missing texture or volume list.
+    public static final int NONE = -1;
+
+    private static final String COMPONENT_PACKAGE = "com.replica.replicaisland.";
+    private static final int MAX_VOLUME_LISTS = 64;
+
+    private ByteBuffer mData;
+    private int[] mTextureIds;
+    private Class<?>[] mComponentClasses;
+    private int[] mPoolSizes;
+
+    // Indexed by GameObjectType ordinal.
+    private int[] mStaticDataOffset;
+
+    private int mTypeCount;
+    private FixedSizeArray<FixedSizeArray<CollisionVolume>> mVolumeLists;
+
+    public ArchetypeLibrary() {
+        super();
+        mVolumeLists = new FixedSizeArray<FixedSizeArray<CollisionVolume>>(MAX_VOLUME_LISTS);
+    }
+
+    @Override
+    public void reset() {
+
+    }
+
+    /** Loads an archetype file from a raw resource. */
+    public boolean load(Context context, int resourceId) {
+        InputStream stream = context.getResources().openRawResource(resourceId);
+        final boolean success = load(stream);
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // Nothing to do.
+        }
+        return success;
+    }
+
+    /**
+     * Reads an archetype file into memory.  Returns false if the stream isn't an archetype file
+     * or refers to drawables or component classes that don't exist in this build.
+     */
+    public boolean load(InputStream stream) {
+        boolean success = false;
+        mData = null;
+        mTypeCount = 0;
+        try {
+            ByteBuffer data = Utils.readStream(stream);
+            if (data.remaining() >= 8 && data.getInt() == MAGIC && data.getInt() == VERSION) {
+                success = parse(data);
+                if (success) {
+                    mData = data;
+                }
+            }
+        } catch (IOException e) {
+            DebugLog.e("ArchetypeLibrary", "Unable to read archetypes", e);
+        } catch (BufferUnderflowException e) {
+            DebugLog.e("ArchetypeLibrary", "Archetype file is truncated");
+            success = false;
+        }
+        return success;
+    }
+
+    private boolean parse(ByteBuffer data) {
+        boolean success = true;
+        final int textureCount = data.getShort();
+        mTextureIds = new int[textureCount];
+        for (int x = 0; x < textureCount && success; x++) {
+            final String name = Utils.readString(data);
+            mTextureIds[x] = getDrawableId(name);
+            if (mTextureIds[x] == 0) {
+                DebugLog.e("ArchetypeLibrary", "Unknown drawable in archetypes: " + name);
+                success = false;
+            }
+        }
+
+        final int classCount = data.getShort();
+        mComponentClasses = new Class<?>[classCount];
+        mPoolSizes = new int[classCount];
+        for (int x = 0; x < classCount && success; x++) {
+            final String name = Utils.readString(data);
+            mPoolSizes[x] = data.getShort();
+            try {
+                mComponentClasses[x] = Class.forName(COMPONENT_PACKAGE + name);
+            } catch (ClassNotFoundException e) {
+                DebugLog.e("ArchetypeLibrary", "Unknown component in archetypes: " + name);
+                success = false;
+            }
+        }
+
+        final int typeSlots = GameObjectType.OBJECT_COUNT.ordinal();
+        mStaticDataOffset = new int[typeSlots];
+        for (int x = 0; x < typeSlots; x++) {
+            mStaticDataOffset[x] = NONE;
+        }
+
+        final int typeCount = data.getShort();
+        for (int x = 0; x < typeCount && success; x++) {
+            final String name = Utils.readString(data);
+            int index = NONE;
+            try {
+                index = GameObjectType.valueOf(name).ordinal();
+            } catch (IllegalArgumentException e) {
+                DebugLog.e("ArchetypeLibrary", "Unknown object type in archetypes: " + name);
+                success = false;
+            }
+            if (success) {
+                final int length = data.getInt();
+                mStaticDataOffset[index] = data.position();
+                data.position(data.position() + length);
+            }
+            mTypeCount++;
+        }
+        return success;
+    }
+
+    /** Maps a drawable name to its resource id, or returns 0 if there is no such drawable. */
+    protected int getDrawableId(String name) {
+        final Context context = sSystemRegistry.contextParameters.context;
+        return context.getResources().getIdentifier(name, "drawable", context.getPackageName());
+    }
+
+    /** Returns the number of object types described by the library. */
+    public final int getTypeCount() {
+        return mTypeCount;
+    }
+
+    public final boolean hasStaticData(GameObjectType type) {
+        return mData != null && mStaticDataOffset[type.ordinal()] != NONE;
+    }
+
+    /** Returns the number of component classes in the pool table. */
+    public final int getComponentClassCount() {
+        return mComponentClasses.length;
+    }
+
+    public final Class<?> getComponentClass(int classIndex) {
+        return mComponentClasses[classIndex];
+    }
+
+    /** Returns the pool size the factory had for a component class when the file was written. */
+    public final int getPoolSize(int classIndex) {
+        return mPoolSizes[classIndex];
+    }
+
+    /**
+     * Builds the static data for a type, allocating shared components from the factory's pools
+     * and textures from the texture libraries.  Returns null if the type has no static data.
+     */
+    public FixedSizeArray<BaseObject> buildStaticData(GameObjectType type,
+            GameObjectFactory factory) {
+        FixedSizeArray<BaseObject> result = null;
+        final int offset = hasStaticData(type) ? mStaticDataOffset[type.ordinal()] : NONE;
+        if (offset != NONE) {
+            final ByteBuffer data = mData;
+            data.position(offset);
+            readVolumeLists(data);
+            final int entryCount = data.get();
+            result = new FixedSizeArray<BaseObject>(entryCount);
+            for (int x = 0; x < entryCount; x++) {
+                final int kind = data.get();
+                BaseObject entry = null;
+                switch (kind) {
+                    case ENTRY_ANIMATION:
+                        entry = readAnimation(data);
+                        break;
+                    case ENTRY_UPDATE_RECORD:
+                        InventoryComponent.UpdateRecord record =
+                            new InventoryComponent.UpdateRecord();
+                        record.coinCount = data.getShort();
+                        record.rubyCount = data.getShort();
+                        record.diaryCount = data.getShort();
+                        entry = record;
+                        break;
+                    case ENTRY_GRAVITY:
+                        GravityComponent gravity =
+                            (GravityComponent)factory.allocateComponent(GravityComponent.class);
+                        gravity.getGravity().set(data.getFloat(), data.getFloat());
+                        entry = gravity;
+                        break;
+                    case ENTRY_MOVEMENT:
+                        entry = factory.allocateComponent(MovementComponent.class);
+                        break;
+                    case ENTRY_PHYSICS:
+                        PhysicsComponent physics =
+                            (PhysicsComponent)factory.allocateComponent(PhysicsComponent.class);
+                        physics.setMass(data.getFloat());
+                        physics.setBounciness(data.getFloat());
+                        physics.setInertia(data.getFloat());
+                        physics.setStaticFrictionCoeffecient(data.getFloat());
+                        physics.setDynamicFrictionCoeffecient(data.getFloat());
+                        entry = physics;
+                        break;
+                    case ENTRY_SIMPLE_PHYSICS:
+                        SimplePhysicsComponent simplePhysics = (SimplePhysicsComponent)
+                            factory.allocateComponent(SimplePhysicsComponent.class);
+                        simplePhysics.setBounciness(data.getFloat());
+                        entry = simplePhysics;
+                        break;
+                    case ENTRY_SOLID_SURFACE:
+                        entry = readSolidSurface(data, factory);
+                        break;
+                    case ENTRY_POP_OUT:
+                        PopOutComponent popOut =
+                            (PopOutComponent)factory.allocateComponent(PopOutComponent.class);
+                        popOut.setAppearDistance(data.getFloat());
+                        popOut.setHideDistance(data.getFloat());
+                        popOut.setupAttack(data.getFloat(), data.getFloat(), data.getFloat());
+                        entry = popOut;
+                        break;
+                    case ENTRY_RENDER:
+                        entry = readRender(data, factory);
+                        break;
+                    case ENTRY_CAMERA_BIAS:
+                        entry = factory.allocateComponent(CameraBiasComponent.class);
+                        break;
+                    case ENTRY_GHOST:
+                        entry = readGhost(data, factory);
+                        break;
+                    default:
+                        DebugLog.e("ArchetypeLibrary", "Unknown static data kind " + kind
+                                + " for " + type);
+                        break;
+                }
+                assert entry != null;
+                if (entry != null) {
+                    result.add(entry);
+                }
+            }
+            mVolumeLists.clear();
+        }
+        return result;
+    }
+
+    private void readVolumeLists(ByteBuffer data) {
+        final FixedSizeArray<FixedSizeArray<CollisionVolume>> lists = mVolumeLists;
+        lists.clear();
+        final int listCount = data.get();
+        for (int x = 0; x < listCount; x++) {
+            final int volumeCount = data.get();
+            FixedSizeArray<CollisionVolume> list =
+                new FixedSizeArray<CollisionVolume>(volumeCount);
+            for (int y = 0; y < volumeCount; y++) {
+                final int shape = data.get();
+                final int hitType = data.get();
+                if (shape == VOLUME_SPHERE) {
+                    final float radius = data.getFloat();
+                    final float centerX = data.getFloat();
+                    final float centerY = data.getFloat();
+                    list.add(new SphereCollisionVolume(radius, centerX, centerY, hitType));
+                } else {
+                    final float offsetX = data.getFloat();
+                    final float offsetY = data.getFloat();
+                    final float width = data.getFloat();
+                    final float height = data.getFloat();
+                    list.add(new AABoxCollisionVolume(offsetX, offsetY, width, height, hitType));
+                }
+            }
+            lists.add(list);
+        }
+    }
+
+    private SpriteAnimation readAnimation(ByteBuffer data) {
+        final int id = data.getShort();
+        final boolean loop = data.get() != 0;
+        // A few animations reserve more frames than they use (or use none at all).
+        final int capacity = data.getShort();
+        final int frameCount = data.getShort();
+        SpriteAnimation animation = new SpriteAnimation(id, capacity);
+        for (int x = 0; x < frameCount; x++) {
+            final Texture texture = readTexture(data);
+            final float holdTime = data.getFloat();
+            final int attack = data.get();
+            final int vulnerability = data.get();
+            animation.addFrame(new AnimationFrame(texture, holdTime,
+                    attack != NONE ? mVolumeLists.get(attack) : null,
+                    vulnerability != NONE ? mVolumeLists.get(vulnerability) : null));
+        }
+        animation.setLoop(loop);
+        return animation;
+    }
+
+    private Texture readTexture(ByteBuffer data) {
+        final int textureIndex = data.getShort();
+        final boolean longTerm = data.get() != 0;
+        Texture texture = null;
+        if (textureIndex != NONE) {
+            TextureLibrary library = longTerm
+                    ? sSystemRegistry.longTermTextureLibrary
+                    : sSystemRegistry.shortTermTextureLibrary;
+            texture = library.allocateTexture(mTextureIds[textureIndex]);
+        }
+        return texture;
+    }
+
+    private GameComponent readSolidSurface(ByteBuffer data, GameObjectFactory factory) {
+        SolidSurfaceComponent surface =
+            (SolidSurfaceComponent)factory.allocateComponent(SolidSurfaceComponent.class);
+        final int surfaceCount = data.get();
+        surface.inititalize(surfaceCount);
+        for (int x = 0; x < surfaceCount; x++) {
+            Vector2 start = new Vector2(data.getFloat(), data.getFloat());
+            Vector2 end = new Vector2(data.getFloat(), data.getFloat());
+            Vector2 normal = new Vector2(data.getFloat(), data.getFloat());
+            surface.addSurface(start, end, normal);
+        }
+        return surface;
+    }
+
+    private GameComponent readRender(ByteBuffer data, GameObjectFactory factory) {
+        RenderComponent render =
+            (RenderComponent)factory.allocateComponent(RenderComponent.class);
+        render.setPriority(data.getInt());
+        render.setCameraRelative(data.get() != 0);
+        render.setDrawOffset(data.getFloat(), data.getFloat());
+        if (data.get() != 0) {
+            final Texture texture = readTexture(data);
+            final int width = data.getShort();
+            final int height = data.getShort();
+            render.setDrawable(new DrawableBitmap(texture, width, height));
+        }
+        return render;
+    }
+
+    private GameComponent readGhost(ByteBuffer data, GameObjectFactory factory) {
+        GhostComponent ghost = (GhostComponent)factory.allocateComponent(GhostComponent.class);
+        final ActionType[] actions = ActionType.values();
+        ghost.setMovementSpeed(data.getFloat());
+        ghost.setJumpImpulse(data.getFloat());
+        ghost.setAcceleration(data.getFloat());
+        ghost.setUseOrientationSensor(data.get() != 0);
+        ghost.setDelayOnRelease(data.getFloat());
+        ghost.setKillOnRelease(data.get() != 0);
+        ghost.setTargetAction(actions[data.get()]);
+        ghost.setLifeTime(data.getFloat());
+        final int buttonAction = data.get();
+        if (buttonAction != NONE) {
+            ghost.changeActionOnButton(actions[buttonAction]);
+        }
+        return ghost;
+    }
+}
@@ -21,6 +21,7 @@ import javax.microedition.khronos.opengles.GL10;
 public class BufferLibrary extends BaseObject {
     private static final int GRID_LIST_SIZE = 256;
     private FixedSizeArray<Grid> mGridList;
+    private SpriteBatch mSpriteBatch;
    
     public BufferLibrary() {
         super();
@@ -41,6 +42,11 @@ public class BufferLibrary extends BaseObject {
         mGridList.clear();
     }
     
+    /** Sets the sprite batch whose hardware buffers are managed along with the grids. */
+    public void setSpriteBatch(SpriteBatch batch) {
+        mSpriteBatch = batch;
+    }
+    
     public void generateHardwareBuffers(GL10 gl) {
     	if (sSystemRegistry.contextParameters.supportsVBOs) {
 	        final int count = mGridList.getCount();
@@ -48,6 +54,9 @@ public class BufferLibrary extends BaseObject {
 	            Grid grid = mGridList.get(x);
 	            grid.generateHardwareBuffers(gl);
 	        }
+	        if (mSpriteBatch != null) {
+	            mSpriteBatch.generateHardwareBuffers(gl);
+	        }
     	}
     }
     
@@ -58,6 +67,9 @@ public class BufferLibrary extends BaseObject {
 	            Grid grid = mGridList.get(x);
 	            grid.releaseHardwareBuffers(gl);
 	        }
+	        if (mSpriteBatch != null) {
+	            mSpriteBatch.releaseHardwareBuffers(gl);
+	        }
     	}
     }
     
@@ -68,6 +80,9 @@ public class BufferLibrary extends BaseObject {
 	            Grid grid = mGridList.get(x);
 	            grid.invalidateHardwareBuffers();
 	        }
+	        if (mSpriteBatch != null) {
+	            mSpriteBatch.invalidateHardwareBuffers();
+	        }
     	}
     }
 
@@ -26,6 +26,8 @@ public class CameraSystem extends BaseObject {
     private float mShakeOffsetY;
     private Vector2 mCurrentCameraPosition;
     private Vector2 mFocalPosition;
+    private Vector2 mPreviousFocalPosition;
+    private boolean mHasPreviousFocalPosition;
     private Vector2 mPreInterpolateCameraPosition;
     private Vector2 mTargetPosition;
     private Vector2 mBias;
@@ -46,6 +48,7 @@ public class CameraSystem extends BaseObject {
         super();
         mCurrentCameraPosition = new Vector2();
         mFocalPosition = new Vector2();
+        mPreviousFocalPosition = new Vector2();
         mPreInterpolateCameraPosition = new Vector2();
         mTargetPosition = new Vector2();
         mBias = new Vector2();
@@ -58,6 +61,8 @@ public class CameraSystem extends BaseObject {
         mShakeTime = 0.0f;
         mShakeMagnitude = 0.0f;
         mFocalPosition.zero();
+        mPreviousFocalPosition.zero();
+        mHasPreviousFocalPosition = false;
         mTargetChangedTime = 0.0f;
         mPreInterpolateCameraPosition.zero();
         mTargetPosition.zero();
@@ -98,6 +103,7 @@ public class CameraSystem extends BaseObject {
     @Override
     public void update(float timeDelta, BaseObject parent) {
         
+        mPreviousFocalPosition.set(mFocalPosition);
         mShakeOffsetY = 0.0f;
         
         if (mShakeTime > 0.0f) {
@@ -156,6 +162,11 @@ public class CameraSystem extends BaseObject {
         
         mFocalPosition.y = (float) Math.floor(mCurrentCameraPosition.y + mShakeOffsetY);
         mFocalPosition.y = snapFocalPointToWorldBoundsY(mFocalPosition.y);
+        
+        if (!mHasPreviousFocalPosition) {
+            mPreviousFocalPosition.set(mFocalPosition);
+            mHasPreviousFocalPosition = true;
+        }
     }
     
     /** Returns the x position of the camera's look-at point. */
@@ -168,6 +179,21 @@ public class CameraSystem extends BaseObject {
         return mFocalPosition.y;
     }
     
+    /** 
+     * Returns the x position of the look-at point that this frame is drawn from: the render 
+     * system's interpolation factor of the way from the previous update's focus to this one's.
+     */
+    public float getInterpolatedFocusPositionX() {
+        return sSystemRegistry.renderSystem.interpolate(mPreviousFocalPosition.x, 
+                mFocalPosition.x);
+    }
+    
+    /** Returns the y position of the look-at point that this frame is drawn from. */
+    public float getInterpolatedFocusPositionY() {
+        return sSystemRegistry.renderSystem.interpolate(mPreviousFocalPosition.y, 
+                mFocalPosition.y);
+    }
+    
     public boolean pointVisible(Vector2 point, float radius) {
         boolean visible = false;
         final float width = sSystemRegistry.contextParameters.gameWidth / 2.0f;
@@ -23,6 +23,8 @@ package com.replica.replicaisland;
  * switching in and out of those modes by activating and deactivating specific game components.
  */
 public class ChangeComponentsComponent extends GameComponent {
+    public static final ComponentType<ChangeComponentsComponent> TYPE = ComponentType.get(ChangeComponentsComponent.class);
+    
     private final static int MAX_COMPONENT_SWAPS = 16;
     private FixedSizeArray<GameComponent> mComponentsToInsert;
     private FixedSizeArray<GameComponent> mComponentsToRemove;
@@ -100,6 +102,10 @@ public class ChangeComponentsComponent extends GameComponent {
         mComponentsToRemove.add(component);
     }
     
+    public FixedSizeArray<GameComponent> getSwapInComponents() {
+        return mComponentsToInsert;
+    }
+    
     public void setPingPongBehavior(boolean pingPong) {
         mPingPong = pingPong;
     }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import com.replica.replicaisland.GameObjectCollisionSystem.CollisionVolumeRecord;
+
+/**
+ * The broadphase is the first step of dynamic collision detection.  Given the list of collision
+ * volume records registered with the GameObjectCollisionSystem this frame, a broadphase finds the
+ * pairs of records that might be colliding and passes each of them to a PairVisitor, which performs
+ * the exact (and expensive) attack vs vulnerability volume tests.  Each unordered pair is reported
+ * at most once per frame.  Pairs are passed to the visitor as they are found rather than stored, so
+ * implementations must not allocate at runtime.
+ *
+ * The world-space bounds of every record (see CollisionVolumeRecord) are calculated before
+ * findPairs() is called and may be used freely by implementations.
+ */
+public abstract class CollisionBroadphase extends AllocationGuard {
+    private int mPairCount;
+
+    public CollisionBroadphase() {
+        super();
+    }
+
+    /**
+     * Finds all potentially colliding pairs in the passed record list and reports them to the
+     * visitor.  Implementations may reorder the record list.
+     */
+    public abstract void findPairs(FixedSizeArray<CollisionVolumeRecord> records,
+            PairVisitor visitor);
+
+    /** Returns the number of candidate pairs reported by the last call to findPairs(). */
+    public final int getPairCount() {
+        return mPairCount;
+    }
+
+    protected final void setPairCount(int count) {
+        mPairCount = count;
+    }
+
+    /** Returns true if the attack bounds of the first record overlap the vulnerability bounds of
+     * the second. */
+    protected static final boolean attackOverlaps(CollisionVolumeRecord attacker,
+            CollisionVolumeRecord victim) {
+        return attacker.hasAttackBounds && victim.hasVulnerabilityBounds
+                && attacker.attackMinX <= victim.vulnerabilityMaxX
+                && victim.vulnerabilityMinX <= attacker.attackMaxX
+                && attacker.attackMinY <= victim.vulnerabilityMaxY
+                && victim.vulnerabilityMinY <= attacker.attackMaxY;
+    }
+
+    /**
+     * An interface for receiving candidate pairs from a broadphase.  The visit() function is
+     * invoked once for each pair found.
+     */
+    public static abstract class PairVisitor extends AllocationGuard {
+        public PairVisitor() {
+            super();
+        }
+
+        public abstract void visit(CollisionVolumeRecord record, CollisionVolumeRecord other);
+    }
+}
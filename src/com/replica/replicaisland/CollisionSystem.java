@@ -16,7 +16,7 @@
 
 package com.replica.replicaisland;
 
-import android.content.res.AssetManager;
+import android.content.Context;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -27,6 +27,10 @@ import java.io.InputStream;
  * tiles.  The underlying detection algorithm isn't relevant to calling code, however, so this class
  * may be extended to provide a completely different collision detection scheme.  
  * 
+ * The segments of the collision tiles are stored in a packed CollisionTileSet, and the background
+ * tests below read them directly from its arrays.  Tile sets are decoded once and cached, so they
+ * are shared by every level that uses them.
+ * 
  * This class also provides a system for runtime-generated collision segments.  These temporary
  * segments are cleared each frame, and consequently must be constantly re-submitted if they are
  * intended to persist.  Temporary segments are useful for dynamic solid objects, such as moving
@@ -40,14 +44,13 @@ import java.io.InputStream;
  */
 public class CollisionSystem extends BaseObject {
     private TiledWorld mWorld;
-    private CollisionTile[] mCollisionTiles;
+    private CollisionTileSet mTileSet;
     private LineSegmentPool mSegmentPool;
     private int mTileWidth;
     private int mTileHeight;
     private TileTestVisitor mTileSegmentTester;
     private FixedSizeArray<LineSegment> mTemporarySegments;
     private FixedSizeArray<LineSegment> mPendingTemporarySegments;
-    private byte[] mWorkspaceBytes;     // Included here to avoid runtime allocation during file io.
     
     private static final int MAX_TEMPORARY_SEGMENTS = 256;
 
@@ -58,14 +61,12 @@ public class CollisionSystem extends BaseObject {
         
         mTemporarySegments = new FixedSizeArray<LineSegment>(MAX_TEMPORARY_SEGMENTS);
         mPendingTemporarySegments = new FixedSizeArray<LineSegment>(MAX_TEMPORARY_SEGMENTS);
-        
-        mWorkspaceBytes = new byte[4];
     }
     
     @Override
     public void reset() {
+        // The tile set doesn't depend on the level, so it is kept.
         mWorld = null;
-        mCollisionTiles = null;
         
         final int count = mTemporarySegments.getCount();
         for (int x = 0; x < count; x++) {
@@ -113,7 +114,7 @@ public class CollisionSystem extends BaseObject {
         
         mTileSegmentTester.setup(movementDirection, mTileWidth, mTileHeight);
         
-        if (mCollisionTiles != null &&
+        if (mTileSet != null &&
                 executeRay(startPoint, endPoint, hitPoint, hitNormal, mTileSegmentTester) != -1) {
             hit = true;
         }
@@ -155,7 +156,7 @@ public class CollisionSystem extends BaseObject {
         boolean foundHit = false;
         
         // Test against the background.
-        if (!testDynamicSurfacesOnly) {
+        if (!testDynamicSurfacesOnly && mTileSet != null) {
             float startX = left;
             float endX = right;
             float startY = bottom;
@@ -183,15 +184,18 @@ public class CollisionSystem extends BaseObject {
             VectorPool vectorPool = sSystemRegistry.vectorPool;
             Vector2 worldTileOffset = vectorPool.allocate();
             
-            final int[][] tileArray = mWorld.getTiles();
+            final CollisionTileSet tiles = mTileSet;
+            final byte[] tileArray = mWorld.getTileData();
+            final int tileOffset = mWorld.getTileDataOffset();
             final int worldHeight = mWorld.getHeight() - 1;
+            final int worldWidth = mWorld.getWidth();
            
             
             for (int y = startTileY; y != endTileY + yIncrement; y += yIncrement) {
+                final int rowOffset = tileOffset + ((worldHeight - y) * worldWidth);
                 for (int x = startTileX; x != endTileX + xIncrement; x += xIncrement) {
-                    final int tileIndex = tileArray[x][worldHeight - y];
-                    if (tileIndex >= 0 && tileIndex < mCollisionTiles.length 
-                            && mCollisionTiles[tileIndex] != null) {
+                    final int tileIndex = tileArray[rowOffset + x];
+                    if (tiles.isSolid(tileIndex)) {
                         
                         final float xOffset = x * mTileWidth;
                         final float yOffset = y * mTileHeight;
@@ -203,9 +207,9 @@ public class CollisionSystem extends BaseObject {
                         
                         worldTileOffset.set(xOffset, yOffset);
                         
-                        boolean hit = testBoxAgainstList(mCollisionTiles[tileIndex].segments,
+                        boolean hit = testBoxAgainstTile(tiles, tileIndex,
                                 tileSpaceLeft, tileSpaceRight, tileSpaceTop, tileSpaceBottom,
-                                movementDirection, excludeObject, worldTileOffset, hitPoints);
+                                movementDirection, worldTileOffset, hitPoints);
                         
                         if (hit) {
                             foundHit = true;
@@ -246,7 +250,7 @@ public class CollisionSystem extends BaseObject {
     public void update(float timeDelta, BaseObject parent) {
         // Clear temporary surfaces
         final int count = mTemporarySegments.getCount();
-        if (mCollisionTiles != null && count > 0) {
+        if (mTileSet != null && count > 0) {
             for (int x = 0; x < count; x++) {
                 mSegmentPool.release(mTemporarySegments.get(x));
                 mTemporarySegments.set(x, null);
@@ -296,12 +300,14 @@ public class CollisionSystem extends BaseObject {
         
         int hitTile = -1;
         final int worldHeight = mWorld.getHeight() - 1;
-        final int[][] tileArray = mWorld.getTiles();
+        final int worldWidth = mWorld.getWidth();
+        final CollisionTileSet tiles = mTileSet;
+        final byte[] tileArray = mWorld.getTileData();
+        final int tileOffset = mWorld.getTileDataOffset();
         for (int x = 0; x < distance; x++) {
-            final int tileIndex = tileArray[currentX][worldHeight - currentY];
-            if (tileIndex >= 0 && tileIndex < mCollisionTiles.length 
-                    && mCollisionTiles[tileIndex] != null) {
-                if (visitor.visit(mCollisionTiles[tileIndex], startPoint, endPoint, 
+            final int tileIndex = tileArray[tileOffset + ((worldHeight - currentY) * worldWidth) + currentX];
+            if (tiles.isSolid(tileIndex)) {
+                if (visitor.visit(tiles, tileIndex, startPoint, endPoint, 
                         hitPoint, hitNormal, currentX, currentY)) {
                     hitTile = tileIndex;
                     break;
@@ -364,16 +370,17 @@ public class CollisionSystem extends BaseObject {
             final int deltaY2 = verticalDelta * 2;
             
             final int worldHeightMinusOne = worldHeight - 1;
-            final int[][]tileArray = mWorld.getTiles();
+            final CollisionTileSet tiles = mTileSet;
+            final byte[] tileArray = mWorld.getTileData();
+            final int tileOffset = mWorld.getTileDataOffset();
             
             // Bresenham line algorithm in tile space.
             if (lateralDelta >= verticalDelta) {
                 int error = deltaY2 - lateralDelta;
                 for (int i = 0; i < lateralDelta; i++) {
-                    final int tileIndex = tileArray[currentX][worldHeightMinusOne - currentY];
-                    if (tileIndex >= 0 && tileIndex < mCollisionTiles.length 
-                            && mCollisionTiles[tileIndex] != null) {
-                        if (visitor.visit(mCollisionTiles[tileIndex], startPoint, endPoint, 
+                    final int tileIndex = tileArray[tileOffset + ((worldHeightMinusOne - currentY) * worldWidth) + currentX];
+                    if (tiles.isSolid(tileIndex)) {
+                        if (visitor.visit(tiles, tileIndex, startPoint, endPoint, 
                                 hitPoint, hitNormal, currentX, currentY)) {
                             hitTile = tileIndex;
                             break;
@@ -393,10 +400,9 @@ public class CollisionSystem extends BaseObject {
                 int error = deltaX2 - verticalDelta;
                         
                 for (int i = 0; i < verticalDelta; i++) {
-                    final int tileIndex = tileArray[currentX][worldHeightMinusOne - currentY];
-                    if (tileIndex >= 0 && tileIndex < mCollisionTiles.length
-                            && mCollisionTiles[tileIndex] != null) {
-                        if (visitor.visit(mCollisionTiles[tileIndex], startPoint, endPoint, 
+                    final int tileIndex = tileArray[tileOffset + ((worldHeightMinusOne - currentY) * worldWidth) + currentX];
+                    if (tiles.isSolid(tileIndex)) {
+                        if (visitor.visit(tiles, tileIndex, startPoint, endPoint, 
                                 hitPoint, hitNormal, currentX, currentY)) {
                             hitTile = tileIndex;
                             break;
@@ -518,65 +524,214 @@ public class CollisionSystem extends BaseObject {
         return hitCount > 0;
     }
     
+    /* 
+     * Like testSegmentAgainstList(), but tests the ray against the segments of a single tile,
+     * reading them directly from the packed tile set.
+     */
+    protected static boolean testSegmentAgainstTile(CollisionTileSet tiles, int tileIndex,
+            Vector2 startPoint, Vector2 endPoint, Vector2 hitPoint, Vector2 hitNormal, 
+            Vector2 movementDirection) {
+        boolean foundHit = false;
+        float closestDistance = -1;
+        float hitX = 0;
+        float hitY = 0;
+        float normalX = 0;
+        float normalY = 0;
+        final float[] startXs = tiles.getStartX();
+        final float[] startYs = tiles.getStartY();
+        final float[] endXs = tiles.getEndX();
+        final float[] endYs = tiles.getEndY();
+        final float[] normalXs = tiles.getNormalX();
+        final float[] normalYs = tiles.getNormalY();
+        final boolean filter = movementDirection.length2() > 0.0f;
+        final int end = tiles.getFirstSegment(tileIndex + 1);
+        for (int x = tiles.getFirstSegment(tileIndex); x < end; x++) {
+            final float dot = filter ? 
+                    (movementDirection.x * normalXs[x]) + (movementDirection.y * normalYs[x]) : -1.0f;
+                    
+            if (dot < 0.0f &&
+                    calculateIntersection(startXs[x], startYs[x], endXs[x], endYs[x], 
+                            startPoint, endPoint, hitPoint)) {
+                final float distance = hitPoint.distance2(startPoint);
+
+                if (!foundHit || closestDistance > distance) {
+                    closestDistance = distance;
+                    foundHit = true;
+                    normalX = normalXs[x];
+                    normalY = normalYs[x];
+                    hitX = hitPoint.x;
+                    hitY = hitPoint.y;
+                }
+            }
+        }
+        
+        if (foundHit) {
+            hitPoint.set(hitX, hitY);
+            hitNormal.set(normalX, normalY);
+        }
+        return foundHit;
+    }
+    
+    /* 
+     * Like testBoxAgainstList(), but tests the box against the segments of a single tile, reading
+     * them directly from the packed tile set.
+     */
+    protected static boolean testBoxAgainstTile(CollisionTileSet tiles, int tileIndex,
+            float left, float right, float top, float bottom,
+            Vector2 movementDirection, Vector2 outputOffset, 
+            FixedSizeArray<HitPoint> outputHitPoints) {
+        int hitCount = 0;
+        final int maxSegments = outputHitPoints.getCapacity() - outputHitPoints.getCount();
+        final float[] startXs = tiles.getStartX();
+        final float[] startYs = tiles.getStartY();
+        final float[] endXs = tiles.getEndX();
+        final float[] endYs = tiles.getEndY();
+        final float[] normalXs = tiles.getNormalX();
+        final float[] normalYs = tiles.getNormalY();
+        final boolean filter = movementDirection.length2() > 0.0f;
+        
+        VectorPool vectorPool = sSystemRegistry.vectorPool;
+        HitPointPool hitPool = sSystemRegistry.hitPointPool;
+
+        Vector2 tempHitPoint = vectorPool.allocate();
+        
+        final int end = tiles.getFirstSegment(tileIndex + 1);
+        for (int x = tiles.getFirstSegment(tileIndex); x < end && hitCount < maxSegments; x++) {
+            final float dot = filter ? 
+                    (movementDirection.x * normalXs[x]) + (movementDirection.y * normalYs[x]) : -1.0f;
+                    
+            if (dot < 0.0f &&
+                    calculateIntersectionBox(startXs[x], startYs[x], endXs[x], endYs[x],
+                            left, right, top, bottom, tempHitPoint)) {
+
+                Vector2 hitPoint = vectorPool.allocate(tempHitPoint);
+                Vector2 hitNormal = vectorPool.allocate();
+                hitNormal.set(normalXs[x], normalYs[x]);
+               
+                hitPoint.add(outputOffset);
+                HitPoint hit = hitPool.allocate();
+                
+                hit.hitPoint = hitPoint;
+                hit.hitNormal = hitNormal;
+                
+                outputHitPoints.add(hit);
+                
+                hitCount++;
+            }
+        }
+        
+        vectorPool.release(tempHitPoint);
+        
+        return hitCount > 0;
+    }
+    
+    /**
+     * Checks to see if two lines intersect by projecting one onto the other and then
+     * assuring that the collision point is within the range of each segment.
+     */
+    protected static boolean calculateIntersection(float x1, float y1, float x2, float y2,
+            Vector2 otherStart, Vector2 otherEnd, Vector2 hitPoint) {
+        boolean intersecting = false;
+        
+        // Reference: http://local.wasp.uwa.edu.au/~pbourke/geometry/lineline2d/
+        final float x3 = otherStart.x;
+        final float x4 = otherEnd.x;
+        final float y3 = otherStart.y;
+        final float y4 = otherEnd.y;
+        
+        final float denom = (y4 - y3) * (x2 - x1) - (x4 - x3) * (y2 - y1);
+        if (denom != 0) {
+         final float uA = ((x4 - x3) * (y1 - y3) - (y4 - y3) * (x1 - x3)) / denom;
+         final float uB = ((x2 - x1) * (y1 - y3) - (y2 - y1) * (x1 - x3)) / denom; 
+         
+         if (uA >= 0.0f && uA <= 1.0f && uB >= 0.0f && uB <= 1.0f) {
+             final float hitX = x1 + (uA * (x2 - x1));
+             final float hitY = y1 + (uA * (y2 - y1));
+             hitPoint.set(hitX, hitY);
+             intersecting = true;
+         }
+        }
+        return intersecting;
+    }
+    
+    // Based on http://www.garagegames.com/community/resources/view/309
+    protected static boolean calculateIntersectionBox(float x1, float y1, float x2, float y2,
+            float left, float right, float top, float bottom, Vector2 hitPoint) {
+        float startIntersect;
+        float endIntersect;
+        float intersectTimeStart = 0.0f;
+        float intersectTimeEnd = 1.0f;
+        
+        if (x1 < x2) {
+            if (x1 > right || x2 < left) {
+                return false;
+            }
+            final float deltaX = x2 - x1;
+            startIntersect = (x1 < left) ? (left - x1) / deltaX : 0.0f;
+            endIntersect = (x2 > right) ? (right - x1) / deltaX : 1.0f;
+        } else {
+            if (x2 > right || x1 < left) {
+                return false;
+            }
+            final float deltaX = x2 - x1;
+            startIntersect = (x1 > right) ? (right - x1) / deltaX : 0.0f;
+            endIntersect = (x2 < left) ? (left - x1) / deltaX : 1.0f;
+        }
+        
+        if (startIntersect > intersectTimeStart) {
+            intersectTimeStart = startIntersect;
+        }
+        if (endIntersect < intersectTimeEnd) {
+            intersectTimeEnd = endIntersect;
+        }
+        if (intersectTimeEnd < intersectTimeStart) {
+            return false;
+        }
+        
+        // y
+        if (y1 < y2) {
+            if (y1 > top || y2 < bottom) {
+                return false;
+            }
+            final float deltaY = y2 - y1;
+            startIntersect = (y1 < bottom) ? (bottom - y1) / deltaY : 0.0f;
+            endIntersect = (y2 > top) ? (top - y1) / deltaY : 1.0f;
+        } else {
+            if (y2 > top || y1 < bottom) {
+                return false;
+            }
+            final float deltaY = y2 - y1;
+            startIntersect = (y1 > top) ? (top - y1) / deltaY : 0.0f;
+            endIntersect = (y2 < bottom) ? (bottom - y1) / deltaY : 1.0f;
+        }
+        
+        if (startIntersect > intersectTimeStart) {
+            intersectTimeStart = startIntersect;
+        }
+        if (endIntersect < intersectTimeEnd) {
+            intersectTimeEnd = endIntersect;
+        }
+        if (intersectTimeEnd < intersectTimeStart) {
+            return false;
+        }
+     
+        hitPoint.set(((x2 - x1) * intersectTimeStart) + x1, ((y2 - y1) * intersectTimeStart) + y1);
+        
+        return true;
+    }
+    
     /* 
      * Loads line segments from a binary file and builds the tiled collision database
-     * accordingly. 
+     * accordingly.  Both the original collision format and the packed format written by
+     * CollisionTileSet.write() are supported.
      */
     public boolean loadCollisionTiles(InputStream stream) {
         boolean success = false;
-        AssetManager.AssetInputStream byteStream = (AssetManager.AssetInputStream) stream;
-        int signature;
-        
-        // TODO: this is a hack.  I really should only allocate an array that is the size of the
-        // tileset, but at this point I don't actually know that size, so I allocate a buffer that's
-        // probably large enough.  
-        mCollisionTiles = new CollisionTile[256]; 
         try {
-            signature = (byte)byteStream.read();
-            if (signature == 52) {
-                // This file has the following deserialization format:
-                //   read the number of tiles
-                //   for each tile
-                //     read the tile id
-                //     read the number of segments
-                //     for each segment
-                //       read startx, starty, endx, endy, normalx, normaly
-                final int tileCount = byteStream.read();
-                final int size = (1 + 1 + 4 + 4 + 4 + 4 + 4 + 4) * tileCount;
-                if (byteStream.available() >= size) {
-                    for (int x = 0; x < tileCount; x++) {
-                        final int tileIndex = byteStream.read();
-                        final int segmentCount = byteStream.read();
-                        
-                        if (mCollisionTiles[tileIndex] == null && segmentCount > 0) {
-                            mCollisionTiles[tileIndex] = new CollisionTile(segmentCount);
-                        }
-                        
-                        for (int y = 0; y < segmentCount; y++) {
-                            byteStream.read(mWorkspaceBytes, 0, 4);
-                            final float startX = Utils.byteArrayToFloat(mWorkspaceBytes);
-                            byteStream.read(mWorkspaceBytes, 0, 4);
-                            final float startY = Utils.byteArrayToFloat(mWorkspaceBytes);
-                            byteStream.read(mWorkspaceBytes, 0, 4);
-                            final float endX = Utils.byteArrayToFloat(mWorkspaceBytes);
-                            byteStream.read(mWorkspaceBytes, 0, 4);
-                            final float endY = Utils.byteArrayToFloat(mWorkspaceBytes);
-                            byteStream.read(mWorkspaceBytes, 0, 4);
-                            final float normalX = Utils.byteArrayToFloat(mWorkspaceBytes);
-                            byteStream.read(mWorkspaceBytes, 0, 4);
-                            final float normalY = Utils.byteArrayToFloat(mWorkspaceBytes);
-                            
-                            // TODO: it might be wise to pool line segments.  I don't think that
-                            // this data will be loaded very often though, so this is ok for now.
-                            LineSegment newSegment = new LineSegment();
-                            newSegment.mStartPoint.set(startX, startY);
-                            newSegment.mEndPoint.set(endX, endY);
-                            newSegment.mNormal.set(normalX, normalY);
-                            
-                            mCollisionTiles[tileIndex].addSegment(newSegment);
-                        }
-                    }
-                }
+            CollisionTileSet tiles = CollisionTileSet.decode(Utils.readStream(stream));
+            if (tiles != null) {
+                mTileSet = tiles;
+                success = true;
             }
         } catch (IOException e) {
             //TODO: figure out the best way to deal with this.  Assert?
@@ -585,6 +740,35 @@ public class CollisionSystem extends BaseObject {
         return success;
     }
     
+    /* 
+     * Loads collision tiles from a raw resource.  Decoded tile sets are cached by resource id, so
+     * the resource is only read the first time it is requested.
+     */
+    public boolean loadCollisionTiles(Context context, int resourceId) {
+        boolean success = false;
+        CollisionTileSet tiles = CollisionTileSet.getCached(resourceId);
+        if (tiles != null) {
+            mTileSet = tiles;
+            success = true;
+        } else {
+            InputStream stream = context.getResources().openRawResource(resourceId);
+            success = loadCollisionTiles(stream);
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // Nothing to do.
+            }
+            if (success) {
+                CollisionTileSet.cache(resourceId, mTileSet);
+            }
+        }
+        return success;
+    }
+    
+    public CollisionTileSet getTileSet() {
+        return mTileSet;
+    }
+    
     
     /**
      * An interface for visiting tiles during a ray cast.  Implementations of TileVisitor
@@ -597,8 +781,8 @@ public class CollisionSystem extends BaseObject {
         }
         
         // If true is returned, tile scanning continues.  Otherwise it stops.
-        public abstract boolean visit(CollisionTile tile, Vector2 startPoint, Vector2 endPoint,
-            Vector2 hitPoint, Vector2 hitNormal, int tileX, int tileY);
+        public abstract boolean visit(CollisionTileSet tiles, int tileIndex, Vector2 startPoint, 
+            Vector2 endPoint, Vector2 hitPoint, Vector2 hitNormal, int tileX, int tileY);
     }
     
     /**
@@ -644,16 +828,16 @@ public class CollisionSystem extends BaseObject {
          * stored in the current tile.
          */
         @Override
-        public boolean visit(CollisionTile tile, Vector2 startPoint, Vector2 endPoint,
-                Vector2 hitPoint, Vector2 hitNormal, int tileX, int tileY) {
+        public boolean visit(CollisionTileSet tiles, int tileIndex, Vector2 startPoint, 
+                Vector2 endPoint, Vector2 hitPoint, Vector2 hitNormal, int tileX, int tileY) {
             mTileSpaceOffset.set(tileX * mTileWidth, tileY * mTileHeight);
             mTileSpaceStart.set(startPoint);
             mTileSpaceStart.subtract(mTileSpaceOffset);
             mTileSpaceEnd.set(endPoint);
             mTileSpaceEnd.subtract(mTileSpaceOffset);
             // find all the hits in the tile and pick the closest to the start point.
-            boolean foundHit = testSegmentAgainstList(tile.segments, mTileSpaceStart, mTileSpaceEnd, 
-                    hitPoint, hitNormal, mDelta, null);
+            boolean foundHit = testSegmentAgainstTile(tiles, tileIndex, mTileSpaceStart, 
+                    mTileSpaceEnd, hitPoint, hitNormal, mDelta);
             
             if (foundHit) {
                 // The hitPoint is in tile space, so convert it back to world space.
@@ -698,106 +882,14 @@ public class CollisionSystem extends BaseObject {
          */
         public boolean calculateIntersection(Vector2 otherStart, Vector2 otherEnd,
                 Vector2 hitPoint) {
-            boolean intersecting = false;
-            
-            // Reference: http://local.wasp.uwa.edu.au/~pbourke/geometry/lineline2d/
-            final float x1 = mStartPoint.x;
-            final float x2 = mEndPoint.x;
-            final float x3 = otherStart.x;
-            final float x4 = otherEnd.x;
-            final float y1 = mStartPoint.y;
-            final float y2 = mEndPoint.y;
-            final float y3 = otherStart.y;
-            final float y4 = otherEnd.y;
-            
-            final float denom = (y4 - y3) * (x2 - x1) - (x4 - x3) * (y2 - y1);
-            if (denom != 0) {
-             final float uA = ((x4 - x3) * (y1 - y3) - (y4 - y3) * (x1 - x3)) / denom;
-             final float uB = ((x2 - x1) * (y1 - y3) - (y2 - y1) * (x1 - x3)) / denom; 
-             
-             if (uA >= 0.0f && uA <= 1.0f && uB >= 0.0f && uB <= 1.0f) {
-                 final float hitX = x1 + (uA * (x2 - x1));
-                 final float hitY = y1 + (uA * (y2 - y1));
-                 hitPoint.set(hitX, hitY);
-                 intersecting = true;
-             }
-            }
-            return intersecting;
+            return CollisionSystem.calculateIntersection(mStartPoint.x, mStartPoint.y, 
+                    mEndPoint.x, mEndPoint.y, otherStart, otherEnd, hitPoint);
         }
         
-        // Based on http://www.garagegames.com/community/resources/view/309
         public boolean calculateIntersectionBox(float left, float right, float top, float bottom, 
                 Vector2 hitPoint) {
-            
-            final float x1 = mStartPoint.x;
-            final float x2 = mEndPoint.x;
-            final float y1 = mStartPoint.y;
-            final float y2 = mEndPoint.y;
-            
-            float startIntersect;
-            float endIntersect;
-            float intersectTimeStart = 0.0f;
-            float intersectTimeEnd = 1.0f;
-            
-            if (x1 < x2) {
-                if (x1 > right || x2 < left) {
-                    return false;
-                }
-                final float deltaX = x2 - x1;
-                startIntersect = (x1 < left) ? (left - x1) / deltaX : 0.0f;
-                endIntersect = (x2 > right) ? (right - x1) / deltaX : 1.0f;
-            } else {
-                if (x2 > right || x1 < left) {
-                    return false;
-                }
-                final float deltaX = x2 - x1;
-                startIntersect = (x1 > right) ? (right - x1) / deltaX : 0.0f;
-                endIntersect = (x2 < left) ? (left - x1) / deltaX : 1.0f;
-            }
-            
-            if (startIntersect > intersectTimeStart) {
-                intersectTimeStart = startIntersect;
-            }
-            if (endIntersect < intersectTimeEnd) {
-                intersectTimeEnd = endIntersect;
-            }
-            if (intersectTimeEnd < intersectTimeStart) {
-                return false;
-            }
-            
-            // y
-            if (y1 < y2) {
-                if (y1 > top || y2 < bottom) {
-                    return false;
-                }
-                final float deltaY = y2 - y1;
-                startIntersect = (y1 < bottom) ? (bottom - y1) / deltaY : 0.0f;
-                endIntersect = (y2 > top) ? (top - y1) / deltaY : 1.0f;
-            } else {
-                if (y2 > top || y1 < bottom) {
-                    return false;
-                }
-                final float deltaY = y2 - y1;
-                startIntersect = (y1 > top) ? (top - y1) / deltaY : 0.0f;
-                endIntersect = (y2 < bottom) ? (bottom - y1) / deltaY : 1.0f;
-            }
-            
-            if (startIntersect > intersectTimeStart) {
-                intersectTimeStart = startIntersect;
-            }
-            if (endIntersect < intersectTimeEnd) {
-                intersectTimeEnd = endIntersect;
-            }
-            if (intersectTimeEnd < intersectTimeStart) {
-                return false;
-            }
-         
-            hitPoint.set(mEndPoint);
-            hitPoint.subtract(mStartPoint);
-            hitPoint.multiply(intersectTimeStart);
-            hitPoint.add(mStartPoint);
-            
-            return true;
+            return CollisionSystem.calculateIntersectionBox(mStartPoint.x, mStartPoint.y, 
+                    mEndPoint.x, mEndPoint.y, left, right, top, bottom, hitPoint);
         }
         
     }
@@ -834,25 +926,4 @@ public class CollisionSystem extends BaseObject {
         
         
     }
-    
-    /**
-     * A single collision tile.  Manages a list of line segments.
-     */
-    protected class CollisionTile extends AllocationGuard {
-        public FixedSizeArray<LineSegment> segments;
-        
-        public CollisionTile(int maxSegments) {
-            super();
-            segments = new FixedSizeArray<LineSegment>(maxSegments);
-        }
-        
-        public boolean addSegment(LineSegment segment) {
-            boolean success = false;
-            if (segments.getCount() < segments.getCapacity()) {
-                success = true;
-            }
-            segments.add(segment);
-            return success;
-        }
-    }
 }
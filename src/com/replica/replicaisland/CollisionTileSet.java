@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A packed, read-only set of collision tiles.  The line segments of every tile are stored in
+ * struct-of-arrays form: one float array per component (start x, start y, end x, end y, normal x,
+ * normal y), with the segments of each tile stored contiguously.  An offset index maps a tile to
+ * its segments; the segments of tile i are those from getFirstSegment(i) up to (but not
+ * including) getFirstSegment(i + 1).  Segment coordinates are in tile space.
+ *
+ * Tile sets can be decoded from the original collision file format (signature 52) or from a
+ * packed format (signature 53) that mirrors the in-memory layout and can be read with a handful
+ * of bulk reads; see write().  The game's collision.bin is converted to the packed format by
+ * CollisionConverter (in tools/benchmarks).  Since a tile set is immutable once loaded, decoded sets may be
+ * cached by key and shared between levels and between CollisionSystem instances.
+ */
+public class CollisionTileSet extends AllocationGuard {
+    public static final int MAX_TILES = 256;
+
+    private static final int LEGACY_SIGNATURE = 52;
+    private static final int PACKED_SIGNATURE = 53;
+    private static final int MAX_CACHED_SETS = 4;
+
+    private static final int[] sCacheKeys = new int[MAX_CACHED_SETS];
+    private static final CollisionTileSet[] sCacheSets = new CollisionTileSet[MAX_CACHED_SETS];
+    private static int sCacheCount;
+
+    private final int[] mFirstSegment;
+    private final float[] mStartX;
+    private final float[] mStartY;
+    private final float[] mEndX;
+    private final float[] mEndY;
+    private final float[] mNormalX;
+    private final float[] mNormalY;
+
+    private CollisionTileSet(int segmentCount) {
+        super();
+        mFirstSegment = new int[MAX_TILES + 1];
+        mStartX = new float[segmentCount];
+        mStartY = new float[segmentCount];
+        mEndX = new float[segmentCount];
+        mEndY = new float[segmentCount];
+        mNormalX = new float[segmentCount];
+        mNormalY = new float[segmentCount];
+    }
+
+    /**
+     * Decodes a tile set from a buffer containing either collision file format, starting at the
+     * buffer's current position.  Returns null if the buffer does not contain a tile set.
+     */
+    public static CollisionTileSet decode(ByteBuffer buffer) {
+        CollisionTileSet result = null;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() > 1) {
+            final int signature = buffer.get();
+            if (signature == LEGACY_SIGNATURE) {
+                result = decodeLegacy(buffer);
+            } else if (signature == PACKED_SIGNATURE) {
+                result = decodePacked(buffer);
+            }
+        }
+        return result;
+    }
+
+    // The original format has the following layout:
+    //   the number of tiles
+    //   for each tile
+    //     the tile id
+    //     the number of segments
+    //     for each segment
+    //       startx, starty, endx, endy, normalx, normaly
+    // Tiles may appear in any order, so the file is walked twice: once to count the segments of
+    // each tile and once to copy them into place.
+    private static CollisionTileSet decodeLegacy(ByteBuffer buffer) {
+        final int tileCount = buffer.get() & 0xFF;
+        final int start = buffer.position();
+        final int[] counts = new int[MAX_TILES];
+        int totalSegments = 0;
+        for (int x = 0; x < tileCount && buffer.remaining() >= 2; x++) {
+            final int tileIndex = buffer.get() & 0xFF;
+            final int segmentCount = buffer.get() & 0xFF;
+            if (buffer.remaining() < segmentCount * 6 * 4) {
+                break;
+            }
+            counts[tileIndex] += segmentCount;
+            totalSegments += segmentCount;
+            buffer.position(buffer.position() + (segmentCount * 6 * 4));
+        }
+
+        CollisionTileSet tiles = new CollisionTileSet(totalSegments);
+        final int[] firstSegment = tiles.mFirstSegment;
+        for (int x = 0; x < MAX_TILES; x++) {
+            firstSegment[x + 1] = firstSegment[x] + counts[x];
+            counts[x] = firstSegment[x];    // Now the next free slot for this tile.
+        }
+
+        buffer.position(start);
+        int segmentsRead = 0;
+        while (segmentsRead < totalSegments) {
+            final int tileIndex = buffer.get() & 0xFF;
+            final int segmentCount = buffer.get() & 0xFF;
+            for (int y = 0; y < segmentCount; y++) {
+                final int segment = counts[tileIndex];
+                tiles.mStartX[segment] = buffer.getFloat();
+                tiles.mStartY[segment] = buffer.getFloat();
+                tiles.mEndX[segment] = buffer.getFloat();
+                tiles.mEndY[segment] = buffer.getFloat();
+                tiles.mNormalX[segment] = buffer.getFloat();
+                tiles.mNormalY[segment] = buffer.getFloat();
+                counts[tileIndex]++;
+            }
+            segmentsRead += segmentCount;
+        }
+
+        return tiles;
+    }
+
+    // The packed format is:
+    //   the total number of segments (int)
+    //   the offset index (MAX_TILES + 1 ints)
+    //   each of the six component arrays in turn (floats)
+    private static CollisionTileSet decodePacked(ByteBuffer buffer) {
+        CollisionTileSet tiles = null;
+        if (buffer.remaining() >= 4) {
+            final int segmentCount = buffer.getInt();
+            final int size = ((MAX_TILES + 1) + (segmentCount * 6)) * 4;
+            if (segmentCount >= 0 && buffer.remaining() >= size) {
+                tiles = new CollisionTileSet(segmentCount);
+                buffer.asIntBuffer().get(tiles.mFirstSegment);
+                buffer.position(buffer.position() + ((MAX_TILES + 1) * 4));
+                getFloats(buffer, tiles.mStartX);
+                getFloats(buffer, tiles.mStartY);
+                getFloats(buffer, tiles.mEndX);
+                getFloats(buffer, tiles.mEndY);
+                getFloats(buffer, tiles.mNormalX);
+                getFloats(buffer, tiles.mNormalY);
+                if (tiles.mFirstSegment[MAX_TILES] != segmentCount) {
+                    tiles = null;
+                }
+            }
+        }
+        return tiles;
+    }
+
+    private static void getFloats(ByteBuffer buffer, float[] output) {
+        buffer.asFloatBuffer().get(output);
+        buffer.position(buffer.position() + (output.length * 4));
+    }
+
+    /** Writes this tile set to a stream in the packed format. */
+    public void write(OutputStream stream) throws IOException {
+        final int segmentCount = getSegmentCount();
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + ((MAX_TILES + 1) + (segmentCount * 6)) * 4);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte)PACKED_SIGNATURE);
+        buffer.putInt(segmentCount);
+        for (int x = 0; x < mFirstSegment.length; x++) {
+            buffer.putInt(mFirstSegment[x]);
+        }
+        putFloats(buffer, mStartX);
+        putFloats(buffer, mStartY);
+        putFloats(buffer, mEndX);
+        putFloats(buffer, mEndY);
+        putFloats(buffer, mNormalX);
+        putFloats(buffer, mNormalY);
+        stream.write(buffer.array(), 0, buffer.position());
+    }
+
+    private static void putFloats(ByteBuffer buffer, float[] values) {
+        for (int x = 0; x < values.length; x++) {
+            buffer.putFloat(values[x]);
+        }
+    }
+
+    /** Returns a previously cached tile set, or null if no set has been cached with this key. */
+    public static synchronized CollisionTileSet getCached(int key) {
+        CollisionTileSet result = null;
+        for (int x = 0; x < sCacheCount; x++) {
+            if (sCacheKeys[x] == key) {
+                result = sCacheSets[x];
+                break;
+            }
+        }
+        return result;
+    }
+
+    /** Caches a tile set under the passed key.  If the cache is full the oldest set is dropped. */
+    public static synchronized void cache(int key, CollisionTileSet tiles) {
+        int slot = -1;
+        for (int x = 0; x < sCacheCount; x++) {
+            if (sCacheKeys[x] == key) {
+                slot = x;
+                break;
+            }
+        }
+        if (slot == -1) {
+            if (sCacheCount == MAX_CACHED_SETS) {
+                System.arraycopy(sCacheKeys, 1, sCacheKeys, 0, MAX_CACHED_SETS - 1);
+                System.arraycopy(sCacheSets, 1, sCacheSets, 0, MAX_CACHED_SETS - 1);
+                sCacheCount--;
+            }
+            slot = sCacheCount;
+            sCacheCount++;
+        }
+        sCacheKeys[slot] = key;
+        sCacheSets[slot] = tiles;
+    }
+
+    public static synchronized void clearCache() {
+        for (int x = 0; x < sCacheCount; x++) {
+            sCacheSets[x] = null;
+        }
+        sCacheCount = 0;
+    }
+
+    /** Returns true if the tile index refers to a tile with at least one segment. */
+    public final boolean isSolid(int tileIndex) {
+        return tileIndex >= 0 && tileIndex < MAX_TILES
+                && mFirstSegment[tileIndex + 1] > mFirstSegment[tileIndex];
+    }
+
+    public final int getFirstSegment(int tileIndex) {
+        return mFirstSegment[tileIndex];
+    }
+
+    public final int getSegmentCount() {
+        return mFirstSegment[MAX_TILES];
+    }
+
+    public final float[] getStartX() {
+        return mStartX;
+    }
+
+    public final float[] getStartY() {
+        return mStartY;
+    }
+
+    public final float[] getEndX() {
+        return mEndX;
+    }
+
+    public final float[] getEndY() {
+        return mEndY;
+    }
+
+    public final float[] getNormalX() {
+        return mNormalX;
+    }
+
+    public final float[] getNormalY() {
+        return mNormalY;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+/**
+ * Identifies a GameComponent class by a small integer id, so that a GameObject can look up its
+ * components by type with an index rather than by comparing classes (see
+ * GameObject.getComponent()).  Ids are handed out in the order classes are first seen and are
+ * only meaningful within a single run.  Component classes that are looked up at runtime declare
+ * their type as a constant, e.g.:
+ *
+ *   public static final ComponentType<GravityComponent> TYPE =
+ *           ComponentType.get(GravityComponent.class);
+ */
+public final class ComponentType<T extends GameComponent> {
+    public static final int MAX_TYPES = 256;
+    private static final int TABLE_SIZE = MAX_TYPES * 2;
+
+    private static final Class<?>[] sTableKeys = new Class<?>[TABLE_SIZE];
+    private static final ComponentType<?>[] sTableValues = new ComponentType<?>[TABLE_SIZE];
+    private static int sTypeCount = 0;
+
+    public final Class<T> componentClass;
+    public final int id;
+
+    private ComponentType(Class<T> type, int typeId) {
+        componentClass = type;
+        id = typeId;
+    }
+
+    /** Returns the type for a component class, assigning it an id if it doesn't have one yet. */
+    @SuppressWarnings("unchecked")
+    public static synchronized <T extends GameComponent> ComponentType<T> get(Class<T> type) {
+        final int mask = TABLE_SIZE - 1;
+        int slot = System.identityHashCode(type) & mask;
+        ComponentType<T> result = null;
+        for (int x = 0; x < TABLE_SIZE; x++) {
+            final Class<?> key = sTableKeys[slot];
+            if (key == type) {
+                result = (ComponentType<T>)sTableValues[slot];
+                break;
+            } else if (key == null) {
+                assert sTypeCount < MAX_TYPES : "Too many GameComponent classes!";
+                result = new ComponentType<T>(type, sTypeCount);
+                sTableKeys[slot] = type;
+                sTableValues[slot] = result;
+                sTypeCount++;
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return result;
+    }
+
+    /** Returns the id of a component class.  This may allocate, so call it at load time. */
+    @SuppressWarnings("unchecked")
+    public static int getId(Class<? extends GameComponent> type) {
+        return get((Class<GameComponent>)type).id;
+    }
+
+    public static synchronized int getTypeCount() {
+        return sTypeCount;
+    }
+}
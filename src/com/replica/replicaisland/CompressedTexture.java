@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * A texture image that has already been encoded in a format OpenGL can upload as-is, as written
+ * by TextureConverter (in tools/benchmarks).  Loading one of these skips BitmapFactory entirely
+ * and takes a half (16-bit formats) or an eighth (ETC1) of the memory of a decoded ARGB8888
+ * bitmap.  TextureLibrary looks for one of these, as a raw resource named after the drawable
+ * with SUFFIX appended, before decoding the drawable itself.
+ *
+ * The file is big-endian, as written by DataOutputStream:
+ *
+ *   int MAGIC, int VERSION
+ *   short format (one of the FORMAT_ constants), short width, short height
+ *   int data size, then the image data
+ *
+ * 16-bit texels are stored little-endian, rows tightly packed from the top of the image.  In the
+ * formats with alpha, color is premultiplied by alpha, as in the bitmaps Android decodes.  ETC1
+ * data is a sequence of 4x4 blocks as defined by OES_compressed_ETC1_RGB8_texture; the image
+ * need not be a multiple of four texels wide or high.
+ *
+ * This class only parses the file; it has no Android dependencies (it doesn't even log, see
+ * getError()), so the tools can read back what they wrote on a desktop JVM.  The same object
+ * (and its buffer) can be reused for any number of loads.
+ */
+public class CompressedTexture {
+    public static final int MAGIC = 0x52495458; // "RITX"
+    public static final int VERSION = 1;
+    public static final String SUFFIX = "_tex";
+
+    public static final int FORMAT_RGB565 = 1;
+    public static final int FORMAT_RGBA4444 = 2;
+    public static final int FORMAT_RGBA5551 = 3;
+    public static final int FORMAT_ETC1 = 4;
+
+    private static final int HEADER_SIZE = 18;
+
+    private int mFormat;
+    private int mWidth;
+    private int mHeight;
+    private ByteBuffer mData;
+    private String mError;
+
+    /** Reads a texture file.  Returns false if the stream isn't a usable texture file. */
+    public boolean load(InputStream stream) {
+        boolean success = false;
+        try {
+            success = parse(Utils.readStream(stream));
+        } catch (IOException e) {
+            mError = "Unable to read texture: " + e;
+        }
+        return success;
+    }
+
+    /** Parses a texture file held in a buffer. */
+    public boolean parse(ByteBuffer file) {
+        boolean success = false;
+        mFormat = 0;
+        mError = null;
+        try {
+            file.order(ByteOrder.BIG_ENDIAN);
+            if (file.remaining() >= HEADER_SIZE && file.getInt() == MAGIC
+                    && file.getInt() == VERSION) {
+                final int format = file.getShort();
+                final int width = file.getShort();
+                final int height = file.getShort();
+                final int size = file.getInt();
+                if (width > 0 && height > 0 && size == getDataSize(format, width, height)
+                        && file.remaining() >= size) {
+                    copyData(file, format, size);
+                    mFormat = format;
+                    mWidth = width;
+                    mHeight = height;
+                    success = true;
+                } else {
+                    mError = "Bad texture header: format " + format + ", " + width + "x"
+                            + height + ", " + size + " bytes";
+                }
+            } else {
+                mError = "Not a texture file";
+            }
+        } catch (BufferUnderflowException e) {
+            mError = "Texture file is truncated";
+        }
+        return success;
+    }
+
+    /** Copies the image data into a direct buffer, putting 16-bit texels in native order. */
+    private void copyData(ByteBuffer file, int format, int size) {
+        if (mData == null || mData.capacity() < size) {
+            mData = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+        }
+        mData.clear();
+        if (format == FORMAT_ETC1) {
+            final int limit = file.limit();
+            file.limit(file.position() + size);
+            mData.put(file);
+            file.limit(limit);
+        } else {
+            ShortBuffer source = file.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            source.limit(size / 2);
+            mData.asShortBuffer().put(source);
+            file.position(file.position() + size);
+        }
+        mData.position(0);
+        mData.limit(size);
+    }
+
+    /** Returns the number of bytes of image data, or -1 if the format isn't known. */
+    public static int getDataSize(int format, int width, int height) {
+        int size = -1;
+        switch (format) {
+            case FORMAT_RGB565:
+            case FORMAT_RGBA4444:
+            case FORMAT_RGBA5551:
+                size = width * height * 2;
+                break;
+            case FORMAT_ETC1:
+                size = ((width + 3) / 4) * ((height + 3) / 4) * 8;
+                break;
+        }
+        return size;
+    }
+
+    public static boolean hasAlpha(int format) {
+        return format == FORMAT_RGBA4444 || format == FORMAT_RGBA5551;
+    }
+
+    /** Returns the format of the last texture parsed, or 0 if it couldn't be parsed. */
+    public final int getFormat() {
+        return mFormat;
+    }
+
+    public final int getWidth() {
+        return mWidth;
+    }
+
+    public final int getHeight() {
+        return mHeight;
+    }
+
+    /** Returns the image data of the last texture parsed, ready to be handed to OpenGL. */
+    public final ByteBuffer getData() {
+        return mData;
+    }
+
+    /** Returns why the last texture couldn't be parsed, or null if it was. */
+    public final String getError() {
+        return mError;
+    }
+
+    public final int getDataSize() {
+        return mData != null ? mData.limit() : 0;
+    }
+}
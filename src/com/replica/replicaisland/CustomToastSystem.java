@@ -29,6 +29,11 @@ public class CustomToastSystem extends BaseObject {
 	private TextView mText;
 	private Toast mToast;
 	
+	/** Creates a toast system that displays nothing, for running without a UI. */
+	public CustomToastSystem() {
+		super();
+	}
+	
 	public CustomToastSystem(Context context) {
 		LayoutInflater inflater = (LayoutInflater)context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
 		mView = inflater.inflate(R.layout.custom_toast, null);
@@ -47,11 +52,13 @@ public class CustomToastSystem extends BaseObject {
 	}
 	
 	public void toast(String text, int length) {
-		mText.setText(text);
-
-		mToast.setGravity(Gravity.CENTER, 0, 0);
-		mToast.setDuration(length);
-		mToast.show();
+		if (mToast != null) {
+			mText.setText(text);
+	
+			mToast.setGravity(Gravity.CENTER, 0, 0);
+			mToast.setDuration(length);
+			mToast.show();
+		}
 	}
 
 }
@@ -129,7 +129,7 @@ public class DrawableBitmap extends DrawableObject {
 
                 // This is necessary because we could be drawing the same texture with different
                 // crop (say, flipped horizontally) on the same frame.
-                OpenGLSystem.setTextureCrop(mCrop);
+                OpenGLSystem.setTextureCrop(mCrop, texture.offsetX, texture.offsetY);
                
                 if (opacity < 1.0f) {
                     gl.glColor4f(opacity, opacity, opacity, opacity);
@@ -145,6 +145,48 @@ public class DrawableBitmap extends DrawableObject {
         }
     }
 
+    /**
+     * Adds the bitmap to a sprite batch as a textured quad rather than drawing it directly.  The
+     * quad covers the same pixels and texels as draw() would.  Bitmaps that are translucent, or
+     * whose texture size is unknown, can't be batched; for those this returns false.
+     */
+    @Override
+    public boolean drawBatched(SpriteBatch batch, float x, float y) {
+        final Texture texture = mTexture;
+        boolean handled = false;
+        if (texture != null && texture.loaded && texture.pageWidth > 0 
+                && texture.pageHeight > 0 && mOpacity >= 1.0f) {
+            final float snappedX = (int) x;
+            final float snappedY = (int) y;
+            final float width = mWidth;
+            final float height = mHeight;
+            final float viewWidth = mViewWidth;
+            boolean cull = false;
+            if (viewWidth > 0) {
+                if (snappedX + width < 0.0f 
+                        || snappedX > viewWidth 
+                        || snappedY + height < 0.0f
+                        || snappedY > mViewHeight) {
+                    cull = true;
+                }
+            }
+            if (!cull) {
+                // The crop rectangle is in texels, measured from the top of the bitmap, with
+                // negative sizes flipping the image; see setCrop().
+                final int[] crop = mCrop;
+                final float texelWidth = 1.0f / texture.pageWidth;
+                final float texelHeight = 1.0f / texture.pageHeight;
+                final int left = crop[0] + texture.offsetX;
+                final int bottom = crop[1] + texture.offsetY;
+                batch.add(texture, snappedX, snappedY, snappedX + width, snappedY + height, 
+                        left * texelWidth, bottom * texelHeight, 
+                        (left + crop[2]) * texelWidth, (bottom + crop[3]) * texelHeight);
+            }
+            handled = true;
+        }
+        return handled;
+    }
+
     /**
      * Ends the drawing and restores the OpenGL state.
      * 
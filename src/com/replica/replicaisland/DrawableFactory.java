@@ -23,7 +23,10 @@ package com.replica.replicaisland;
  * pools of objects so no actual allocations occur after bootstrap.
  */
 public class DrawableFactory extends BaseObject {
-    private final static int BITMAP_POOL_SIZE = 768;
+    // Bitmaps stay allocated until the queue that draws them is cleared, so every render queue
+    // needs its own share of the pool.
+    private final static int BITMAP_POOL_SIZE_PER_QUEUE = 384;
+    private final static int DEFAULT_QUEUE_COUNT = 2;
     
     private DrawableBitmapPool mBitmapPool;
     private ScrollableBitmapPool mScrollableBitmapPool;
@@ -31,8 +34,13 @@ public class DrawableFactory extends BaseObject {
     
     // This class wraps several object pools and provides a type-sensitive release function.
     public DrawableFactory() {
+        this(DEFAULT_QUEUE_COUNT);
+    }
+    
+    /** Sizes the pools for a render system with the given number of queues. */
+    public DrawableFactory(int queueCount) {
         super();
-        mBitmapPool = new DrawableBitmapPool(BITMAP_POOL_SIZE);
+        mBitmapPool = new DrawableBitmapPool(BITMAP_POOL_SIZE_PER_QUEUE * queueCount);
         mTiledBackgroundVertexGridPool = new TiledBackgroundVertexGridPool();
         mScrollableBitmapPool = new ScrollableBitmapPool();
     }
@@ -41,6 +49,18 @@ public class DrawableFactory extends BaseObject {
     public void reset() {
     }
 
+    public void dumpPoolStatistics(StringBuilder output) {
+        mBitmapPool.dumpStatistics(output);
+        mScrollableBitmapPool.dumpStatistics(output);
+        mTiledBackgroundVertexGridPool.dumpStatistics(output);
+    }
+    
+    public void resetPoolStatistics() {
+        mBitmapPool.resetStatistics();
+        mScrollableBitmapPool.resetStatistics();
+        mTiledBackgroundVertexGridPool.resetStatistics();
+    }
+
     public DrawableBitmap allocateDrawableBitmap() {
         return mBitmapPool.allocate();
     }
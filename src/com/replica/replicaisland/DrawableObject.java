@@ -53,6 +53,12 @@ public abstract class DrawableObject extends AllocationGuard {
         return null;
     }
     
+    // Override to allow drawables to be coalesced into a SpriteBatch rather than drawn with draw().
+    // Returns false if the drawable must be drawn with draw() instead.
+    public boolean drawBatched(SpriteBatch batch, float x, float y) {
+        return false;
+    }
+    
     // Function to allow drawables to specify culling rules.
     public boolean visibleAtPosition(Vector2 position) {
         return true;
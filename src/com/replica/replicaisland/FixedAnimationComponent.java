@@ -34,7 +34,7 @@ public class FixedAnimationComponent extends GameComponent {
     public void update(float timeDelta, BaseObject parent) {
         // We look up the sprite component each frame so that this component can be shared.
         GameObject parentObject = (GameObject)parent;
-        SpriteComponent sprite = parentObject.findByClass(SpriteComponent.class);
+        SpriteComponent sprite = parentObject.getComponent(SpriteComponent.TYPE);
         if (sprite != null) {
             sprite.playAnimation(mAnimationIndex);
         }
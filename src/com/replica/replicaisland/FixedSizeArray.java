@@ -35,6 +35,7 @@ public class FixedSizeArray<T> extends AllocationGuard {
     private int mCount;
     private Comparator<T> mComparator;
     private boolean mSorted;
+    private boolean mKeepSorted;
     private Sorter<T> mSorter;
     
     public FixedSizeArray(int size) {
@@ -61,17 +62,44 @@ public class FixedSizeArray<T> extends AllocationGuard {
     
     /** 
      * Inserts a new object into the array.  If the array is full, an assert is thrown and the
-     * object is ignored.
+     * object is ignored.  If the array is keeping itself sorted (see setKeepSorted()) the object
+     * is inserted after any objects that compare equal to it; otherwise it is appended.
      */
     public final void add(T object) {
         assert mCount < mContents.length : "Array exhausted!";
         if (mCount < mContents.length) {
-            mContents[mCount] = object;
-            mSorted = false;
+            if (mKeepSorted && mSorted) {
+                final int index = findInsertionIndex(object);
+                System.arraycopy(mContents, index, mContents, index + 1, mCount - index);
+                mContents[index] = object;
+            } else {
+                mContents[mCount] = object;
+                mSorted = false;
+            }
             mCount++;
         }
     }
     
+    /** 
+     * Returns the index after the last object in the (sorted) array that is less than or equal to
+     * the passed object.
+     */
+    private int findInsertionIndex(T object) {
+        final Comparator<T> comparator = mComparator;
+        final T[] contents = mContents;
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (comparator.compare(contents[middle], object) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
     /** 
      * Searches for an object and removes it from the array if it is found.  Other indexes in the
      * array are shifted up to fill the space left by the removed object.  Note that if
@@ -274,4 +302,23 @@ public class FixedSizeArray<T> extends AllocationGuard {
     public void setSorter(Sorter<T> sorter) {
         mSorter = sorter;
     }
+    
+    /**
+     * Puts the array into (or takes it out of) sorted container mode.  Once the array has been
+     * sorted with sort(), add() inserts each new object at its sorted position with a binary
+     * search rather than appending it, so the array stays sorted and sort(false) has no work to do.
+     * remove() preserves the order too.  After swapWithLast() the next add() appends and sort()
+     * must be called again.  Objects whose sort keys change while they are in the array (or that
+     * are replaced with set()) are not noticed; call sort(true) to put them back in place.  An
+     * adaptive sorter such as InsertionSorter makes that cheap when only a few objects have moved.
+     * Requires a comparator.
+     */
+    public void setKeepSorted(boolean keepSorted) {
+        assert !keepSorted || mComparator != null;
+        mKeepSorted = keepSorted && mComparator != null;
+    }
+    
+    public boolean isSorted() {
+        return mSorted;
+    }
 }
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+/**
+ * An opt-in profiler that measures how much time game object components take per frame.  When a
+ * FrameProfiler is present in the system registry, GameObject times each component update and
+ * reports it here, where it is accumulated both by component phase and by component class.  The
+ * profiler should be added to the game graph after everything it measures; its update() closes
+ * the frame, pushing the frame's totals into a rolling window from which percentiles are computed.
+ *
+ * All storage is allocated up front, so recording samples and querying percentiles allocate
+ * nothing.  Only dump(), which builds a String for the log, allocates.
+ */
+public class FrameProfiler extends BaseObject {
+    public static final int WINDOW_SIZE = 128;
+    public static final int MAX_CLASSES = 128;
+
+    private static final GameComponent.ComponentPhases[] sPhases =
+        GameComponent.ComponentPhases.values();
+    private static final int PHASE_COUNT = sPhases.length;
+    private static final int CLASS_TABLE_SIZE = MAX_CLASSES * 2;    // Must be a power of two.
+
+    // The current frame.
+    private final long[] mPhaseTime;
+    private final int[] mPhaseCalls;
+    private final long[] mClassTime;
+    private final int[] mClassCalls;
+
+    // Totals since the last reset.
+    private final long[] mPhaseTotalTime;
+    private final long[] mPhaseTotalCalls;
+    private final long[] mClassTotalTime;
+    private final long[] mClassTotalCalls;
+
+    // Per-frame times for the last WINDOW_SIZE frames, one row per bucket.
+    private final long[] mPhaseWindow;
+    private final long[] mClassWindow;
+    private final long[] mScratch;
+    private int mWindowIndex;
+    private int mWindowCount;
+    private int mFrameCount;
+
+    // An open-addressed table mapping component classes to dense bucket indices.
+    private final Class<?>[] mTableKeys;
+    private final int[] mTableValues;
+    private final Class<?>[] mClasses;
+    private int mClassCount;
+    private int mDroppedSamples;
+
+    private final StringBuilder mDumpBuffer;
+
+    public FrameProfiler() {
+        super();
+        mPhaseTime = new long[PHASE_COUNT];
+        mPhaseCalls = new int[PHASE_COUNT];
+        mClassTime = new long[MAX_CLASSES];
+        mClassCalls = new int[MAX_CLASSES];
+        mPhaseTotalTime = new long[PHASE_COUNT];
+        mPhaseTotalCalls = new long[PHASE_COUNT];
+        mClassTotalTime = new long[MAX_CLASSES];
+        mClassTotalCalls = new long[MAX_CLASSES];
+        mPhaseWindow = new long[PHASE_COUNT * WINDOW_SIZE];
+        mClassWindow = new long[MAX_CLASSES * WINDOW_SIZE];
+        mScratch = new long[WINDOW_SIZE];
+        mTableKeys = new Class<?>[CLASS_TABLE_SIZE];
+        mTableValues = new int[CLASS_TABLE_SIZE];
+        mClasses = new Class<?>[MAX_CLASSES];
+        mDumpBuffer = new StringBuilder(4096);
+    }
+
+    @Override
+    public void reset() {
+        for (int x = 0; x < PHASE_COUNT; x++) {
+            mPhaseTime[x] = 0;
+            mPhaseCalls[x] = 0;
+            mPhaseTotalTime[x] = 0;
+            mPhaseTotalCalls[x] = 0;
+        }
+        for (int x = 0; x < MAX_CLASSES; x++) {
+            mClassTime[x] = 0;
+            mClassCalls[x] = 0;
+            mClassTotalTime[x] = 0;
+            mClassTotalCalls[x] = 0;
+        }
+        // Class buckets are kept; only the samples are thrown away.
+        mWindowIndex = 0;
+        mWindowCount = 0;
+        mFrameCount = 0;
+        mDroppedSamples = 0;
+    }
+
+    /** Closes the current frame. */
+    @Override
+    public void update(float timeDelta, BaseObject parent) {
+        endFrame();
+    }
+
+    /** Records a single update of a component, taking the passed number of nanoseconds. */
+    public final void record(GameComponent component, long nanoseconds) {
+        final int phase = component.phase;
+        if (phase >= 0 && phase < PHASE_COUNT) {
+            mPhaseTime[phase] += nanoseconds;
+            mPhaseCalls[phase]++;
+        }
+        final int bucket = findClass(component.getClass());
+        if (bucket >= 0) {
+            mClassTime[bucket] += nanoseconds;
+            mClassCalls[bucket]++;
+        } else {
+            mDroppedSamples++;
+        }
+    }
+
+    /**
+     * Pushes the current frame's totals into the rolling window and starts a new frame.  This is
+     * normally called by update().
+     */
+    public void endFrame() {
+        final int index = mWindowIndex;
+        for (int x = 0; x < PHASE_COUNT; x++) {
+            mPhaseWindow[(x * WINDOW_SIZE) + index] = mPhaseTime[x];
+            mPhaseTotalTime[x] += mPhaseTime[x];
+            mPhaseTotalCalls[x] += mPhaseCalls[x];
+            mPhaseTime[x] = 0;
+            mPhaseCalls[x] = 0;
+        }
+        final int classCount = mClassCount;
+        for (int x = 0; x < classCount; x++) {
+            mClassWindow[(x * WINDOW_SIZE) + index] = mClassTime[x];
+            mClassTotalTime[x] += mClassTime[x];
+            mClassTotalCalls[x] += mClassCalls[x];
+            mClassTime[x] = 0;
+            mClassCalls[x] = 0;
+        }
+        mWindowIndex = (index + 1) % WINDOW_SIZE;
+        if (mWindowCount < WINDOW_SIZE) {
+            mWindowCount++;
+        }
+        mFrameCount++;
+    }
+
+    private final int findClass(Class<?> type) {
+        final int mask = CLASS_TABLE_SIZE - 1;
+        int slot = System.identityHashCode(type) & mask;
+        int result = -1;
+        for (int x = 0; x < CLASS_TABLE_SIZE; x++) {
+            final Class<?> key = mTableKeys[slot];
+            if (key == type) {
+                result = mTableValues[slot];
+                break;
+            } else if (key == null) {
+                if (mClassCount < MAX_CLASSES) {
+                    result = mClassCount;
+                    mTableKeys[slot] = type;
+                    mTableValues[slot] = result;
+                    mClasses[result] = type;
+                    mClassCount++;
+                    // A class appearing mid-window has no history; make sure its row is empty.
+                    final int start = result * WINDOW_SIZE;
+                    for (int y = 0; y < WINDOW_SIZE; y++) {
+                        mClassWindow[start + y] = 0;
+                    }
+                }
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return result;
+    }
+
+    /** Returns the number of frames closed since the last reset. */
+    public final int getFrameCount() {
+        return mFrameCount;
+    }
+
+    public final int getPhaseCount() {
+        return PHASE_COUNT;
+    }
+
+    public final long getPhaseTotalTime(int phase) {
+        return mPhaseTotalTime[phase];
+    }
+
+    public final long getPhaseTotalCalls(int phase) {
+        return mPhaseTotalCalls[phase];
+    }
+
+    /**
+     * Returns the per-frame time of a phase at the passed percentile (0 - 100) over the last
+     * WINDOW_SIZE frames, in nanoseconds.
+     */
+    public final long getPhasePercentile(int phase, float percentile) {
+        return getPercentile(mPhaseWindow, phase, percentile);
+    }
+
+    public final int getClassCount() {
+        return mClassCount;
+    }
+
+    public final Class<?> getComponentClass(int bucket) {
+        return mClasses[bucket];
+    }
+
+    public final long getClassTotalTime(int bucket) {
+        return mClassTotalTime[bucket];
+    }
+
+    public final long getClassTotalCalls(int bucket) {
+        return mClassTotalCalls[bucket];
+    }
+
+    /**
+     * Returns the per-frame time of a component class at the passed percentile (0 - 100) over
+     * the last WINDOW_SIZE frames, in nanoseconds.
+     */
+    public final long getClassPercentile(int bucket, float percentile) {
+        return getPercentile(mClassWindow, bucket, percentile);
+    }
+
+    /** Returns the number of samples not attributed to a class because the class table was full. */
+    public final int getDroppedSamples() {
+        return mDroppedSamples;
+    }
+
+    private final long getPercentile(long[] window, int row, float percentile) {
+        final int count = mWindowCount;
+        long result = 0;
+        if (count > 0) {
+            // Insertion sort the window into the scratch buffer; it is small, and this keeps the
+            // query allocation-free.
+            final long[] sorted = mScratch;
+            final int start = row * WINDOW_SIZE;
+            for (int x = 0; x < count; x++) {
+                final long value = window[start + x];
+                int y = x - 1;
+                while (y >= 0 && sorted[y] > value) {
+                    sorted[y + 1] = sorted[y];
+                    y--;
+                }
+                sorted[y + 1] = value;
+            }
+            int index = (int)Math.ceil((percentile / 100.0f) * count) - 1;
+            if (index < 0) {
+                index = 0;
+            } else if (index >= count) {
+                index = count - 1;
+            }
+            result = sorted[index];
+        }
+        return result;
+    }
+
+    /**
+     * Appends a report of the per-frame cost of each phase and each component class to the passed
+     * builder.  Times are in microseconds per frame; buckets that never ran are skipped.
+     */
+    public void dump(StringBuilder output) {
+        final int frames = Math.max(1, mFrameCount);
+        output.append("Frame profile over ").append(mFrameCount);
+        output.append(" frames (us/frame: mean p50 p95 p99, calls/frame)\n");
+        for (int x = 0; x < PHASE_COUNT; x++) {
+            if (mPhaseTotalCalls[x] > 0) {
+                output.append("  ").append(sPhases[x].name());
+                appendRow(output, mPhaseTotalTime[x], mPhaseTotalCalls[x], frames,
+                        getPhasePercentile(x, 50), getPhasePercentile(x, 95),
+                        getPhasePercentile(x, 99));
+            }
+        }
+        for (int x = 0; x < mClassCount; x++) {
+            if (mClassTotalCalls[x] > 0) {
+                output.append("  ").append(mClasses[x].getSimpleName());
+                appendRow(output, mClassTotalTime[x], mClassTotalCalls[x], frames,
+                        getClassPercentile(x, 50), getClassPercentile(x, 95),
+                        getClassPercentile(x, 99));
+            }
+        }
+        if (mDroppedSamples > 0) {
+            output.append("  (").append(mDroppedSamples).append(" samples from untracked classes)\n");
+        }
+    }
+
+    /** Returns the report produced by dump(StringBuilder).  Allocates; intended for logging. */
+    public String dump() {
+        mDumpBuffer.setLength(0);
+        dump(mDumpBuffer);
+        return mDumpBuffer.toString();
+    }
+
+    private static void appendRow(StringBuilder output, long totalTime, long totalCalls,
+            int frames, long p50, long p95, long p99) {
+        appendMicroseconds(output, totalTime / frames);
+        appendMicroseconds(output, p50);
+        appendMicroseconds(output, p95);
+        appendMicroseconds(output, p99);
+        output.append(' ').append(totalCalls / frames);
+        output.append('\n');
+    }
+
+    // Appends nanoseconds as microseconds with one decimal place, without going through floats.
+    private static void appendMicroseconds(StringBuilder output, long nanoseconds) {
+        output.append(' ').append(nanoseconds / 1000).append('.').append((nanoseconds / 100) % 10);
+    }
+}
@@ -16,6 +16,8 @@
 
 package com.replica.replicaisland;
 
+import java.io.FileNotFoundException;
+
 import android.content.Context;
 import android.os.Build;
 import android.view.KeyEvent;
@@ -29,6 +31,19 @@ import android.widget.Toast;
  * game thread from the main UI thread.
  */
 public class Game extends AllocationGuard {
+    // Runs of bitmaps sharing a texture are drawn as batched quads of up to this many sprites
+    // (see SpriteBatch).
+    private static final int SPRITE_BATCH_SIZE = 384;
+    // With a fixed timestep (see setFixedTimeStep()), the game is simulated in steps of this 
+    // many seconds, at most MAX_STEPS_PER_FRAME of them per frame.
+    private static final float FIXED_TIME_STEP = 1.0f / 60.0f;
+    private static final int MAX_STEPS_PER_FRAME = 5;
+    // With texture streaming (see setTextureStreaming()), textures are decoded by this many 
+    // background threads and uploaded this many per frame.
+    private static final int TEXTURE_STREAMING_WORKERS = 2;
+    private static final int TEXTURE_UPLOADS_PER_FRAME = 2;
+    private static final int TEXTURE_REPORT_SIZE = 10;
+    
     private GameThread mGameThread;
     private Thread mGame;
     private ObjectManager mGameRoot;
@@ -43,6 +58,7 @@ public class Game extends AllocationGuard {
     private boolean mGLDataLoaded;
     private ContextParameters mContextParameters;
     private TouchFilter mTouchFilter;
+    private boolean mTextureStreaming;
     
     public Game() {
         super();
@@ -94,8 +110,31 @@ public class Game extends AllocationGuard {
             TextureLibrary longTermTextureLibrary = new TextureLibrary();
             BaseObject.sSystemRegistry.longTermTextureLibrary = longTermTextureLibrary;
             
+            // Small drawables are packed into the atlas pages in res/raw (see TextureAtlas).
+            // Regenerate the pages with TextureAtlasBuilder whenever res/drawable changes.
+            TextureAtlas atlas = new TextureAtlas();
+            if (atlas.load(context, R.raw.atlas)) {
+                // The long-term library owns the pages of long-term art; both share them.
+                longTermTextureLibrary.setAtlas(atlas, longTermTextureLibrary);
+                shortTermTextureLibrary.setAtlas(atlas, longTermTextureLibrary);
+            }
+            
+            if (mTextureStreaming) {
+                // The long-term textures are few and are needed by the HUD right away.
+                TextureStreamer streamer = new TextureStreamer(TEXTURE_STREAMING_WORKERS, 
+                        TEXTURE_UPLOADS_PER_FRAME);
+                BaseObject.sSystemRegistry.textureStreamer = streamer;
+                shortTermTextureLibrary.setStreamer(streamer);
+            }
+            // Drawables converted by TextureConverter are loaded from their pre-encoded versions.
+            shortTermTextureLibrary.setCompressedTextures(true);
+            longTermTextureLibrary.setCompressedTextures(true);
+            
             // The buffer library manages hardware VBOs.
             BaseObject.sSystemRegistry.bufferLibrary = new BufferLibrary();
+            SpriteBatch spriteBatch = new SpriteBatch(SPRITE_BATCH_SIZE);
+            BaseObject.sSystemRegistry.bufferLibrary.setSpriteBatch(spriteBatch);
+            mRenderer.setSpriteBatch(spriteBatch);
     
             
             
@@ -129,6 +168,19 @@ public class Game extends AllocationGuard {
             GameObjectFactory objectFactory = new GameObjectFactory();
             BaseObject.sSystemRegistry.gameObjectFactory = objectFactory;
             
+            // Object static data is built from res/raw/archetypes.bin (see ArchetypeLibrary).
+            // Regenerate the file with ArchetypeCompiler whenever the spawn methods change.
+            ArchetypeLibrary archetypes = new ArchetypeLibrary();
+            if (archetypes.load(context, R.raw.archetypes)) {
+                objectFactory.setArchetypes(archetypes);
+            }
+            
+            // Pools grow when they run dry and are resized to fit between levels.
+            objectFactory.setGrowablePools(true);
+            
+            // Simple objects are spawned as the camera approaches them.
+            BaseObject.sSystemRegistry.spawnStreamer = new SpawnStreamer();
+            
             BaseObject.sSystemRegistry.hotSpotSystem = new HotSpotSystem();
             
             BaseObject.sSystemRegistry.levelBuilder = new LevelBuilder();
@@ -142,7 +194,7 @@ public class Game extends AllocationGuard {
             BaseObject.sSystemRegistry.cameraSystem = camera;
             BaseObject.sSystemRegistry.registerForReset(camera);
     
-            collision.loadCollisionTiles(context.getResources().openRawResource(R.raw.collision));
+            collision.loadCollisionTiles(context, R.raw.collision);
     
             gameRoot.add(gameManager);
     
@@ -151,6 +203,11 @@ public class Game extends AllocationGuard {
             
             gameRoot.add(camera);
 
+            // Particles are culled against the camera, so they update after it.
+            ParticleSystem particles = new ParticleSystem();
+            BaseObject.sSystemRegistry.particleSystem = particles;
+            BaseObject.sSystemRegistry.registerForReset(particles);
+            gameRoot.add(particles);
     
             // More basic systems.
             
@@ -159,10 +216,11 @@ public class Game extends AllocationGuard {
             BaseObject.sSystemRegistry.gameObjectCollisionSystem = dynamicCollision;
             
             
-            RenderSystem renderer = new RenderSystem();
+            RenderSystem renderer = new RenderSystem(true);
             BaseObject.sSystemRegistry.renderSystem = renderer;
             BaseObject.sSystemRegistry.vectorPool = new VectorPool();
-            BaseObject.sSystemRegistry.drawableFactory = new DrawableFactory();
+            BaseObject.sSystemRegistry.drawableFactory = 
+                    new DrawableFactory(renderer.getQueueCount());
           
             HudSystem hud = new HudSystem();
             hud.setFuelDrawable(
@@ -239,6 +297,10 @@ public class Game extends AllocationGuard {
             // debug systems
             //BaseObject.sSystemRegistry.debugSystem = new DebugSystem(longTermTextureLibrary);
             //dynamicCollision.setDebugPrefs(false, true);
+            //FrameProfiler profiler = new FrameProfiler();
+            //BaseObject.sSystemRegistry.frameProfiler = profiler;
+            //gameRoot.add(profiler);
+            //BaseObject.sSystemRegistry.inputRecorder = new InputRecorder();
             
             
             objectFactory.preloadEffects();
@@ -271,6 +333,8 @@ public class Game extends AllocationGuard {
         GameObjectFactory factory = BaseObject.sSystemRegistry.gameObjectFactory;
         factory.clearStaticData();
         factory.sanityCheckPools();
+        factory.resizePools();
+        factory.resetPoolStatistics();
         
         // Reset the level
         BaseObject.sSystemRegistry.levelSystem.reset();
@@ -282,6 +346,8 @@ public class Game extends AllocationGuard {
         BaseObject.sSystemRegistry.reset();
         
         // Dump the short-term texture objects only.
+        DebugLog.d("Texture Memory", BaseObject.sSystemRegistry.shortTermTextureLibrary
+                .getMemoryReport("Short-term textures", TEXTURE_REPORT_SIZE));
         mSurfaceView.flushTextures(BaseObject.sSystemRegistry.shortTermTextureLibrary);
         BaseObject.sSystemRegistry.shortTermTextureLibrary.removeAll(); 
         mSurfaceView.flushBuffers(BaseObject.sSystemRegistry.bufferLibrary);
@@ -341,6 +407,19 @@ public class Game extends AllocationGuard {
         TimeSystem time = BaseObject.sSystemRegistry.timeSystem;
         time.reset();
         
+        InputRecorder recorder = BaseObject.sSystemRegistry.inputRecorder;
+        if (recorder != null) {
+        	// Name the log after the level file so that it can be played back by SimulationRunner.
+        	final String logName = "input_" 
+        		+ context.getResources().getResourceEntryName(level.resource) + ".bin";
+        	try {
+        		recorder.start(context.openFileOutput(logName, Context.MODE_PRIVATE), 
+        				System.currentTimeMillis());
+        	} catch (FileNotFoundException e) {
+        		DebugLog.e("AndouKun", "Unable to record input", e);
+        	}
+        }
+        
         HudSystem hud = BaseObject.sSystemRegistry.hudSystem;
         if (hud != null) {
             hud.startFade(true, 1.0f);
@@ -395,6 +474,10 @@ public class Game extends AllocationGuard {
             }
             mGame = null;
             mRunning = false;
+            InputRecorder recorder = BaseObject.sSystemRegistry.inputRecorder;
+            if (recorder != null) {
+            	recorder.stop();
+            }
             mCurrentLevel = null;
             AllocationGuard.sGuardActive = false;
         }
@@ -531,6 +614,35 @@ public class Game extends AllocationGuard {
 		mSurfaceView.setSafeMode(safe);
 	}
 	
+	/** 
+	 * Simulates the game in fixed steps and draws it interpolated between them, rather than 
+	 * updating it once per frame with however much time has passed (see GameThread).
+	 */
+	public void setFixedTimeStep(boolean fixed) {
+		mGameThread.setFixedTimeStep(fixed ? FIXED_TIME_STEP : 0.0f, MAX_STEPS_PER_FRAME);
+	}
+	
+	/** 
+	 * Decodes the textures of each level in the background and uploads them a few per frame 
+	 * (see TextureStreamer), rather than loading them all before the level starts.  Objects 
+	 * whose textures haven't arrived yet are drawn with a placeholder.  Must be called before 
+	 * bootstrap().
+	 */
+	public void setTextureStreaming(boolean streaming) {
+		assert !mBootstrapComplete;
+		mTextureStreaming = streaming;
+	}
+	
+	/** 
+	 * Limits the texture memory (in kilobytes) the two texture libraries may use before 
+	 * short-term textures that haven't been drawn recently are unloaded; 0 means no limit.  
+	 * Unloaded textures are reloaded when they are next drawn.
+	 */
+	public void setTextureBudget(int kilobytes) {
+		BaseObject.sSystemRegistry.shortTermTextureLibrary.setBudget(kilobytes * 1024, 
+				BaseObject.sSystemRegistry.longTermTextureLibrary);
+	}
+	
 	public float getGameTime() {
 		return BaseObject.sSystemRegistry.timeSystem.getGameTime();
 	}
@@ -40,9 +40,17 @@ public abstract class GameComponent extends PhasedObject {
     
     public boolean shared;
     
+    private final int mTypeId;
+    
     public GameComponent() {
         super();
         shared = false;
+        mTypeId = ComponentType.getId(getClass());
+    }
+    
+    /** Returns the id of this component's class; see ComponentType. */
+    public final int getTypeId() {
+        return mTypeId;
     }
     
 }
@@ -31,6 +31,11 @@ public class GameComponentPool extends TObjectPool<GameComponent> {
         fill();
     }
     
+    @Override
+    protected String getName() {
+        return objectClass != null ? objectClass.getSimpleName() : super.getName();
+    }
+    
     @Override
     protected void fill() {
         if (objectClass != null) {
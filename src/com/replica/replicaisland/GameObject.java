@@ -53,8 +53,15 @@ public class GameObject extends PhasedObjectManager {
     public float width;
     public float height;
     
+    // The SpawnStreamer record this object was spawned from, or -1.
+    public int streamedSpawn;
+    
     private static final int DEFAULT_LIFE = 1;
     
+    // Must be a power of two.  Objects with more distinct component types than this fall back
+    // to searching their components.
+    private static final int COMPONENT_INDEX_SIZE = 32;
+    
     public enum ActionType {
         INVALID,
         IDLE,
@@ -76,8 +83,19 @@ public class GameObject extends PhasedObjectManager {
     
     public Team team;
     
+    // Maps component type ids (plus one, so that zero marks an empty slot) to the first
+    // component of that type, using open addressing.  Rebuilt by commitUpdates() after the
+    // component list changes.
+    private int[] mComponentIndexKeys;
+    private GameComponent[] mComponentIndexValues;
+    private boolean mComponentIndexDirty;
+    private boolean mComponentIndexOverflow;
+    
     public GameObject() {
         super();
+        
+        mComponentIndexKeys = new int[COMPONENT_INDEX_SIZE];
+        mComponentIndexValues = new GameComponent[COMPONENT_INDEX_SIZE];
 
         mPosition = new Vector2();
         mVelocity = new Vector2();
@@ -112,10 +130,127 @@ public class GameObject extends PhasedObjectManager {
         team = Team.NONE;
         width = 0.0f;
         height = 0.0f;
+        streamedSpawn = -1;
         
         lastReceivedHitType = HitType.INVALID;
     }
     
+    @Override
+    public void update(float timeDelta, BaseObject parent) {
+        final FrameProfiler profiler = sSystemRegistry.frameProfiler;
+        if (profiler == null) {
+            super.update(timeDelta, parent);
+        } else {
+            // Same as ObjectManager.update(), but each component is timed.
+            commitUpdates();
+            final FixedSizeArray<BaseObject> components = getObjects();
+            final int count = components.getCount();
+            final Object[] componentArray = components.getArray();
+            for (int i = 0; i < count; i++) {
+                GameComponent component = (GameComponent)componentArray[i];
+                final long start = System.nanoTime();
+                component.update(timeDelta, this);
+                profiler.record(component, System.nanoTime() - start);
+            }
+        }
+    }
+    
+    @Override
+    public void add(BaseObject object) {
+        super.add(object);
+        mComponentIndexDirty = true;
+    }
+    
+    @Override
+    public void remove(BaseObject object) {
+        super.remove(object);
+        mComponentIndexDirty = true;
+    }
+    
+    @Override
+    public void removeAll() {
+        super.removeAll();
+        mComponentIndexDirty = true;
+    }
+    
+    @Override
+    public void commitUpdates() {
+        super.commitUpdates();
+        if (mComponentIndexDirty) {
+            rebuildComponentIndex();
+        }
+    }
+    
+    /** 
+     * Returns the first component of the given type, or null if this object has none.  Like
+     * findByClass(), only components that have been committed are considered, and subclasses
+     * don't match.  Doesn't allocate.
+     */
+    @SuppressWarnings("unchecked")
+    public final <T extends GameComponent> T getComponent(ComponentType<T> type) {
+        GameComponent result = null;
+        if (!mComponentIndexOverflow) {
+            final int key = type.id + 1;
+            final int mask = COMPONENT_INDEX_SIZE - 1;
+            final int[] keys = mComponentIndexKeys;
+            int slot = type.id & mask;
+            for (int x = 0; x < COMPONENT_INDEX_SIZE; x++) {
+                final int current = keys[slot];
+                if (current == key) {
+                    result = mComponentIndexValues[slot];
+                    break;
+                } else if (current == 0) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+        } else {
+            result = findByClass(type.componentClass);
+        }
+        return (T)result;
+    }
+    
+    private void rebuildComponentIndex() {
+        final int[] keys = mComponentIndexKeys;
+        final GameComponent[] values = mComponentIndexValues;
+        for (int x = 0; x < COMPONENT_INDEX_SIZE; x++) {
+            keys[x] = 0;
+            values[x] = null;
+        }
+        mComponentIndexOverflow = false;
+        
+        final int mask = COMPONENT_INDEX_SIZE - 1;
+        final FixedSizeArray<BaseObject> components = getObjects();
+        final int count = components.getCount();
+        final Object[] componentArray = components.getArray();
+        for (int i = 0; i < count && !mComponentIndexOverflow; i++) {
+            final GameComponent component = (GameComponent)componentArray[i];
+            final int typeId = component.getTypeId();
+            final int key = typeId + 1;
+            int slot = typeId & mask;
+            boolean placed = false;
+            for (int x = 0; x < COMPONENT_INDEX_SIZE; x++) {
+                final int current = keys[slot];
+                if (current == key) {
+                    // Components are in update order; the first of each type wins, as it
+                    // does for findByClass().
+                    placed = true;
+                    break;
+                } else if (current == 0) {
+                    keys[slot] = key;
+                    values[slot] = component;
+                    placed = true;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (!placed) {
+                mComponentIndexOverflow = true;
+            }
+        }
+        mComponentIndexDirty = false;
+    }
+    
     // Utility functions
     public final boolean touchingGround() {
         final TimeSystem time = sSystemRegistry.timeSystem;
@@ -24,23 +24,22 @@ import com.replica.replicaisland.CollisionParameters.HitType;
  * A system for calculating collisions between moving game objects.  This system accepts collision
  * volumes from game objects each frame and performs a series of tests to see which of them
  * overlap.  Collisions are only considered between offending "attack" volumes and receiving
- * "vulnerability" volumes.  This implementation works by using a sweep-and-prune algorithm:
- * objects to be considered are sorted in the x axis and then compared in one dimension for
- * overlaps.  A bounding volume that encompasses all attack and vulnerability volumes is used for
- * this test, and when an intersection is found the actual offending and receiving volumes are 
- * compared.  If an intersection is detected both objects receive notification via a
- * HitReactionComponent, if one has been specified.
+ * "vulnerability" volumes.  Finding the pairs of objects that might be colliding is delegated to a
+ * CollisionBroadphase: by default a uniform grid keyed on the level's tile size, or optionally the
+ * original sweep-and-prune algorithm, in which objects are sorted in the x axis and then compared
+ * in one dimension for overlaps.  A bounding volume that encompasses all attack and vulnerability
+ * volumes is used to cull candidate pairs, and when an intersection is found the actual offending
+ * and receiving volumes are compared.  If an intersection is detected both objects receive
+ * notification via a HitReactionComponent, if one has been specified.
  */
 public class GameObjectCollisionSystem extends BaseObject {
     private static final int MAX_COLLIDING_OBJECTS = 256;
     private static final int COLLISION_RECORD_POOL_SIZE = 256;
-    private static final CollisionVolumeComparator sCollisionVolumeComparator 
-        = new CollisionVolumeComparator();
-    private static CollisionVolume.FlipInfo sFlip = new CollisionVolume.FlipInfo();
-    private static CollisionVolume.FlipInfo sOtherFlip = new CollisionVolume.FlipInfo();
 
     FixedSizeArray<CollisionVolumeRecord> mObjects;
     CollisionVolumeRecordPool mRecordPool;
+    private CollisionBroadphase mBroadphase;
+    private CollisionPairTester mPairTester;
 	private boolean mDrawDebugBoundingVolume = false;
 	private boolean mDrawDebugCollisionVolumes = false;
     
@@ -48,9 +47,9 @@ public class GameObjectCollisionSystem extends BaseObject {
     public GameObjectCollisionSystem() {
         super();
         mObjects = new FixedSizeArray<CollisionVolumeRecord>(MAX_COLLIDING_OBJECTS);
-        mObjects.setComparator(sCollisionVolumeComparator);
-        //mObjects.setSorter(new ShellSorter<CollisionVolumeRecord>());
         mRecordPool = new CollisionVolumeRecordPool(COLLISION_RECORD_POOL_SIZE);
+        mBroadphase = new UniformGridBroadphase(MAX_COLLIDING_OBJECTS);
+        mPairTester = new CollisionPairTester();
     }
     
     @Override
@@ -66,6 +65,14 @@ public class GameObjectCollisionSystem extends BaseObject {
         mDrawDebugCollisionVolumes = false;
     }
     
+    public void dumpPoolStatistics(StringBuilder output) {
+        mRecordPool.dumpStatistics(output);
+    }
+    
+    public void resetPoolStatistics() {
+        mRecordPool.resetStatistics();
+    }
+    
     /** 
      * Adds a game object, and its related volumes, to the dynamic collision world for one frame.
      * Once registered for collisions the object may damage other objects via attack volumes or
@@ -98,92 +105,97 @@ public class GameObjectCollisionSystem extends BaseObject {
     
     @Override
     public void update(float timeDelta, BaseObject parent) {
-        // Sort the objects by their x position.
-        mObjects.sort(true);
-        
         final int count = mObjects.getCount();
         for (int x = 0; x < count; x++) {
             final CollisionVolumeRecord record = mObjects.get(x);
-            final Vector2 position = record.object.getPosition();
-            sFlip.flipX = (record.object.facingDirection.x < 0.0f);
-            sFlip.flipY = (record.object.facingDirection.y < 0.0f);
-            sFlip.parentWidth = record.object.width;
-            sFlip.parentHeight = record.object.height;
+            record.calculateBounds();
             
             if (sSystemRegistry.debugSystem != null) {
             	drawDebugVolumes(record);
             }
-            
-            final float maxX = record.boundingVolume.getMaxXPosition(sFlip) + position.x;
-            for (int y = x + 1; y < count; y++) {
-                final CollisionVolumeRecord other = mObjects.get(y);
-                final Vector2 otherPosition = other.object.getPosition();
-                sOtherFlip.flipX = (other.object.facingDirection.x < 0.0f);
-                sOtherFlip.flipY = (other.object.facingDirection.y < 0.0f);
-                sOtherFlip.parentWidth = other.object.width;
-                sOtherFlip.parentHeight = other.object.height;
+        }
+        
+        mBroadphase.findPairs(mObjects, mPairTester);
+        
+        for (int x = 0; x < count; x++) {
+            mRecordPool.release(mObjects.get(x));
+        }
+        
+        mObjects.clear();
+    }
+    
+    /**
+     * Selects the algorithm used to find potentially colliding pairs.  Useful for comparing
+     * broadphase implementations on a particular level.
+     */
+    public void setBroadphase(CollisionBroadphase broadphase) {
+        mBroadphase = broadphase;
+    }
+    
+    public CollisionBroadphase getBroadphase() {
+        return mBroadphase;
+    }
+    
+    /** Returns the number of candidate pairs that the broadphase found last frame. */
+    public int getCandidatePairCount() {
+        return mBroadphase.getPairCount();
+    }
+    
+    /** 
+     * Runs the narrow phase on a candidate pair: the bounding volumes are tested first, and if
+     * they intersect all attack volumes are tested against all vulnerability volumes in both
+     * directions.
+     */
+    private void testPair(CollisionVolumeRecord record, CollisionVolumeRecord other) {
+        final Vector2 position = record.object.getPosition();
+        final Vector2 otherPosition = other.object.getPosition();
+        final CollisionVolume.FlipInfo flip = record.flip;
+        final CollisionVolume.FlipInfo otherFlip = other.flip;
+        
+        if (record.boundingVolume.intersects(position, flip,
+                other.boundingVolume, otherPosition, otherFlip)) {
+            // These two objects are potentially colliding.
+            // Now we must test all attack vs vulnerability boxes.
+            final int hit = testAttackAgainstVulnerability(
+                    record.attackVolumes,
+                    other.vulnerabilityVolumes, 
+                    position,
+                    otherPosition,
+                    flip,
+                    otherFlip);
+            if (hit != HitType.INVALID) {
+                boolean hitAccepted = false;
+                if (other.reactionComponent != null) {
+                    hitAccepted = other.reactionComponent.receivedHit(
+                            other.object, record.object, hit);
+                }
+                if (record.reactionComponent != null) {
+                    record.reactionComponent.hitVictim(
+                            record.object, other.object, hit, hitAccepted);
+                }
                 
-                if (otherPosition.x + other.boundingVolume.getMinXPosition(sOtherFlip) > maxX) {
-                    // These objects can't possibly be colliding.  And since the list is sorted,
-                    // there are no potentially colliding objects after this object
-                    // either, so we're done!
-                    break;
-                } else {
-                	final boolean testRequired = (record.attackVolumes != null && other.vulnerabilityVolumes != null) ||
-                		(record.vulnerabilityVolumes != null && other.attackVolumes != null);
-                    if (testRequired && record.boundingVolume.intersects(position, sFlip,
-                        other.boundingVolume, otherPosition, sOtherFlip)) {
-                        // These two objects are potentially colliding.
-                        // Now we must test all attack vs vulnerability boxes.
-                        final int hit = testAttackAgainstVulnerability(
-                                record.attackVolumes,
-                                other.vulnerabilityVolumes, 
-                                position,
-                                otherPosition,
-                                sFlip,
-                                sOtherFlip);
-                        if (hit != HitType.INVALID) {
-                            boolean hitAccepted = false;
-                            if (other.reactionComponent != null) {
-                                hitAccepted = other.reactionComponent.receivedHit(
-                                        other.object, record.object, hit);
-                            }
-                            if (record.reactionComponent != null) {
-                                record.reactionComponent.hitVictim(
-                                        record.object, other.object, hit, hitAccepted);
-                            }
-                            
-                        }
-                        
-                        final int hit2 = testAttackAgainstVulnerability(
-                                other.attackVolumes,
-                                record.vulnerabilityVolumes, 
-                                otherPosition, 
-                                position,
-                                sOtherFlip,
-                                sFlip);
-                        if (hit2 != HitType.INVALID) {
-                            boolean hitAccepted = false;
-                            if (record.reactionComponent != null) {
-                                hitAccepted = record.reactionComponent.receivedHit(
-                                        record.object, other.object, hit2);
-                            }
-                            if (other.reactionComponent != null) {
-                                other.reactionComponent.hitVictim(
-                                        other.object, record.object, hit2, hitAccepted);
-                            }
-                            
-                        }
-                    }
+            }
+            
+            final int hit2 = testAttackAgainstVulnerability(
+                    other.attackVolumes,
+                    record.vulnerabilityVolumes, 
+                    otherPosition, 
+                    position,
+                    otherFlip,
+                    flip);
+            if (hit2 != HitType.INVALID) {
+                boolean hitAccepted = false;
+                if (record.reactionComponent != null) {
+                    hitAccepted = record.reactionComponent.receivedHit(
+                            record.object, other.object, hit2);
                 }
+                if (other.reactionComponent != null) {
+                    other.reactionComponent.hitVictim(
+                            other.object, record.object, hit2, hitAccepted);
+                }
+                
             }
-            // This is a little tricky.  Since we always sweep forward in the list it's safe
-            // to invalidate the current record after we've tested it.  This way we don't have to
-            // iterate over the object list twice.
-            mRecordPool.release(record);
         }
-        
-        mObjects.clear();
     }
     
     /** Compares the passed list of attack volumes against the passed list of vulnerability volumes
@@ -231,10 +243,11 @@ public class GameObjectCollisionSystem extends BaseObject {
     
     private final void drawDebugVolumes(CollisionVolumeRecord record) {
     	final Vector2 position = record.object.getPosition();
+    	final CollisionVolume.FlipInfo flip = record.flip;
     	if (mDrawDebugBoundingVolume) {
 	    	final CollisionVolume boundingVolume = record.boundingVolume;
 	    	sSystemRegistry.debugSystem.drawShape(
-	    			position.x + boundingVolume.getMinXPosition(sFlip), position.y + boundingVolume.getMinYPosition(sFlip), 
+	    			position.x + boundingVolume.getMinXPosition(flip), position.y + boundingVolume.getMinYPosition(flip), 
 	    			boundingVolume.getMaxX() - boundingVolume.getMinX(), 
 	    			boundingVolume.getMaxY() - boundingVolume.getMinY(), 
 	    			DebugSystem.SHAPE_CIRCLE,
@@ -246,7 +259,7 @@ public class GameObjectCollisionSystem extends BaseObject {
 	    		for (int y = 0; y < attackVolumeCount; y++) {
 	    			CollisionVolume volume = record.attackVolumes.get(y);
 	    			sSystemRegistry.debugSystem.drawShape(
-	    					position.x + volume.getMinXPosition(sFlip), position.y + volume.getMinYPosition(sFlip), 
+	    					position.x + volume.getMinXPosition(flip), position.y + volume.getMinYPosition(flip), 
 	    					volume.getMaxX() - volume.getMinX(), 
 	    					volume.getMaxY() - volume.getMinY(), 
 	    	    			volume.getClass() == AABoxCollisionVolume.class ? DebugSystem.SHAPE_BOX : DebugSystem.SHAPE_CIRCLE,
@@ -259,7 +272,7 @@ public class GameObjectCollisionSystem extends BaseObject {
 	    		for (int y = 0; y < vulnVolumeCount; y++) {
 	    			CollisionVolume volume = record.vulnerabilityVolumes.get(y);
 	    			sSystemRegistry.debugSystem.drawShape(
-	    					position.x + volume.getMinXPosition(sFlip), position.y + volume.getMinYPosition(sFlip), 
+	    					position.x + volume.getMinXPosition(flip), position.y + volume.getMinYPosition(flip), 
 	    					volume.getMaxX() - volume.getMinX(), 
 	    					volume.getMaxY() - volume.getMinY(), 
 	    	    			volume.getClass() == AABoxCollisionVolume.class ? DebugSystem.SHAPE_BOX : DebugSystem.SHAPE_CIRCLE,
@@ -274,20 +287,113 @@ public class GameObjectCollisionSystem extends BaseObject {
 		mDrawDebugCollisionVolumes = drawCollisionVolumes;
 	}
     
-    /** A record of a single game object and its associated collision info.  */
-    private class CollisionVolumeRecord extends AllocationGuard {
+    /** 
+     * A record of a single game object and its associated collision info.  The world-space bounds
+     * are calculated once per frame, before the broadphase runs, so that neither the broadphase
+     * nor the narrow phase has to recalculate them for every pair.
+     */
+    static class CollisionVolumeRecord extends AllocationGuard {
         public GameObject object;
         public HitReactionComponent reactionComponent;
         public CollisionVolume boundingVolume;
         public FixedSizeArray<CollisionVolume> attackVolumes;
         public FixedSizeArray<CollisionVolume> vulnerabilityVolumes;
         
+        public final CollisionVolume.FlipInfo flip = new CollisionVolume.FlipInfo();
+        
+        // World-space extents of the bounding volume.
+        public float minX;
+        public float maxX;
+        public float minY;
+        public float maxY;
+        
+        // World-space extents of the union of all attack volumes that can deal a hit.
+        public boolean hasAttackBounds;
+        public float attackMinX;
+        public float attackMaxX;
+        public float attackMinY;
+        public float attackMaxY;
+        
+        // World-space extents of the union of all vulnerability volumes.
+        public boolean hasVulnerabilityBounds;
+        public float vulnerabilityMinX;
+        public float vulnerabilityMaxX;
+        public float vulnerabilityMinY;
+        public float vulnerabilityMaxY;
+        
         public void reset() {
             object = null;
             attackVolumes = null;
             vulnerabilityVolumes = null;
             boundingVolume = null;
             reactionComponent = null;
+            hasAttackBounds = false;
+            hasVulnerabilityBounds = false;
+        }
+        
+        public void calculateBounds() {
+            final Vector2 position = object.getPosition();
+            final float x = position.x;
+            final float y = position.y;
+            flip.flipX = (object.facingDirection.x < 0.0f);
+            flip.flipY = (object.facingDirection.y < 0.0f);
+            flip.parentWidth = object.width;
+            flip.parentHeight = object.height;
+            
+            minX = x + boundingVolume.getMinXPosition(flip);
+            maxX = x + boundingVolume.getMaxXPosition(flip);
+            minY = y + boundingVolume.getMinYPosition(flip);
+            maxY = y + boundingVolume.getMaxYPosition(flip);
+            
+            hasAttackBounds = false;
+            if (attackVolumes != null) {
+                final int count = attackVolumes.getCount();
+                for (int i = 0; i < count; i++) {
+                    final CollisionVolume volume = attackVolumes.get(i);
+                    if (volume.getHitType() != HitType.INVALID) {
+                        final float left = x + volume.getMinXPosition(flip);
+                        final float right = x + volume.getMaxXPosition(flip);
+                        final float bottom = y + volume.getMinYPosition(flip);
+                        final float top = y + volume.getMaxYPosition(flip);
+                        if (!hasAttackBounds) {
+                            attackMinX = left;
+                            attackMaxX = right;
+                            attackMinY = bottom;
+                            attackMaxY = top;
+                            hasAttackBounds = true;
+                        } else {
+                            attackMinX = Math.min(attackMinX, left);
+                            attackMaxX = Math.max(attackMaxX, right);
+                            attackMinY = Math.min(attackMinY, bottom);
+                            attackMaxY = Math.max(attackMaxY, top);
+                        }
+                    }
+                }
+            }
+            
+            hasVulnerabilityBounds = false;
+            if (vulnerabilityVolumes != null) {
+                final int count = vulnerabilityVolumes.getCount();
+                for (int i = 0; i < count; i++) {
+                    final CollisionVolume volume = vulnerabilityVolumes.get(i);
+                    final float left = x + volume.getMinXPosition(flip);
+                    final float right = x + volume.getMaxXPosition(flip);
+                    final float bottom = y + volume.getMinYPosition(flip);
+                    final float top = y + volume.getMaxYPosition(flip);
+                    if (!hasVulnerabilityBounds) {
+                        vulnerabilityMinX = left;
+                        vulnerabilityMaxX = right;
+                        vulnerabilityMinY = bottom;
+                        vulnerabilityMaxY = top;
+                        hasVulnerabilityBounds = true;
+                    } else {
+                        vulnerabilityMinX = Math.min(vulnerabilityMinX, left);
+                        vulnerabilityMaxX = Math.max(vulnerabilityMaxX, right);
+                        vulnerabilityMinY = Math.min(vulnerabilityMinY, bottom);
+                        vulnerabilityMaxY = Math.max(vulnerabilityMaxY, top);
+                    }
+                }
+            }
         }
     }
     
@@ -313,11 +419,19 @@ public class GameObjectCollisionSystem extends BaseObject {
 
     }
     
+    /** Feeds the candidate pairs found by the broadphase into the narrow phase. */
+    private class CollisionPairTester extends CollisionBroadphase.PairVisitor {
+        @Override
+        public void visit(CollisionVolumeRecord record, CollisionVolumeRecord other) {
+            testPair(record, other);
+        }
+    }
+    
     /** 
      * Comparator for game objects that considers the world position of the object's bounding
-     * volume and sorts objects from left to right on the x axis. */
+     * volume and sorts objects from left to right on the x axis.  Assumes that the bounds of each
+     * record have already been calculated for this frame. */
     public final static class CollisionVolumeComparator implements Comparator<CollisionVolumeRecord> {
-        private static CollisionVolume.FlipInfo sCompareFlip = new CollisionVolume.FlipInfo();
         public int compare(CollisionVolumeRecord object1, CollisionVolumeRecord object2) {
             int result = 0;
             if (object1 == null && object2 != null) {
@@ -325,23 +439,7 @@ public class GameObjectCollisionSystem extends BaseObject {
             } else if (object1 != null && object2 == null) {
                 result = -1;
             } else if (object1 != null && object2 != null) {
-                sCompareFlip.flipX = (object1.object.facingDirection.x < 0.0f);
-                sCompareFlip.flipY = (object1.object.facingDirection.y < 0.0f);
-                sCompareFlip.parentWidth = object1.object.width;
-                sCompareFlip.parentHeight = object1.object.height;
-                
-                final float minX1 = object1.object.getPosition().x 
-                    + object1.boundingVolume.getMinXPosition(sCompareFlip);
-                
-                sCompareFlip.flipX = (object2.object.facingDirection.x < 0.0f);
-                sCompareFlip.flipY = (object2.object.facingDirection.y < 0.0f);
-                sCompareFlip.parentWidth = object2.object.width;
-                sCompareFlip.parentHeight = object2.object.height;
-                
-                final float minX2 = object2.object.getPosition().x 
-                    + object2.boundingVolume.getMinXPosition(sCompareFlip);
-                
-                final float delta = minX1 - minX2;
+                final float delta = object1.minX - object2.minX;
                 if (delta < 0.0f) {
                     result = -1;
                 } else if (delta > 0.0f) {
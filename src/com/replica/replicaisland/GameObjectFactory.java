@@ -38,12 +38,28 @@ public class GameObjectFactory extends BaseObject {
     private FixedSizeArray<GameComponentPool> mComponentPools;
     private GameComponentPool mPoolSearchDummy;
     private GameObjectPool mGameObjectPool;
+    private ArchetypeLibrary mArchetypes;
+    private GameObjectType[] mTypes;
+    private boolean[] mPrewarmQueued;
+    private int[] mPrewarmQueue;
+    private int mPrewarmQueueCount;
+    private boolean mPrewarming;
+    private boolean mStreaming;
+    // Built on first use; see getParticleEffect().
+    private ParticleEffect mDustEffect;
+    private ParticleEffect[] mSmokeBigEffects;
+    private ParticleEffect mSmokeSmallEffect;
+    private ParticleEffect mGemEffect;
+    private Vector2 mParticleVelocity;
     
     private float mTightActivationRadius;
     private float mNormalActivationRadius;
     private float mWideActivationRadius;
     private float mAlwaysActive;
     
+    // How long (in 24fps frames) each variety of big smoke holds its first frame.
+    private final static int[] SMOKE_BIG_VARIANTS = { 10, 13, 8, 5, 15 };
+    
     private final static String sRedButtonChannel = "RED BUTTON";
     private final static String sBlueButtonChannel = "BLUE BUTTON";
     private final static String sGreenButtonChannel = "GREEN BUTTON";
@@ -189,6 +205,12 @@ public class GameObjectFactory extends BaseObject {
             mStaticData.add(null);
         }
         
+        mTypes = GameObjectType.values();
+        mPrewarmQueued = new boolean[objectTypeCount];
+        mPrewarmQueue = new int[objectTypeCount];
+        mSmokeBigEffects = new ParticleEffect[SMOKE_BIG_VARIANTS.length];
+        mParticleVelocity = new Vector2();
+        
         final ContextParameters context = sSystemRegistry.contextParameters;
         final float halfHeight2 = (context.gameHeight * 0.5f) * (context.gameHeight * 0.5f);
         final float halfWidth2 = (context.gameWidth * 0.5f) * (context.gameWidth * 0.5f);
@@ -575,42 +597,379 @@ public class GameObjectFactory extends BaseObject {
         // Walk the world and spawn objects based on tile indexes.
         final float worldHeight = world.getHeight() * tileHeight;
         GameObjectManager manager = sSystemRegistry.gameObjectManager;
+        SpawnStreamer streamer = sSystemRegistry.spawnStreamer;
         if (manager != null) {
+            if (streamer != null) {
+                // Streamable objects are spawned as the camera approaches them.
+                streamer.load(world, tileWidth, tileHeight);
+            }
             for (int y = 0; y < world.getHeight(); y++) {
                 for (int x = 0; x < world.getWidth(); x++) {
                     int index = world.getTile(x, y);
                     if (index != -1) {
                         GameObjectType type = GameObjectType.indexToType(index);
-                        if (type != GameObjectType.INVALID) {
-                            final float worldX = x * tileWidth;
-                            final float worldY = worldHeight - ((y + 1) * tileHeight);
-                            GameObject object = spawn(type, worldX, worldY, false);
-                            if (object != null) {
-                                if (object.height < tileHeight) {
-                                    // make sure small objects are vertically centered in their
-                                    // tile.
-                                    object.getPosition().y += (tileHeight - object.height) / 2.0f;
-                                }
-                                if (object.width < tileWidth) {
-                                    object.getPosition().x += (tileWidth - object.width) / 2.0f;
-                                } else if (object.width > tileWidth) {
-                                    object.getPosition().x -= (object.width - tileWidth) / 2.0f;
-                                }
-                                manager.add(object);
-                                if (type == GameObjectType.PLAYER) {
-                                    manager.setPlayer(object);
-                                }
-                            }
+                        if (type != GameObjectType.INVALID 
+                                && (streamer == null || !isStreamable(type))) {
+                            spawnFromTile(type, x, y, tileWidth, tileHeight, worldHeight);
                         }
                     }
                 }
             }
         }
     }
+	
+	/** 
+	 * Spawns an object placed in the spawn layer of a level and adds it to the game object
+	 * manager.
+	 */
+	public GameObject spawnFromTile(GameObjectType type, int tileX, int tileY, int tileWidth, 
+	        int tileHeight, float worldHeight) {
+	    GameObjectManager manager = sSystemRegistry.gameObjectManager;
+	    final float worldX = tileX * tileWidth;
+	    final float worldY = worldHeight - ((tileY + 1) * tileHeight);
+	    GameObject object = spawn(type, worldX, worldY, false);
+	    if (object != null) {
+	        if (object.height < tileHeight) {
+	            // make sure small objects are vertically centered in their
+	            // tile.
+	            object.getPosition().y += (tileHeight - object.height) / 2.0f;
+	        }
+	        if (object.width < tileWidth) {
+	            object.getPosition().x += (tileWidth - object.width) / 2.0f;
+	        } else if (object.width > tileWidth) {
+	            object.getPosition().x -= (object.width - tileWidth) / 2.0f;
+	        }
+	        manager.add(object);
+	        if (type == GameObjectType.PLAYER) {
+	            manager.setPlayer(object);
+	        }
+	    }
+	    return object;
+	}
+	
+	/**
+	 * Spawns an object on behalf of a SpawnStreamer.  The same spawn record may be spawned many
+	 * times as the camera comes and goes, so objects spawned this way are not counted toward the
+	 * level's totals; the streamer counts its records once, when it loads the spawn layer.
+	 */
+	public GameObject spawnStreamedTile(GameObjectType type, int tileX, int tileY, int tileWidth,
+	        int tileHeight, float worldHeight) {
+	    mStreaming = true;
+	    GameObject object = spawnFromTile(type, tileX, tileY, tileWidth, tileHeight, worldHeight);
+	    mStreaming = false;
+	    return object;
+	}
+	
+	/**
+	 * Returns true if objects of this type can be spawned by a SpawnStreamer: their only state is
+	 * their position and life, so an object that hasn't moved or been hurt can be destroyed and
+	 * spawned again later without anyone noticing.  Characters, doors, buttons, spawners and
+	 * other objects that talk to the rest of the level are always spawned up front.
+	 */
+	public boolean isStreamable(GameObjectType type) {
+	    boolean streamable = false;
+	    switch (type) {
+	        case COIN:
+	        case RUBY:
+	        case DIARY:
+	        case BROBOT:
+	        case SNAILBOMB:
+	        case SHADOWSLIME:
+	        case MUDMAN:
+	        case SKELETON:
+	        case KARAGUIN:
+	        case PINK_NAMAZU:
+	        case TURRET:
+	        case TURRET_LEFT:
+	        case BAT:
+	        case STING:
+	        case ONION:
+	        case BREAKABLE_BLOCK:
+	            streamable = true;
+	            break;
+	    }
+	    return streamable;
+	}
+	
+	/**
+	 * Returns true if objects of this type are currently emitted into the ParticleSystem rather
+	 * than spawned.  These are the effects that are only ever looked at: dust, smoke and gem 
+	 * sparkles.  Explosions stay objects because their animations carry attack volumes.
+	 */
+	public boolean isParticleEffect(GameObjectType type) {
+	    boolean particle = false;
+	    if (sSystemRegistry.particleSystem != null) {
+	        switch (type) {
+	            case DUST:
+	            case SMOKE_BIG:
+	            case SMOKE_SMALL:
+	            case SMOKE_POOF:
+	            case GEM_EFFECT:
+	                particle = true;
+	                break;
+	        }
+	    }
+	    return particle;
+	}
+	
+	/**
+	 * Emits the particles for an effect type (see isParticleEffect()).  (x, y) is the bottom-left
+	 * corner of the effect, as it would be for the spawned object, unless centered is true.
+	 * @return true if at least one particle was emitted.
+	 */
+	public boolean emitParticleEffect(GameObjectType type, float x, float y, float velocityX, 
+	        float velocityY, boolean flip, boolean centered) {
+	    final ParticleSystem particles = sSystemRegistry.particleSystem;
+	    boolean emitted = false;
+	    if (particles != null) {
+	        if (type == GameObjectType.SMOKE_POOF) {
+	            // Same as the two smoke guns in spawnSmokePoof().
+	            emitted = emitScatteredParticles(GameObjectType.SMOKE_BIG, x + 16, y + 16, 3, 
+	                    200.0f, 200.0f, 1.0f);
+	            emitted |= emitScatteredParticles(GameObjectType.SMOKE_SMALL, x + 16, y + 16, 3, 
+	                    200.0f, 200.0f, 1.0f);
+	        } else {
+	            int variant = 0;
+	            if (type == GameObjectType.SMOKE_BIG) {
+	                variant = (int)(Utils.random() * SMOKE_BIG_VARIANTS.length);
+	            }
+	            final ParticleEffect effect = getParticleEffect(type, variant);
+	            if (effect != null) {
+	                if (centered) {
+	                    x -= effect.width / 2.0f;
+	                    y -= effect.height / 2.0f;
+	                }
+	                // Only dust objects were ever drawn flipped.
+	                emitted = particles.emit(effect, x, y, velocityX, velocityY, 
+	                        flip && type == GameObjectType.DUST);
+	            }
+	        }
+	    }
+	    return emitted;
+	}
+	
+	// Launches particles in random directions, as LaunchProjectileComponent does with a theta error.
+	private boolean emitScatteredParticles(GameObjectType type, float x, float y, int count, 
+	        float velocityX, float velocityY, float thetaError) {
+	    final Vector2 velocity = mParticleVelocity;
+	    boolean emitted = false;
+	    for (int i = 0; i < count; i++) {
+	        final float angle = (float)(Utils.random() * thetaError * Math.PI * 2.0f);
+	        velocity.set((float)Math.sin(angle), (float)Math.cos(angle));
+	        if (Utils.close(velocity.length2(), 0.0f)) {
+	            velocity.set(1.0f, 1.0f);
+	        }
+	        emitted |= emitParticleEffect(type, x, y, velocity.x * velocityX, 
+	                velocity.y * velocityY, false, true);
+	    }
+	    return emitted;
+	}
+	
+	/** Returns the particle description for an effect type, building it on first use. */
+	private ParticleEffect getParticleEffect(GameObjectType type, int variant) {
+	    ParticleEffect effect = null;
+	    switch (type) {
+	        case DUST:
+	            if (mDustEffect == null) {
+	                TextureLibrary textureLibrary = sSystemRegistry.longTermTextureLibrary;
+	                effect = new ParticleEffect(5, 32, 32);
+	                effect.addFrame(textureLibrary.getTextureByResource(R.drawable.dust01), 
+	                        Utils.framesToTime(24, 1));
+	                effect.addFrame(textureLibrary.getTextureByResource(R.drawable.dust02), 
+	                        Utils.framesToTime(24, 1));
+	                effect.addFrame(textureLibrary.getTextureByResource(R.drawable.dust03), 
+	                        Utils.framesToTime(24, 1));
+	                effect.addFrame(textureLibrary.getTextureByResource(R.drawable.dust04), 
+	                        Utils.framesToTime(24, 1));
+	                effect.addFrame(textureLibrary.getTextureByResource(R.drawable.dust05), 
+	                        Utils.framesToTime(24, 1));
+	                effect.setLifetime(0.30f);
+	                mDustEffect = effect;
+	            }
+	            effect = mDustEffect;
+	            break;
+	        case SMOKE_BIG:
+	            if (mSmokeBigEffects[variant] == null) {
+	                TextureLibrary textureLibrary = sSystemRegistry.longTermTextureLibrary;
+	                effect = new ParticleEffect(5, 32, 32);
+	                effect.addFrame(
+	                        textureLibrary.getTextureByResource(R.drawable.effect_smoke_big01), 
+	                        Utils.framesToTime(24, SMOKE_BIG_VARIANTS[variant]));
+	                effect.addFrame(
+	                        textureLibrary.getTextureByResource(R.drawable.effect_smoke_big02), 
+	                        Utils.framesToTime(24, 1));
+	                effect.addFrame(
+	                        textureLibrary.getTextureByResource(R.drawable.effect_smoke_big03), 
+	                        Utils.framesToTime(24, 1));
+	                effect.addFrame(
+	                        textureLibrary.getTextureByResource(R.drawable.effect_smoke_big04), 
+	                        Utils.framesToTime(24, 1));
+	                effect.addFrame(
+	                        textureLibrary.getTextureByResource(R.drawable.effect_smoke_big05), 
+	                        Utils.framesToTime(24, 1));
+	                effect.setDieWhenInvisible(true);
+	                mSmokeBigEffects[variant] = effect;
+	            }
+	            effect = mSmokeBigEffects[variant];
+	            break;
+	        case SMOKE_SMALL:
+	            if (mSmokeSmallEffect == null) {
+	                TextureLibrary textureLibrary = sSystemRegistry.longTermTextureLibrary;
+	                effect = new ParticleEffect(5, 16, 16);
+	                effect.addFrame(
+	                        textureLibrary.getTextureByResource(R.drawable.effect_smoke_small01), 
+	                        Utils.framesToTime(24, 10));
+	                effect.addFrame(
+	                        textureLibrary.getTextureByResource(R.drawable.effect_smoke_small02), 
+	                        Utils.framesToTime(24, 1));
+	                effect.addFrame(
+	                        textureLibrary.getTextureByResource(R.drawable.effect_smoke_small03), 
+	                        Utils.framesToTime(24, 1));
+	                effect.addFrame(
+	                        textureLibrary.getTextureByResource(R.drawable.effect_smoke_small04), 
+	                        Utils.framesToTime(24, 1));
+	                effect.addFrame(
+	                        textureLibrary.getTextureByResource(R.drawable.effect_smoke_small05), 
+	                        Utils.framesToTime(24, 1));
+	                effect.setDieWhenInvisible(true);
+	                mSmokeSmallEffect = effect;
+	            }
+	            effect = mSmokeSmallEffect;
+	            break;
+	        case GEM_EFFECT:
+	            if (mGemEffect == null) {
+	                TextureLibrary textureLibrary = sSystemRegistry.shortTermTextureLibrary;
+	                effect = new ParticleEffect(1, 32, 32);
+	                effect.addFrame(textureLibrary.allocateTexture(R.drawable.object_ruby01), 0.5f);
+	                effect.setFade(1.0f, 0.0f);
+	                mGemEffect = effect;
+	            }
+	            effect = mGemEffect;
+	            break;
+	    }
+	    return effect;
+	}
     
     
-    private FixedSizeArray<BaseObject> getStaticData(GameObjectType type) {
-        return mStaticData.get(type.ordinal());
+    /**
+     * Prepares every type of object that a level can produce before the level starts: the types
+     * placed in the spawn layer, and everything those objects can spawn in turn (projectiles, 
+     * explosions, gem effects and so on).  Each type is spawned once and immediately destroyed,
+     * which builds its static data and allocates its textures and sounds, so that nothing is 
+     * built for the first time in the middle of play and every texture it needs is loaded along 
+     * with the level.
+     * @param world  The spawn layer of the level.
+     * @return The number of types prepared.
+     */
+    public int prewarm(TiledWorld world) {
+        final boolean[] queued = mPrewarmQueued;
+        for (int x = 0; x < queued.length; x++) {
+            queued[x] = false;
+        }
+        mPrewarmQueueCount = 0;
+        
+        final int width = world.getWidth();
+        final int height = world.getHeight();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int index = world.getTile(x, y);
+                if (index != -1) {
+                    queuePrewarm(GameObjectType.indexToType(index));
+                }
+            }
+        }
+        
+        // The queue grows as spawned types are discovered.  The objects spawned here are thrown
+        // away, so they must not leave any trace in the level (pearl counts, camera target).
+        mPrewarming = true;
+        int prepared = 0;
+        for (int x = 0; x < mPrewarmQueueCount; x++) {
+            final GameObjectType type = mTypes[mPrewarmQueue[x]];
+            GameObject object = null;
+            if (isParticleEffect(type)) {
+                // Particle effects have no static data; just look up their textures.
+                if (type == GameObjectType.SMOKE_POOF) {
+                    prewarmParticleEffect(GameObjectType.SMOKE_BIG);
+                    prewarmParticleEffect(GameObjectType.SMOKE_SMALL);
+                } else {
+                    prewarmParticleEffect(type);
+                }
+                prepared++;
+            } else if (type == GameObjectType.GHOST) {
+                object = spawnPlayerGhost(0.0f, 0.0f, null, 0.0f);
+            } else {
+                object = spawn(type, 0.0f, 0.0f, false);
+            }
+            if (object != null) {
+                object.commitUpdates();
+                final int componentCount = object.getCount();
+                for (int y = 0; y < componentCount; y++) {
+                    queueSpawnedTypes((GameComponent)object.get(y));
+                }
+                destroy(object);
+                prepared++;
+            }
+            
+            // Objects that are spawned by code rather than by a component setting.
+            if (type == GameObjectType.PLAYER) {
+                // PlayerComponent and AnimationComponent.
+                queuePrewarm(GameObjectType.GHOST);
+                queuePrewarm(GameObjectType.DUST);
+                queuePrewarm(GameObjectType.EXPLOSION_GIANT);
+            } else if (type == GameObjectType.THE_SOURCE) {
+                // TheSourceComponent.
+                queuePrewarm(GameObjectType.EXPLOSION_GIANT);
+            }
+        }
+        mPrewarming = false;
+        return prepared;
+    }
+    
+    private void prewarmParticleEffect(GameObjectType type) {
+        final int variants = type == GameObjectType.SMOKE_BIG ? SMOKE_BIG_VARIANTS.length : 1;
+        for (int x = 0; x < variants; x++) {
+            getParticleEffect(type, x);
+        }
+    }
+    
+    private void queueSpawnedTypes(GameComponent component) {
+        if (component instanceof LifetimeComponent) {
+            queuePrewarm(((LifetimeComponent)component).getObjectToSpawnOnDeath());
+        } else if (component instanceof LaunchProjectileComponent) {
+            queuePrewarm(((LaunchProjectileComponent)component).getObjectTypeToSpawn());
+        } else if (component instanceof HitReactionComponent) {
+            queuePrewarm(((HitReactionComponent)component).getSpawnOnDealHitObjectType());
+        } else if (component instanceof LauncherComponent) {
+            queuePrewarm(((LauncherComponent)component).getLaunchEffect());
+        } else if (component instanceof ChangeComponentsComponent) {
+            // Components that are swapped in later can spawn things too.
+            FixedSizeArray<GameComponent> swapIn = 
+                ((ChangeComponentsComponent)component).getSwapInComponents();
+            final int count = swapIn.getCount();
+            for (int x = 0; x < count; x++) {
+                queueSpawnedTypes(swapIn.get(x));
+            }
+        }
+    }
+    
+    private void queuePrewarm(GameObjectType type) {
+        if (type != null && type != GameObjectType.INVALID && type != GameObjectType.OBJECT_COUNT
+                && !mPrewarmQueued[type.ordinal()]) {
+            mPrewarmQueued[type.ordinal()] = true;
+            mPrewarmQueue[mPrewarmQueueCount++] = type.ordinal();
+        }
+    }
+    
+    FixedSizeArray<BaseObject> getStaticData(GameObjectType type) {
+        FixedSizeArray<BaseObject> staticData = mStaticData.get(type.ordinal());
+        if (staticData == null && mArchetypes != null && mArchetypes.hasStaticData(type)) {
+            // Build from the compiled archetype rather than the spawn method's inline setup.
+            staticData = mArchetypes.buildStaticData(type, this);
+            if (staticData != null) {
+                setStaticData(type, staticData);
+            }
+        }
+        return staticData;
     }
     
     private void setStaticData(GameObjectType type, FixedSizeArray<BaseObject> data) {
@@ -647,6 +1006,30 @@ public class GameObjectFactory extends BaseObject {
         }
     }
     
+    /** 
+     * Installs compiled archetypes (see ArchetypeLibrary), from which static data will be built
+     * from now on.  Pass null to go back to building static data in the spawn methods.
+     */
+    public void setArchetypes(ArchetypeLibrary archetypes) {
+        mArchetypes = archetypes;
+        if (archetypes != null) {
+            // The archetypes record the pool sizes they were compiled against; if those have
+            // changed, the spawn methods probably have too and the file should be regenerated.
+            final int classCount = archetypes.getComponentClassCount();
+            for (int x = 0; x < classCount; x++) {
+                GameComponentPool pool = getComponentPool(archetypes.getComponentClass(x));
+                if (pool == null || pool.getSize() != archetypes.getPoolSize(x)) {
+                    DebugLog.w("GameObjectFactory", "Archetypes are out of date: pool for " 
+                            + archetypes.getComponentClass(x).getSimpleName() + " has changed.");
+                }
+            }
+        }
+    }
+    
+    public ArchetypeLibrary getArchetypes() {
+        return mArchetypes;
+    }
+    
     public void clearStaticData() {
         final int typeCount = mStaticData.getCount();
         for (int x = 0; x < typeCount; x++) {
@@ -665,6 +1048,15 @@ public class GameObjectFactory extends BaseObject {
                 mStaticData.set(x, null);
             }
         }
+        
+        // The gem effect uses a short-term texture, so rebuild the particle effects along with
+        // the static data.
+        mDustEffect = null;
+        for (int x = 0; x < mSmokeBigEffects.length; x++) {
+            mSmokeBigEffects[x] = null;
+        }
+        mSmokeSmallEffect = null;
+        mGemEffect = null;
     }
     
     public void sanityCheckPools() {
@@ -686,6 +1078,109 @@ public class GameObjectFactory extends BaseObject {
                 //assert false;
             }
         }
+        
+        DebugLog.d("Sanity Check", getPoolReport());
+    }
+    
+    /** 
+     * Appends a line of statistics (see ObjectPool.dumpStatistics()) for the game object pool,
+     * each component pool that was used, and the other pools in the system registry.
+     */
+    public void dumpPoolStatistics(StringBuilder output) {
+        output.append("Object pools:\n");
+        mGameObjectPool.dumpStatistics(output);
+        final int componentPoolCount = mComponentPools.getCount();
+        for (int x = 0; x < componentPoolCount; x++) {
+            final GameComponentPool pool = mComponentPools.get(x);
+            if (pool.getAllocationCount() > 0 || pool.getPeakAllocatedCount() > 0) {
+                pool.dumpStatistics(output);
+            }
+        }
+        final RenderSystem render = sSystemRegistry.renderSystem;
+        if (render != null) {
+            render.dumpPoolStatistics(output);
+        }
+        final GameObjectCollisionSystem collision = sSystemRegistry.gameObjectCollisionSystem;
+        if (collision != null) {
+            collision.dumpPoolStatistics(output);
+        }
+        final DrawableFactory drawables = sSystemRegistry.drawableFactory;
+        if (drawables != null) {
+            drawables.dumpPoolStatistics(output);
+        }
+        if (sSystemRegistry.vectorPool != null) {
+            sSystemRegistry.vectorPool.dumpStatistics(output);
+        }
+        if (sSystemRegistry.hitPointPool != null) {
+            sSystemRegistry.hitPointPool.dumpStatistics(output);
+        }
+    }
+    
+    /** Returns the report produced by dumpPoolStatistics().  Allocates; intended for logging. */
+    public String getPoolReport() {
+        StringBuilder output = new StringBuilder(2048);
+        dumpPoolStatistics(output);
+        return output.toString();
+    }
+    
+    /** Starts a new statistics period for every pool in the report. */
+    public void resetPoolStatistics() {
+        mGameObjectPool.resetStatistics();
+        final int componentPoolCount = mComponentPools.getCount();
+        for (int x = 0; x < componentPoolCount; x++) {
+            mComponentPools.get(x).resetStatistics();
+        }
+        final RenderSystem render = sSystemRegistry.renderSystem;
+        if (render != null) {
+            render.resetPoolStatistics();
+        }
+        final GameObjectCollisionSystem collision = sSystemRegistry.gameObjectCollisionSystem;
+        if (collision != null) {
+            collision.resetPoolStatistics();
+        }
+        final DrawableFactory drawables = sSystemRegistry.drawableFactory;
+        if (drawables != null) {
+            drawables.resetPoolStatistics();
+        }
+        if (sSystemRegistry.vectorPool != null) {
+            sSystemRegistry.vectorPool.resetStatistics();
+        }
+        if (sSystemRegistry.hitPointPool != null) {
+            sSystemRegistry.hitPointPool.resetStatistics();
+        }
+    }
+    
+    /** Makes the game object pool and the component pools grow when they run dry. */
+    public void setGrowablePools(boolean growable) {
+        mGameObjectPool.setGrowable(growable);
+        final int componentPoolCount = mComponentPools.getCount();
+        for (int x = 0; x < componentPoolCount; x++) {
+            mComponentPools.get(x).setGrowable(growable);
+        }
+    }
+    
+    /**
+     * Resizes the game object pool and the component pools to fit the demand recorded since the
+     * last resetPoolStatistics() (see ObjectPool.resizeToFit()).  Components that were never 
+     * allocated keep their pools as they are, since the next level may need them.  Call between
+     * levels, after the static data has been cleared, and only with growable pools.  Returns the
+     * number of pools resized.
+     */
+    public int resizePools() {
+        int resized = 0;
+        if (mGameObjectPool.resizeToFit()) {
+            resized++;
+        }
+        final int componentPoolCount = mComponentPools.getCount();
+        for (int x = 0; x < componentPoolCount; x++) {
+            final GameComponentPool pool = mComponentPools.get(x);
+            if (pool.getAllocationCount() > 0 && pool.resizeToFit()) {
+                DebugLog.d("GameObjectFactory", "Resized " + pool.objectClass.getSimpleName() 
+                        + " pool to " + pool.getSize());
+                resized++;
+            }
+        }
+        return resized;
     }
     
     public GameObject spawnPlayer(float positionX, float positionY) {
@@ -1112,7 +1607,7 @@ public class GameObjectFactory extends BaseObject {
         }
         
         CameraSystem camera = sSystemRegistry.cameraSystem;
-        if (camera != null) {
+        if (camera != null && !mPrewarming) {
             camera.setTarget(object);
         }
             
@@ -1299,7 +1794,7 @@ public class GameObjectFactory extends BaseObject {
         
         object.commitUpdates();
         
-        SimplePhysicsComponent normalPhysics = object.findByClass(SimplePhysicsComponent.class);
+        SimplePhysicsComponent normalPhysics = object.getComponent(SimplePhysicsComponent.TYPE);
         if (normalPhysics != null) {
             ghostSwap.addSwapOutComponent(normalPhysics);
         }
@@ -3927,7 +4422,7 @@ public class GameObjectFactory extends BaseObject {
         
         object.commitUpdates();
         
-        GhostComponent ghost = object.findByClass(GhostComponent.class);
+        GhostComponent ghost = object.getComponent(GhostComponent.TYPE);
         if (ghost != null) {
             ghost.setLifeTime(lifeTime);
         }
@@ -4404,8 +4899,10 @@ public class GameObjectFactory extends BaseObject {
         addStaticData(GameObjectType.COIN, object, sprite);
         sprite.playAnimation(0);
         
-        EventRecorder recorder = sSystemRegistry.eventRecorder;
-        recorder.incrementEventCounter(EventRecorder.COUNTER_PEARLS_TOTAL);
+        if (!mPrewarming && !mStreaming) {
+            EventRecorder recorder = sSystemRegistry.eventRecorder;
+            recorder.incrementEventCounter(EventRecorder.COUNTER_PEARLS_TOTAL);
+        }
 
         return object;
     }
@@ -4767,7 +5264,7 @@ public class GameObjectFactory extends BaseObject {
         
         object.commitUpdates();
 
-        SolidSurfaceComponent solidSurface = object.findByClass(SolidSurfaceComponent.class);
+        SolidSurfaceComponent solidSurface = object.getComponent(SolidSurfaceComponent.TYPE);
         if (solid) {
             doorAnim.setSolidSurface(solidSurface);
         } else {
@@ -5107,7 +5604,7 @@ public class GameObjectFactory extends BaseObject {
     public GameObject spawnObjectInfiniteSpawner(float positionX, float positionY) {
     	GameObject object = spawnObjectBrobotSpawner(positionX, positionY, false);
     	object.facingDirection.y = -1; //vertical flip
-    	LaunchProjectileComponent gun = object.findByClass(LaunchProjectileComponent.class);
+    	LaunchProjectileComponent gun = object.getComponent(LaunchProjectileComponent.TYPE);
     	if (gun != null) {
     		gun.disableProjectileTracking();
     		gun.setDelayBetweenShots(0.15f);
@@ -5647,7 +6144,7 @@ public class GameObjectFactory extends BaseObject {
         
         object.commitUpdates();
         
-        GhostComponent possessedGhost = object.findByClass(GhostComponent.class);
+        GhostComponent possessedGhost = object.getComponent(GhostComponent.TYPE);
         if (possessedGhost != null) {
             object.remove(possessedGhost);   // Not supposed to be added yet.
             componentSwap.addSwapInComponent(possessedGhost);
@@ -5659,6 +6156,12 @@ public class GameObjectFactory extends BaseObject {
     }
 
     public GameObject spawnDust(float positionX, float positionY, boolean flipHorizontal) {
+        if (isParticleEffect(GameObjectType.DUST)) {
+            emitParticleEffect(GameObjectType.DUST, positionX, positionY, 0.0f, 0.0f, 
+                    flipHorizontal, false);
+            return null;
+        }
+        
         TextureLibrary textureLibrary = sSystemRegistry.longTermTextureLibrary;
 
         GameObject object = mGameObjectPool.allocate();
@@ -6132,8 +6635,11 @@ public class GameObjectFactory extends BaseObject {
         TextureLibrary textureLibrary = sSystemRegistry.longTermTextureLibrary;
 
         GameObject object = null;
-        // This is just an effect, so we can live without it if our pools are exhausted.
-        if (componentAvailable(RenderComponent.class, 1)) { 
+        if (isParticleEffect(GameObjectType.SMOKE_BIG)) {
+            emitParticleEffect(GameObjectType.SMOKE_BIG, positionX, positionY, 0.0f, 0.0f, 
+                    false, false);
+        } else if (componentAvailable(RenderComponent.class, 1)) { 
+            // This is just an effect, so we can live without it if our pools are exhausted.
         	object = mGameObjectPool.allocate();
 	        
 	        object.getPosition().set(positionX, positionY);
@@ -6237,7 +6743,7 @@ public class GameObjectFactory extends BaseObject {
 	          
 	        addStaticData(GameObjectType.SMOKE_BIG, object, sprite);
 	        
-	        final int animIndex = (int)(Math.random() * sprite.getAnimationCount());
+	        final int animIndex = (int)(Utils.random() * sprite.getAnimationCount());
 	        final SpriteAnimation idle = sprite.findAnimation(animIndex);
 	        if (idle != null) {
 	            lifetime.setTimeUntilDeath(idle.getLength());
@@ -6253,8 +6759,11 @@ public class GameObjectFactory extends BaseObject {
         TextureLibrary textureLibrary = sSystemRegistry.longTermTextureLibrary;
 
         GameObject object = null;
-        // This is just an effect, so we can live without it if our pools are exhausted.
-        if (componentAvailable(RenderComponent.class, 1)) {
+        if (isParticleEffect(GameObjectType.SMOKE_SMALL)) {
+            emitParticleEffect(GameObjectType.SMOKE_SMALL, positionX, positionY, 0.0f, 0.0f, 
+                    false, false);
+        } else if (componentAvailable(RenderComponent.class, 1)) {
+            // This is just an effect, so we can live without it if our pools are exhausted.
 	        object = mGameObjectPool.allocate();
 	        object.getPosition().set(positionX, positionY);
 	        object.activationRadius = mAlwaysActive;
@@ -6602,8 +7111,11 @@ public class GameObjectFactory extends BaseObject {
     public GameObject spawnSmokePoof(float positionX, float positionY) {
         
     	GameObject object = null;
-        // This is just an effect, so we can live without it if our pools are exhausted.
-        if (componentAvailable(LaunchProjectileComponent.class, 2)) {
+        if (isParticleEffect(GameObjectType.SMOKE_POOF)) {
+            emitParticleEffect(GameObjectType.SMOKE_POOF, positionX, positionY, 0.0f, 0.0f, 
+                    false, false);
+        } else if (componentAvailable(LaunchProjectileComponent.class, 2)) {
+            // This is just an effect, so we can live without it if our pools are exhausted.
 	        object = mGameObjectPool.allocate();
 	        object.getPosition().set(positionX, positionY);
 	        object.activationRadius = mTightActivationRadius;
@@ -6648,6 +7160,12 @@ public class GameObjectFactory extends BaseObject {
     }
     
     public GameObject spawnGemEffect(float positionX, float positionY) {
+        if (isParticleEffect(GameObjectType.GEM_EFFECT)) {
+            emitParticleEffect(GameObjectType.GEM_EFFECT, positionX, positionY, 0.0f, 0.0f, 
+                    false, false);
+            return null;
+        }
+        
         TextureLibrary textureLibrary = sSystemRegistry.shortTermTextureLibrary;
 
         GameObject object = mGameObjectPool.allocate();
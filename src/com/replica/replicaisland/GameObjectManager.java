@@ -48,6 +48,10 @@ public class GameObjectManager extends ObjectManager {
         
         mInactiveObjects = new FixedSizeArray<BaseObject>(MAX_GAME_OBJECTS);
         mInactiveObjects.setComparator(sGameObjectComparator);
+        // Inactive objects don't move, so once sorted the list can be kept in order as objects
+        // come and go rather than being resorted every frame.
+        mInactiveObjects.setSorter(new InsertionSorter<BaseObject>());
+        mInactiveObjects.setKeepSorted(true);
         
         mMarkedForDeathObjects = new FixedSizeArray<GameObject>(MAX_GAME_OBJECTS);
         mVisitingGraph = false;
@@ -61,11 +65,16 @@ public class GameObjectManager extends ObjectManager {
         super.commitUpdates();
         
         GameObjectFactory factory = sSystemRegistry.gameObjectFactory;
+        SpawnStreamer streamer = sSystemRegistry.spawnStreamer;
         final int objectsToKillCount = mMarkedForDeathObjects.getCount();
         if (factory != null && objectsToKillCount > 0) {
             final Object[] deathArray = mMarkedForDeathObjects.getArray();
             for (int x = 0; x < objectsToKillCount; x++) {
-                factory.destroy((GameObject)deathArray[x]);
+                final GameObject object = (GameObject)deathArray[x];
+                if (streamer != null && object.streamedSpawn != -1) {
+                    streamer.onDestroyed(object);
+                }
+                factory.destroy(object);
             }
             mMarkedForDeathObjects.clear();
         }
@@ -73,11 +82,17 @@ public class GameObjectManager extends ObjectManager {
 
     @Override
     public void update(float timeDelta, BaseObject parent) {
-        commitUpdates();
-        
         CameraSystem camera = sSystemRegistry.cameraSystem;
         
         mCameraFocus.set(camera.getFocusPositionX(), camera.getFocusPositionY());
+        
+        SpawnStreamer streamer = sSystemRegistry.spawnStreamer;
+        if (streamer != null) {
+            streamer.update(mCameraFocus.x, mMaxActivationRadius, this);
+        }
+        
+        commitUpdates();
+
         mVisitingGraph = true;
         FixedSizeArray<BaseObject> objects = getObjects();
         final int count = objects.getCount();
@@ -110,27 +125,47 @@ public class GameObjectManager extends ObjectManager {
         final int inactiveCount = mInactiveObjects.getCount();
         if (inactiveCount > 0) {
             final Object[] inactiveArray = mInactiveObjects.getArray();
-            for (int i = inactiveCount - 1; i >= 0; i--) {
+            // No object's activation radius is larger than the max, so only the objects within 
+            // the max radius of the focus on the x axis need to be considered.
+            final int first = findInactiveBound(mCameraFocus.x - mMaxActivationRadius, false);
+            final int end = findInactiveBound(mCameraFocus.x + mMaxActivationRadius, true);
+            for (int i = end - 1; i >= first; i--) {
                 GameObject gameObject = (GameObject)inactiveArray[i];
                 
-                final Vector2 position = gameObject.getPosition();
-                final float distance2 = mCameraFocus.distance2(position);
-                final float xDistance = position.x - mCameraFocus.x;
+                final float distance2 = mCameraFocus.distance2(gameObject.getPosition());
                 if (distance2 < (gameObject.activationRadius * gameObject.activationRadius) 
                         || gameObject.activationRadius == -1) {
                     gameObject.update(timeDelta, this);
-                    mInactiveObjects.swapWithLast(i);
-                    mInactiveObjects.removeLast();
+                    // remove() keeps the list in order, and only shifts objects that have 
+                    // already been processed.
+                    mInactiveObjects.remove(i);
                     objects.add(gameObject);
-                } else if (xDistance < -mMaxActivationRadius) {
-                    // We've passed the focus, we can stop processing now
-                    break;   
                 }
             }
         }
         mVisitingGraph = false;
     }
     
+    /** 
+     * Returns the index of the first inactive object whose x position is greater than (or, if 
+     * inclusive is false, greater than or equal to) x.  The inactive list must be sorted.
+     */
+    private int findInactiveBound(float x, boolean inclusive) {
+        final Object[] inactiveArray = mInactiveObjects.getArray();
+        int low = 0;
+        int high = mInactiveObjects.getCount();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            final float objectX = ((GameObject)inactiveArray[middle]).getPosition().x;
+            if (objectX < x || (inclusive && objectX == x)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
     
     @Override
     public void add(BaseObject object) {
@@ -147,6 +182,18 @@ public class GameObjectManager extends ObjectManager {
         }
     }
     
+    /** 
+     * Removes an object from the inactive list without destroying it.  Returns false if the 
+     * object isn't inactive.
+     */
+    public boolean removeInactive(GameObject object) {
+        final int index = mInactiveObjects.find(object, true);
+        if (index != -1) {
+            mInactiveObjects.remove(index);
+        }
+        return index != -1;
+    }
+    
     public void destroy(GameObject object) {
         mMarkedForDeathObjects.add(object);
         remove(object);
@@ -31,6 +31,8 @@ import com.replica.replicaisland.RenderSystem.RenderElement;
  * queue of renderable objects from the thread and uses that to draw the scene every frame.  If
  * no queue is available then no drawing is performed.  If the queue is not changed from frame to
  * frame, the same scene will be redrawn every frame.
+ * Alternatively, the renderer may be given a RenderQueueExchange, in which case it never waits for
+ * the game thread: each frame it draws the newest queue the game thread has completed.
  * The GameRenderer also invokes texture loads when it is activated.
  */
 public class GameRenderer implements GLSurfaceView.Renderer {
@@ -53,6 +55,8 @@ public class GameRenderer implements GLSurfaceView.Renderer {
     
     private ObjectManager mDrawQueue;
     private boolean mDrawQueueChanged;
+    private volatile RenderQueueExchange mQueueExchange;
+    private SpriteBatch mSpriteBatch;
     private Game mGame;
     private Object mDrawLock;
     
@@ -183,7 +187,7 @@ public class GameRenderer implements GLSurfaceView.Renderer {
         
         synchronized(mDrawLock) {
             if (!mDrawQueueChanged) {
-                while (!mDrawQueueChanged) {
+                while (!mDrawQueueChanged && mQueueExchange == null) {
                     try {
                     	mDrawLock.wait();
                     } catch (InterruptedException e) {
@@ -201,38 +205,7 @@ public class GameRenderer implements GLSurfaceView.Renderer {
         	mCallbackRequested = false;
         }
         
-        DrawableBitmap.beginDrawing(gl, mWidth, mHeight);
-
-        synchronized (this) {
-            if (mDrawQueue != null && mDrawQueue.getObjects().getCount() > 0) {
-                OpenGLSystem.setGL(gl);
-                FixedSizeArray<BaseObject> objects = mDrawQueue.getObjects();
-                Object[] objectArray = objects.getArray();
-                final int count = objects.getCount();
-                final float scaleX = mScaleX;
-                final float scaleY = mScaleY;
-                final float halfWidth = mHalfWidth;
-                final float halfHeight = mHalfHeight;
-                mProfileObjectCount += count;
-                for (int i = 0; i < count; i++) {
-                    RenderElement element = (RenderElement)objectArray[i];
-                    float x = element.x;
-                    float y = element.y;
-                    if (element.cameraRelative) {
-                    	x = (x - mCameraX) + halfWidth;
-                    	y = (y - mCameraY) + halfHeight;
-                    }
-                    element.mDrawable.draw(x, y, scaleX, scaleY);
-                }
-                OpenGLSystem.setGL(null);
-            } else if (mDrawQueue == null) {
-                // If we have no draw queue, clear the screen.  If we have a draw queue that
-                // is empty, we'll leave the frame buffer alone.
-                gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
-            }
-        }
-        
-        DrawableBitmap.endDrawing(gl);
+        drawScene(gl);
         
         long time2 = SystemClock.uptimeMillis();
         mLastTime = time2;
@@ -254,6 +227,23 @@ public class GameRenderer implements GLSurfaceView.Renderer {
             		+ "  Average Draw: " + averageFrameTime 
             		+ " Objects/Frame: " + averageObjectsPerFrame
             		+ " Wait Time: " + averageWaitTime);
+            
+            final RenderQueueExchange exchange = mQueueExchange;
+            if (exchange != null) {
+                // The dropped count belongs to the game thread, so it may be slightly stale.
+                DebugLog.d("Render Profile", 
+                        "Dropped Frames: " + exchange.getDroppedFrames()
+                        + " Repeated Frames: " + exchange.getRepeatedFrames());
+            }
+            
+            final TextureStreamer streamer = BaseObject.sSystemRegistry.textureStreamer;
+            if (streamer != null) {
+                DebugLog.d("Render Profile", 
+                        "Texture Queue: " + streamer.getQueueDepth()
+                        + " Uploads: " + streamer.getUploadCount()
+                        + " Average Upload: " + streamer.getAverageUploadTime()
+                        + " Max Upload: " + streamer.getMaxUploadTime());
+            }
            
             mProfileFrameTime = 0;
             mProfileSubmitTime = 0;
@@ -263,6 +253,78 @@ public class GameRenderer implements GLSurfaceView.Renderer {
         
     }
 
+    /**
+     * Draws the current draw queue.  This is the part of onDrawFrame() that submits GL commands;
+     * it doesn't wait for a new queue and may be called directly (for example, by tools that
+     * render headlessly into a stand-in GL context).
+     */
+    public void drawScene(GL10 gl) {
+        final TextureStreamer streamer = BaseObject.sSystemRegistry.textureStreamer;
+        if (streamer != null) {
+            streamer.uploadPending(gl);
+        }
+        final TextureLibrary shortTermTextures = BaseObject.sSystemRegistry.shortTermTextureLibrary;
+        if (shortTermTextures != null) {
+            shortTermTextures.manageMemory(mContext, gl);
+        }
+        
+        DrawableBitmap.beginDrawing(gl, mWidth, mHeight);
+
+        synchronized (this) {
+            ObjectManager drawQueue = mDrawQueue;
+            float cameraX = mCameraX;
+            float cameraY = mCameraY;
+            final RenderQueueExchange exchange = mQueueExchange;
+            if (exchange != null) {
+                final int index = exchange.acquire();
+                drawQueue = exchange.getQueue(index);
+                cameraX = exchange.getCameraX(index);
+                cameraY = exchange.getCameraY(index);
+            }
+            if (drawQueue != null && drawQueue.getObjects().getCount() > 0) {
+                OpenGLSystem.setGL(gl);
+                FixedSizeArray<BaseObject> objects = drawQueue.getObjects();
+                Object[] objectArray = objects.getArray();
+                final int count = objects.getCount();
+                final float scaleX = mScaleX;
+                final float scaleY = mScaleY;
+                final float halfWidth = mHalfWidth;
+                final float halfHeight = mHalfHeight;
+                final SpriteBatch batch = mSpriteBatch;
+                mProfileObjectCount += count;
+                if (batch != null) {
+                    batch.begin();
+                }
+                for (int i = 0; i < count; i++) {
+                    RenderElement element = (RenderElement)objectArray[i];
+                    float x = element.x;
+                    float y = element.y;
+                    if (element.cameraRelative) {
+                    	x = (x - cameraX) + halfWidth;
+                    	y = (y - cameraY) + halfHeight;
+                    }
+                    if (batch == null) {
+                        element.mDrawable.draw(x, y, scaleX, scaleY);
+                    } else if (!element.mDrawable.drawBatched(batch, x, y)) {
+                        // Anything drawn outside the batch must come after what is queued in it.
+                        batch.flush();
+                        element.mDrawable.draw(x, y, scaleX, scaleY);
+                    }
+                }
+                if (batch != null) {
+                    batch.end();
+                }
+                OpenGLSystem.setGL(null);
+            } else if (drawQueue == null) {
+                // If we have no draw queue, clear the screen.  If we have a draw queue that
+                // is empty, we'll leave the frame buffer alone.
+                gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
+            }
+        }
+        
+        DrawableBitmap.endDrawing(gl);
+    }
+
     public void onSurfaceChanged(GL10 gl, int w, int h) {
         DebugLog.d("AndouKun", "Surface Size Change: " + w + ", " + h);
         
@@ -294,6 +356,7 @@ public class GameRenderer implements GLSurfaceView.Renderer {
 
     public synchronized void setDrawQueue(ObjectManager queue, float cameraX, float cameraY) {
 		mDrawQueue = queue;
+		mQueueExchange = null;
 		mCameraX = cameraX;
 		mCameraY = cameraY;
     	synchronized(mDrawLock) {
@@ -302,6 +365,31 @@ public class GameRenderer implements GLSurfaceView.Renderer {
     	}
     }
     
+    /**
+     * Switches the renderer to drawing from a triple-buffered exchange.  Once attached, the
+     * renderer no longer waits for new queues; setDrawQueue() detaches the exchange again.
+     */
+    public synchronized void setQueueExchange(RenderQueueExchange exchange) {
+        mDrawQueue = null;
+        mQueueExchange = exchange;
+        synchronized(mDrawLock) {
+            mDrawQueueChanged = true;
+            mDrawLock.notify();
+        }
+    }
+    
+    /** 
+     * Sets a sprite batch through which bitmaps are drawn, or null to draw each bitmap on its own.
+     * Only call from the render thread or before rendering starts.
+     */
+    public void setSpriteBatch(SpriteBatch batch) {
+        mSpriteBatch = batch;
+    }
+    
+    public RenderQueueExchange getQueueExchange() {
+        return mQueueExchange;
+    }
+    
     public synchronized void onPause() {
     	// Stop waiting to avoid deadlock.
     	// TODO: this is a hack.  Probably this renderer
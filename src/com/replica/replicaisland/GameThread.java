@@ -24,6 +24,12 @@ import android.view.KeyEvent;
  * The GameThread contains the main loop for the game engine logic.  It invokes the game graph,
  * manages synchronization of input events, and handles the draw queue swap with the rendering
  * thread.
+ * By default the game graph is updated once per frame with the wall-clock time since the last
+ * frame.  If a fixed time step is set, elapsed time is accumulated instead and the graph is
+ * updated in steps of exactly that length, as many as have accumulated (up to a limit).  Only the
+ * draws from the last step are kept, and the time left over in the accumulator is passed to the
+ * render system as an interpolation factor so that objects are drawn part of the way between 
+ * their previous and current positions.
  */
 public class GameThread implements Runnable {
     private long mLastTime;
@@ -35,6 +41,9 @@ public class GameThread implements Runnable {
     private boolean mPaused = false;
     private int mProfileFrames;
     private long mProfileTime;
+    private float mFixedTimeStep;
+    private int mMaxStepsPerFrame;
+    private float mAccumulator;
     
     private static final float PROFILE_REPORT_DELAY = 3.0f;
     
@@ -51,7 +60,10 @@ public class GameThread implements Runnable {
         mFinished = false;
         while (!mFinished) {
             if (mGameRoot != null) {
-                mRenderer.waitDrawingComplete();
+                // A triple-buffered render system never waits for the renderer.
+                if (!BaseObject.sSystemRegistry.renderSystem.isTripleBuffered()) {
+                    mRenderer.waitDrawingComplete();
+                }
                 
                 final long time = SystemClock.uptimeMillis();
                 final long timeDelta = time - mLastTime;
@@ -63,16 +75,20 @@ public class GameThread implements Runnable {
                     }
                     mLastTime = time;
     
-                    mGameRoot.update(secondsDelta, null);
-    
-                    CameraSystem camera = mGameRoot.sSystemRegistry.cameraSystem;
-                    float x = 0.0f;
-                    float y = 0.0f;
-                    if (camera != null) {
-                    	x = camera.getFocusPositionX();
-                    	y = camera.getFocusPositionY();
+                    if (mFixedTimeStep > 0.0f) {
+                        updateFixedSteps(secondsDelta);
+                    } else {
+                        mGameRoot.update(secondsDelta, null);
+        
+                        CameraSystem camera = mGameRoot.sSystemRegistry.cameraSystem;
+                        float x = 0.0f;
+                        float y = 0.0f;
+                        if (camera != null) {
+                        	x = camera.getFocusPositionX();
+                        	y = camera.getFocusPositionY();
+                        }
+                        BaseObject.sSystemRegistry.renderSystem.swap(mRenderer, x, y);
                     }
-                    BaseObject.sSystemRegistry.renderSystem.swap(mRenderer, x, y);
                     
                     final long endTime = SystemClock.uptimeMillis();
                     
@@ -83,6 +99,10 @@ public class GameThread implements Runnable {
                     if (mProfileTime > PROFILE_REPORT_DELAY * 1000) {
                         final long averageFrameTime = mProfileTime / mProfileFrames;
                         DebugLog.d("Game Profile", "Average: " + averageFrameTime);
+                        FrameProfiler profiler = BaseObject.sSystemRegistry.frameProfiler;
+                        if (profiler != null) {
+                            DebugLog.d("Game Profile", profiler.dump());
+                        }
                         mProfileTime = 0;
                         mProfileFrames = 0;
                         mGameRoot.sSystemRegistry.hudSystem.setFPS(1000 / (int)averageFrameTime);
@@ -114,6 +134,8 @@ public class GameThread implements Runnable {
                                 // No big deal if this wait is interrupted.
                             }
                         }
+                        // Don't try to catch up on the time spent paused.
+                        mAccumulator = 0.0f;
                     }
                 }
             } 
@@ -122,6 +144,66 @@ public class GameThread implements Runnable {
         BaseObject.sSystemRegistry.renderSystem.emptyQueues(mRenderer);
     }
 
+    /** 
+     * Runs as many fixed steps as have accumulated, keeping only the draws from the last one, 
+     * and hands that frame to the renderer.  If less than a step has accumulated, no new frame 
+     * is produced and the renderer keeps the previous one.
+     */
+    private void updateFixedSteps(float secondsDelta) {
+        final float step = mFixedTimeStep;
+        mAccumulator += secondsDelta;
+        int steps = (int)(mAccumulator / step);
+        if (steps > mMaxStepsPerFrame) {
+            // We can't keep up; drop the time we can't simulate rather than falling further
+            // behind every frame.
+            steps = mMaxStepsPerFrame;
+            mAccumulator = steps * step;
+        }
+        
+        if (steps > 0) {
+            mAccumulator -= steps * step;
+            if (mAccumulator < 0.0f) {
+                mAccumulator = 0.0f;
+            }
+            
+            RenderSystem render = BaseObject.sSystemRegistry.renderSystem;
+            CameraSystem camera = BaseObject.sSystemRegistry.cameraSystem;
+            // Draws are scheduled during the update, so the render system needs the factor 
+            // before the last step runs.
+            render.setInterpolation(mAccumulator / step);
+            
+            for (int x = 0; x < steps; x++) {
+                if (x > 0) {
+                    // Only the draws from the last step are shown.
+                    render.discardScheduled();
+                }
+                mGameRoot.update(step, null);
+            }
+            
+            float cameraX = 0.0f;
+            float cameraY = 0.0f;
+            if (camera != null) {
+                cameraX = camera.getInterpolatedFocusPositionX();
+                cameraY = camera.getInterpolatedFocusPositionY();
+            }
+            render.swap(mRenderer, cameraX, cameraY);
+        }
+    }
+
+    /**
+     * Updates the game in steps of exactly stepTime seconds, running at most maxStepsPerFrame 
+     * of them per frame.  Pass a step time of zero to go back to one variable-length update per 
+     * frame.
+     */
+    public void setFixedTimeStep(float stepTime, int maxStepsPerFrame) {
+        mFixedTimeStep = stepTime;
+        mMaxStepsPerFrame = maxStepsPerFrame;
+        mAccumulator = 0.0f;
+        if (stepTime <= 0.0f && BaseObject.sSystemRegistry.renderSystem != null) {
+            BaseObject.sSystemRegistry.renderSystem.setInterpolation(1.0f);
+        }
+    }
+    
     public void stopGame() {
     	synchronized (mPauseLock) {
             mPaused = false;
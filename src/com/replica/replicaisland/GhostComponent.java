@@ -19,6 +19,8 @@ package com.replica.replicaisland;
 import com.replica.replicaisland.SoundSystem.Sound;
 
 public class GhostComponent extends GameComponent {
+    public static final ComponentType<GhostComponent> TYPE = ComponentType.get(GhostComponent.class);
+    
     private float mMovementSpeed;
     private float mJumpImpulse;
     private float mAcceleration;
@@ -69,7 +71,7 @@ public class GhostComponent extends GameComponent {
                     timeToRelease = true;
                 } else if (mLifeTime < 1.0f) {
                     // Do we have a sprite we can fade out?
-                    SpriteComponent sprite = parentObject.findByClass(SpriteComponent.class);
+                    SpriteComponent sprite = parentObject.getComponent(SpriteComponent.TYPE);
                     if (sprite != null) {
                         sprite.setOpacity(mLifeTime);
                     }
@@ -169,13 +171,13 @@ public class GhostComponent extends GameComponent {
                 parentObject.life = 0;
             } else {
                 // See if there's a component swap we can run.
-                ChangeComponentsComponent swap = parentObject.findByClass(ChangeComponentsComponent.class);
+                ChangeComponentsComponent swap = parentObject.getComponent(ChangeComponentsComponent.TYPE);
                 if (swap != null) {
                     swap.activate(parentObject);
                 }
             }
             
-            PlayerComponent control = player.findByClass(PlayerComponent.class);
+            PlayerComponent control = player.getComponent(PlayerComponent.TYPE);
             if (camera.pointVisible(player.getPosition(), player.width)) {
                 control.deactivateGhost(0.0f);
             } else {
@@ -21,6 +21,8 @@ package com.replica.replicaisland;
  * it to be pulled down towards the ground.
  */
 public class GravityComponent extends GameComponent {
+    public static final ComponentType<GravityComponent> TYPE = ComponentType.get(GravityComponent.class);
+    
     private Vector2 mGravity;
     private Vector2 mScaledGravity;
     private static final Vector2 sDefaultGravity = new Vector2(0.0f, -400.0f);
@@ -168,6 +168,19 @@ class Grid {
         setVertex(i + 1, j + 1, positions[3][0], positions[3][1], positions[3][2], uvs[3][0], uvs[3][1]);
     }
     
+    /**
+     * Sets the corners and texture coordinates of one quad, writing straight into the vertex
+     * buffers.  (left, bottom) maps to (uLeft, vBottom) and (right, top) to (uRight, vTop).
+     */
+    public void setQuad(int quadX, int quadY, float left, float bottom, float right, float top,
+            float uLeft, float vBottom, float uRight, float vTop) {
+        final int i = quadX * 2;
+        final int j = quadY * 2;
+        setVertex(i, j, left, bottom, 0.0f, uLeft, vBottom);
+        setVertex(i + 1, j, right, bottom, 0.0f, uRight, vBottom);
+        setVertex(i, j + 1, left, top, 0.0f, uLeft, vTop);
+        setVertex(i + 1, j + 1, right, top, 0.0f, uRight, vTop);
+    }
     
     private void setVertex(int i, int j, float x, float y, float z, float u, float v) {
 	  if (i < 0 || i >= mVertsAcross) {
@@ -382,5 +395,24 @@ class Grid {
             }
         }
     }
+    
+    /** 
+     * Copies the vertices into the hardware buffers again after they have been changed with 
+     * set() or setQuad().  Does nothing if this grid isn't using hardware buffers.
+     */
+    public void updateHardwareBuffers(GL10 gl) {
+        if (mUseHardwareBuffers) {
+            GL11 gl11 = (GL11)gl;
+            gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, mVertBufferIndex);
+            gl11.glBufferSubData(GL11.GL_ARRAY_BUFFER, 0, 
+                    mVertexBuffer.capacity() * mCoordinateSize, mVertexBuffer);
+            
+            gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, mTextureCoordBufferIndex);
+            gl11.glBufferSubData(GL11.GL_ARRAY_BUFFER, 0, 
+                    mTexCoordBuffer.capacity() * mCoordinateSize, mTexCoordBuffer);
+            
+            gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, 0);
+        }
+    }
 
 }
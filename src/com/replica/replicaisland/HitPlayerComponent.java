@@ -53,7 +53,7 @@ public class HitPlayerComponent extends GameComponent {
         		GameObject parentObject = (GameObject)parent;
         		mMyPosition.set(parentObject.getCenteredPositionX(), parentObject.getCenteredPositionY());
         		if (mMyPosition.distance2(mPlayerPosition) <= mDistance2) {
-        			HitReactionComponent playerHitReact = player.findByClass(HitReactionComponent.class);
+        			HitReactionComponent playerHitReact = player.getComponent(HitReactionComponent.TYPE);
         			if (playerHitReact != null) {
         				if (!mHitDirection) {
         					// hit myself
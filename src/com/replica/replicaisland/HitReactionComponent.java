@@ -28,6 +28,8 @@ import com.replica.replicaisland.GameObjectFactory.GameObjectType;
  * that object to respond to dynamic collisions.
  */
 public class HitReactionComponent extends GameComponent {
+    public static final ComponentType<HitReactionComponent> TYPE = ComponentType.get(HitReactionComponent.class);
+    
     private static final float ATTACK_PAUSE_DELAY = (1.0f / 60) * 4;
     private final static float DEFAULT_BOUNCE_MAGNITUDE = 200.0f;
     private final static float EVENT_SEND_DELAY = 5.0f;
@@ -202,7 +204,7 @@ public class HitReactionComponent extends GameComponent {
                 break;
             case CollisionParameters.HitType.COLLECT:
                 if (mInventoryUpdate != null && parent.life > 0) {
-                    InventoryComponent attackerInventory = attacker.findByClass(InventoryComponent.class);
+                    InventoryComponent attackerInventory = attacker.getComponent(InventoryComponent.TYPE);
                     if (attackerInventory != null) {
                         attackerInventory.applyUpdate(mInventoryUpdate);
                     }
@@ -340,4 +342,8 @@ public class HitReactionComponent extends GameComponent {
         mAlignDealHitObjectToVictimY = alignToVicitmY;
     }
     
+    public final GameObjectType getSpawnOnDealHitObjectType() {
+        return mSpawnOnDealHitObjectType;
+    }
+    
 }
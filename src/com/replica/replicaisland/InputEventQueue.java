@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+/**
+ * A fixed-size ring buffer of input events, written by a single producer (the UI thread) and read
+ * by a single consumer (the game thread).  Events are stored as primitives in parallel arrays that
+ * are allocated up front, so enqueuing never allocates and never blocks: if the consumer falls so
+ * far behind that the buffer is full, the new event is dropped and counted instead.
+ *
+ * The producer only writes the tail index and the consumer only writes the head index.  Both are
+ * volatile, so an event's fields are visible to the consumer once it sees the tail move past it.
+ */
+public class InputEventQueue extends AllocationGuard {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    public static final int TOUCH_DOWN = 0;
+    public static final int TOUCH_UP = 1;
+    public static final int KEY_DOWN = 2;
+    public static final int KEY_UP = 3;
+    public static final int ROLL = 4;
+    public static final int ORIENTATION = 5;
+    // Releases every key, touch and axis; see InputSystem.releaseAllKeys().
+    public static final int RELEASE_ALL = 6;
+
+    private final int mMask;
+    private final int[] mType;
+    private final int[] mPointerId;
+    private final float[] mX;
+    private final float[] mY;
+    private final float[] mZ;
+    private final int[] mKeyCode;
+    private final long[] mTimestamp;
+
+    private volatile int mHead;
+    private volatile int mTail;
+
+    // Owned by the producer.
+    private int mDroppedEvents;
+
+    // Filled in by next() for the consumer to read.
+    public int type;
+    public int pointerId;
+    public float x;
+    public float y;
+    public float z;
+    public int keyCode;
+    public long timestamp;
+
+    public InputEventQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /** Capacity is rounded up to a power of two. */
+    public InputEventQueue(int capacity) {
+        super();
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mMask = size - 1;
+        mType = new int[size];
+        mPointerId = new int[size];
+        mX = new float[size];
+        mY = new float[size];
+        mZ = new float[size];
+        mKeyCode = new int[size];
+        mTimestamp = new long[size];
+    }
+
+    /**
+     * Called by the producer.  Returns false if the queue was full and the event was dropped.
+     * Timestamps are in nanoseconds from System.nanoTime().
+     */
+    public final boolean enqueue(int eventType, int pointer, float eventX, float eventY,
+            float eventZ, int eventKeyCode) {
+        final int tail = mTail;
+        boolean added = false;
+        if (tail - mHead <= mMask) {
+            final int slot = tail & mMask;
+            mType[slot] = eventType;
+            mPointerId[slot] = pointer;
+            mX[slot] = eventX;
+            mY[slot] = eventY;
+            mZ[slot] = eventZ;
+            mKeyCode[slot] = eventKeyCode;
+            mTimestamp[slot] = System.nanoTime();
+            // Publish the event.
+            mTail = tail + 1;
+            added = true;
+        } else {
+            mDroppedEvents++;
+        }
+        return added;
+    }
+
+    /**
+     * Called by the consumer.  Copies the oldest event into the public fields of this object and
+     * removes it from the queue.  Returns false if the queue is empty.
+     */
+    public final boolean next() {
+        final int head = mHead;
+        boolean found = false;
+        if (head != mTail) {
+            final int slot = head & mMask;
+            type = mType[slot];
+            pointerId = mPointerId[slot];
+            x = mX[slot];
+            y = mY[slot];
+            z = mZ[slot];
+            keyCode = mKeyCode[slot];
+            timestamp = mTimestamp[slot];
+            mHead = head + 1;
+            found = true;
+        }
+        return found;
+    }
+
+    /** Called by the consumer.  Discards every event currently in the queue. */
+    public final void clear() {
+        mHead = mTail;
+    }
+
+    /** Returns the number of events waiting to be consumed. */
+    public final int getCount() {
+        return mTail - mHead;
+    }
+
+    public final int getCapacity() {
+        return mMask + 1;
+    }
+
+    /** Returns the number of events dropped because the queue was full. */
+    public final int getDroppedEvents() {
+        return mDroppedEvents;
+    }
+}
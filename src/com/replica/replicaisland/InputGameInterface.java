@@ -76,6 +76,9 @@ public class InputGameInterface extends BaseObject {
 	@Override
     public void update(float timeDelta, BaseObject parent) {
 		InputSystem input = sSystemRegistry.inputSystem;
+		// Pick up everything that arrived since the last frame, so the whole frame sees the
+		// same input.
+		input.processEvents();
 		final InputButton[] keys = input.getKeyboard().getKeys();
 		final InputXY orientation = input.getOrientationSensor();
 		
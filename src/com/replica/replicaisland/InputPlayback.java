@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Plays back a log written by InputRecorder.  While playback is running, MainLoop replaces each
+ * frame's time delta with the recorded one and InputSystem applies the recorded events for the
+ * frame instead of live input, which is discarded.  Since the random number source is reseeded
+ * from the log when playback starts, the game plays out exactly as it did when it was recorded,
+ * provided playback starts from the same point.  When the log runs out, live input and real frame
+ * times take over again.
+ */
+public class InputPlayback extends BaseObject {
+    private ByteBuffer mLog;
+    private long mSeed;
+    private boolean mPlaying;
+    private int mFrameCount;
+
+    public InputPlayback() {
+        super();
+    }
+
+    @Override
+    public void reset() {
+        mPlaying = false;
+    }
+
+    /** Reads an entire log into memory.  Returns false if the stream isn't an input log. */
+    public boolean load(InputStream stream) {
+        boolean success = false;
+        mLog = null;
+        mPlaying = false;
+        try {
+            ByteBuffer log = Utils.readStream(stream);
+            if (log.remaining() >= 16 && log.getInt() == InputRecorder.MAGIC
+                    && log.getInt() == InputRecorder.VERSION) {
+                mSeed = log.getLong();
+                mLog = log;
+                success = true;
+            }
+        } catch (IOException e) {
+            DebugLog.e("InputPlayback", "Unable to read input log", e);
+        }
+        return success;
+    }
+
+    /** Rewinds to the first frame of the log and reseeds the random number source. */
+    public void start() {
+        if (mLog != null) {
+            // Skip the header.
+            mLog.position(16);
+            mFrameCount = 0;
+            mPlaying = true;
+            Utils.setRandomSeed(mSeed);
+        }
+    }
+
+    public final boolean isPlaying() {
+        return mPlaying;
+    }
+
+    /** Returns true if the log has another frame to play. */
+    public final boolean hasNextFrame() {
+        return mPlaying && mLog.hasRemaining();
+    }
+
+    public final long getSeed() {
+        return mSeed;
+    }
+
+    /** Returns the number of frames played back so far. */
+    public final int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Called at the start of every frame.  Moves to the next recorded frame and returns its time
+     * delta, or returns timeDelta unchanged if playback isn't running.
+     */
+    public float beginFrame(float timeDelta) {
+        float result = timeDelta;
+        if (mPlaying) {
+            final ByteBuffer log = mLog;
+            // Skip any events that were never applied, e.g. because input wasn't processed
+            // during the last frame.
+            while (log.hasRemaining() && log.get(log.position()) != InputRecorder.FRAME) {
+                if (!skipEvent(log)) {
+                    break;
+                }
+            }
+            if (log.remaining() >= 5 && log.get() == InputRecorder.FRAME) {
+                result = log.getFloat();
+                mFrameCount++;
+            } else {
+                mPlaying = false;
+            }
+        }
+        return result;
+    }
+
+    /** Applies the current frame's recorded events to the input system. */
+    public void applyEvents(InputSystem input) {
+        final ByteBuffer log = mLog;
+        try {
+            while (mPlaying && log.hasRemaining()
+                    && log.get(log.position()) != InputRecorder.FRAME) {
+                final int type = log.get();
+                switch (type) {
+                    case InputEventQueue.TOUCH_DOWN:
+                    case InputEventQueue.TOUCH_UP:
+                        final int pointerId = log.get();
+                        final float touchX = log.getFloat();
+                        final float touchY = log.getFloat();
+                        input.applyEvent(type, pointerId, touchX, touchY, 0.0f, 0);
+                        break;
+                    case InputEventQueue.KEY_DOWN:
+                    case InputEventQueue.KEY_UP:
+                        input.applyEvent(type, 0, 0.0f, 0.0f, 0.0f, log.getShort());
+                        break;
+                    case InputEventQueue.ROLL:
+                        final float rollX = log.getFloat();
+                        final float rollY = log.getFloat();
+                        input.applyEvent(type, 0, rollX, rollY, 0.0f, 0);
+                        break;
+                    case InputEventQueue.ORIENTATION:
+                        final float x = log.getFloat();
+                        final float y = log.getFloat();
+                        final float z = log.getFloat();
+                        input.applyEvent(type, 0, x, y, z, 0);
+                        break;
+                    case InputEventQueue.RELEASE_ALL:
+                        input.applyEvent(type, 0, 0.0f, 0.0f, 0.0f, 0);
+                        break;
+                    default:
+                        DebugLog.e("InputPlayback", "Unknown event type in input log: " + type);
+                        mPlaying = false;
+                        break;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            // The log was cut off in the middle of an event.
+            mPlaying = false;
+        }
+    }
+
+    private boolean skipEvent(ByteBuffer log) {
+        final int type = log.get();
+        int size = 0;
+        switch (type) {
+            case InputEventQueue.TOUCH_DOWN:
+            case InputEventQueue.TOUCH_UP:
+                size = 9;
+                break;
+            case InputEventQueue.KEY_DOWN:
+            case InputEventQueue.KEY_UP:
+                size = 2;
+                break;
+            case InputEventQueue.ROLL:
+                size = 8;
+                break;
+            case InputEventQueue.ORIENTATION:
+                size = 12;
+                break;
+            case InputEventQueue.RELEASE_ALL:
+                size = 0;
+                break;
+            default:
+                size = -1;
+                break;
+        }
+        boolean skipped = false;
+        if (size >= 0 && log.remaining() >= size) {
+            log.position(log.position() + size);
+            skipped = true;
+        } else {
+            mPlaying = false;
+        }
+        return skipped;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a log of every input event the game applies, along with the length of every frame, so
+ * that a play session can be reproduced later with InputPlayback.  The random number source is
+ * seeded when recording starts and the seed is stored in the log, so a session played back from
+ * the same starting point (e.g. right after the same level has loaded) unfolds identically.
+ *
+ * The log is a binary stream (big-endian, as written by DataOutputStream):
+ *
+ *   int MAGIC, int VERSION, long random seed
+ *   then, for each frame:
+ *     byte FRAME, float frame delta in seconds
+ *     followed by the events applied during that frame, each a type byte (one of the
+ *     InputEventQueue types) and:
+ *       TOUCH_DOWN, TOUCH_UP:  byte pointer id, float x, float y
+ *       KEY_DOWN, KEY_UP:      short key code
+ *       ROLL:                  float x, float y
+ *       ORIENTATION:           float x, float y, float z
+ *       RELEASE_ALL:           nothing
+ *
+ * Once installed in the system registry the recorder is driven by MainLoop (frame deltas) and
+ * InputSystem (events).  Writing is buffered and doesn't allocate.  If a write fails, recording
+ * stops and the error is logged.
+ */
+public class InputRecorder extends BaseObject {
+    public static final int MAGIC = 0x52494C47; // "RILG"
+    public static final int VERSION = 1;
+    public static final int FRAME = 0x7F;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private DataOutputStream mOutput;
+    private int mFrameCount;
+    private int mEventCount;
+
+    public InputRecorder() {
+        super();
+    }
+
+    @Override
+    public void reset() {
+        stop();
+    }
+
+    /**
+     * Starts writing a new log to the stream and seeds the random number source.  Returns false
+     * if the header couldn't be written.
+     */
+    public boolean start(OutputStream stream, long seed) {
+        stop();
+        mOutput = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+        mFrameCount = 0;
+        mEventCount = 0;
+        boolean success = false;
+        try {
+            mOutput.writeInt(MAGIC);
+            mOutput.writeInt(VERSION);
+            mOutput.writeLong(seed);
+            Utils.setRandomSeed(seed);
+            success = true;
+        } catch (IOException e) {
+            fail(e);
+        }
+        return success;
+    }
+
+    /** Flushes and closes the log. */
+    public void stop() {
+        if (mOutput != null) {
+            try {
+                mOutput.close();
+            } catch (IOException e) {
+                DebugLog.e("InputRecorder", "Unable to close input log", e);
+            }
+            mOutput = null;
+        }
+    }
+
+    public final boolean isRecording() {
+        return mOutput != null;
+    }
+
+    /** Called at the start of every frame with the length of the frame. */
+    public void beginFrame(float timeDelta) {
+        if (mOutput != null) {
+            try {
+                mOutput.writeByte(FRAME);
+                mOutput.writeFloat(timeDelta);
+                mFrameCount++;
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /** Called for every input event as it is applied. */
+    public void recordEvent(int type, int pointerId, float x, float y, float z, int keyCode) {
+        if (mOutput != null) {
+            try {
+                mOutput.writeByte(type);
+                switch (type) {
+                    case InputEventQueue.TOUCH_DOWN:
+                    case InputEventQueue.TOUCH_UP:
+                        mOutput.writeByte(pointerId);
+                        mOutput.writeFloat(x);
+                        mOutput.writeFloat(y);
+                        break;
+                    case InputEventQueue.KEY_DOWN:
+                    case InputEventQueue.KEY_UP:
+                        mOutput.writeShort(keyCode);
+                        break;
+                    case InputEventQueue.ROLL:
+                        mOutput.writeFloat(x);
+                        mOutput.writeFloat(y);
+                        break;
+                    case InputEventQueue.ORIENTATION:
+                        mOutput.writeFloat(x);
+                        mOutput.writeFloat(y);
+                        mOutput.writeFloat(z);
+                        break;
+                    case InputEventQueue.RELEASE_ALL:
+                        break;
+                }
+                mEventCount++;
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    public final int getFrameCount() {
+        return mFrameCount;
+    }
+
+    public final int getEventCount() {
+        return mEventCount;
+    }
+
+    private void fail(IOException e) {
+        DebugLog.e("InputRecorder", "Input recording stopped", e);
+        try {
+            mOutput.close();
+        } catch (IOException closeException) {
+            // Already failing; nothing more to do.
+        }
+        mOutput = null;
+    }
+}
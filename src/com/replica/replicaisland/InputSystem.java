@@ -19,6 +19,10 @@ package com.replica.replicaisland;
 /** 
  * Manages input from a roller wheel and touch screen.  Reduces frequent UI messages to
  * an average direction over a short period of time.
+ * 
+ * Input events arrive on the UI thread, which only places them in an event queue.  The game
+ * thread applies queued events to the input state once per frame by calling processEvents(), so
+ * the state doesn't change in the middle of a frame and the UI thread never waits on the game.
  */
 public class InputSystem extends BaseObject {
 	private InputTouchScreen mTouchScreen = new InputTouchScreen();
@@ -28,6 +32,8 @@ public class InputSystem extends BaseObject {
     private int mScreenRotation = 0;
     private float mOrientationInput[] = new float[3];
     private float mOrientationOutput[] = new float[3];
+    private InputEventQueue mEventQueue = new InputEventQueue();
+    private boolean mReleaseAllPending;
                
     public InputSystem() {
         super();
@@ -36,18 +42,103 @@ public class InputSystem extends BaseObject {
     
     @Override
     public void reset() {
+    	mEventQueue.clear();
+    	mReleaseAllPending = false;
     	mTrackball.reset();
     	mTouchScreen.reset();
     	mKeyboard.resetAll();
     	mOrientationSensor.reset();
     }
 
+    // These may be called from any one thread (normally the UI thread).  Events take effect the
+    // next time processEvents() is called.
     public void roll(float x, float y) {
+    	mEventQueue.enqueue(InputEventQueue.ROLL, 0, x, y, 0.0f, 0);
+    }
+    
+    public void touchDown(int index, float x, float y) {
+    	mEventQueue.enqueue(InputEventQueue.TOUCH_DOWN, index, x, y, 0.0f, 0);
+    }
+    
+    public void touchUp(int index, float x, float y) {
+    	mEventQueue.enqueue(InputEventQueue.TOUCH_UP, index, x, y, 0.0f, 0);
+    }
+    
+    public void setOrientation(float x, float y, float z) {
+    	mEventQueue.enqueue(InputEventQueue.ORIENTATION, 0, x, y, z, 0);
+    }
+    
+    public void keyDown(int keycode) {
+    	mEventQueue.enqueue(InputEventQueue.KEY_DOWN, 0, 0.0f, 0.0f, 0.0f, keycode);
+    }
+    
+    public void keyUp(int keycode) {
+    	mEventQueue.enqueue(InputEventQueue.KEY_UP, 0, 0.0f, 0.0f, 0.0f, keycode);
+    }
+    
+    /** 
+     * Applies every queued input event to the input state, in the order the events arrived.  
+     * Called by the game thread at the start of each frame.  While an input log is being played
+     * back, queued events are discarded and the logged events for this frame are applied instead.
+     */
+    public void processEvents() {
+    	final InputEventQueue queue = mEventQueue;
+    	final InputPlayback playback = sSystemRegistry.inputPlayback;
+    	if (playback != null && playback.isPlaying()) {
+    		queue.clear();
+    		mReleaseAllPending = false;
+    		playback.applyEvents(this);
+    	} else {
+    		if (mReleaseAllPending) {
+    			mReleaseAllPending = false;
+    			applyEvent(InputEventQueue.RELEASE_ALL, 0, 0.0f, 0.0f, 0.0f, 0);
+    		}
+	    	while (queue.next()) {
+	    		applyEvent(queue.type, queue.pointerId, queue.x, queue.y, queue.z, queue.keyCode);
+	    	}
+    	}
+    }
+    
+    /** 
+     * Applies a single input event immediately.  Must only be called from the game thread; other
+     * threads should use the methods above.
+     */
+    public void applyEvent(int type, int pointerId, float x, float y, float z, int keyCode) {
+    	final InputRecorder recorder = sSystemRegistry.inputRecorder;
+    	if (recorder != null) {
+    		recorder.recordEvent(type, pointerId, x, y, z, keyCode);
+    	}
+		switch (type) {
+			case InputEventQueue.TOUCH_DOWN:
+				applyTouchDown(pointerId, x, y);
+				break;
+			case InputEventQueue.TOUCH_UP:
+				applyTouchUp(pointerId, x, y);
+				break;
+			case InputEventQueue.KEY_DOWN:
+				applyKeyDown(keyCode);
+				break;
+			case InputEventQueue.KEY_UP:
+				applyKeyUp(keyCode);
+				break;
+			case InputEventQueue.ROLL:
+				applyRoll(x, y);
+				break;
+			case InputEventQueue.ORIENTATION:
+				applyOrientation(x, y, z);
+				break;
+			case InputEventQueue.RELEASE_ALL:
+				applyReleaseAll();
+				break;
+		}
+    }
+    
+    private void applyRoll(float x, float y) {
         TimeSystem time = sSystemRegistry.timeSystem;
     	mTrackball.press(time.getGameTime(), mTrackball.getX() + x, mTrackball.getY() + y);
     }
     
-    public void touchDown(int index, float x, float y) {
+    private void applyTouchDown(int index, float x, float y) {
 	   ContextParameters params = sSystemRegistry.contextParameters;
 	   TimeSystem time = sSystemRegistry.timeSystem;
 	   // Change the origin of the touch location from the top-left to the bottom-left to match
@@ -56,13 +147,13 @@ public class InputSystem extends BaseObject {
 	   mTouchScreen.press(index, time.getGameTime(), x, params.gameHeight - y);   
     }
     
-    public void touchUp(int index, float x, float y) {
+    private void applyTouchUp(int index, float x, float y) {
     	// TODO: record up location?
     	mTouchScreen.release(index);
     }
     
     
-    public void setOrientation(float x, float y, float z) {
+    private void applyOrientation(float x, float y, float z) {
     	// The order of orientation axes changes depending on the rotation of the screen.
     	// Some devices call landscape "ROTAION_90" (e.g. phones), while others call it
     	// "ROTATION_0" (e.g. tablets).  So we need to adjust the axes from canonical
@@ -83,17 +174,28 @@ public class InputSystem extends BaseObject {
         
     }
     
-    public void keyDown(int keycode) {
+    private void applyKeyDown(int keycode) {
     	TimeSystem time = sSystemRegistry.timeSystem;
         final float gameTime = time.getGameTime();
         mKeyboard.press(gameTime, keycode);
     }
     
-    public void keyUp(int keycode) {
+    private void applyKeyUp(int keycode) {
     	mKeyboard.release(keycode);
     }
     
+    /** 
+     * Discards queued events and releases all input at the start of the next frame, so that 
+     * nothing is held down when the game resumes.  Called by the game thread when it pauses.  
+     * The release goes through applyEvent() so that it is recorded in the input log, and at the 
+     * point in the frame where playback will apply it.
+     */
     public void releaseAllKeys() {
+    	mEventQueue.clear();
+    	mReleaseAllPending = true;
+    }
+    
+    private void applyReleaseAll() {
     	mTrackball.releaseX();
     	mTrackball.releaseY();
     	mTouchScreen.resetAll();
@@ -117,6 +219,10 @@ public class InputSystem extends BaseObject {
 		return mKeyboard;
 	}
 	
+	public InputEventQueue getEventQueue() {
+		return mEventQueue;
+	}
+	
 	public void setScreenRotation(int rotation) {
 		mScreenRotation = rotation;
 	}
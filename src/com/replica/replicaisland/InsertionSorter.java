@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+ 
+package com.replica.replicaisland;
+
+import java.util.Comparator;
+
+/**
+ * A stable insertion sort.  Its running time is proportional to the number of elements plus the
+ * distance each element has to move, so it is the sorter to use for arrays that are already
+ * nearly sorted, such as a sorted list in which a few objects have moved since the last sort.
+ * Unlike StandardSorter it never allocates.
+ */
+public class InsertionSorter<Type> extends Sorter<Type> {
+
+    @Override
+    public void sort(Type[] array, int count, Comparator<Type> comparator) {
+        for (int i = 1; i < count; i++) {
+            final Type object = array[i];
+            int j = i - 1;
+            if (comparator.compare(array[j], object) > 0) {
+                do {
+                    array[j + 1] = array[j];
+                    j--;
+                } while (j >= 0 && comparator.compare(array[j], object) > 0);
+                array[j + 1] = object;
+            }
+        }
+    }
+}
@@ -17,6 +17,8 @@
 package com.replica.replicaisland;
 
 public class InventoryComponent extends GameComponent {
+    public static final ComponentType<InventoryComponent> TYPE = ComponentType.get(InventoryComponent.class);
+    
     private UpdateRecord mInventory;
     private boolean mInventoryChanged;
     
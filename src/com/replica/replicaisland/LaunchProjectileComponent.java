@@ -24,6 +24,8 @@ import com.replica.replicaisland.GameObject.ActionType;
  * of game object.
  */
 public class LaunchProjectileComponent extends GameComponent {
+    public static final ComponentType<LaunchProjectileComponent> TYPE = ComponentType.get(LaunchProjectileComponent.class);
+    
     private GameObjectFactory.GameObjectType mObjectTypeToSpawn;
     private float mOffsetX;
     private float mOffsetY;
@@ -145,53 +147,75 @@ public class LaunchProjectileComponent extends GameComponent {
             
             final float x = parentObject.getPosition().x + offsetX;
             final float y = parentObject.getPosition().y + offsetY;
-            GameObject object = factory.spawn(mObjectTypeToSpawn, x, y, flip);
-            if (object != null) {
-	            mWorkingVector.set(1.0f, 1.0f);
-	            if (mThetaError > 0.0f) {
-	                final float angle = (float)(Math.random() * mThetaError * Math.PI * 2.0f);
-	                mWorkingVector.x = (float)Math.sin(angle);
-	                mWorkingVector.y = (float)Math.cos(angle);
-	                if (Utils.close(mWorkingVector.length2(), 0.0f)) {
-	                    mWorkingVector.set(1.0f, 1.0f);
-	                }
-	            }
-	            mWorkingVector.x *= flip ? -mVelocityX : mVelocityX;
-	            mWorkingVector.y *= mVelocityY;  
-	            
-	            object.getVelocity().set(mWorkingVector);
-	            object.getTargetVelocity().set(mWorkingVector);
-	            // Center the projectile on the spawn point.
-	            object.getPosition().x -= object.width / 2.0f;
-	            object.getPosition().y -= object.height / 2.0f;
-	            
-	            
-	            if (mTrackProjectiles) {
-	                object.commitUpdates();
-	                LifetimeComponent projectileLife = object.findByClass(LifetimeComponent.class);
-	                if (projectileLife != null) {
-	                    projectileLife.setTrackingSpawner(this);
-	                    mTrackedProjectileCount++;
-	                }
-	            }
-	            manager.add(object);
-	            
-	            if (mShootSound != null) {
-	            	SoundSystem sound = sSystemRegistry.soundSystem;
-	            	if (sound != null) {
-	            		sound.play(mShootSound, false, SoundSystem.PRIORITY_NORMAL);
-	            	}
-	            }
+            if (factory.isParticleEffect(mObjectTypeToSpawn)) {
+                // Pure effects are emitted as particles, which can't be tracked.
+                setLaunchVelocity(flip);
+                if (factory.emitParticleEffect(mObjectTypeToSpawn, x, y, mWorkingVector.x, 
+                        mWorkingVector.y, flip, true)) {
+                    playShootSound();
+                }
+            } else {
+                GameObject object = factory.spawn(mObjectTypeToSpawn, x, y, flip);
+                if (object != null) {
+                    setLaunchVelocity(flip);
+                    
+                    object.getVelocity().set(mWorkingVector);
+                    object.getTargetVelocity().set(mWorkingVector);
+                    // Center the projectile on the spawn point.
+                    object.getPosition().x -= object.width / 2.0f;
+                    object.getPosition().y -= object.height / 2.0f;
+                    
+                    
+                    if (mTrackProjectiles) {
+                        object.commitUpdates();
+                        LifetimeComponent projectileLife = object.getComponent(LifetimeComponent.TYPE);
+                        if (projectileLife != null) {
+                            projectileLife.setTrackingSpawner(this);
+                            mTrackedProjectileCount++;
+                        }
+                    }
+                    manager.add(object);
+                    
+                    playShootSound();
+                }
             }
         }
         
         
     }
+    
+    // Puts the launch velocity, including any random spread, in mWorkingVector.
+    private void setLaunchVelocity(boolean flip) {
+        mWorkingVector.set(1.0f, 1.0f);
+        if (mThetaError > 0.0f) {
+            final float angle = (float)(Utils.random() * mThetaError * Math.PI * 2.0f);
+            mWorkingVector.x = (float)Math.sin(angle);
+            mWorkingVector.y = (float)Math.cos(angle);
+            if (Utils.close(mWorkingVector.length2(), 0.0f)) {
+                mWorkingVector.set(1.0f, 1.0f);
+            }
+        }
+        mWorkingVector.x *= flip ? -mVelocityX : mVelocityX;
+        mWorkingVector.y *= mVelocityY;  
+    }
+    
+    private void playShootSound() {
+        if (mShootSound != null) {
+            SoundSystem sound = sSystemRegistry.soundSystem;
+            if (sound != null) {
+                sound.play(mShootSound, false, SoundSystem.PRIORITY_NORMAL);
+            }
+        }
+    }
 
     public final void setObjectTypeToSpawn(GameObjectFactory.GameObjectType objectTypeToSpawn) {
         mObjectTypeToSpawn = objectTypeToSpawn;
     }
 
+    public final GameObjectFactory.GameObjectType getObjectTypeToSpawn() {
+        return mObjectTypeToSpawn;
+    }
+
     public final void setOffsetX(float offsetX) {
         mOffsetX = offsetX;
     }
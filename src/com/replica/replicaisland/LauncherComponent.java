@@ -148,6 +148,10 @@ public class LauncherComponent extends GameComponent {
     	mLaunchEffectOffsetY = offsetY;
     }
     
+    public GameObjectFactory.GameObjectType getLaunchEffect() {
+    	return mLaunchEffect;
+    }
+    
     public void setLaunchSound(Sound sound) {
     	mLaunchSound = sound;
     }
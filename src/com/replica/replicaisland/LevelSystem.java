@@ -16,10 +16,13 @@
 
 package com.replica.replicaisland;
 
-import android.content.res.AssetManager;
-
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 
 /**
  * Manages information about the current level, including setup, deserialization, and tear-down.
@@ -32,15 +35,15 @@ public class LevelSystem extends BaseObject {
     public int mTileHeight;
     public GameObject mBackgroundObject;
     public ObjectManager mRoot;
-    private byte[] mWorkspaceBytes;
     private TiledWorld mSpawnLocations;
     private GameFlowEvent mGameFlowEvent;
     private int mAttempts;
     private LevelTree.Level mCurrentLevel;
+    private int mPrewarmedTypeCount;
+    private float mPrewarmTime;
     
     public LevelSystem() {
         super();
-        mWorkspaceBytes = new byte[4];
         mGameFlowEvent = new GameFlowEvent();
         reset();
     }
@@ -57,6 +60,8 @@ public class LevelSystem extends BaseObject {
         mSpawnLocations = null;
         mAttempts = 0;
         mCurrentLevel = null;
+        mPrewarmedTypeCount = 0;
+        mPrewarmTime = 0.0f;
     }
     
     public float getLevelWidth() {
@@ -90,101 +95,140 @@ public class LevelSystem extends BaseObject {
     /**
      * Loads a level from a binary file.  The file consists of several layers, including background
      * tile layers and at most one collision layer.  Each layer is used to bootstrap related systems
-     * and provide them with layer data.
+     * and provide them with layer data.  The entire file is read into memory with a single bulk
+     * read and then parsed in place; see loadLevel(LevelTree.Level, ByteBuffer, ObjectManager).
      * @param stream  The input stream for the level file resource.
-     * @param tiles   A tile library to use when constructing tiled background layers.
-     * @param background  An object to assign background layer rendering components to.
-     * @return
+     * @param root  The object manager to which the level's background object is added.
+     * @return true if the level was loaded.
      */
     public boolean loadLevel(LevelTree.Level level, InputStream stream, ObjectManager root) {
         boolean success = false;
-        mCurrentLevel = level;
-        AssetManager.AssetInputStream byteStream = (AssetManager.AssetInputStream) stream;
-        int signature;
         try {
-            signature = (byte)byteStream.read();
-            if (signature == 96) {
-                final int layerCount = (byte)byteStream.read();
-                final int backgroundIndex = (byte)byteStream.read();
-                
-                mRoot = root;
-                mTileWidth = 32;
-                mTileHeight = 32;
-                
-                ContextParameters params = sSystemRegistry.contextParameters;
-                int currentPriority = SortConstants.BACKGROUND_START + 1;
-                for (int x = 0; x < layerCount; x++) {
-                    final int type = (byte)byteStream.read();
-                    final int tileIndex = (byte)byteStream.read();
-                    byteStream.read(mWorkspaceBytes, 0, 4);
-                    final float scrollSpeed = Utils.byteArrayToFloat(mWorkspaceBytes);
+            success = loadLevel(level, Utils.readStream(stream), root);
+        } catch (IOException e) {
+            //TODO: figure out the best way to deal with this.  Assert?
+        }
+        return success;
+    }
+    
+    /**
+     * Loads a level from a buffer containing a level file, starting at the buffer's current 
+     * position.  Layers are not copied out of the buffer: if it has a backing array (as buffers 
+     * returned by readLevelFile() do), every tile layer refers directly to its region of that 
+     * array, so the buffer must not be reused while the level is loaded.  Buffers without a 
+     * backing array, such as memory-mapped files, are also accepted but each layer is copied.
+     * @param buffer  A buffer containing the level file.
+     * @param root  The object manager to which the level's background object is added.
+     * @return true if the level was loaded.
+     */
+    public boolean loadLevel(LevelTree.Level level, ByteBuffer buffer, ObjectManager root) {
+        boolean success = false;
+        mCurrentLevel = level;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() >= 3 && buffer.get() == 96) {
+            final int layerCount = buffer.get();
+            final int backgroundIndex = buffer.get();
+            
+            mRoot = root;
+            mTileWidth = 32;
+            mTileHeight = 32;
+            
+            ContextParameters params = sSystemRegistry.contextParameters;
+            LevelBuilder builder = sSystemRegistry.levelBuilder;
+            int currentPriority = SortConstants.BACKGROUND_START + 1;
+            for (int x = 0; x < layerCount && buffer.remaining() >= 6; x++) {
+                final int type = buffer.get();
+                final int tileIndex = buffer.get();
+                final float scrollSpeed = buffer.getFloat();
 
-                    // TODO: use a pool here?  Seems pointless.
-                    TiledWorld world = new TiledWorld(byteStream);
+                // TODO: use a pool here?  Seems pointless.
+                TiledWorld world = new TiledWorld(buffer);
+                
+                if (type == 0) { // it's a background layer
+                    assert mWidthInTiles != 0;
+                    assert mTileWidth != 0;
                     
-                    if (type == 0) { // it's a background layer
-                        assert mWidthInTiles != 0;
-                        assert mTileWidth != 0;
-                        
-                        // We require a collision layer to set up the tile sizes before we load.
-                        // TODO: this really sucks.  there's no reason each layer can't have its
-                        // own tile widths and heights.  Refactor this crap.
-                        if (mWidthInTiles > 0 && mTileWidth > 0) {
-                        
-                            LevelBuilder builder = sSystemRegistry.levelBuilder;
-                             
-                            if (mBackgroundObject == null) {
-                                mBackgroundObject = 
-                                    builder.buildBackground(
-                                    		backgroundIndex, 
-                                    		mWidthInTiles * mTileWidth,
-                                    		mHeightInTiles * mTileHeight);
-                                root.add(mBackgroundObject);
-                            }
-                            
-                            
-                            builder.addTileMapLayer(mBackgroundObject, currentPriority, 
-                                    scrollSpeed, params.gameWidth, params.gameHeight, 
-                                    mTileWidth, mTileHeight, world, tileIndex);
-                            
-                            
-                            currentPriority++;
+                    // We require a collision layer to set up the tile sizes before we load.
+                    // TODO: this really sucks.  there's no reason each layer can't have its
+                    // own tile widths and heights.  Refactor this crap.
+                    if (mWidthInTiles > 0 && mTileWidth > 0 && builder != null) {
+                         
+                        if (mBackgroundObject == null) {
+                            mBackgroundObject = 
+                                builder.buildBackground(
+                                		backgroundIndex, 
+                                		mWidthInTiles * mTileWidth,
+                                		mHeightInTiles * mTileHeight);
+                            root.add(mBackgroundObject);
                         }
-
-                    } else if (type == 1) { // collision
-                        // Collision always defines the world boundaries.
-                        mWidthInTiles = world.getWidth();
-                        mHeightInTiles = world.getHeight();
                         
                         
-                        CollisionSystem collision = sSystemRegistry.collisionSystem;
-                        if (collision != null) {
-                            collision.initialize(world, mTileWidth, mTileHeight);
-                        }
-                    } else if (type == 2) { // objects
-                        mSpawnLocations = world;
-                        spawnObjects();
-                    } else if (type == 3) { // hot spots
-                        HotSpotSystem hotSpots = sSystemRegistry.hotSpotSystem;
-                        if (hotSpots != null) {
-                            hotSpots.setWorld(world);
-                        }
+                        builder.addTileMapLayer(mBackgroundObject, currentPriority, 
+                                scrollSpeed, params.gameWidth, params.gameHeight, 
+                                mTileWidth, mTileHeight, world, tileIndex);
+                        
                         
+                        currentPriority++;
                     }
-                }
-                
-                // hack!
-                sSystemRegistry.levelBuilder.promoteForegroundLayer(mBackgroundObject);
 
+                } else if (type == 1) { // collision
+                    // Collision always defines the world boundaries.
+                    mWidthInTiles = world.getWidth();
+                    mHeightInTiles = world.getHeight();
+                    
+                    
+                    CollisionSystem collision = sSystemRegistry.collisionSystem;
+                    if (collision != null) {
+                        collision.initialize(world, mTileWidth, mTileHeight);
+                    }
+                } else if (type == 2) { // objects
+                    mSpawnLocations = world;
+                    prewarmObjects();
+                    spawnObjects();
+                } else if (type == 3) { // hot spots
+                    HotSpotSystem hotSpots = sSystemRegistry.hotSpotSystem;
+                    if (hotSpots != null) {
+                        hotSpots.setWorld(world);
+                    }
+                    
+                }
             }
-
-        } catch (IOException e) {
-            //TODO: figure out the best way to deal with this.  Assert?
+            
+            // hack!
+            if (builder != null) {
+                builder.promoteForegroundLayer(mBackgroundObject);
+            }
+            
+            success = true;
         }
 
         return success;
     }
     
+    /** 
+     * Reads a level file from the file system into a buffer suitable for loadLevel().  This 
+     * allows levels to be loaded outside of an Android package, e.g. by tools running on a desktop
+     * JVM.
+     */
+    public static ByteBuffer readLevelFile(File file) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            final FileChannel channel = stream.getChannel();
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Level file too large: " + file);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int)size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading until the buffer is full or the file ends.
+            }
+            buffer.flip();
+            return buffer;
+        } finally {
+            stream.close();
+        }
+    }
+    
     public void spawnObjects() {
         GameObjectFactory factory = sSystemRegistry.gameObjectFactory;
         if (factory != null && mSpawnLocations != null) {
@@ -194,6 +238,31 @@ public class LevelSystem extends BaseObject {
         }
     }
 
+    /** 
+     * Builds everything the level's objects need before the first frame, so that textures are
+     * loaded with the level and nothing is built for the first time during play.
+     */
+    private void prewarmObjects() {
+        GameObjectFactory factory = sSystemRegistry.gameObjectFactory;
+        if (factory != null && mSpawnLocations != null) {
+            final long start = System.nanoTime();
+            mPrewarmedTypeCount = factory.prewarm(mSpawnLocations);
+            mPrewarmTime = (System.nanoTime() - start) / 1000000.0f;
+            DebugLog.d("LevelSystem", "Pre-warmed " + mPrewarmedTypeCount + " object types in " 
+                    + mPrewarmTime + "ms");
+        }
+    }
+    
+    /** Returns the number of object types prepared when the level was loaded. */
+    public int getPrewarmedTypeCount() {
+        return mPrewarmedTypeCount;
+    }
+    
+    /** Returns how long it took to prepare the level's object types, in milliseconds. */
+    public float getPrewarmTime() {
+        return mPrewarmTime;
+    }
+    
     public void incrementAttemptsCount() {
         mAttempts++;
     }
@@ -23,6 +23,8 @@ import com.replica.replicaisland.SoundSystem.Sound;
  * meet other configurable criteria.
  */
 public class LifetimeComponent extends GameComponent {
+    public static final ComponentType<LifetimeComponent> TYPE = ComponentType.get(LifetimeComponent.class);
+    
     private boolean mDieWhenInvisible;
     private float mTimeUntilDeath;
     private GameObjectFactory.GameObjectType mSpawnOnDeathType;
@@ -69,6 +71,10 @@ public class LifetimeComponent extends GameComponent {
         mSpawnOnDeathType = type;
     }
     
+    public GameObjectFactory.GameObjectType getObjectToSpawnOnDeath() {
+        return mSpawnOnDeathType;
+    }
+    
     public void setIncrementEventCounter(int event) {
     	mIncrementEventCounter = true;
     	mEventCounter = event;
@@ -130,7 +136,7 @@ public class LifetimeComponent extends GameComponent {
         if (mReleaseGhostOnDeath) {
             // TODO: This is sort of a hack.  Find a better way to do this without introducing a
             // dependency between these two.  Generic on-death event or something.
-            GhostComponent ghost = parentObject.findByClass(GhostComponent.class);
+            GhostComponent ghost = parentObject.getComponent(GhostComponent.TYPE);
             if (ghost != null) {
                 ghost.releaseControl(parentObject);
             }
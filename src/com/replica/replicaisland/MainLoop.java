@@ -32,6 +32,15 @@ public class MainLoop extends ObjectManager {
 
     @Override
     public void update(float timeDelta, BaseObject parent) {
+        // Input playback replays recorded frame times as well as recorded input.
+        final InputPlayback playback = sSystemRegistry.inputPlayback;
+        if (playback != null) {
+            timeDelta = playback.beginFrame(timeDelta);
+        }
+        final InputRecorder recorder = sSystemRegistry.inputRecorder;
+        if (recorder != null) {
+            recorder.beginFrame(timeDelta);
+        }
         mTimeSystem.update(timeDelta, parent);
         final float newTimeDelta = mTimeSystem.getFrameDelta();  // The time system may warp time.
         super.update(newTimeDelta, parent);
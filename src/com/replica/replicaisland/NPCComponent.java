@@ -391,7 +391,7 @@ public class NPCComponent extends GameComponent {
         	}
             break;
         case HotSpotSystem.HotSpotType.NPC_GO_RANDOM:
-        	parentObject.getTargetVelocity().x = mHorizontalImpulse * (Math.random() > 0.5f ? -1.0f : 1.0f);
+        	parentObject.getTargetVelocity().x = mHorizontalImpulse * (Utils.random() > 0.5f ? -1.0f : 1.0f);
         	if (mFlying) {
         		parentObject.getVelocity().y = 0.0f;
         		parentObject.getTargetVelocity().y = 0.0f;
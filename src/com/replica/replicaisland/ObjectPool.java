@@ -21,10 +21,21 @@ package com.replica.replicaisland;
  * Code that requests objects from the pool should return them to the pool when they are finished.
  * This class is abstract; derivations need to implement the fill() function to fill the pool, and
  * may wish to override release() to clear state on objects as they are returned to the pool.
+ * Pools keep statistics about how they are used (the most objects allocated at once, how often
+ * the pool ran dry, and how many allocations and releases were made) so that their sizes can be
+ * checked against real demand; see dumpStatistics() and resizeToFit().  A pool may also be made
+ * growable, in which case running dry doubles its size rather than failing the allocation.
  */
 public abstract class ObjectPool extends BaseObject {
     private FixedSizeArray<Object> mAvailable;
     private int mSize;
+    private boolean mGrowable;
+    
+    private int mPeakAllocated;
+    private int mExhaustedCount;
+    private int mAllocationCount;
+    private int mReleaseCount;
+    private float mStatisticsStartTime;
 
     private static final int DEFAULT_SIZE = 32;
     
@@ -45,6 +56,22 @@ public abstract class ObjectPool extends BaseObject {
     /** Allocates an object from the pool */
     protected Object allocate() {
         Object result = mAvailable.removeLast();
+        if (result != null) {
+            mAllocationCount++;
+            final int allocated = mSize - mAvailable.getCount();
+            if (allocated > mPeakAllocated) {
+                mPeakAllocated = allocated;
+            }
+        } else {
+            if (mExhaustedCount == 0) {
+                DebugLog.w("ObjectPool", "Object pool " + getName() + " exhausted!");
+            }
+            mExhaustedCount++;
+            if (mGrowable) {
+                grow();
+                result = allocate();
+            }
+        }
         assert result != null : "Object pool of type " + this.getClass().getSimpleName()
                                 + " exhausted!!";
         return result;
@@ -52,6 +79,7 @@ public abstract class ObjectPool extends BaseObject {
 
     /** Returns an object to the pool. */
     public void release(Object entry) {
+        mReleaseCount++;
         mAvailable.add(entry);
     }
 
@@ -60,6 +88,99 @@ public abstract class ObjectPool extends BaseObject {
         return mAvailable.getCapacity() - mAvailable.getCount();
     }
     
+    /** Returns the most objects that have been allocated at once since resetStatistics(). */
+    public int getPeakAllocatedCount() {
+        return mPeakAllocated;
+    }
+    
+    /** Returns the number of allocations that failed because the pool was empty. */
+    public int getExhaustedCount() {
+        return mExhaustedCount;
+    }
+    
+    public int getAllocationCount() {
+        return mAllocationCount;
+    }
+    
+    public int getReleaseCount() {
+        return mReleaseCount;
+    }
+    
+    /** Starts a new statistics period, e.g. at the start of a level. */
+    public void resetStatistics() {
+        mPeakAllocated = getAllocatedCount();
+        mExhaustedCount = 0;
+        mAllocationCount = 0;
+        mReleaseCount = 0;
+        final TimeSystem time = sSystemRegistry.timeSystem;
+        mStatisticsStartTime = time != null ? time.getGameTime() : 0.0f;
+    }
+    
+    /**
+     * Appends a line describing this pool's size and use since resetStatistics() to the passed
+     * builder: allocated now, peak, size, the number of times it ran dry, and allocations and
+     * releases per second of game time.
+     */
+    public void dumpStatistics(StringBuilder output) {
+        final TimeSystem time = sSystemRegistry.timeSystem;
+        final float elapsed = time != null ? time.getGameTime() - mStatisticsStartTime : 0.0f;
+        output.append("  ").append(getName());
+        output.append(": ").append(getAllocatedCount());
+        output.append(" allocated, peak ").append(mPeakAllocated);
+        output.append(" of ").append(mSize);
+        if (mExhaustedCount > 0) {
+            output.append(", EXHAUSTED ").append(mExhaustedCount).append(" times");
+        }
+        if (elapsed > 0.0f) {
+            output.append(", ").append((int)(mAllocationCount / elapsed));
+            output.append(" allocs/s, ").append((int)(mReleaseCount / elapsed));
+            output.append(" releases/s");
+        }
+        output.append('\n');
+    }
+    
+    /** 
+     * Resizes the pool to match the demand recorded since resetStatistics(), leaving half again 
+     * the peak as headroom.  Pools only shrink if they are more than twice as big as they need to
+     * be.  The next level may need more than the last one did, so only growable pools should be
+     * fitted this way.  Resizing allocates, and is only possible while no objects are allocated 
+     * from the pool (e.g. between levels).  Returns true if the pool was resized.
+     */
+    public boolean resizeToFit() {
+        boolean resized = false;
+        if (getAllocatedCount() == 0) {
+            final int target = mPeakAllocated + (mPeakAllocated / 2) + 1;
+            if (target > mSize || target < mSize / 2) {
+                setSize(target);
+                resized = true;
+            }
+        }
+        return resized;
+    }
+    
+    /** 
+     * When set, an allocation from an empty pool doubles the size of the pool instead of 
+     * failing.  Growing allocates, so this trades a hitch for an object that would otherwise fail
+     * to spawn or draw.
+     */
+    public void setGrowable(boolean growable) {
+        mGrowable = growable;
+    }
+    
+    /** Returns a name for the pool to use in reports. */
+    protected String getName() {
+        return getClass().getSimpleName();
+    }
+    
+    private void grow() {
+        final int size = mSize;
+        // fill() adds size new objects; the rest of the space is for the objects that are
+        // currently allocated, when they are released.
+        mAvailable = new FixedSizeArray<Object>(size * 2);
+        fill();
+        mSize = size * 2;
+    }
+    
     private void setSize(int size) {
         mSize = size;
         mAvailable = new FixedSizeArray<Object>(mSize);
@@ -39,6 +39,7 @@ public class ObjectRegistry extends BaseObject {
     public DebugSystem debugSystem;
     public DrawableFactory drawableFactory;
     public EventRecorder eventRecorder;
+    public FrameProfiler frameProfiler;
     public GameObjectCollisionSystem gameObjectCollisionSystem;
     public GameObjectFactory gameObjectFactory;
     public GameObjectManager gameObjectManager;
@@ -46,13 +47,18 @@ public class ObjectRegistry extends BaseObject {
     public HotSpotSystem hotSpotSystem;
     public HudSystem hudSystem;
 	public InputGameInterface inputGameInterface;
+    public InputPlayback inputPlayback;
+    public InputRecorder inputRecorder;
     public InputSystem inputSystem;
     public LevelBuilder levelBuilder;
     public LevelSystem levelSystem;
     public OpenGLSystem openGLSystem;
+    public ParticleSystem particleSystem;
     public SoundSystem soundSystem;
+    public SpawnStreamer spawnStreamer;
     public TextureLibrary shortTermTextureLibrary;
     public TextureLibrary longTermTextureLibrary;
+    public TextureStreamer textureStreamer;
     public TimeSystem timeSystem;
     public RenderSystem renderSystem;
     public VectorPool vectorPool;
@@ -29,7 +29,8 @@ public class OpenGLSystem extends BaseObject {
 
     private static GL10 sGL;
     private static int sLastBoundTexture;
-    private static int sLastSetCropSignature;
+    private static int[] sLastSetCrop = new int[4];
+    private static boolean sCropSet;
 
     public OpenGLSystem() {
         super();
@@ -43,7 +44,7 @@ public class OpenGLSystem extends BaseObject {
     public static final void setGL(GL10 gl) {
         sGL = gl;
         sLastBoundTexture = 0;
-        sLastSetCropSignature = 0;
+        sCropSet = false;
     }
 
     public static final GL10 getGL() {
@@ -54,19 +55,33 @@ public class OpenGLSystem extends BaseObject {
         if (sLastBoundTexture != texture) {
             sGL.glBindTexture(target, texture);
             sLastBoundTexture = texture;
-            sLastSetCropSignature = 0;
+            sCropSet = false;
         }
     }
     
     public static final void setTextureCrop(int[] crop) {
-        int cropSignature = 0;
-        cropSignature = (crop[0] + crop[1]) << 16;
-        cropSignature |= crop[2] + crop[3];
-        
-        if (cropSignature != sLastSetCropSignature) {
+        setTextureCrop(crop, 0, 0);
+    }
+    
+    /** 
+     * Sets the crop rectangle of the bound texture, moved by (offsetX, offsetY) texels.  The
+     * offset is that of an image packed into an atlas page (see Texture.offsetX).
+     */
+    public static final void setTextureCrop(int[] crop, int offsetX, int offsetY) {
+        // Crops must be compared exactly: images packed into the same atlas page share a texture,
+        // so the crop is often all that changes between two draws.
+        final int[] lastCrop = sLastSetCrop;
+        final int left = crop[0] + offsetX;
+        final int bottom = crop[1] + offsetY;
+        if (!sCropSet || left != lastCrop[0] || bottom != lastCrop[1] 
+                || crop[2] != lastCrop[2] || crop[3] != lastCrop[3]) {
+            lastCrop[0] = left;
+            lastCrop[1] = bottom;
+            lastCrop[2] = crop[2];
+            lastCrop[3] = crop[3];
             ((GL11) sGL).glTexParameteriv(GL10.GL_TEXTURE_2D, GL11Ext.GL_TEXTURE_CROP_RECT_OES,
-                    crop, 0);
-            sLastSetCropSignature = cropSignature;
+                    lastCrop, 0);
+            sCropSet = true;
         }
     }
     
@@ -82,7 +82,7 @@ public class OrbitalMagnetComponent extends GameComponent {
     		
     		// remove gravity
     		final Vector2 targetVelocity = target.getVelocity();
-    		GravityComponent gravity = target.findByClass(GravityComponent.class);
+    		GravityComponent gravity = target.getComponent(GravityComponent.TYPE);
             final Vector2 gravityVector = gravity.getGravity();
             mVelocity.set(gravityVector);
             mVelocity.multiply(timeDelta);
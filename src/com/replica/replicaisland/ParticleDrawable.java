@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11Ext;
+
+/**
+ * A snapshot of every live particle for one frame, drawn as a single drawable.  ParticleSystem
+ * fills one of these each frame and schedules it at the world origin; since the renderer draws
+ * a frame while the game is building the next, each frame gets its own snapshot from a pool and
+ * the snapshot is returned to that pool when the render queue is cleared.  Particle positions
+ * are in world space, offset by the (camera-relative) position passed to draw().
+ */
+public class ParticleDrawable extends DrawableObject {
+    private final float[] mX;
+    private final float[] mY;
+    private final int[] mWidth;
+    private final int[] mHeight;
+    private final float[] mOpacity;
+    private final boolean[] mFlip;
+    private final Texture[] mTextures;
+    private int mCount;
+    private boolean mOpaque;
+    private int mViewWidth;
+    private int mViewHeight;
+    private final int[] mCrop;
+
+    public ParticleDrawable(int maxParticles) {
+        super();
+        mX = new float[maxParticles];
+        mY = new float[maxParticles];
+        mWidth = new int[maxParticles];
+        mHeight = new int[maxParticles];
+        mOpacity = new float[maxParticles];
+        mFlip = new boolean[maxParticles];
+        mTextures = new Texture[maxParticles];
+        mCrop = new int[4];
+        reset();
+    }
+
+    public void reset() {
+        for (int x = 0; x < mCount; x++) {
+            mTextures[x] = null;
+        }
+        mCount = 0;
+        mOpaque = true;
+    }
+
+    public void setViewSize(int width, int height) {
+        mViewWidth = width;
+        mViewHeight = height;
+    }
+
+    /** Adds a particle to the snapshot.  Returns false if the snapshot is full. */
+    public boolean add(Texture texture, float x, float y, int width, int height, boolean flip,
+            float opacity) {
+        boolean added = false;
+        if (mCount < mTextures.length) {
+            final int index = mCount;
+            mTextures[index] = texture;
+            mX[index] = x;
+            mY[index] = y;
+            mWidth[index] = width;
+            mHeight[index] = height;
+            mFlip[index] = flip;
+            mOpacity[index] = opacity;
+            if (opacity < 1.0f) {
+                mOpaque = false;
+            }
+            mCount++;
+            added = true;
+        }
+        return added;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public Texture getTexture() {
+        return mCount > 0 ? mTextures[0] : null;
+    }
+
+    @Override
+    public void draw(float x, float y, float scaleX, float scaleY) {
+        GL10 gl = OpenGLSystem.getGL();
+        if (gl != null) {
+            final int[] crop = mCrop;
+            final float priority = getPriority();
+            for (int i = 0; i < mCount; i++) {
+                final Texture texture = mTextures[i];
+                final float snappedX = (int)(x + mX[i]);
+                final float snappedY = (int)(y + mY[i]);
+                final int width = mWidth[i];
+                final int height = mHeight[i];
+                final float opacity = mOpacity[i];
+                if (texture != null && texture.loaded && opacity > 0.0f && !isCulled(snappedX,
+                        snappedY, width, height)) {
+                    OpenGLSystem.bindTexture(GL10.GL_TEXTURE_2D, texture.name);
+                    // See DrawableBitmap.setCrop(); a negative width flips the image.
+                    crop[0] = mFlip[i] ? width : 0;
+                    crop[1] = height;
+                    crop[2] = mFlip[i] ? -width : width;
+                    crop[3] = -height;
+                    OpenGLSystem.setTextureCrop(crop, texture.offsetX, texture.offsetY);
+                    if (opacity < 1.0f) {
+                        gl.glColor4f(opacity, opacity, opacity, opacity);
+                    }
+                    ((GL11Ext) gl).glDrawTexfOES(snappedX * scaleX, snappedY * scaleY,
+                            priority, width * scaleX, height * scaleY);
+                    if (opacity < 1.0f) {
+                        gl.glColor4f(1.0f, 1.0f, 1.0f, 1.0f);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean drawBatched(SpriteBatch batch, float x, float y) {
+        // The batch has no per-quad color, so translucent particles are drawn with draw().
+        boolean handled = false;
+        if (mOpaque) {
+            for (int i = 0; i < mCount; i++) {
+                final Texture texture = mTextures[i];
+                final float snappedX = (int)(x + mX[i]);
+                final float snappedY = (int)(y + mY[i]);
+                final int width = mWidth[i];
+                final int height = mHeight[i];
+                if (texture != null && texture.loaded && texture.pageWidth > 0
+                        && texture.pageHeight > 0 && !isCulled(snappedX, snappedY, width, height)) {
+                    final float left = (float)texture.offsetX / texture.pageWidth;
+                    final float top = (float)texture.offsetY / texture.pageHeight;
+                    final float right = (float)(texture.offsetX + width) / texture.pageWidth;
+                    final float bottom = (float)(texture.offsetY + height) / texture.pageHeight;
+                    if (mFlip[i]) {
+                        batch.add(texture, snappedX, snappedY, snappedX + width,
+                                snappedY + height, right, bottom, left, top);
+                    } else {
+                        batch.add(texture, snappedX, snappedY, snappedX + width,
+                                snappedY + height, left, bottom, right, top);
+                    }
+                }
+            }
+            handled = true;
+        }
+        return handled;
+    }
+
+    private boolean isCulled(float x, float y, int width, int height) {
+        return mViewWidth > 0 && (x + width < 0.0f || x > mViewWidth
+                || y + height < 0.0f || y > mViewHeight);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+/**
+ * Describes how a kind of particle looks and how long it lives: a sequence of animation frames
+ * (played once; the last frame holds), a size, a lifetime, and an opacity that fades linearly
+ * from a start to an end value over that lifetime.  Effects are shared by every particle that
+ * uses them and are never modified once they have been set up.
+ */
+public class ParticleEffect extends AllocationGuard {
+    public Texture[] frames;
+    // The time at which each frame ends, measured from the start of the animation.
+    public float[] frameEndTimes;
+    public int frameCount;
+    public int width;
+    public int height;
+    public float lifetime;
+    public float startOpacity;
+    public float endOpacity;
+    // If true, particles that leave the screen are killed early, as LifetimeComponent does.
+    public boolean dieWhenInvisible;
+
+    public ParticleEffect(int maxFrames, int effectWidth, int effectHeight) {
+        super();
+        frames = new Texture[maxFrames];
+        frameEndTimes = new float[maxFrames];
+        frameCount = 0;
+        width = effectWidth;
+        height = effectHeight;
+        lifetime = 0.0f;
+        startOpacity = 1.0f;
+        endOpacity = 1.0f;
+        dieWhenInvisible = false;
+    }
+
+    /** Appends a frame.  Unless setLifetime() is called, particles live until the last frame ends. */
+    public void addFrame(Texture texture, float holdTime) {
+        assert frameCount < frames.length;
+        final float start = frameCount > 0 ? frameEndTimes[frameCount - 1] : 0.0f;
+        frames[frameCount] = texture;
+        frameEndTimes[frameCount] = start + holdTime;
+        frameCount++;
+        if (lifetime < start + holdTime) {
+            lifetime = start + holdTime;
+        }
+    }
+
+    public void setLifetime(float time) {
+        lifetime = time;
+    }
+
+    public void setFade(float start, float end) {
+        startOpacity = start;
+        endOpacity = end;
+    }
+
+    public void setDieWhenInvisible(boolean die) {
+        dieWhenInvisible = die;
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+/**
+ * Simulates and draws short-lived visual effects (dust, smoke, gem sparkles) without making them
+ * game objects.  Each particle is a slot in a set of parallel primitive arrays (position,
+ * velocity, age, animation frame) that are updated in a single loop; dead particles are replaced
+ * by the last live one, so the live particles are always packed at the front of the arrays.  All
+ * particles are drawn as one ParticleDrawable, so effects don't compete with gameplay objects for
+ * game object slots, component pools or render elements.  If the system is full, new particles
+ * are dropped, just as effect spawns were when their pools ran dry.
+ *
+ * Particles are purely visual: they don't collide, and nothing can find or refer to them.
+ */
+public class ParticleSystem extends BaseObject {
+    private static final int DEFAULT_MAX_PARTICLES = 256;
+    // One snapshot for the queue being filled and one for each queue that may be being drawn.
+    private static final int DRAWABLE_POOL_SIZE = RenderQueueExchange.QUEUE_COUNT + 1;
+
+    private final int mMaxParticles;
+    private final ParticleEffect[] mEffects;
+    private final float[] mX;
+    private final float[] mY;
+    private final float[] mVelocityX;
+    private final float[] mVelocityY;
+    private final float[] mAge;
+    private final int[] mFrame;
+    private final boolean[] mFlip;
+    private int mCount;
+
+    private ParticleDrawablePool mDrawablePool;
+    private Vector2 mOrigin;
+
+    private int mEmittedCount;
+    private int mDroppedCount;
+    private int mPeakCount;
+
+    public ParticleSystem() {
+        this(DEFAULT_MAX_PARTICLES);
+    }
+
+    public ParticleSystem(int maxParticles) {
+        super();
+        mMaxParticles = maxParticles;
+        mEffects = new ParticleEffect[maxParticles];
+        mX = new float[maxParticles];
+        mY = new float[maxParticles];
+        mVelocityX = new float[maxParticles];
+        mVelocityY = new float[maxParticles];
+        mAge = new float[maxParticles];
+        mFrame = new int[maxParticles];
+        mFlip = new boolean[maxParticles];
+        mDrawablePool = new ParticleDrawablePool(DRAWABLE_POOL_SIZE, maxParticles);
+        mOrigin = new Vector2();
+    }
+
+    @Override
+    public void reset() {
+        for (int x = 0; x < mCount; x++) {
+            mEffects[x] = null;
+        }
+        mCount = 0;
+    }
+
+    /**
+     * Starts a particle with its bottom-left corner at (x, y).  Returns false if the system is
+     * full and the particle was dropped.
+     */
+    public boolean emit(ParticleEffect effect, float x, float y, float velocityX,
+            float velocityY, boolean flip) {
+        boolean emitted = false;
+        if (effect != null && effect.frameCount > 0) {
+            if (mCount < mMaxParticles) {
+                final int index = mCount;
+                mEffects[index] = effect;
+                mX[index] = x;
+                mY[index] = y;
+                mVelocityX[index] = velocityX;
+                mVelocityY[index] = velocityY;
+                mAge[index] = 0.0f;
+                mFrame[index] = 0;
+                mFlip[index] = flip;
+                mCount++;
+                mEmittedCount++;
+                if (mCount > mPeakCount) {
+                    mPeakCount = mCount;
+                }
+                emitted = true;
+            } else {
+                mDroppedCount++;
+            }
+        }
+        return emitted;
+    }
+
+    @Override
+    public void update(float timeDelta, BaseObject parent) {
+        final ParticleEffect[] effects = mEffects;
+        final float[] positionX = mX;
+        final float[] positionY = mY;
+        final float[] velocityX = mVelocityX;
+        final float[] velocityY = mVelocityY;
+        final float[] age = mAge;
+        final int[] frame = mFrame;
+
+        final CameraSystem camera = sSystemRegistry.cameraSystem;
+        final ContextParameters context = sSystemRegistry.contextParameters;
+        final float focusX = camera != null ? camera.getFocusPositionX() : 0.0f;
+        final float focusY = camera != null ? camera.getFocusPositionY() : 0.0f;
+        final float visibleWidth = context != null ? context.gameWidth : Float.MAX_VALUE;
+        final float visibleHeight = context != null ? context.gameHeight : Float.MAX_VALUE;
+
+        int count = mCount;
+        int i = 0;
+        while (i < count) {
+            final ParticleEffect effect = effects[i];
+            final float particleAge = age[i] + timeDelta;
+            final float x = positionX[i] + (velocityX[i] * timeDelta);
+            final float y = positionY[i] + (velocityY[i] * timeDelta);
+            if (particleAge >= effect.lifetime || (effect.dieWhenInvisible
+                    && (Math.abs(x - focusX) > visibleWidth
+                            || Math.abs(y - focusY) > visibleHeight))) {
+                // Kill the particle by moving the last live one into its slot.
+                count--;
+                effects[i] = effects[count];
+                positionX[i] = positionX[count];
+                positionY[i] = positionY[count];
+                velocityX[i] = velocityX[count];
+                velocityY[i] = velocityY[count];
+                age[i] = age[count];
+                frame[i] = frame[count];
+                mFlip[i] = mFlip[count];
+                effects[count] = null;
+            } else {
+                age[i] = particleAge;
+                positionX[i] = x;
+                positionY[i] = y;
+                int particleFrame = frame[i];
+                final float[] frameEndTimes = effect.frameEndTimes;
+                while (particleFrame < effect.frameCount - 1
+                        && particleAge >= frameEndTimes[particleFrame]) {
+                    particleFrame++;
+                }
+                frame[i] = particleFrame;
+                i++;
+            }
+        }
+        mCount = count;
+
+        if (count > 0) {
+            schedule(timeDelta);
+        }
+    }
+
+    private void schedule(float timeDelta) {
+        final RenderSystem render = sSystemRegistry.renderSystem;
+        if (render != null && mDrawablePool.getAllocatedCount() < DRAWABLE_POOL_SIZE) {
+            ParticleDrawable drawable = mDrawablePool.allocate();
+            // Particles move in straight lines, so their interpolated position (see 
+            // RenderSystem.setInterpolation()) is just a step back along their velocity.
+            final float rewind = (1.0f - render.getInterpolation()) * timeDelta;
+            final TextureLibrary library = sSystemRegistry.shortTermTextureLibrary;
+            final int count = mCount;
+            for (int i = 0; i < count; i++) {
+                final ParticleEffect effect = mEffects[i];
+                final Texture texture = effect.frames[mFrame[i]];
+                if (texture != null && library != null) {
+                    // The render system only sees the first particle's texture.
+                    library.markUsed(texture);
+                }
+                float opacity = effect.startOpacity;
+                if (effect.endOpacity != opacity && effect.lifetime > 0.0f) {
+                    opacity += (effect.endOpacity - opacity) * (mAge[i] / effect.lifetime);
+                }
+                drawable.add(texture, mX[i] - (mVelocityX[i] * rewind),
+                        mY[i] - (mVelocityY[i] * rewind), effect.width, effect.height, mFlip[i],
+                        opacity);
+            }
+            render.scheduleForDraw(drawable, mOrigin, SortConstants.EFFECT, true);
+        }
+    }
+
+    /** Returns the number of live particles. */
+    public final int getCount() {
+        return mCount;
+    }
+
+    public final int getMaxCount() {
+        return mMaxParticles;
+    }
+
+    /** Returns the most particles that have been alive at once. */
+    public final int getPeakCount() {
+        return mPeakCount;
+    }
+
+    public final int getEmittedCount() {
+        return mEmittedCount;
+    }
+
+    /** Returns the number of particles that were dropped because the system was full. */
+    public final int getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    private static class ParticleDrawablePool extends TObjectPool<ParticleDrawable> {
+        private int mMaxParticles;
+
+        public ParticleDrawablePool(int size, int maxParticles) {
+            super(size);
+            mMaxParticles = maxParticles;
+            fill();
+        }
+
+        @Override
+        protected void fill() {
+            // Called once by the super constructor before the particle count is known.
+            if (mMaxParticles > 0) {
+                final ContextParameters params = sSystemRegistry.contextParameters;
+                for (int x = 0; x < getSize(); x++) {
+                    ParticleDrawable drawable = new ParticleDrawable(mMaxParticles);
+                    if (params != null) {
+                        drawable.setViewSize(params.gameWidth, params.gameHeight);
+                    }
+                    drawable.setParentPool(this);
+                    getAvailable().add(drawable);
+                }
+            }
+        }
+
+        @Override
+        public void release(Object entry) {
+            ((ParticleDrawable)entry).reset();
+            super.release(entry);
+        }
+    }
+}
@@ -81,7 +81,7 @@ public class PhysicsComponent extends GameComponent {
 
         final boolean touchingFloor = parentObject.touchingGround();
 
-        GravityComponent gravity = parentObject.findByClass(GravityComponent.class);
+        GravityComponent gravity = parentObject.getComponent(GravityComponent.TYPE);
 
         if (touchingFloor && currentVelocity.y <= 0.0f && Math.abs(newVelocity.x) > 0.0f
                         && gravity != null) {
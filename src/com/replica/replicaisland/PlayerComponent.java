@@ -20,6 +20,8 @@ import com.replica.replicaisland.CollisionParameters.HitType;
 import com.replica.replicaisland.GameObject.ActionType;
 
 public class PlayerComponent extends GameComponent {
+    public static final ComponentType<PlayerComponent> TYPE = ComponentType.get(PlayerComponent.class);
+    
     
     private static final float GROUND_IMPULSE_SPEED = 5000.0f;
     private static final float AIR_HORIZONTAL_IMPULSE_SPEED = 4000.0f;
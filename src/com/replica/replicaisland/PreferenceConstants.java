@@ -31,6 +31,9 @@ public class PreferenceConstants {
     public static final String PREFERENCE_MOVEMENT_SENSITIVITY = "movementSensitivity";
     public static final String PREFERENCE_SCREEN_CONTROLS = "enableScreenControls";
     public static final String PREFERENCE_ENABLE_DEBUG = "enableDebug";
+    public static final String PREFERENCE_FIXED_TIME_STEP = "enableFixedTimeStep";
+    public static final String PREFERENCE_TEXTURE_STREAMING = "enableTextureStreaming";
+    public static final String PREFERENCE_TEXTURE_BUDGET = "textureBudget";
     public static final String PREFERENCE_TOTAL_GAME_TIME = "totalGameTime";
     public static final String PREFERENCE_LAST_ENDING = "lastEnding";
 	public static final String PREFERENCE_ROBOTS_DESTROYED = "robotsDestroyed";
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.util.Comparator;
+
+/**
+ * A stable LSD radix sort over 64-bit keys.  Derived classes supply a key for each object; keys
+ * are compared as unsigned values and the comparator passed to sort() is ignored.  The keys are
+ * gathered into a primitive array that is sorted in parallel with the objects, one byte per pass.
+ * Histograms for all eight passes are built in a single walk over the keys, and passes over bytes
+ * that are the same in every key are skipped, so keys that only use a few of their bits are cheap
+ * to sort.  All working storage is allocated up front for a fixed maximum count.
+ */
+public abstract class RadixSorter<Type> extends Sorter<Type> {
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int PASSES = 64 / RADIX_BITS;
+
+    private long[] mKeys;
+    private long[] mKeyScratch;
+    private Object[] mObjectScratch;
+    private final int[] mHistograms;
+
+    public RadixSorter(int maxCount) {
+        super();
+        mKeys = new long[maxCount];
+        mKeyScratch = new long[maxCount];
+        mObjectScratch = new Object[maxCount];
+        mHistograms = new int[PASSES * RADIX];
+    }
+
+    /** Returns the sort key of an object.  Keys are ordered as unsigned 64-bit values. */
+    public abstract long getSortKey(Type object);
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void sort(Type[] array, int count, Comparator<Type> comparator) {
+        if (count > mKeys.length) {
+            assert false : "RadixSorter asked to sort more objects than it was sized for!";
+            mKeys = new long[count];
+            mKeyScratch = new long[count];
+            mObjectScratch = new Object[count];
+        }
+        long[] keys = mKeys;
+        long[] keyScratch = mKeyScratch;
+        Object[] objects = array;
+        Object[] objectScratch = mObjectScratch;
+        final int[] histograms = mHistograms;
+
+        for (int x = 0; x < histograms.length; x++) {
+            histograms[x] = 0;
+        }
+        for (int x = 0; x < count; x++) {
+            final long key = getSortKey((Type)objects[x]);
+            keys[x] = key;
+            for (int pass = 0; pass < PASSES; pass++) {
+                histograms[(pass * RADIX) + (int)((key >>> (pass * RADIX_BITS)) & (RADIX - 1))]++;
+            }
+        }
+
+        for (int pass = 0; pass < PASSES; pass++) {
+            final int base = pass * RADIX;
+            final int shift = pass * RADIX_BITS;
+            if (count == 0
+                    || histograms[base + (int)((keys[0] >>> shift) & (RADIX - 1))] == count) {
+                // Every key has the same value in this byte, so this pass wouldn't move anything.
+                continue;
+            }
+
+            // Turn the counts into starting offsets.
+            int total = 0;
+            for (int x = 0; x < RADIX; x++) {
+                final int bucketCount = histograms[base + x];
+                histograms[base + x] = total;
+                total += bucketCount;
+            }
+
+            for (int x = 0; x < count; x++) {
+                final long key = keys[x];
+                final int slot = histograms[base + (int)((key >>> shift) & (RADIX - 1))]++;
+                keyScratch[slot] = key;
+                objectScratch[slot] = objects[x];
+            }
+
+            long[] swapKeys = keys;
+            keys = keyScratch;
+            keyScratch = swapKeys;
+            Object[] swapObjects = objects;
+            objects = objectScratch;
+            objectScratch = swapObjects;
+        }
+
+        if (objects != array) {
+            // An odd number of passes ran, so the result is in the scratch array.
+            System.arraycopy(objects, 0, array, 0, count);
+            objectScratch = objects;
+        }
+        // Don't let the scratch array keep sorted objects alive.
+        for (int x = 0; x < count; x++) {
+            objectScratch[x] = null;
+        }
+    }
+}
@@ -22,6 +22,8 @@ package com.replica.replicaisland;
  * objects may be set to be "camera-relative" (meaning their screen position is relative to the
  * location of the camera focus in the scene) or not (meaning their screen position is relative to
  * the origin at the lower-left corner of the display).
+ * When the game is updated in fixed steps the drawable is placed between the object's position at
+ * the previous update and its current one, according to the render system's interpolation factor.
  */
 public class RenderComponent extends GameComponent {
     private DrawableObject mDrawable;
@@ -30,6 +32,11 @@ public class RenderComponent extends GameComponent {
     private Vector2 mPositionWorkspace;
     private Vector2 mScreenLocation;
     private Vector2 mDrawOffset;
+    private Vector2 mPreviousPosition;
+    private boolean mHasPreviousPosition;
+    
+    // Movement further than this in one update is a teleport, which shouldn't be smoothed.
+    private static final float MAX_INTERPOLATION_DISTANCE2 = 64.0f * 64.0f;
     
     public RenderComponent() {
         super();
@@ -38,6 +45,7 @@ public class RenderComponent extends GameComponent {
         mPositionWorkspace = new Vector2();
         mScreenLocation = new Vector2();
         mDrawOffset = new Vector2();
+        mPreviousPosition = new Vector2();
         reset();
     }
     
@@ -47,13 +55,23 @@ public class RenderComponent extends GameComponent {
         mCameraRelative = true;
         mDrawable = null;
         mDrawOffset.zero();
+        mPreviousPosition.zero();
+        mHasPreviousPosition = false;
     }
 
     public void update(float timeDelta, BaseObject parent) {
         if (mDrawable != null) {
             RenderSystem system = sSystemRegistry.renderSystem;
             if (system != null) {
-                mPositionWorkspace.set(((GameObject)parent).getPosition());
+                final Vector2 position = ((GameObject)parent).getPosition();
+                mPositionWorkspace.set(position);
+                if (mHasPreviousPosition && system.getInterpolation() < 1.0f
+                        && mPreviousPosition.distance2(position) < MAX_INTERPOLATION_DISTANCE2) {
+                    mPositionWorkspace.x = system.interpolate(mPreviousPosition.x, position.x);
+                    mPositionWorkspace.y = system.interpolate(mPreviousPosition.y, position.y);
+                }
+                mPreviousPosition.set(position);
+                mHasPreviousPosition = true;
                 mPositionWorkspace.add(mDrawOffset);
                 if (mCameraRelative) {
                     CameraSystem camera = sSystemRegistry.cameraSystem;
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock-free triple buffer of render queues, shared by the game thread and the render thread.
+ * At any time one queue (the back queue) belongs to the game thread, one (the front queue)
+ * belongs to the render thread, and the third is the most recently completed frame, waiting to
+ * be picked up.  Ownership changes hands by atomically exchanging queue indices, so neither
+ * thread ever waits for the other: the game thread publishes a finished frame and immediately
+ * gets a queue to fill next, and the render thread always draws the newest complete frame.
+ *
+ * If the game thread publishes again before the render thread has picked up the waiting frame,
+ * that frame is dropped (the game thread gets it back to reuse).  If the render thread draws
+ * before a new frame has been published, it draws its current frame again.  Both cases are
+ * counted.
+ */
+public class RenderQueueExchange extends AllocationGuard {
+    public static final int QUEUE_COUNT = 3;
+
+    // The waiting frame's index is stored in the low bits; this bit is set when it has not yet
+    // been picked up by the render thread.
+    private static final int FRESH_BIT = 0x4;
+    private static final int INDEX_MASK = 0x3;
+
+    private final ObjectManager[] mQueues;
+    private final float[] mCameraX;
+    private final float[] mCameraY;
+    private final AtomicInteger mReady;
+
+    // Owned by the game thread.
+    private int mBack;
+    private int mDroppedFrames;
+
+    // Owned by the render thread.
+    private int mFront;
+    private int mRepeatedFrames;
+
+    public RenderQueueExchange(ObjectManager[] queues) {
+        super();
+        assert queues.length == QUEUE_COUNT;
+        mQueues = queues;
+        mCameraX = new float[QUEUE_COUNT];
+        mCameraY = new float[QUEUE_COUNT];
+        mReady = new AtomicInteger();
+        reset();
+    }
+
+    /**
+     * Returns the exchange to its initial state, with no frame waiting.  Only safe to call while
+     * no render thread is drawing from the exchange.
+     */
+    public void reset() {
+        mBack = 0;
+        mReady.set(1);
+        mFront = 2;
+    }
+
+    /** Called by the game thread.  Returns the queue that the game thread is currently filling. */
+    public final int getBackIndex() {
+        return mBack;
+    }
+
+    /**
+     * Called by the game thread when the back queue is complete.  Makes the back queue the
+     * waiting frame and returns the index of the queue that should be filled next.  The returned
+     * queue is either the one the render thread has finished with or a dropped frame; either way
+     * the caller should empty it before use.
+     */
+    public final int publish(float cameraX, float cameraY) {
+        final int back = mBack;
+        mCameraX[back] = cameraX;
+        mCameraY[back] = cameraY;
+        final int previous = mReady.getAndSet(back | FRESH_BIT);
+        if ((previous & FRESH_BIT) != 0) {
+            mDroppedFrames++;
+        }
+        mBack = previous & INDEX_MASK;
+        return mBack;
+    }
+
+    /**
+     * Called by the render thread at the start of a frame.  Picks up the waiting frame if there is
+     * a new one and returns the index of the queue to draw.
+     */
+    public final int acquire() {
+        if ((mReady.get() & FRESH_BIT) != 0) {
+            // Only the render thread clears the fresh bit, so the frame can't be taken away
+            // between the check above and the exchange below; at worst it is replaced by a
+            // newer one.
+            mFront = mReady.getAndSet(mFront) & INDEX_MASK;
+        } else {
+            mRepeatedFrames++;
+        }
+        return mFront;
+    }
+
+    public final ObjectManager getQueue(int index) {
+        return mQueues[index];
+    }
+
+    public final float getCameraX(int index) {
+        return mCameraX[index];
+    }
+
+    public final float getCameraY(int index) {
+        return mCameraY[index];
+    }
+
+    /** Returns the number of frames the game thread completed that were never drawn. */
+    public final int getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    /** Returns the number of times the render thread drew a frame it had already drawn. */
+    public final int getRepeatedFrames() {
+        return mRepeatedFrames;
+    }
+}
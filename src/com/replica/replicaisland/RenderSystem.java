@@ -24,25 +24,52 @@ package com.replica.replicaisland;
  * manage any number (>=2) of render queues, but increasing the number over two means that the game
  * logic will be running significantly ahead of the rendering thread, which may make the user feel
  * that the controls are "loose."
+ * Alternatively the render system can be triple-buffered, in which case the queues are handed to
+ * the renderer through a RenderQueueExchange and neither thread waits for the other; see
+ * RenderQueueExchange for details.
+ * By default each queue is radix sorted on a 64-bit key made of the draw priority, the texture
+ * name and the order in which elements were scheduled, so textures are grouped within a priority
+ * and elements with equal keys keep their submission order.  Setting RADIX_SORT_RENDER_QUEUES to
+ * false restores the original comparator sort on a combined priority/texture phase.
  */
 public class RenderSystem extends BaseObject {
     private static final int TEXTURE_SORT_BUCKET_SIZE = 1000;
     private RenderElementPool mElementPool;
     private ObjectManager[] mRenderQueues;
     private int mQueueIndex;
+    private RenderQueueExchange mExchange;
+    private int mInsertionOrder;
+    private float mInterpolation;
     
     private final static int DRAW_QUEUE_COUNT = 2;
     private final static int MAX_RENDER_OBJECTS_PER_FRAME = 384;
-    private final static int MAX_RENDER_OBJECTS = MAX_RENDER_OBJECTS_PER_FRAME * DRAW_QUEUE_COUNT;
+    private final static boolean RADIX_SORT_RENDER_QUEUES = true;
     
     public RenderSystem() {
+        this(false);
+    }
+    
+    public RenderSystem(boolean tripleBuffered) {
         super();
-        mElementPool = new RenderElementPool(MAX_RENDER_OBJECTS);
-        mRenderQueues = new ObjectManager[DRAW_QUEUE_COUNT];
-        for (int x = 0; x < DRAW_QUEUE_COUNT; x++) {
+        final int queueCount = tripleBuffered ? RenderQueueExchange.QUEUE_COUNT : DRAW_QUEUE_COUNT;
+        mElementPool = new RenderElementPool(MAX_RENDER_OBJECTS_PER_FRAME * queueCount);
+        mRenderQueues = new ObjectManager[queueCount];
+        // Queues are only sorted on the game thread, so they can share a sorter.
+        RenderElementSorter sorter = RADIX_SORT_RENDER_QUEUES ? 
+                new RenderElementSorter(MAX_RENDER_OBJECTS_PER_FRAME) : null;
+        for (int x = 0; x < queueCount; x++) {
             mRenderQueues[x] = new PhasedObjectManager(MAX_RENDER_OBJECTS_PER_FRAME);
+            if (sorter != null) {
+                mRenderQueues[x].getObjects().setSorter(sorter);
+            }
+        }
+        if (tripleBuffered) {
+            mExchange = new RenderQueueExchange(mRenderQueues);
+            mQueueIndex = mExchange.getBackIndex();
+        } else {
+            mQueueIndex = 0;
         }
-        mQueueIndex = 0;
+        mInterpolation = 1.0f;
     }
     
     @Override
@@ -54,7 +81,16 @@ public class RenderSystem extends BaseObject {
         RenderElement element = mElementPool.allocate();
         if (element != null) {
             element.set(object, position, priority, cameraRelative);
+            if (RADIX_SORT_RENDER_QUEUES) {
+                element.setSortKey(priority, mInsertionOrder);
+                mInsertionOrder++;
+            }
             mRenderQueues[mQueueIndex].add(element);
+            final Texture texture = object.getTexture();
+            if (texture != null) {
+                // Only the short-term library streams and evicts textures.
+                sSystemRegistry.shortTermTextureLibrary.markUsed(texture);
+            }
         }
     }
 
@@ -73,27 +109,107 @@ public class RenderSystem extends BaseObject {
     public void swap(GameRenderer renderer, float cameraX, float cameraY) {
         mRenderQueues[mQueueIndex].commitUpdates();
         
-        // This code will block if the previous queue is still being executed.
-        renderer.setDrawQueue(mRenderQueues[mQueueIndex], cameraX, cameraY); 
-    
-        final int lastQueue = (mQueueIndex == 0) ? DRAW_QUEUE_COUNT - 1 : mQueueIndex - 1;
-    
-        // Clear the old queue.
-        FixedSizeArray<BaseObject> objects = mRenderQueues[lastQueue].getObjects();
-        clearQueue(objects);
+        mInsertionOrder = 0;
+        if (mExchange != null) {
+            swapTripleBuffered(renderer, cameraX, cameraY);
+        } else {
+            // This code will block if the previous queue is still being executed.  If there is no
+            // renderer (e.g. when running headless) the queue is simply discarded.
+            if (renderer != null) {
+                renderer.setDrawQueue(mRenderQueues[mQueueIndex], cameraX, cameraY); 
+            }
+        
+            final int lastQueue = (mQueueIndex == 0) ? DRAW_QUEUE_COUNT - 1 : mQueueIndex - 1;
+        
+            // Clear the old queue.
+            FixedSizeArray<BaseObject> objects = mRenderQueues[lastQueue].getObjects();
+            clearQueue(objects);
+        
+            mQueueIndex = (mQueueIndex + 1) % DRAW_QUEUE_COUNT;
+        }
+    }
     
-        mQueueIndex = (mQueueIndex + 1) % DRAW_QUEUE_COUNT;
+    private void swapTripleBuffered(GameRenderer renderer, float cameraX, float cameraY) {
+        // This never blocks.  The queue we get back is either one the renderer has finished
+        // drawing or a frame it never picked up; either way it is ours to clear and refill.
+        mQueueIndex = mExchange.publish(cameraX, cameraY);
+        if (renderer != null && renderer.getQueueExchange() != mExchange) {
+            renderer.setQueueExchange(mExchange);
+        }
+        clearQueue(mRenderQueues[mQueueIndex].getObjects());
     }
     
     /* Empties all draw queues and disconnects the game thread from the renderer. */
     public void emptyQueues(GameRenderer renderer) {
-        renderer.setDrawQueue(null, 0.0f, 0.0f); 
-        for (int x = 0; x < DRAW_QUEUE_COUNT; x++) {
+        if (renderer != null) {
+            renderer.setDrawQueue(null, 0.0f, 0.0f); 
+        }
+        for (int x = 0; x < mRenderQueues.length; x++) {
             mRenderQueues[x].commitUpdates();
             FixedSizeArray<BaseObject> objects = mRenderQueues[x].getObjects();
             clearQueue(objects);
         
         }
+        if (mExchange != null) {
+            // The renderer has been detached above, so the exchange can be safely rewound.
+            mExchange.reset();
+            mQueueIndex = mExchange.getBackIndex();
+        }
+        mInsertionOrder = 0;
+    }
+    
+    /** 
+     * Throws away everything scheduled since the last swap.  Used when the game is updated more
+     * than once per frame, so that only the last update is drawn.
+     */
+    public void discardScheduled() {
+        mRenderQueues[mQueueIndex].commitUpdates();
+        clearQueue(mRenderQueues[mQueueIndex].getObjects());
+        mInsertionOrder = 0;
+    }
+    
+    /**
+     * Sets how far between the previous update and the current one moving things should be 
+     * drawn (see GameThread.setFixedTimeStep()).  1.0, the default, draws everything where it 
+     * is now.
+     */
+    public void setInterpolation(float alpha) {
+        mInterpolation = alpha;
+    }
+    
+    public float getInterpolation() {
+        return mInterpolation;
+    }
+    
+    /** Returns the point the interpolation factor of the way from previous to current. */
+    public float interpolate(float previous, float current) {
+        float result = current;
+        if (mInterpolation < 1.0f) {
+            result = previous + ((current - previous) * mInterpolation);
+        }
+        return result;
+    }
+    
+    public boolean isTripleBuffered() {
+        return mExchange != null;
+    }
+    
+    /** Returns the number of render queues, each of which may hold a frame's drawables. */
+    public int getQueueCount() {
+        return mRenderQueues.length;
+    }
+    
+    /** Returns the exchange used to hand queues to the renderer, or null if double-buffered. */
+    public RenderQueueExchange getQueueExchange() {
+        return mExchange;
+    }
+    
+    public void dumpPoolStatistics(StringBuilder output) {
+        mElementPool.dumpStatistics(output);
+    }
+    
+    public void resetPoolStatistics() {
+        mElementPool.resetStatistics();
     }
 
     public class RenderElement extends PhasedObject {
@@ -116,18 +232,51 @@ public class RenderSystem extends BaseObject {
             }
             setPhase(sortBucket + sortOffset);
         }
+        
+        /** 
+         * Builds the radix sort key for this element.  The phase is set to the bare priority so 
+         * that it stays consistent with the key order (the priority is the key's top field). 
+         */
+        public void setSortKey(int priority, int insertionOrder) {
+            long textureName = 0;
+            if (mDrawable != null) {
+                Texture tex = mDrawable.getTexture();
+                if (tex != null) {
+                    textureName = tex.name & 0xFFFFFFFFL;
+                }
+            }
+            // priority (16 bits, biased so that negative priorities sort first) | 
+            // texture name (32 bits) | insertion order (16 bits)
+            sortKey = ((long)((priority + 0x8000) & 0xFFFF) << 48) 
+                    | (textureName << 16)
+                    | (insertionOrder & 0xFFFF);
+            setPhase(priority);
+        }
 
         public void reset() {
             mDrawable = null;
             x = 0.0f;
             y = 0.0f;
             cameraRelative = false;
+            sortKey = 0;
         }
 
         public DrawableObject mDrawable;
         public float x;
         public float y;
         public boolean cameraRelative;
+        public long sortKey;
+    }
+    
+    protected static class RenderElementSorter extends RadixSorter<BaseObject> {
+        public RenderElementSorter(int maxCount) {
+            super(maxCount);
+        }
+        
+        @Override
+        public long getSortKey(BaseObject object) {
+            return ((RenderElement)object).sortKey;
+        }
     }
 
     protected class RenderElementPool extends TObjectPool<RenderElement> {
@@ -38,6 +38,11 @@ public class ScrollableBitmap extends DrawableBitmap {
         super.draw(x - mScrollOriginX, y - mScrollOriginY, scaleX, scaleY);
     }
 
+    @Override
+    public boolean drawBatched(SpriteBatch batch, float x, float y) {
+        return super.drawBatched(batch, x - mScrollOriginX, y - mScrollOriginY);
+    }
+
     public float getScrollOriginX() {
         return mScrollOriginX;
     }
@@ -102,10 +102,13 @@ public class ScrollerComponent extends GameComponent {
             background.setWidth(mWidth);
             background.setHeight(mHeight);
 
+            // Scroll with the camera the frame is drawn from, so that the background stays in 
+            // step with interpolated sprites.  Backgrounds are added to the game root after the
+            // camera, so the camera has already been updated this frame.
             CameraSystem camera = sSystemRegistry.cameraSystem;
 
-            float originX = camera.getFocusPositionX() - mHalfWidth;
-            float originY = camera.getFocusPositionY() - mHalfHeight;
+            float originX = camera.getInterpolatedFocusPositionX() - mHalfWidth;
+            float originY = camera.getInterpolatedFocusPositionY() - mHalfHeight;
 
             originX *= mSpeedX;
             originY *= mSpeedY;
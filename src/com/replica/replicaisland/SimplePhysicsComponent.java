@@ -18,6 +18,8 @@ package com.replica.replicaisland;
 
 /** A light-weight physics implementation for use with non-complex characters (enemies, etc). */
 public class SimplePhysicsComponent extends GameComponent {
+    public static final ComponentType<SimplePhysicsComponent> TYPE = ComponentType.get(SimplePhysicsComponent.class);
+    
     private static final float DEFAULT_BOUNCINESS = 0.1f;
     private float mBounciness;
     
@@ -21,6 +21,8 @@ package com.replica.replicaisland;
  * background collision system every frame.
  */
 public class SolidSurfaceComponent extends GameComponent {
+    public static final ComponentType<SolidSurfaceComponent> TYPE = ComponentType.get(SolidSurfaceComponent.class);
+    
     private FixedSizeArray<Vector2> mStartPoints;
     private FixedSizeArray<Vector2> mEndPoints;
     private FixedSizeArray<Vector2> mNormals;
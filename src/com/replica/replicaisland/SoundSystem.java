@@ -39,8 +39,18 @@ public class SoundSystem extends BaseObject {
     private int[] mLoopingStreams;
     
     public SoundSystem() {
+        this(true);
+    }
+    
+    /** 
+     * Creates a sound system.  If createSoundPool is false, no sounds are actually loaded or played;
+     * this allows the game to run without audio hardware (e.g. headless, on a desktop JVM). 
+     */
+    protected SoundSystem(boolean createSoundPool) {
         super();
-        mSoundPool = new SoundPool(MAX_STREAMS, AudioManager.STREAM_MUSIC, 0);
+        if (createSoundPool) {
+            mSoundPool = new SoundPool(MAX_STREAMS, AudioManager.STREAM_MUSIC, 0);
+        }
         mSounds = new FixedSizeArray<Sound>(MAX_SOUNDS, sSoundComparator);
         mSearchDummy = new Sound();
         mLoopingStreams = new int[MAX_STREAMS];
@@ -51,7 +61,9 @@ public class SoundSystem extends BaseObject {
     
     @Override
     public void reset() {
-        mSoundPool.release();
+        if (mSoundPool != null) {
+            mSoundPool.release();
+        }
         mSounds.clear();
         mSoundEnabled = true;
         for (int x = 0; x < mLoopingStreams.length; x++) {
@@ -68,7 +80,7 @@ public class SoundSystem extends BaseObject {
                Context context = sSystemRegistry.contextParameters.context;
                result = new Sound();
                result.resource = resource;
-               result.soundId = mSoundPool.load(context, resource, 1);
+               result.soundId = mSoundPool != null ? mSoundPool.load(context, resource, 1) : -1;
                mSounds.add(result);
                mSounds.sort(false);
            }
@@ -81,7 +93,7 @@ public class SoundSystem extends BaseObject {
     
     synchronized public final int play(Sound sound, boolean loop, int priority) {
     	int stream = -1;
-    	if (mSoundEnabled) {
+    	if (mSoundEnabled && mSoundPool != null) {
     		stream = mSoundPool.play(sound.soundId, 1.0f, 1.0f, priority, loop ? -1 : 0, 1.0f);
     		if (loop) {
     			addLoopingStream(stream);
@@ -93,7 +105,7 @@ public class SoundSystem extends BaseObject {
     
     synchronized public final int play(Sound sound, boolean loop, int priority, float volume, float rate) {
     	int stream = -1;
-    	if (mSoundEnabled) {
+    	if (mSoundEnabled && mSoundPool != null) {
     		stream = mSoundPool.play(sound.soundId, volume, volume, priority, loop ? -1 : 0, rate);
     		if (loop) {
     			addLoopingStream(stream);
@@ -104,16 +116,22 @@ public class SoundSystem extends BaseObject {
     }
     
     public final void stop(int stream) {
-        mSoundPool.stop(stream);
+        if (mSoundPool != null) {
+            mSoundPool.stop(stream);
+        }
         removeLoopingStream(stream);
     }
     
     public final void pause(int stream) {
-        mSoundPool.pause(stream);
+        if (mSoundPool != null) {
+            mSoundPool.pause(stream);
+        }
     }
     
     public final void resume(int stream) {
-       mSoundPool.resume(stream);
+        if (mSoundPool != null) {
+            mSoundPool.resume(stream);
+        }
     }
     
     public final void stopAll() {
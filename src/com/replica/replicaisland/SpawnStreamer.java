@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import com.replica.replicaisland.GameObjectFactory.GameObjectType;
+
+/**
+ * Spawns a level's objects as the camera approaches them rather than all at once when the level
+ * loads.  The spawn layer is kept as a compact list of spawn records grouped into chunks of tile
+ * columns.  Each frame, chunks that come within the game object manager's maximum activation
+ * radius of the camera are spawned, and chunks that move well outside of it are unloaded: their
+ * objects are returned to the factory and will be spawned again if the camera comes back.  The
+ * number of live objects therefore depends on how much of the level is near the camera rather
+ * than on the size of the level.
+ *
+ * Only types that GameObjectFactory.isStreamable() accepts are streamed; everything else is
+ * spawned when the level loads, as usual.  An object is only unloaded if it is inactive and still
+ * sits where it was spawned with the life it was spawned with.  Objects that have moved or been
+ * hurt carry state that respawning would lose, so they stay alive and are managed like any other
+ * object.  Objects that are destroyed (collected coins, dead enemies) are never spawned again.
+ */
+public class SpawnStreamer extends BaseObject {
+    // Chunk width, in tiles.
+    private static final int CHUNK_COLUMNS = 8;
+
+    private static final int PENDING = 0;
+    private static final int LIVE = 1;
+    private static final int CONSUMED = 2;
+
+    // Spawn records, ordered by column.
+    private GameObjectType[] mTypes;
+    private short[] mTileX;
+    private short[] mTileY;
+    private byte[] mState;
+    private GameObject[] mObjects;
+    private float[] mSpawnX;
+    private float[] mSpawnY;
+    private int[] mSpawnLife;
+    private int mRecordCount;
+
+    // Index of the first record in each chunk, plus one entry for the end of the last chunk.
+    private int[] mChunkStart;
+    private boolean[] mChunkLoaded;
+    private int mChunkCount;
+    private int mFirstLoadedChunk;
+    private int mLastLoadedChunk;
+
+    private int mTileWidth;
+    private int mTileHeight;
+    private float mWorldHeight;
+
+    private int mLiveCount;
+    private int mSpawnedCount;
+    private int mUnloadedCount;
+
+    public SpawnStreamer() {
+        super();
+    }
+
+    @Override
+    public void reset() {
+        if (mObjects != null) {
+            for (int x = 0; x < mRecordCount; x++) {
+                mObjects[x] = null;
+            }
+        }
+        mRecordCount = 0;
+        mChunkCount = 0;
+        mFirstLoadedChunk = -1;
+        mLastLoadedChunk = -1;
+        mLiveCount = 0;
+        mSpawnedCount = 0;
+        mUnloadedCount = 0;
+    }
+
+    /**
+     * Builds the spawn records for every streamable object in a spawn layer.  Nothing is spawned
+     * until the first call to update().
+     */
+    public void load(TiledWorld world, int tileWidth, int tileHeight) {
+        reset();
+        final GameObjectFactory factory = sSystemRegistry.gameObjectFactory;
+        final EventRecorder recorder = sSystemRegistry.eventRecorder;
+        final int width = world.getWidth();
+        final int height = world.getHeight();
+
+        int count = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                final int index = world.getTile(x, y);
+                if (index != -1 && factory.isStreamable(GameObjectType.indexToType(index))) {
+                    count++;
+                }
+            }
+        }
+
+        if (mTypes == null || mTypes.length < count) {
+            final int size = Math.max(count, 1);
+            mTypes = new GameObjectType[size];
+            mTileX = new short[size];
+            mTileY = new short[size];
+            mState = new byte[size];
+            mObjects = new GameObject[size];
+            mSpawnX = new float[size];
+            mSpawnY = new float[size];
+            mSpawnLife = new int[size];
+        }
+        final int chunkCount = (width + CHUNK_COLUMNS - 1) / CHUNK_COLUMNS;
+        if (mChunkStart == null || mChunkStart.length < chunkCount + 1) {
+            mChunkStart = new int[chunkCount + 1];
+            mChunkLoaded = new boolean[chunkCount];
+        }
+
+        for (int x = 0; x < width; x++) {
+            if (x % CHUNK_COLUMNS == 0) {
+                mChunkStart[x / CHUNK_COLUMNS] = mRecordCount;
+            }
+            for (int y = 0; y < height; y++) {
+                final int index = world.getTile(x, y);
+                if (index != -1) {
+                    final GameObjectType type = GameObjectType.indexToType(index);
+                    if (factory.isStreamable(type)) {
+                        final int record = mRecordCount;
+                        mTypes[record] = type;
+                        mTileX[record] = (short)x;
+                        mTileY[record] = (short)y;
+                        mState[record] = PENDING;
+                        mObjects[record] = null;
+                        mRecordCount++;
+                        if (type == GameObjectType.COIN && recorder != null) {
+                            // Coins count toward the level's pearl total whether or not the 
+                            // camera ever gets close enough to spawn them.
+                            recorder.incrementEventCounter(EventRecorder.COUNTER_PEARLS_TOTAL);
+                        }
+                    }
+                }
+            }
+        }
+        mChunkStart[chunkCount] = mRecordCount;
+        for (int x = 0; x < chunkCount; x++) {
+            mChunkLoaded[x] = false;
+        }
+        mChunkCount = chunkCount;
+        mTileWidth = tileWidth;
+        mTileHeight = tileHeight;
+        mWorldHeight = height * tileHeight;
+    }
+
+    /**
+     * Spawns the chunks that are within radius of the camera and unloads those that are more
+     * than a chunk beyond it.  Called by GameObjectManager at the start of every frame.
+     */
+    public void update(float cameraX, float radius, GameObjectManager manager) {
+        if (mChunkCount > 0) {
+            final float chunkWidth = CHUNK_COLUMNS * mTileWidth;
+            final int firstChunk = clampChunk((int)Math.floor((cameraX - radius) / chunkWidth));
+            final int lastChunk = clampChunk((int)Math.floor((cameraX + radius) / chunkWidth));
+
+            if (mFirstLoadedChunk != -1) {
+                // Unload with a chunk of slack so that objects near the edge don't thrash.
+                for (int x = mFirstLoadedChunk; x <= mLastLoadedChunk; x++) {
+                    if (mChunkLoaded[x] && (x < firstChunk - 1 || x > lastChunk + 1)) {
+                        unloadChunk(x, manager);
+                    }
+                }
+            }
+
+            for (int x = firstChunk; x <= lastChunk; x++) {
+                if (!mChunkLoaded[x]) {
+                    loadChunk(x);
+                }
+            }
+
+            int first = -1;
+            int last = -1;
+            final int scanStart = mFirstLoadedChunk != -1
+                    ? Math.min(mFirstLoadedChunk, firstChunk) : firstChunk;
+            final int scanEnd = Math.max(mLastLoadedChunk, lastChunk);
+            for (int x = scanStart; x <= scanEnd; x++) {
+                if (mChunkLoaded[x]) {
+                    if (first == -1) {
+                        first = x;
+                    }
+                    last = x;
+                }
+            }
+            mFirstLoadedChunk = first;
+            mLastLoadedChunk = last;
+        }
+    }
+
+    private int clampChunk(int chunk) {
+        return Math.max(0, Math.min(mChunkCount - 1, chunk));
+    }
+
+    private void loadChunk(int chunk) {
+        final GameObjectFactory factory = sSystemRegistry.gameObjectFactory;
+        final int end = mChunkStart[chunk + 1];
+        for (int x = mChunkStart[chunk]; x < end; x++) {
+            if (mState[x] == PENDING) {
+                GameObject object = factory.spawnStreamedTile(mTypes[x], mTileX[x], mTileY[x],
+                        mTileWidth, mTileHeight, mWorldHeight);
+                if (object != null) {
+                    object.streamedSpawn = x;
+                    mObjects[x] = object;
+                    mState[x] = LIVE;
+                    mSpawnX[x] = object.getPosition().x;
+                    mSpawnY[x] = object.getPosition().y;
+                    mSpawnLife[x] = object.life;
+                    mLiveCount++;
+                    mSpawnedCount++;
+                }
+            }
+        }
+        mChunkLoaded[chunk] = true;
+    }
+
+    private void unloadChunk(int chunk, GameObjectManager manager) {
+        final GameObjectFactory factory = sSystemRegistry.gameObjectFactory;
+        final int end = mChunkStart[chunk + 1];
+        for (int x = mChunkStart[chunk]; x < end; x++) {
+            if (mState[x] == LIVE) {
+                final GameObject object = mObjects[x];
+                final Vector2 position = object.getPosition();
+                if (position.x == mSpawnX[x] && position.y == mSpawnY[x]
+                        && object.life == mSpawnLife[x] && manager.removeInactive(object)) {
+                    object.streamedSpawn = -1;
+                    factory.destroy(object);
+                    mObjects[x] = null;
+                    mState[x] = PENDING;
+                    mLiveCount--;
+                    mUnloadedCount++;
+                }
+                // Otherwise the object keeps its state by staying alive.
+            }
+        }
+        mChunkLoaded[chunk] = false;
+    }
+
+    /** Called when an object that this streamer spawned is destroyed by the game. */
+    public void onDestroyed(GameObject object) {
+        final int record = object.streamedSpawn;
+        if (record >= 0 && record < mRecordCount && mObjects[record] == object) {
+            mObjects[record] = null;
+            mState[record] = CONSUMED;
+            mLiveCount--;
+        }
+        object.streamedSpawn = -1;
+    }
+
+    /** Returns the number of streamed spawn records in the level. */
+    public final int getRecordCount() {
+        return mRecordCount;
+    }
+
+    /** Returns the number of streamed objects that are currently alive. */
+    public final int getLiveCount() {
+        return mLiveCount;
+    }
+
+    /** Returns the number of objects spawned since the level was loaded. */
+    public final int getSpawnedCount() {
+        return mSpawnedCount;
+    }
+
+    /** Returns the number of objects returned to the factory since the level was loaded. */
+    public final int getUnloadedCount() {
+        return mUnloadedCount;
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.FloatBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+/**
+ * Coalesces screen-aligned bitmaps into textured quads so that a run of bitmaps sharing a texture
+ * can be drawn with a single glDrawElements() call, rather than a bind, a crop and a
+ * glDrawTexfOES() call per bitmap.  Quads are appended to a preallocated, interleaved
+ * (x, y, u, v) vertex buffer and grouped into runs by texture.  Pending runs are drawn together
+ * by flush(), which the renderer calls before drawing anything that can't be batched and at the
+ * end of the frame; the vertex array state is set up once per flush, so each run only costs a
+ * texture bind and a draw call.  Quad positions are in the same units as the orthographic
+ * projection set up by DrawableBitmap.beginDrawing().
+ *
+ * Like Grid, the batch can use hardware buffers: the index buffer never changes and is uploaded
+ * once, while each run's vertices are streamed into a dynamic vertex buffer.  Hardware buffers
+ * are managed through BufferLibrary along with the Grids.
+ */
+public class SpriteBatch extends AllocationGuard {
+    private static final int FLOAT_SIZE = 4;
+    private static final int CHAR_SIZE = 2;
+    private static final int FLOATS_PER_VERTEX = 4;     // x, y, u, v
+    private static final int VERTEX_STRIDE = FLOATS_PER_VERTEX * FLOAT_SIZE;
+    private static final int VERTS_PER_QUAD = 4;
+    private static final int INDICES_PER_QUAD = 6;
+
+    private final int mMaxQuads;
+    private final float[] mVertices;
+    private final FloatBuffer mVertexBuffer;
+    private final CharBuffer mIndexBuffer;
+
+    // Runs of quads sharing a texture, waiting to be drawn.
+    private final Texture[] mRunTextures;
+    private final int[] mRunStarts;
+    private int mRunCount;
+    private int mQuadCount;
+    private int mFlushedQuadCount;
+
+    private boolean mUseHardwareBuffers;
+    private int mVertBufferIndex;
+    private int mIndexBufferIndex;
+    private final int[] mBufferWorkspace;
+
+    // Statistics, cleared by resetStatistics().
+    private int mDrawnRunCount;
+    private int mBatchedQuadCount;
+
+    public SpriteBatch(int maxQuads) {
+        super();
+        if (maxQuads <= 0 || maxQuads * VERTS_PER_QUAD > 65536) {
+            throw new IllegalArgumentException("maxQuads");
+        }
+        mMaxQuads = maxQuads;
+        mVertices = new float[maxQuads * VERTS_PER_QUAD * FLOATS_PER_VERTEX];
+        mVertexBuffer = ByteBuffer.allocateDirect(mVertices.length * FLOAT_SIZE)
+            .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        mIndexBuffer = ByteBuffer.allocateDirect(maxQuads * INDICES_PER_QUAD * CHAR_SIZE)
+            .order(ByteOrder.nativeOrder()).asCharBuffer();
+        mBufferWorkspace = new int[1];
+        mRunTextures = new Texture[maxQuads];
+        mRunStarts = new int[maxQuads];
+
+        /*
+         * Each quad is two triangles:
+         *
+         *     [2]------[3]
+         *      |    /   |
+         *      |   /    |
+         *      |  /     |
+         *     [0]------[1]
+         */
+        for (int x = 0; x < maxQuads; x++) {
+            final int vertex = x * VERTS_PER_QUAD;
+            mIndexBuffer.put((char)vertex);
+            mIndexBuffer.put((char)(vertex + 1));
+            mIndexBuffer.put((char)(vertex + 2));
+            mIndexBuffer.put((char)(vertex + 1));
+            mIndexBuffer.put((char)(vertex + 2));
+            mIndexBuffer.put((char)(vertex + 3));
+        }
+        mIndexBuffer.position(0);
+    }
+
+    /**
+     * Adds a quad to the batch.  Consecutive quads with the same texture form a run, which is
+     * drawn with a single call.  Textures packed into the same atlas page count as the same
+     * texture.  Texture coordinates are normalized.
+     */
+    public void add(Texture texture, float left, float bottom, float right, float top,
+            float u0, float v0, float u1, float v1) {
+        if (mQuadCount == mMaxQuads) {
+            flush();
+            mQuadCount = 0;
+            mFlushedQuadCount = 0;
+        }
+        if (mRunCount == 0 || mRunTextures[mRunCount - 1].name != texture.name) {
+            mRunTextures[mRunCount] = texture;
+            mRunStarts[mRunCount] = mQuadCount;
+            mRunCount++;
+        }
+
+        final float[] vertices = mVertices;
+        int i = mQuadCount * VERTS_PER_QUAD * FLOATS_PER_VERTEX;
+        vertices[i++] = left;   vertices[i++] = bottom; vertices[i++] = u0; vertices[i++] = v0;
+        vertices[i++] = right;  vertices[i++] = bottom; vertices[i++] = u1; vertices[i++] = v0;
+        vertices[i++] = left;   vertices[i++] = top;    vertices[i++] = u0; vertices[i++] = v1;
+        vertices[i++] = right;  vertices[i++] = top;    vertices[i++] = u1; vertices[i++] = v1;
+        mQuadCount++;
+    }
+
+    /**
+     * Draws the runs that have been added since the last flush.  The vertices of all of the runs
+     * are uploaded together, and each run then costs a texture bind and a draw call.  The renderer
+     * calls this before drawing anything outside of the batch, so that draw order is preserved.
+     */
+    public void flush() {
+        final int firstQuad = mFlushedQuadCount;
+        final int quads = mQuadCount - firstQuad;
+        GL10 gl = OpenGLSystem.getGL();
+        if (quads > 0 && gl != null) {
+            final int firstFloat = firstQuad * VERTS_PER_QUAD * FLOATS_PER_VERTEX;
+            final int floatCount = quads * VERTS_PER_QUAD * FLOATS_PER_VERTEX;
+            mVertexBuffer.position(firstFloat);
+            mVertexBuffer.put(mVertices, firstFloat, floatCount);
+
+            // The vertex pointers always cover the whole buffer; runs are selected by their
+            // offset into the index buffer.
+            gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
+            gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+            if (!mUseHardwareBuffers) {
+                mVertexBuffer.position(0);
+                gl.glVertexPointer(2, GL10.GL_FLOAT, VERTEX_STRIDE, mVertexBuffer);
+                mVertexBuffer.position(2);
+                gl.glTexCoordPointer(2, GL10.GL_FLOAT, VERTEX_STRIDE, mVertexBuffer);
+            } else {
+                GL11 gl11 = (GL11)gl;
+                mVertexBuffer.position(firstFloat);
+                gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, mVertBufferIndex);
+                gl11.glBufferSubData(GL11.GL_ARRAY_BUFFER, firstFloat * FLOAT_SIZE,
+                        floatCount * FLOAT_SIZE, mVertexBuffer);
+                gl11.glVertexPointer(2, GL10.GL_FLOAT, VERTEX_STRIDE, 0);
+                gl11.glTexCoordPointer(2, GL10.GL_FLOAT, VERTEX_STRIDE, 2 * FLOAT_SIZE);
+                gl11.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, mIndexBufferIndex);
+            }
+
+            final int runCount = mRunCount;
+            for (int x = 0; x < runCount; x++) {
+                final int start = mRunStarts[x];
+                final int end = (x + 1 < runCount) ? mRunStarts[x + 1] : mQuadCount;
+                OpenGLSystem.bindTexture(GL10.GL_TEXTURE_2D, mRunTextures[x].name);
+                if (!mUseHardwareBuffers) {
+                    mIndexBuffer.position(start * INDICES_PER_QUAD);
+                    gl.glDrawElements(GL10.GL_TRIANGLES, (end - start) * INDICES_PER_QUAD,
+                            GL10.GL_UNSIGNED_SHORT, mIndexBuffer);
+                } else {
+                    ((GL11)gl).glDrawElements(GL11.GL_TRIANGLES, (end - start) * INDICES_PER_QUAD,
+                            GL11.GL_UNSIGNED_SHORT, start * INDICES_PER_QUAD * CHAR_SIZE);
+                }
+                mRunTextures[x] = null;
+            }
+
+            if (mUseHardwareBuffers) {
+                GL11 gl11 = (GL11)gl;
+                gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, 0);
+                gl11.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, 0);
+            }
+            gl.glDisableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+            gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
+
+            mDrawnRunCount += runCount;
+            mBatchedQuadCount += quads;
+        }
+        mRunCount = 0;
+        mFlushedQuadCount = mQuadCount;
+    }
+
+    /** Rewinds the batch.  Call at the start of each frame. */
+    public void begin() {
+        for (int x = 0; x < mRunCount; x++) {
+            mRunTextures[x] = null;
+        }
+        mRunCount = 0;
+        mQuadCount = 0;
+        mFlushedQuadCount = 0;
+    }
+
+    /** Draws any pending runs.  Call at the end of each frame. */
+    public void end() {
+        flush();
+    }
+
+    public int getDrawnRunCount() {
+        return mDrawnRunCount;
+    }
+
+    public int getBatchedQuadCount() {
+        return mBatchedQuadCount;
+    }
+
+    public void resetStatistics() {
+        mDrawnRunCount = 0;
+        mBatchedQuadCount = 0;
+    }
+
+    public boolean usingHardwareBuffers() {
+        return mUseHardwareBuffers;
+    }
+
+    /**
+     * When the OpenGL ES device is lost, GL handles become invalidated.  In that case, we just
+     * want to "forget" the old handles (without explicitly deleting them) and make new ones.
+     */
+    public void invalidateHardwareBuffers() {
+        mVertBufferIndex = 0;
+        mIndexBufferIndex = 0;
+        mUseHardwareBuffers = false;
+    }
+
+    /** Deletes the hardware buffers allocated by this object (if any). */
+    public void releaseHardwareBuffers(GL10 gl) {
+        if (mUseHardwareBuffers) {
+            if (gl instanceof GL11) {
+                GL11 gl11 = (GL11)gl;
+                mBufferWorkspace[0] = mVertBufferIndex;
+                gl11.glDeleteBuffers(1, mBufferWorkspace, 0);
+                mBufferWorkspace[0] = mIndexBufferIndex;
+                gl11.glDeleteBuffers(1, mBufferWorkspace, 0);
+            }
+            invalidateHardwareBuffers();
+        }
+    }
+
+    /**
+     * Allocates a dynamic vertex buffer and a static index buffer on the graphics card if they
+     * have not already been allocated.  See Grid.generateHardwareBuffers().
+     */
+    public void generateHardwareBuffers(GL10 gl) {
+        if (!mUseHardwareBuffers && gl instanceof GL11) {
+            GL11 gl11 = (GL11)gl;
+
+            gl11.glGenBuffers(1, mBufferWorkspace, 0);
+            mVertBufferIndex = mBufferWorkspace[0];
+            gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, mVertBufferIndex);
+            mVertexBuffer.position(0);
+            gl11.glBufferData(GL11.GL_ARRAY_BUFFER, mVertexBuffer.capacity() * FLOAT_SIZE,
+                    mVertexBuffer, GL11.GL_DYNAMIC_DRAW);
+            gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, 0);
+
+            gl11.glGenBuffers(1, mBufferWorkspace, 0);
+            mIndexBufferIndex = mBufferWorkspace[0];
+            gl11.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, mIndexBufferIndex);
+            mIndexBuffer.position(0);
+            gl11.glBufferData(GL11.GL_ELEMENT_ARRAY_BUFFER, mIndexBuffer.capacity() * CHAR_SIZE,
+                    mIndexBuffer, GL11.GL_STATIC_DRAW);
+            gl11.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+            mUseHardwareBuffers = true;
+
+            assert mVertBufferIndex != 0;
+            assert mIndexBufferIndex != 0;
+            assert gl11.glGetError() == 0;
+        }
+    }
+}
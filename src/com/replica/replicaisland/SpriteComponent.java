@@ -22,6 +22,8 @@ package com.replica.replicaisland;
  * frame.  Also manages horizontal and vertical flipping.
  */
 public class SpriteComponent extends GameComponent {
+    public static final ComponentType<SpriteComponent> TYPE = ComponentType.get(SpriteComponent.class);
+    
     
     private PhasedObjectManager mAnimations;
     private float mAnimationTime;
@@ -107,13 +109,16 @@ public class SpriteComponent extends GameComponent {
                     if (mVisible && currentFrame.texture != null && factory != null) {
                         // Fire and forget.  Allocate a new bitmap for this animation frame, set it up, and
                         // pass it off to the render component for drawing.
+                        // If the pool has run dry, the sprite just isn't drawn this frame.
                         DrawableBitmap bitmap = factory.allocateDrawableBitmap();
-                        bitmap.setWidth(mWidth);
-                        bitmap.setHeight(mHeight);
-                        bitmap.setOpacity(mOpacity);
-                        updateFlip(bitmap, parentObject.facingDirection.x < 0.0f, 
-                                parentObject.facingDirection.y < 0.0f);
-                        bitmap.setTexture(currentFrame.texture);
+                        if (bitmap != null) {
+                            bitmap.setWidth(mWidth);
+                            bitmap.setHeight(mHeight);
+                            bitmap.setOpacity(mOpacity);
+                            updateFlip(bitmap, parentObject.facingDirection.x < 0.0f, 
+                                    parentObject.facingDirection.y < 0.0f);
+                            bitmap.setTexture(currentFrame.texture);
+                        }
                         render.setDrawable(bitmap);
                     } else {
                     	render.setDrawable(null);
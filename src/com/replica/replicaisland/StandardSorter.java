@@ -19,10 +19,10 @@ package com.replica.replicaisland;
 import java.util.Arrays;
 import java.util.Comparator;
 
-public class StandardSorter<T> extends Sorter {
+public class StandardSorter<T> extends Sorter<T> {
 
     @Override
-    public void sort(Object[] array, int count, Comparator comparator) {
+    public void sort(T[] array, int count, Comparator<T> comparator) {
         Arrays.sort(array, 0, count, comparator);
     }
 
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import com.replica.replicaisland.GameObjectCollisionSystem.CollisionVolumeRecord;
+
+/**
+ * A one-dimensional sweep-and-prune broadphase.  Records are sorted by the left edge of their
+ * bounding volumes and then swept from left to right; each record is paired with every following
+ * record whose bounding volume begins before this record's bounding volume ends.  This is cheap
+ * when objects are spread out horizontally, but degenerates towards n^2 when many objects share
+ * the same column (vertical shafts, for example).
+ */
+public class SweepAndPruneBroadphase extends CollisionBroadphase {
+    private static final GameObjectCollisionSystem.CollisionVolumeComparator sComparator
+        = new GameObjectCollisionSystem.CollisionVolumeComparator();
+
+    public SweepAndPruneBroadphase() {
+        super();
+    }
+
+    @Override
+    public void findPairs(FixedSizeArray<CollisionVolumeRecord> records, PairVisitor visitor) {
+        // Sort the objects by their x position.
+        records.setComparator(sComparator);
+        records.sort(true);
+
+        int pairCount = 0;
+        final int count = records.getCount();
+        final Object[] recordArray = records.getArray();
+        for (int x = 0; x < count; x++) {
+            final CollisionVolumeRecord record = (CollisionVolumeRecord)recordArray[x];
+            final float maxX = record.maxX;
+            for (int y = x + 1; y < count; y++) {
+                final CollisionVolumeRecord other = (CollisionVolumeRecord)recordArray[y];
+                if (other.minX > maxX) {
+                    // These objects can't possibly be colliding.  And since the list is sorted,
+                    // there are no potentially colliding objects after this object
+                    // either, so we're done!
+                    break;
+                }
+                final boolean testRequired =
+                    (record.attackVolumes != null && other.vulnerabilityVolumes != null) ||
+                    (record.vulnerabilityVolumes != null && other.attackVolumes != null);
+                if (testRequired) {
+                    pairCount++;
+                    visitor.visit(record, other);
+                }
+            }
+        }
+        setPairCount(pairCount);
+    }
+}
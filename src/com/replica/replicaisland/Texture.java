@@ -28,6 +28,22 @@ public class Texture extends AllocationGuard {
     public int width;
     public int height;
     public boolean loaded;
+    // Where the image is within the OpenGL texture, in texels from its top-left corner, and the
+    // size of that texture.  Only textures packed into a TextureAtlas page have an offset; for
+    // the others the page is the image itself.
+    public int offsetX;
+    public int offsetY;
+    public int pageWidth;
+    public int pageHeight;
+    // True while the texture is being streamed in (see TextureStreamer) and is drawn with the
+    // placeholder texture.  Its width and height aren't known until it arrives.
+    public boolean placeholder;
+    // Texture memory accounting for TextureLibrary: the bytes of OpenGL memory the texture uses
+    // (zero for atlas regions, which share their page's), the frame on which it was last drawn,
+    // and whether it was unloaded to stay within budget and should be reloaded when next drawn.
+    public int bytes;
+    public int lastUsedFrame;
+    public boolean evicted;
     
     public Texture() {
         super();
@@ -40,5 +56,13 @@ public class Texture extends AllocationGuard {
         width = 0;
         height = 0;
         loaded = false;
+        offsetX = 0;
+        offsetY = 0;
+        pageWidth = 0;
+        pageHeight = 0;
+        placeholder = false;
+        bytes = 0;
+        lastUsedFrame = 0;
+        evicted = false;
     }
 }
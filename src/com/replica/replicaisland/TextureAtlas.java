@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import android.content.Context;
+
+/**
+ * The table of contents for a set of atlas pages: large images into which many small drawables
+ * have been packed by TextureAtlasBuilder (in tools/benchmarks).  When an atlas is installed in a
+ * TextureLibrary, a texture for a packed drawable is "loaded" by loading the page it lives on and
+ * pointing the texture at its rectangle within the page (see Texture.offsetX), so that every
+ * drawable on a page shares one OpenGL texture and can be drawn without rebinding.
+ *
+ * Drawables used by the long-term texture library (the HUD, the player and so on) are packed onto
+ * pages of their own.  Those pages belong to the long-term library and are shared with the 
+ * short-term library, which loads the remaining pages itself; see TextureLibrary.setAtlas().
+ * Keeping the two apart means a page is loaded once, and unloading short-term textures between
+ * levels (or to stay within a budget) never takes long-term art with it.
+ *
+ * The file is big-endian, as written by DataOutputStream:
+ *
+ *   int MAGIC, int VERSION
+ *   short page count, then for each page: raw resource name, short width, short height,
+ *     byte long-term (1 if the page holds long-term drawables, 0 otherwise)
+ *   short region count, then for each region: drawable resource name, byte page,
+ *     short x, short y, short width, short height
+ *
+ * Names are stored as a length byte followed by ASCII bytes.  Region rectangles are in pixels
+ * from the top-left corner of the page image.  Names are resolved to resource ids when the file
+ * is loaded; regions for drawables the build doesn't have are ignored, but a missing page
+ * rejects the whole file.
+ */
+public class TextureAtlas extends BaseObject {
+    public static final int MAGIC = 0x52494154; // "RIAT"
+    public static final int VERSION = 2;
+
+    // Returned by findRegion() for drawables that aren't in the atlas.
+    public static final int NONE = -1;
+
+    private int[] mPageIds;
+    private int[] mPageWidths;
+    private int[] mPageHeights;
+    private boolean[] mPageLongTerm;
+
+    // Regions, sorted by resource id.
+    private int[] mRegionIds;
+    private int[] mRegionPages;
+    private int[] mRegionX;
+    private int[] mRegionY;
+    private int[] mRegionWidths;
+    private int[] mRegionHeights;
+    private int mRegionCount;
+
+    public TextureAtlas() {
+        super();
+    }
+
+    @Override
+    public void reset() {
+
+    }
+
+    /** Loads an atlas table from a raw resource. */
+    public boolean load(Context context, int resourceId) {
+        InputStream stream = context.getResources().openRawResource(resourceId);
+        final boolean success = load(stream);
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // Nothing to do.
+        }
+        return success;
+    }
+
+    /** Reads an atlas table.  Returns false if the stream isn't a usable atlas table. */
+    public boolean load(InputStream stream) {
+        boolean success = false;
+        mRegionCount = 0;
+        try {
+            ByteBuffer data = Utils.readStream(stream);
+            if (data.remaining() >= 8 && data.getInt() == MAGIC && data.getInt() == VERSION) {
+                success = parse(data);
+            }
+        } catch (IOException e) {
+            DebugLog.e("TextureAtlas", "Unable to read atlas", e);
+        } catch (BufferUnderflowException e) {
+            DebugLog.e("TextureAtlas", "Atlas file is truncated");
+            success = false;
+        }
+        if (!success) {
+            mRegionCount = 0;
+        }
+        return success;
+    }
+
+    private boolean parse(ByteBuffer data) {
+        boolean success = true;
+        final int pageCount = data.getShort();
+        mPageIds = new int[pageCount];
+        mPageWidths = new int[pageCount];
+        mPageHeights = new int[pageCount];
+        mPageLongTerm = new boolean[pageCount];
+        for (int x = 0; x < pageCount && success; x++) {
+            final String name = Utils.readString(data);
+            mPageIds[x] = getPageId(name);
+            mPageWidths[x] = data.getShort();
+            mPageHeights[x] = data.getShort();
+            mPageLongTerm[x] = data.get() != 0;
+            if (mPageIds[x] == 0) {
+                DebugLog.e("TextureAtlas", "Unknown atlas page: " + name);
+                success = false;
+            }
+        }
+
+        if (success) {
+            final int regionCount = data.getShort();
+            mRegionIds = new int[regionCount];
+            mRegionPages = new int[regionCount];
+            mRegionX = new int[regionCount];
+            mRegionY = new int[regionCount];
+            mRegionWidths = new int[regionCount];
+            mRegionHeights = new int[regionCount];
+            int count = 0;
+            for (int x = 0; x < regionCount; x++) {
+                final String name = Utils.readString(data);
+                final int id = getDrawableId(name);
+                final int page = data.get();
+                final int left = data.getShort();
+                final int top = data.getShort();
+                final int width = data.getShort();
+                final int height = data.getShort();
+                if (id != 0 && page >= 0 && page < pageCount) {
+                    // Insert in id order; this only happens at load time.
+                    int index = count;
+                    while (index > 0 && mRegionIds[index - 1] > id) {
+                        moveRegion(index - 1, index);
+                        index--;
+                    }
+                    mRegionIds[index] = id;
+                    mRegionPages[index] = page;
+                    mRegionX[index] = left;
+                    mRegionY[index] = top;
+                    mRegionWidths[index] = width;
+                    mRegionHeights[index] = height;
+                    count++;
+                } else {
+                    DebugLog.w("TextureAtlas", "Ignoring atlas region for unknown drawable "
+                            + name);
+                }
+            }
+            mRegionCount = count;
+        }
+        return success;
+    }
+
+    private void moveRegion(int from, int to) {
+        mRegionIds[to] = mRegionIds[from];
+        mRegionPages[to] = mRegionPages[from];
+        mRegionX[to] = mRegionX[from];
+        mRegionY[to] = mRegionY[from];
+        mRegionWidths[to] = mRegionWidths[from];
+        mRegionHeights[to] = mRegionHeights[from];
+    }
+
+    /** Maps a drawable name to its resource id, or returns 0 if there is no such drawable. */
+    protected int getDrawableId(String name) {
+        final Context context = sSystemRegistry.contextParameters.context;
+        return context.getResources().getIdentifier(name, "drawable", context.getPackageName());
+    }
+
+    /** Maps a page name to its (raw) resource id, or returns 0 if there is no such page. */
+    protected int getPageId(String name) {
+        final Context context = sSystemRegistry.contextParameters.context;
+        return context.getResources().getIdentifier(name, "raw", context.getPackageName());
+    }
+
+    /** Returns the index of the region for a drawable, or NONE if it wasn't packed. */
+    public final int findRegion(int resourceId) {
+        int region = NONE;
+        if (mRegionCount > 0) {
+            final int index = Arrays.binarySearch(mRegionIds, 0, mRegionCount, resourceId);
+            if (index >= 0) {
+                region = index;
+            }
+        }
+        return region;
+    }
+
+    public final int getRegionCount() {
+        return mRegionCount;
+    }
+
+    public final int getRegionPage(int region) {
+        return mRegionPages[region];
+    }
+
+    public final int getRegionX(int region) {
+        return mRegionX[region];
+    }
+
+    public final int getRegionY(int region) {
+        return mRegionY[region];
+    }
+
+    public final int getRegionWidth(int region) {
+        return mRegionWidths[region];
+    }
+
+    public final int getRegionHeight(int region) {
+        return mRegionHeights[region];
+    }
+
+    public final int getPageCount() {
+        return mPageIds != null ? mPageIds.length : 0;
+    }
+
+    /** Returns the resource id of a page image. */
+    public final int getPageResource(int page) {
+        return mPageIds[page];
+    }
+
+    public final int getPageWidth(int page) {
+        return mPageWidths[page];
+    }
+
+    public final int getPageHeight(int page) {
+        return mPageHeights[page];
+    }
+
+    /** Returns true if a page holds drawables used by the long-term texture library. */
+    public final boolean isLongTermPage(int page) {
+        return mPageLongTerm[page];
+    }
+}
@@ -18,12 +18,15 @@ package com.replica.replicaisland;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Comparator;
 
 import javax.microedition.khronos.opengles.GL10;
 import javax.microedition.khronos.opengles.GL11;
 import javax.microedition.khronos.opengles.GL11Ext;
 
 import android.content.Context;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.opengl.GLU;
@@ -35,14 +38,53 @@ import android.opengl.GLUtils;
  * loaded at that time; it may have already been loaded or it may be loaded in the future via
  * a call to loadTexture() or loadAllTextures().  This allows Texture objects to be dispersed to
  * various game systems and while the texture data itself is streamed in or loaded as necessary.
+ * If a TextureAtlas is installed, textures for drawables that were packed into the atlas are
+ * loaded by loading their atlas page (which is itself a texture in the library that owns the 
+ * page) and sharing its OpenGL texture name; see loadAtlasRegion().
+ * If a TextureStreamer is installed, loading a texture only queues it to be decoded and uploaded in
+ * the background; meanwhile the texture is drawn with the streamer's placeholder.
+ * If compressed textures are enabled, a drawable that has a pre-encoded 16-bit or ETC1 version
+ * (see CompressedTexture) is loaded from that instead of being decoded; see loadCompressed().
+ *
+ * The library keeps track of how many bytes of texture memory it has loaded.  Given a budget (see
+ * setBudget()), it deletes the textures that have gone unused for longest whenever it is over
+ * budget, and reloads them when they are next drawn; see manageMemory().
  */
 public class TextureLibrary extends BaseObject {
     // Textures are stored in a simple hash.  This class implements its own array-based hash rather
-    // than using HashMap for performance.
-    Texture[] mTextureHash;
+    // than using HashMap for performance.  The game thread may replace the table (see grow())
+    // while the render thread walks it, so render thread code takes the table into a local first.
+    volatile Texture[] mTextureHash;
     int[] mTextureNameWorkspace;
     int[] mCropWorkspace;
+    TextureAtlas mAtlas;
+    // The library that owns the atlas's long-term pages; this library if it is the long-term one.
+    TextureLibrary mLongTermPages;
+    TextureStreamer mStreamer;
+    int mTextureCount;
+    CompressedTexture mCompressedTexture;
+    // 0 until the OpenGL extensions have been checked, then 1 if ETC1 is supported or -1 if not.
+    int mEtc1Support;
     static final int DEFAULT_SIZE = 512;
+    // From OES_compressed_ETC1_RGB8_texture.
+    static final int GL_ETC1_RGB8_OES = 0x8D64;
+    // Textures used within this many frames are never evicted, since they may be in a render
+    // queue that hasn't been drawn yet.
+    static final int MIN_EVICTION_AGE = 60;
+    static final int MAX_RELOAD_REQUESTS = 64;
+    
+    // Texture memory accounting.
+    private int mFrame;
+    private int mResidentBytes;
+    private int mPeakResidentBytes;
+    private int mBudget;
+    private TextureLibrary mSharedBudgetLibrary;
+    private FixedSizeArray<Texture> mReloadRequests;
+    private int mEvictionCount;
+    private int mReloadCount;
+    private int mOverBudgetFrames;
+    // Bitmaps without alpha are decoded (and uploaded) as 16-bit color.
+    static final Bitmap.Config BITMAP_CONFIG = Bitmap.Config.RGB_565;
     static BitmapFactory.Options sBitmapOptions  = new BitmapFactory.Options();
     
     public TextureLibrary() {
@@ -54,8 +96,9 @@ public class TextureLibrary extends BaseObject {
 
         mTextureNameWorkspace = new int[1];
         mCropWorkspace = new int[4];
+        mReloadRequests = new FixedSizeArray<Texture>(MAX_RELOAD_REQUESTS);
                 
-        sBitmapOptions.inPreferredConfig = Bitmap.Config.RGB_565;
+        sBitmapOptions.inPreferredConfig = BITMAP_CONFIG;
     }
     
     @Override
@@ -94,11 +137,74 @@ public class TextureLibrary extends BaseObject {
         }
     }
 
+    /** 
+     * Packs textures for the drawables in an atlas into its pages from now on.  Install the atlas
+     * before any textures are loaded; pass null to load every drawable as its own texture.
+     * @param longTermPages  The library that owns the atlas pages holding long-term drawables.
+     *     The long-term library passes itself, and then ignores the other pages so that it never
+     *     depends on textures that go away with a level.  The short-term library passes the 
+     *     long-term library, shares its pages, and owns the rest.  The long-term library must
+     *     neither stream nor evict textures, so that shared pages stay loaded for as long as the
+     *     short-term library points at them.
+     */
+    public void setAtlas(TextureAtlas atlas, TextureLibrary longTermPages) {
+        mAtlas = atlas;
+        mLongTermPages = longTermPages;
+    }
+    
+    public TextureAtlas getAtlas() {
+        return mAtlas;
+    }
+    
+    /** 
+     * Streams textures in through a TextureStreamer rather than loading them as they are asked 
+     * for, or loads them directly again if the streamer is null.
+     */
+    public void setStreamer(TextureStreamer streamer) {
+        mStreamer = streamer;
+    }
+    
+    public TextureStreamer getStreamer() {
+        return mStreamer;
+    }
+    
+    /** 
+     * Loads drawables from their pre-encoded versions (see CompressedTexture), where there are 
+     * any, rather than decoding them to 32-bit bitmaps.
+     */
+    public void setCompressedTextures(boolean enabled) {
+        mCompressedTexture = enabled ? new CompressedTexture() : null;
+    }
+    
+    /** 
+     * Limits the texture memory (in bytes) used by this library and, optionally, another library
+     * whose textures count against the budget but are never evicted.  Zero means no limit.
+     */
+    public void setBudget(int bytes, TextureLibrary sharedLibrary) {
+        mBudget = bytes;
+        mSharedBudgetLibrary = sharedLibrary;
+    }
+    
+    public int getBudget() {
+        return mBudget;
+    }
+
     /** Flushes all textures from OpenGL memory */
     public void deleteAll(GL10 gl) {
+        if (mStreamer != null) {
+            mStreamer.cancel(this);
+        }
         for (int x = 0; x < mTextureHash.length; x++) {
-            if (mTextureHash[x].resource != -1 && mTextureHash[x].loaded) {
+            if (mTextureHash[x].resource != -1 && mTextureHash[x].loaded 
+                    && (mTextureHash[x].placeholder || isAtlasRegion(mTextureHash[x]))) {
+                // The texture name belongs to the atlas page or the placeholder, which are 
+                // deleted on their own.
+                mTextureHash[x].name = -1;
+                mTextureHash[x].loaded = false;
+                mTextureHash[x].placeholder = false;
+            } else if (mTextureHash[x].resource != -1 && mTextureHash[x].loaded) {
             	assert mTextureHash[x].name != -1;
+                setResidentSize(mTextureHash[x], 0);
                 mTextureNameWorkspace[0] = mTextureHash[x].name;
                 mTextureHash[x].name = -1;
                 mTextureHash[x].loaded = false;
@@ -110,25 +216,48 @@ public class TextureLibrary extends BaseObject {
                 
                 assert error == GL10.GL_NO_ERROR;
             }
+            mTextureHash[x].evicted = false;
         }
+        clearReloadRequests();
     }
     
     /** Marks all textures as unloaded */
     public void invalidateAll() {
+        if (mStreamer != null) {
+            mStreamer.cancel(this);
+            mStreamer.invalidatePlaceholder();
+        }
         for (int x = 0; x < mTextureHash.length; x++) {
             if (mTextureHash[x].resource != -1 && mTextureHash[x].loaded) {
                 mTextureHash[x].name = -1;
                 mTextureHash[x].loaded = false;
+                mTextureHash[x].placeholder = false;
             }
+            mTextureHash[x].bytes = 0;
+            mTextureHash[x].evicted = false;
         }
+        mResidentBytes = 0;
+        clearReloadRequests();
     }
 
     /** Loads a bitmap into OpenGL and sets up the common parameters for 2D texture maps. */
     protected Texture loadBitmap(Context context, GL10 gl, Texture texture) {
         assert gl != null;
-        assert context != null;
+        // Streamed textures are decoded with the context that is current at the time.
+        assert context != null || mStreamer != null;
         assert texture != null;
-        if (texture.loaded == false && texture.resource != -1) {
+        final int region = (!texture.loaded && texture.resource != -1) 
+                ? findAtlasRegion(texture) : TextureAtlas.NONE;
+        if (region == TextureAtlas.NONE && mCompressedTexture != null && !texture.loaded 
+                && texture.resource != -1) {
+            // If this succeeds the texture is loaded and the bitmap paths below are skipped.
+            loadCompressed(context, gl, texture);
+        }
+        if (region != TextureAtlas.NONE) {
+            loadAtlasRegion(context, gl, texture, region);
+        } else if (texture.loaded == false && texture.resource != -1 && mStreamer != null) {
+            streamBitmap(gl, texture);
+        } else if (texture.loaded == false && texture.resource != -1) {
             gl.glGenTextures(1, mTextureNameWorkspace, 0);
             
             int error = gl.glGetError();
@@ -190,6 +319,11 @@ public class TextureLibrary extends BaseObject {
             texture.name = textureName;
             texture.width = bitmap.getWidth();
             texture.height = bitmap.getHeight();
+            texture.offsetX = 0;
+            texture.offsetY = 0;
+            texture.pageWidth = texture.width;
+            texture.pageHeight = texture.height;
+            setResidentSize(texture, bitmap.getRowBytes() * bitmap.getHeight());
 
             bitmap.recycle();
             
@@ -207,6 +341,445 @@ public class TextureLibrary extends BaseObject {
         return texture;
     }
 
+    /**
+     * Loads a texture from the pre-encoded version of its drawable, if there is one, without 
+     * decoding anything.  Returns false, leaving the texture unloaded, if there isn't one or it 
+     * can't be used (ETC1 data on hardware without ETC1 support).  Compressed textures are small 
+     * and need no decoding, so they are loaded right away even if a streamer is installed.
+     */
+    protected boolean loadCompressed(Context context, GL10 gl, Texture texture) {
+        boolean loaded = false;
+        if (context == null) {
+            context = sSystemRegistry.contextParameters.context;
+        }
+        final int resource = findCompressedResource(context, texture.resource);
+        if (resource != 0) {
+            final CompressedTexture compressed = mCompressedTexture;
+            InputStream is = context.getResources().openRawResource(resource);
+            boolean parsed;
+            try {
+                parsed = compressed.load(is);
+            } finally {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    // Ignore.
+                }
+            }
+            final int format = compressed.getFormat();
+            if (!parsed) {
+                DebugLog.e("Texture Load", compressed.getError() + ": " 
+                        + getResourceName(texture.resource));
+            } else if (format != CompressedTexture.FORMAT_ETC1 || isEtc1Supported(gl)) {
+                final int width = compressed.getWidth();
+                final int height = compressed.getHeight();
+                gl.glGenTextures(1, mTextureNameWorkspace, 0);
+                final int textureName = mTextureNameWorkspace[0];
+                gl.glBindTexture(GL10.GL_TEXTURE_2D, textureName);
+
+                gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_NEAREST);
+                gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_LINEAR);
+                gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S, GL10.GL_CLAMP_TO_EDGE);
+                gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T, GL10.GL_CLAMP_TO_EDGE);
+                gl.glTexEnvf(GL10.GL_TEXTURE_ENV, GL10.GL_TEXTURE_ENV_MODE, GL10.GL_MODULATE);
+
+                // 16-bit rows are only two-byte aligned.
+                gl.glPixelStorei(GL10.GL_UNPACK_ALIGNMENT, 2);
+                switch (format) {
+                    case CompressedTexture.FORMAT_ETC1:
+                        gl.glCompressedTexImage2D(GL10.GL_TEXTURE_2D, 0, GL_ETC1_RGB8_OES, width, 
+                                height, 0, compressed.getDataSize(), compressed.getData());
+                        break;
+                    case CompressedTexture.FORMAT_RGB565:
+                        gl.glTexImage2D(GL10.GL_TEXTURE_2D, 0, GL10.GL_RGB, width, height, 0, 
+                                GL10.GL_RGB, GL10.GL_UNSIGNED_SHORT_5_6_5, compressed.getData());
+                        break;
+                    case CompressedTexture.FORMAT_RGBA4444:
+                        gl.glTexImage2D(GL10.GL_TEXTURE_2D, 0, GL10.GL_RGBA, width, height, 0, 
+                                GL10.GL_RGBA, GL10.GL_UNSIGNED_SHORT_4_4_4_4, compressed.getData());
+                        break;
+                    case CompressedTexture.FORMAT_RGBA5551:
+                        gl.glTexImage2D(GL10.GL_TEXTURE_2D, 0, GL10.GL_RGBA, width, height, 0, 
+                                GL10.GL_RGBA, GL10.GL_UNSIGNED_SHORT_5_5_5_1, compressed.getData());
+                        break;
+                }
+                gl.glPixelStorei(GL10.GL_UNPACK_ALIGNMENT, 4);
+
+                mCropWorkspace[0] = 0;
+                mCropWorkspace[1] = height;
+                mCropWorkspace[2] = width;
+                mCropWorkspace[3] = -height;
+                ((GL11) gl).glTexParameteriv(GL10.GL_TEXTURE_2D, GL11Ext.GL_TEXTURE_CROP_RECT_OES,
+                                mCropWorkspace, 0);
+
+                final int error = gl.glGetError();
+                if (error != GL10.GL_NO_ERROR) {
+                    DebugLog.d("Texture Load Compressed", "GLError: " + error + " (" 
+                            + GLU.gluErrorString(error) + "): " + texture.resource);
+                    gl.glDeleteTextures(1, mTextureNameWorkspace, 0);
+                } else {
+                    texture.name = textureName;
+                    texture.width = width;
+                    texture.height = height;
+                    texture.offsetX = 0;
+                    texture.offsetY = 0;
+                    texture.pageWidth = width;
+                    texture.pageHeight = height;
+                    setResidentSize(texture, compressed.getDataSize());
+                    texture.loaded = true;
+                    loaded = true;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /** Returns the raw resource holding the pre-encoded version of a drawable, or 0. */
+    protected int findCompressedResource(Context context, int resource) {
+        final String name = getResourceName(resource) + CompressedTexture.SUFFIX;
+        return context.getResources().getIdentifier(name, "raw", context.getPackageName());
+    }
+
+    private boolean isEtc1Supported(GL10 gl) {
+        if (mEtc1Support == 0) {
+            final String extensions = gl.glGetString(GL10.GL_EXTENSIONS);
+            mEtc1Support = (extensions != null 
+                    && extensions.contains("GL_OES_compressed_ETC1_RGB8_texture")) ? 1 : -1;
+        }
+        return mEtc1Support > 0;
+    }
+
+    /** 
+     * Loads the atlas page a packed drawable lives on, if it isn't loaded yet, and points the 
+     * drawable's texture at its rectangle within the page.
+     */
+    protected void loadAtlasRegion(Context context, GL10 gl, Texture texture, int region) {
+        final TextureAtlas atlas = mAtlas;
+        final int page = atlas.getRegionPage(region);
+        final TextureLibrary owner = getPageOwner(page);
+        final Texture pageTexture = owner.allocateTexture(atlas.getPageResource(page));
+        if (pageTexture != null) {
+            owner.loadBitmap(context, gl, pageTexture);
+            texture.name = pageTexture.name;
+            texture.width = atlas.getRegionWidth(region);
+            texture.height = atlas.getRegionHeight(region);
+            texture.offsetX = atlas.getRegionX(region);
+            texture.offsetY = atlas.getRegionY(region);
+            texture.pageWidth = atlas.getPageWidth(page);
+            texture.pageHeight = atlas.getPageHeight(page);
+            texture.loaded = pageTexture.loaded;
+            texture.placeholder = pageTexture.placeholder;
+        }
+    }
+
+    /** 
+     * Returns the atlas region a texture should be loaded from, or TextureAtlas.NONE if it is 
+     * loaded as a texture of its own: either it wasn't packed, or it was packed onto a short-term
+     * page and this is the long-term library.
+     */
+    protected final int findAtlasRegion(Texture texture) {
+        final TextureAtlas atlas = mAtlas;
+        int region = TextureAtlas.NONE;
+        if (atlas != null) {
+            region = atlas.findRegion(texture.resource);
+            if (region != TextureAtlas.NONE && mLongTermPages == this 
+                    && !atlas.isLongTermPage(atlas.getRegionPage(region))) {
+                region = TextureAtlas.NONE;
+            }
+        }
+        return region;
+    }
+    
+    private TextureLibrary getPageOwner(int page) {
+        final TextureLibrary longTermPages = mLongTermPages;
+        return longTermPages != null && mAtlas.isLongTermPage(page) ? longTermPages : this;
+    }
+
+    /** Points a texture at the streamer's placeholder and queues it to be streamed in. */
+    protected void streamBitmap(GL10 gl, Texture texture) {
+        final Texture placeholder = mStreamer.getPlaceholder(gl);
+        texture.name = placeholder.name;
+        texture.width = 0;
+        texture.height = 0;
+        texture.offsetX = 0;
+        texture.offsetY = 0;
+        texture.pageWidth = placeholder.pageWidth;
+        texture.pageHeight = placeholder.pageHeight;
+        texture.placeholder = true;
+        texture.loaded = true;
+        mStreamer.request(this, texture);
+    }
+
+    /** 
+     * Called by the streamer on the render thread once a streamed texture has been uploaded.
+     * Drawables packed into the texture (if it is an atlas page) are pointed at it as well.
+     */
+    void finishStreaming(Texture texture, int name, int width, int height, int bytesPerPixel) {
+        texture.name = name;
+        texture.width = width;
+        texture.height = height;
+        texture.offsetX = 0;
+        texture.offsetY = 0;
+        texture.pageWidth = width;
+        texture.pageHeight = height;
+        texture.placeholder = false;
+        texture.loaded = true;
+        setResidentSize(texture, width * height * bytesPerPixel);
+        final TextureAtlas atlas = mAtlas;
+        if (atlas != null) {
+            final Texture[] hash = mTextureHash;
+            for (int x = 0; x < hash.length; x++) {
+                final Texture region = hash[x];
+                if (region.resource != -1 && region.placeholder) {
+                    final int index = findAtlasRegion(region);
+                    if (index != TextureAtlas.NONE 
+                            && atlas.getPageResource(atlas.getRegionPage(index)) 
+                                == texture.resource) {
+                        region.name = name;
+                        region.placeholder = false;
+                    }
+                }
+            }
+        }
+    }
+
+    /** 
+     * Asks the streamer to load a texture that is still a placeholder before the others, because
+     * it is about to be drawn.
+     */
+    public void prioritize(Texture texture) {
+        if (mStreamer != null && texture.placeholder) {
+            Texture streamed = texture;
+            final int region = findAtlasRegion(texture);
+            if (region != TextureAtlas.NONE) {
+                final int page = mAtlas.getRegionPage(region);
+                streamed = getPageOwner(page).getTextureByResource(mAtlas.getPageResource(page));
+            }
+            if (streamed != null) {
+                mStreamer.prioritize(streamed);
+            }
+        }
+    }
+    
+    private boolean isAtlasRegion(Texture texture) {
+        return findAtlasRegion(texture) != TextureAtlas.NONE;
+    }
+
+    /** 
+     * Records that a texture is about to be drawn.  Call whenever a texture is drawn (the render 
+     * system does so for every drawable it schedules); this keeps used textures from being 
+     * evicted, reloads evicted ones, and hurries streaming ones along.  May be called from the 
+     * game thread or the render thread, for textures from any library.
+     */
+    public final void markUsed(Texture texture) {
+        texture.lastUsedFrame = mFrame;
+        if (texture.placeholder) {
+            prioritize(texture);
+        } else if (texture.evicted && !texture.loaded) {
+            synchronized (mReloadRequests) {
+                if (mReloadRequests.find(texture, true) == -1 
+                        && mReloadRequests.getCount() < mReloadRequests.getCapacity()) {
+                    mReloadRequests.add(texture);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Reloads evicted textures that have been drawn since the last call (see markUsed()), and 
+     * then evicts the least recently used textures until the library is within its budget. Call
+     * once per frame from the render thread, before drawing.
+     */
+    public void manageMemory(Context context, GL10 gl) {
+        mFrame++;
+        final FixedSizeArray<Texture> requests = mReloadRequests;
+        if (requests.getCount() > 0) {
+            synchronized (requests) {
+                for (int x = 0; x < requests.getCount(); x++) {
+                    final Texture texture = requests.get(x);
+                    if (texture.evicted && !texture.loaded && texture.resource != -1) {
+                        texture.evicted = false;
+                        loadBitmap(context, gl, texture);
+                        mReloadCount++;
+                    }
+                }
+                requests.clear();
+            }
+        }
+        
+        if (mBudget > 0 && getBudgetedBytes() > mBudget) {
+            if (mAtlas != null) {
+                touchAtlasPages();
+            }
+            final int newestEvictable = mFrame - MIN_EVICTION_AGE;
+            boolean evicted = true;
+            while (evicted && getBudgetedBytes() > mBudget) {
+                Texture oldest = null;
+                final Texture[] hash = mTextureHash;
+                for (int x = 0; x < hash.length; x++) {
+                    final Texture texture = hash[x];
+                    if (texture.loaded && texture.bytes > 0 && !texture.placeholder 
+                            && texture.lastUsedFrame < newestEvictable
+                            && (oldest == null || texture.lastUsedFrame < oldest.lastUsedFrame)) {
+                        oldest = texture;
+                    }
+                }
+                evicted = oldest != null;
+                if (evicted) {
+                    evict(gl, oldest);
+                }
+            }
+            if (!evicted) {
+                // Everything left has been drawn too recently to evict.
+                mOverBudgetFrames++;
+            }
+        }
+    }
+    
+    private int getBudgetedBytes() {
+        final TextureLibrary shared = mSharedBudgetLibrary;
+        return mResidentBytes + (shared != null ? shared.mResidentBytes : 0);
+    }
+    
+    // An atlas page is in use whenever any of the drawables packed into it are.
+    private void touchAtlasPages() {
+        final TextureAtlas atlas = mAtlas;
+        final Texture[] hash = mTextureHash;
+        for (int x = 0; x < hash.length; x++) {
+            final Texture texture = hash[x];
+            if (texture.loaded && texture.bytes == 0 && !texture.placeholder) {
+                // Shared long-term pages aren't in this library, so they are never found here.
+                final int region = findAtlasRegion(texture);
+                if (region != TextureAtlas.NONE) {
+                    final Texture page = getTextureByResource(
+                            atlas.getPageResource(atlas.getRegionPage(region)));
+                    if (page != null && page.lastUsedFrame < texture.lastUsedFrame) {
+                        page.lastUsedFrame = texture.lastUsedFrame;
+                    }
+                }
+            }
+        }
+    }
+    
+    /** Deletes a texture from OpenGL memory; it is reloaded when it is next drawn. */
+    private void evict(GL10 gl, Texture texture) {
+        mTextureNameWorkspace[0] = texture.name;
+        gl.glDeleteTextures(1, mTextureNameWorkspace, 0);
+        setResidentSize(texture, 0);
+        texture.name = -1;
+        texture.loaded = false;
+        texture.evicted = true;
+        mEvictionCount++;
+        final TextureAtlas atlas = mAtlas;
+        if (atlas != null) {
+            // Drawables packed into an evicted page are evicted with it.
+            final Texture[] hash = mTextureHash;
+            for (int x = 0; x < hash.length; x++) {
+                final Texture region = hash[x];
+                if (region.loaded && region.bytes == 0 && !region.placeholder) {
+                    final int index = findAtlasRegion(region);
+                    if (index != TextureAtlas.NONE 
+                            && atlas.getPageResource(atlas.getRegionPage(index)) 
+                                == texture.resource) {
+                        region.name = -1;
+                        region.loaded = false;
+                        region.evicted = true;
+                    }
+                }
+            }
+        }
+    }
+    
+    /** Records the number of bytes of texture memory a texture uses. */
+    protected void setResidentSize(Texture texture, int bytes) {
+        mResidentBytes += bytes - texture.bytes;
+        texture.bytes = bytes;
+        if (mResidentBytes > mPeakResidentBytes) {
+            mPeakResidentBytes = mResidentBytes;
+        }
+    }
+    
+    public int getResidentBytes() {
+        return mResidentBytes;
+    }
+    
+    public int getPeakResidentBytes() {
+        return mPeakResidentBytes;
+    }
+    
+    public int getEvictionCount() {
+        return mEvictionCount;
+    }
+    
+    public int getReloadCount() {
+        return mReloadCount;
+    }
+    
+    /** 
+     * Appends a summary of the library's texture memory use, followed by the textures that use
+     * the most memory (at most maxTextures of them).
+     */
+    public void dumpMemoryStatistics(StringBuilder output, String label, int maxTextures) {
+        output.append(label).append(": ").append(mTextureCount);
+        output.append(" of ").append(mTextureHash.length).append(" textures, ");
+        output.append(mResidentBytes / 1024).append(" KB loaded, peak ");
+        output.append(mPeakResidentBytes / 1024).append(" KB");
+        if (mBudget > 0) {
+            output.append(", budget ").append(mBudget / 1024).append(" KB, ");
+            output.append(mEvictionCount).append(" evictions, ");
+            output.append(mReloadCount).append(" reloads");
+            if (mOverBudgetFrames > 0) {
+                output.append(", OVER BUDGET ").append(mOverBudgetFrames).append(" frames");
+            }
+        }
+        output.append("\n");
+        
+        Texture[] sorted = new Texture[mTextureHash.length];
+        int count = 0;
+        for (int x = 0; x < mTextureHash.length; x++) {
+            if (mTextureHash[x].bytes > 0) {
+                sorted[count] = mTextureHash[x];
+                count++;
+            }
+        }
+        Arrays.sort(sorted, 0, count, new Comparator<Texture>() {
+            public int compare(Texture a, Texture b) {
+                return b.bytes - a.bytes;
+            }
+        });
+        for (int x = 0; x < count && x < maxTextures; x++) {
+            final Texture texture = sorted[x];
+            output.append("  ").append(getResourceName(texture.resource));
+            output.append(": ").append(texture.width).append("x").append(texture.height);
+            output.append(", ").append(texture.bytes / 1024).append(" KB, last drawn ");
+            output.append(mFrame - texture.lastUsedFrame).append(" frames ago\n");
+        }
+    }
+    
+    /** Returns the report produced by dumpMemoryStatistics().  Allocates; intended for logging. */
+    public String getMemoryReport(String label, int maxTextures) {
+        StringBuilder output = new StringBuilder(1024);
+        dumpMemoryStatistics(output, label, maxTextures);
+        return output.toString();
+    }
+    
+    /** Returns the name of a resource, for reports. */
+    protected String getResourceName(int resource) {
+        String name = null;
+        final ContextParameters params = sSystemRegistry.contextParameters;
+        if (params != null && params.context != null) {
+            try {
+                name = params.context.getResources().getResourceEntryName(resource);
+            } catch (Resources.NotFoundException e) {
+                // Use the id.
+            }
+        }
+        if (name == null) {
+            name = "0x" + Integer.toHexString(resource);
+        }
+        return name;
+    }
+
     public boolean isTextureLoaded(int resourceID) {
         return getTextureByResource(resourceID) != null;
     }
@@ -256,6 +829,12 @@ public class TextureLibrary extends BaseObject {
 
     /** Inserts a texture into the hash */
     protected Texture addTexture(int id, int name, int width, int height) {
+        // Linear probing slows down as the hash fills up, and a full hash can't take any more.
+        if (mTextureCount >= mTextureHash.length * 3 / 4) {
+            DebugLog.w("TextureLibrary", "Texture hash is full; growing to " 
+                    + mTextureHash.length * 2);
+            grow(mTextureHash.length * 2);
+        }
         int index = findFirstKey(getHashIndex(id), -1);
         Texture texture = null;
         assert index != -1;
@@ -266,15 +845,55 @@ public class TextureLibrary extends BaseObject {
             mTextureHash[index].width = width;
             mTextureHash[index].height = height;
             texture = mTextureHash[index];
+            mTextureCount++;
         }
 
         return texture;
     }
     
+    /** 
+     * Rehashes into a larger table.  Texture objects keep their identity, since others cache them.
+     * The new table is only published once every slot is filled, as the render thread may be 
+     * walking the table at the same time.
+     */
+    private void grow(int size) {
+        final Texture[] oldHash = mTextureHash;
+        final Texture[] newHash = new Texture[size];
+        for (int x = 0; x < oldHash.length; x++) {
+            final Texture texture = oldHash[x];
+            if (texture.resource != -1) {
+                // The same linear probe as findFirstKey().
+                int index = texture.resource % size;
+                while (newHash[index] != null) {
+                    index = (index + 1) % size;
+                }
+                newHash[index] = texture;
+            }
+        }
+        for (int x = 0; x < size; x++) {
+            if (newHash[x] == null) {
+                newHash[x] = new Texture();
+            }
+        }
+        mTextureHash = newHash;
+    }
+    
     public void removeAll() {
+        if (mStreamer != null) {
+            mStreamer.cancel(this);
+        }
         for (int x = 0; x < mTextureHash.length; x++) {
             mTextureHash[x].reset();
         }
+        mTextureCount = 0;
+        mResidentBytes = 0;
+        clearReloadRequests();
+    }
+    
+    private void clearReloadRequests() {
+        synchronized (mReloadRequests) {
+            mReloadRequests.clear();
+        }
     }
 
 }
@@ -0,0 +1,514 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+import javax.microedition.khronos.opengles.GL11Ext;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLU;
+
+/**
+ * Loads textures for a TextureLibrary in the background rather than all at once when a level
+ * starts.  Requested textures are decoded by a small pool of worker threads into a fixed set of
+ * reusable pixel buffers, and the render thread uploads at most a few decoded buffers to OpenGL
+ * each frame (see uploadPending()), so neither the game nor the renderer stalls on a level's
+ * worth of decoding.  Workers only run while there is something to decode.
+ *
+ * Until its pixels arrive, a streamed texture is pointed at a small placeholder texture of a
+ * single color, so that it can be drawn (and batched) like any other.  Textures that are about
+ * to be drawn are decoded first: the render system calls prioritize() for each placeholder it
+ * schedules, and workers always take the most recently prioritized request, falling back to
+ * the order in which textures were requested.
+ */
+public class TextureStreamer extends BaseObject {
+    private static final int DEFAULT_WORKER_COUNT = 2;
+    private static final int DEFAULT_UPLOADS_PER_FRAME = 2;
+    private static final int MAX_REQUESTS = TextureLibrary.DEFAULT_SIZE;
+    private static final int PLACEHOLDER_SIZE = 8;
+    private static final int DECODE_STORAGE_SIZE = 16 * 1024;
+
+    private final Object mLock = new Object();
+
+    // Textures waiting for a worker, oldest first.
+    private final Texture[] mPendingTextures;
+    private final int[] mPendingResources;
+    private final TextureLibrary[] mPendingLibraries;
+    private final int[] mPendingPriorities;
+    private int mPendingCount;
+
+    private final FixedSizeArray<PixelBuffer> mFreeBuffers;
+    private final FixedSizeArray<PixelBuffer> mDecodedBuffers;
+    private final FixedSizeArray<PixelBuffer> mUploadBuffers;
+    private final int mMaxWorkers;
+    private final int mUploadsPerFrame;
+    private int mWorkerCount;
+    private int mDecodingCount;
+    private int mFrame;
+
+    private final Texture mPlaceholder;
+    private int mPlaceholderColor;
+    private final int[] mNameWorkspace;
+    private final int[] mCropWorkspace;
+
+    private int mPeakQueueDepth;
+    private int mDecodeCount;
+    private long mDecodeTime;
+    private int mUploadCount;
+    private long mUploadTime;
+    private long mMaxUploadTime;
+
+    public TextureStreamer() {
+        this(DEFAULT_WORKER_COUNT, DEFAULT_UPLOADS_PER_FRAME);
+    }
+
+    public TextureStreamer(int workerCount, int uploadsPerFrame) {
+        super();
+        mMaxWorkers = workerCount;
+        mUploadsPerFrame = uploadsPerFrame;
+        mPendingTextures = new Texture[MAX_REQUESTS];
+        mPendingResources = new int[MAX_REQUESTS];
+        mPendingLibraries = new TextureLibrary[MAX_REQUESTS];
+        mPendingPriorities = new int[MAX_REQUESTS];
+        // Each worker needs a buffer to decode into, and one more lets a worker keep going while
+        // the render thread uploads.
+        final int bufferCount = workerCount + 1;
+        mFreeBuffers = new FixedSizeArray<PixelBuffer>(bufferCount);
+        mDecodedBuffers = new FixedSizeArray<PixelBuffer>(bufferCount);
+        mUploadBuffers = new FixedSizeArray<PixelBuffer>(bufferCount);
+        for (int x = 0; x < bufferCount; x++) {
+            mFreeBuffers.add(new PixelBuffer());
+        }
+        mPlaceholder = new Texture();
+        mPlaceholderColor = 0;
+        mNameWorkspace = new int[1];
+        mCropWorkspace = new int[4];
+    }
+
+    @Override
+    public void reset() {
+
+    }
+
+    /**
+     * Sets the (ARGB) color drawn in place of textures that haven't arrived yet.  The default is
+     * transparent.  Takes effect the next time the placeholder is created.
+     */
+    public void setPlaceholderColor(int color) {
+        mPlaceholderColor = color;
+    }
+
+    /**
+     * Returns the placeholder texture, creating it first if necessary.  Only call from the render
+     * thread.
+     */
+    public Texture getPlaceholder(GL10 gl) {
+        final Texture placeholder = mPlaceholder;
+        if (!placeholder.loaded) {
+            final PixelBuffer buffer = new PixelBuffer();
+            buffer.setSize(PLACEHOLDER_SIZE, PLACEHOLDER_SIZE, 4);
+            // OpenGL wants RGBA bytes with the color premultiplied by alpha, as Bitmaps store it.
+            final int color = mPlaceholderColor;
+            final int alpha = color >>> 24;
+            final ByteBuffer pixels = buffer.pixels;
+            for (int x = 0; x < PLACEHOLDER_SIZE * PLACEHOLDER_SIZE; x++) {
+                pixels.put((byte)(((color >> 16) & 0xFF) * alpha / 255));
+                pixels.put((byte)(((color >> 8) & 0xFF) * alpha / 255));
+                pixels.put((byte)((color & 0xFF) * alpha / 255));
+                pixels.put((byte)alpha);
+            }
+            pixels.position(0);
+            placeholder.name = upload(gl, buffer);
+            placeholder.width = PLACEHOLDER_SIZE;
+            placeholder.height = PLACEHOLDER_SIZE;
+            placeholder.pageWidth = PLACEHOLDER_SIZE;
+            placeholder.pageHeight = PLACEHOLDER_SIZE;
+            placeholder.loaded = true;
+        }
+        return placeholder;
+    }
+
+    /** Forgets the placeholder texture, for example because the OpenGL context was lost. */
+    public void invalidatePlaceholder() {
+        mPlaceholder.name = -1;
+        mPlaceholder.loaded = false;
+    }
+
+    /**
+     * Queues a texture to be decoded and uploaded.  When its pixels have been uploaded, the library
+     * is told with TextureLibrary.finishStreaming().
+     */
+    public void request(TextureLibrary library, Texture texture) {
+        synchronized (mLock) {
+            assert mPendingCount < MAX_REQUESTS;
+            if (mPendingCount < MAX_REQUESTS) {
+                final int index = mPendingCount;
+                mPendingTextures[index] = texture;
+                mPendingResources[index] = texture.resource;
+                mPendingLibraries[index] = library;
+                mPendingPriorities[index] = 0;
+                mPendingCount++;
+                final int depth = getQueueDepthLocked();
+                if (depth > mPeakQueueDepth) {
+                    mPeakQueueDepth = depth;
+                }
+                if (mWorkerCount < mMaxWorkers && mWorkerCount < mPendingCount) {
+                    mWorkerCount++;
+                    Thread worker = new Thread(new Worker());
+                    worker.setName("TextureStreamer");
+                    worker.setPriority(Thread.MIN_PRIORITY);
+                    // A worker waiting for a buffer that the renderer will never free must not 
+                    // keep the process alive.
+                    worker.setDaemon(true);
+                    worker.start();
+                }
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    /** Moves a requested texture to the front of the queue, because it is about to be drawn. */
+    public void prioritize(Texture texture) {
+        synchronized (mLock) {
+            for (int x = 0; x < mPendingCount; x++) {
+                if (mPendingTextures[x] == texture) {
+                    // Later frames win over earlier ones.
+                    mPendingPriorities[x] = mFrame + 1;
+                    break;
+                }
+            }
+        }
+    }
+
+    /** Drops every request made by a library, including any pixels that are waiting for upload. */
+    public void cancel(TextureLibrary library) {
+        synchronized (mLock) {
+            int count = 0;
+            for (int x = 0; x < mPendingCount; x++) {
+                if (mPendingLibraries[x] != library) {
+                    mPendingTextures[count] = mPendingTextures[x];
+                    mPendingResources[count] = mPendingResources[x];
+                    mPendingLibraries[count] = mPendingLibraries[x];
+                    mPendingPriorities[count] = mPendingPriorities[x];
+                    count++;
+                }
+            }
+            for (int x = count; x < mPendingCount; x++) {
+                mPendingTextures[x] = null;
+                mPendingLibraries[x] = null;
+            }
+            mPendingCount = count;
+            // Buffers that are still being decoded are thrown away when they are uploaded; see
+            // isWanted().
+            for (int x = mDecodedBuffers.getCount() - 1; x >= 0; x--) {
+                final PixelBuffer buffer = mDecodedBuffers.get(x);
+                if (buffer.library == library) {
+                    mDecodedBuffers.remove(x);
+                    buffer.clear();
+                    mFreeBuffers.add(buffer);
+                }
+            }
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * Uploads some of the textures that have been decoded, and returns their buffers to the
+     * workers.  Call once per frame from the render thread, before drawing.
+     */
+    public void uploadPending(GL10 gl) {
+        final FixedSizeArray<PixelBuffer> uploads = mUploadBuffers;
+        synchronized (mLock) {
+            mFrame++;
+            final FixedSizeArray<PixelBuffer> decoded = mDecodedBuffers;
+            while (decoded.getCount() > 0 && uploads.getCount() < mUploadsPerFrame) {
+                uploads.add(decoded.get(0));
+                decoded.remove(0);
+            }
+        }
+
+        final int count = uploads.getCount();
+        if (count > 0) {
+            for (int x = 0; x < count; x++) {
+                final PixelBuffer buffer = uploads.get(x);
+                if (buffer.decoded && isWanted(buffer)) {
+                    final long start = System.nanoTime();
+                    final int name = upload(gl, buffer);
+                    buffer.library.finishStreaming(buffer.texture, name, buffer.width,
+                            buffer.height, buffer.bytesPerPixel);
+                    final long time = System.nanoTime() - start;
+                    mUploadCount++;
+                    mUploadTime += time;
+                    if (time > mMaxUploadTime) {
+                        mMaxUploadTime = time;
+                    }
+                }
+            }
+            synchronized (mLock) {
+                for (int x = 0; x < count; x++) {
+                    final PixelBuffer buffer = uploads.get(x);
+                    buffer.clear();
+                    mFreeBuffers.add(buffer);
+                }
+                mLock.notifyAll();
+            }
+            uploads.clear();
+        }
+    }
+
+    // A texture may have been removed from its library, or even reused for another resource,
+    // while it was being decoded.
+    private boolean isWanted(PixelBuffer buffer) {
+        final Texture texture = buffer.texture;
+        return texture.placeholder && texture.resource == buffer.resource;
+    }
+
+    /** Creates an OpenGL texture from decoded pixels and returns its name. */
+    private int upload(GL10 gl, PixelBuffer buffer) {
+        gl.glGenTextures(1, mNameWorkspace, 0);
+        final int textureName = mNameWorkspace[0];
+        gl.glBindTexture(GL10.GL_TEXTURE_2D, textureName);
+
+        // The same parameters as TextureLibrary.loadBitmap().
+        gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_NEAREST);
+        gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_LINEAR);
+        gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S, GL10.GL_CLAMP_TO_EDGE);
+        gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T, GL10.GL_CLAMP_TO_EDGE);
+        gl.glTexEnvf(GL10.GL_TEXTURE_ENV, GL10.GL_TEXTURE_ENV_MODE, GL10.GL_MODULATE);
+
+        if (buffer.bytesPerPixel == 2) {
+            // 16-bit rows are only guaranteed to be aligned to two bytes.
+            gl.glPixelStorei(GL10.GL_UNPACK_ALIGNMENT, 2);
+            gl.glTexImage2D(GL10.GL_TEXTURE_2D, 0, GL10.GL_RGB, buffer.width, buffer.height, 0,
+                    GL10.GL_RGB, GL10.GL_UNSIGNED_SHORT_5_6_5, buffer.pixels);
+            gl.glPixelStorei(GL10.GL_UNPACK_ALIGNMENT, 4);
+        } else {
+            gl.glTexImage2D(GL10.GL_TEXTURE_2D, 0, GL10.GL_RGBA, buffer.width, buffer.height, 0,
+                    GL10.GL_RGBA, GL10.GL_UNSIGNED_BYTE, buffer.pixels);
+        }
+
+        mCropWorkspace[0] = 0;
+        mCropWorkspace[1] = buffer.height;
+        mCropWorkspace[2] = buffer.width;
+        mCropWorkspace[3] = -buffer.height;
+        ((GL11) gl).glTexParameteriv(GL10.GL_TEXTURE_2D, GL11Ext.GL_TEXTURE_CROP_RECT_OES,
+                mCropWorkspace, 0);
+
+        final int error = gl.glGetError();
+        if (error != GL10.GL_NO_ERROR) {
+            DebugLog.d("Texture Stream", "GLError: " + error + " (" + GLU.gluErrorString(error)
+                    + "): " + buffer.resource);
+        }
+        assert error == GL10.GL_NO_ERROR;
+
+        return textureName;
+    }
+
+    /**
+     * Decodes a bitmap resource into a buffer.  Like TextureLibrary, the decoder is asked for 
+     * TextureLibrary.BITMAP_CONFIG, so images without alpha arrive as RGB565; everything else is
+     * stored as premultiplied RGBA bytes.  Called on a worker thread.  Returns false if the 
+     * resource couldn't be decoded.
+     */
+    protected boolean decode(PixelBuffer buffer, BitmapFactory.Options options) {
+        final Context context = sSystemRegistry.contextParameters.context;
+        InputStream stream = context.getResources().openRawResource(buffer.resource);
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeStream(stream, null, options);
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // Ignore.
+            }
+        }
+        if (bitmap != null && bitmap.getConfig() != Bitmap.Config.ARGB_8888
+                && bitmap.getConfig() != Bitmap.Config.RGB_565) {
+            final Bitmap converted = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+            bitmap.recycle();
+            bitmap = converted;
+        }
+        boolean success = false;
+        if (bitmap != null) {
+            final int bytesPerPixel = bitmap.getConfig() == Bitmap.Config.RGB_565 ? 2 : 4;
+            buffer.setSize(bitmap.getWidth(), bitmap.getHeight(), bytesPerPixel);
+            bitmap.copyPixelsToBuffer(buffer.pixels);
+            buffer.pixels.position(0);
+            bitmap.recycle();
+            success = true;
+        }
+        return success;
+    }
+
+    private int getQueueDepthLocked() {
+        return mPendingCount + mDecodingCount + mDecodedBuffers.getCount();
+    }
+
+    /** Returns the number of textures that have been requested but not yet uploaded. */
+    public int getQueueDepth() {
+        synchronized (mLock) {
+            return getQueueDepthLocked();
+        }
+    }
+
+    public int getPeakQueueDepth() {
+        return mPeakQueueDepth;
+    }
+
+    public int getDecodeCount() {
+        return mDecodeCount;
+    }
+
+    /** Returns the average time a worker took to decode a texture, in milliseconds. */
+    public float getAverageDecodeTime() {
+        synchronized (mLock) {
+            return mDecodeCount > 0 ? mDecodeTime / (mDecodeCount * 1000000.0f) : 0.0f;
+        }
+    }
+
+    public int getUploadCount() {
+        return mUploadCount;
+    }
+
+    /** Returns the average time the render thread took to upload a texture, in milliseconds. */
+    public float getAverageUploadTime() {
+        return mUploadCount > 0 ? mUploadTime / (mUploadCount * 1000000.0f) : 0.0f;
+    }
+
+    /** Returns the longest time the render thread took to upload a texture, in milliseconds. */
+    public float getMaxUploadTime() {
+        return mMaxUploadTime / 1000000.0f;
+    }
+
+    /** A buffer of decoded pixels, and the texture they belong to. */
+    protected static class PixelBuffer {
+        public ByteBuffer pixels;
+        public int width;
+        public int height;
+        // 2 for RGB565 pixels, 4 for RGBA bytes.
+        public int bytesPerPixel;
+        public int resource;
+        Texture texture;
+        TextureLibrary library;
+        boolean decoded;
+
+        /** Sizes the buffer for an image, growing it if necessary. */
+        public void setSize(int imageWidth, int imageHeight, int imageBytesPerPixel) {
+            final int size = imageWidth * imageHeight * imageBytesPerPixel;
+            if (pixels == null || pixels.capacity() < size) {
+                pixels = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+            }
+            pixels.clear();
+            pixels.limit(size);
+            width = imageWidth;
+            height = imageHeight;
+            bytesPerPixel = imageBytesPerPixel;
+        }
+
+        public void clear() {
+            texture = null;
+            library = null;
+            decoded = false;
+        }
+    }
+
+    /** Decodes requests, most urgent first, until there are none left. */
+    private class Worker implements Runnable {
+        private final BitmapFactory.Options mOptions;
+
+        public Worker() {
+            mOptions = new BitmapFactory.Options();
+            mOptions.inPreferredConfig = TextureLibrary.BITMAP_CONFIG;
+            mOptions.inTempStorage = new byte[DECODE_STORAGE_SIZE];
+        }
+
+        public void run() {
+            boolean done = false;
+            while (!done) {
+                PixelBuffer buffer = null;
+                synchronized (mLock) {
+                    while (mPendingCount > 0 && mFreeBuffers.getCount() == 0) {
+                        try {
+                            mLock.wait();
+                        } catch (InterruptedException e) {
+                            // Check again.
+                        }
+                    }
+                    if (mPendingCount > 0) {
+                        buffer = mFreeBuffers.removeLast();
+                        takeRequest(buffer);
+                        mDecodingCount++;
+                    } else {
+                        mWorkerCount--;
+                        done = true;
+                    }
+                }
+
+                if (buffer != null) {
+                    final long start = System.nanoTime();
+                    boolean decoded = false;
+                    try {
+                        decoded = decode(buffer, mOptions);
+                    } catch (OutOfMemoryError e) {
+                        DebugLog.e("Texture Stream", "Out of memory decoding " + buffer.resource);
+                    }
+                    if (!decoded) {
+                        DebugLog.e("Texture Stream", "Unable to decode " + buffer.resource);
+                    }
+                    final long time = System.nanoTime() - start;
+                    synchronized (mLock) {
+                        buffer.decoded = decoded;
+                        mDecodingCount--;
+                        mDecodeCount++;
+                        mDecodeTime += time;
+                        mDecodedBuffers.add(buffer);
+                    }
+                }
+            }
+        }
+
+        // Moves the most urgent request into a buffer.  Call with the lock held.
+        private void takeRequest(PixelBuffer buffer) {
+            int best = 0;
+            for (int x = 1; x < mPendingCount; x++) {
+                if (mPendingPriorities[x] > mPendingPriorities[best]) {
+                    best = x;
+                }
+            }
+            buffer.texture = mPendingTextures[best];
+            buffer.resource = mPendingResources[best];
+            buffer.library = mPendingLibraries[best];
+            final int following = mPendingCount - best - 1;
+            System.arraycopy(mPendingTextures, best + 1, mPendingTextures, best, following);
+            System.arraycopy(mPendingResources, best + 1, mPendingResources, best, following);
+            System.arraycopy(mPendingLibraries, best + 1, mPendingLibraries, best, following);
+            System.arraycopy(mPendingPriorities, best + 1, mPendingPriorities, best, following);
+            mPendingCount--;
+            mPendingTextures[mPendingCount] = null;
+            mPendingLibraries[mPendingCount] = null;
+        }
+    }
+}
@@ -100,8 +100,8 @@ public class TheSourceComponent extends GameComponent {
 			if (mExplosionTimer < 0.0f) {
 				GameObjectFactory factory = sSystemRegistry.gameObjectFactory;
 				if (factory != null) {
-					float x = ((float)Math.random() - 0.5f) * (parentObject.width * 0.75f);
-					float y = ((float)Math.random() - 0.5f) * (parentObject.height * 0.75f);
+					float x = (Utils.random() - 0.5f) * (parentObject.width * 0.75f);
+					float y = (Utils.random() - 0.5f) * (parentObject.height * 0.75f);
 					GameObject object =
 						factory.spawn(GameObjectFactory.GameObjectType.EXPLOSION_GIANT, 
 							parentObject.getCenteredPositionX() + x, 
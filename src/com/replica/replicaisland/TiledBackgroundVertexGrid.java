@@ -39,5 +39,11 @@ public class TiledBackgroundVertexGrid extends ScrollableBitmap {
             mGrid.draw(x, y, getScrollOriginX(), getScrollOriginY());
         }
     }
+    
+    @Override
+    public boolean drawBatched(SpriteBatch batch, float x, float y) {
+        // Tile grids have their own geometry.
+        return false;
+    }
         
 }
@@ -18,9 +18,16 @@ package com.replica.replicaisland;
 
 import javax.microedition.khronos.opengles.GL10;
 
+/**
+ * Draws a layer of tiles from a TiledWorld as textured quads.  The layer is meshed in square
+ * chunks of up to CHUNK_SIZE tiles on a side, each with its own Grid, so that chunks with no tiles
+ * cost nothing and a change to a few tiles (see invalidateTiles()) only rebuilds the chunks that
+ * contain them.  Quads are written straight into each Grid's vertex buffers.
+ */
 public class TiledVertexGrid extends BaseObject {
 	private static final float GL_MAGIC_OFFSET = 0.375f;
-    private Grid mTileMap;
+    private static final int CHUNK_SIZE = 16;
+    private static final int INDEXES_PER_TILE = 6;
     private TiledWorld mWorld;
     private int mTileWidth;
     private int mTileHeight;
@@ -35,6 +42,17 @@ public class TiledVertexGrid extends BaseObject {
     private int mTilesPerRow;
     private int mTilesPerColumn;
     
+    // Chunks are stored bottom row first, like the tiles in the mesh.  Chunks that have never had
+    // any tiles have no grid.
+    private Grid[] mChunks;
+    private boolean[] mChunkEmpty;
+    private boolean[] mChunkDirty;
+    private int mChunksAcross;
+    private int mChunksDown;
+    // Set by the game thread when tiles change and cleared by the render thread.
+    private volatile boolean mDirty;
+    private byte[] mRowWorkspace;
+    
     private Boolean mGenerated;
     
     public TiledVertexGrid(Texture texture, int width, int height, int tileWidth, int tileHeight) {
@@ -45,6 +63,7 @@ public class TiledVertexGrid extends BaseObject {
         mHeight = height;
         mTexture = texture;
         mGenerated = false;
+        mRowWorkspace = new byte[CHUNK_SIZE];
     }
     
     @Override
@@ -56,81 +75,158 @@ public class TiledVertexGrid extends BaseObject {
         
     }
     
-    private Grid generateGrid(int width, int height, int startTileX, int startTileY) {
-        final int tileWidth = mTileWidth;
-        final int tileHeight = mTileHeight;
-        final int tilesAcross = width / tileWidth;
-        final int tilesDown = height / tileHeight;
-        final Texture texture = mTexture;
-        final float texelWidth = 1.0f / texture.width;
-        final float texelHeight = 1.0f / texture.height;
-        final int textureTilesAcross = texture.width / tileWidth;
-        final int textureTilesDown = texture.height / tileHeight;
+    /**
+     * Marks a rectangle of tiles (in the world's coordinates, with row 0 at the top) as changed,
+     * so that the chunks containing them are rebuilt before the layer is next drawn.  Call this
+     * after changing the tiles with TiledWorld.setTile().
+     */
+    public void invalidateTiles(int x, int y, int width, int height) {
+        final boolean[] dirty = mChunkDirty;
+        if (dirty != null && width > 0 && height > 0) {
+            // The mesh is built bottom row first.
+            final int bottom = mTilesPerColumn - (y + height);
+            final int firstChunkX = Math.max(0, x / CHUNK_SIZE);
+            final int lastChunkX = Math.min(mChunksAcross - 1, (x + width - 1) / CHUNK_SIZE);
+            final int firstChunkY = Math.max(0, bottom / CHUNK_SIZE);
+            final int lastChunkY = Math.min(mChunksDown - 1, 
+                    (bottom + height - 1) / CHUNK_SIZE);
+            for (int chunkY = firstChunkY; chunkY <= lastChunkY; chunkY++) {
+                for (int chunkX = firstChunkX; chunkX <= lastChunkX; chunkX++) {
+                    dirty[chunkY * mChunksAcross + chunkX] = true;
+                    mDirty = true;
+                }
+            }
+        }
+    }
+    
+    private void generateChunks(GL10 gl) {
+        mChunksAcross = (mTilesPerRow + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        mChunksDown = (mTilesPerColumn + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        final int chunkCount = mChunksAcross * mChunksDown;
+        mChunks = new Grid[chunkCount];
+        mChunkEmpty = new boolean[chunkCount];
+        mChunkDirty = new boolean[chunkCount];
+        for (int chunkY = 0; chunkY < mChunksDown; chunkY++) {
+            for (int chunkX = 0; chunkX < mChunksAcross; chunkX++) {
+                buildChunk(gl, chunkX, chunkY);
+            }
+        }
+    }
+    
+    private void rebuildDirtyChunks(GL10 gl) {
+        mDirty = false;
+        final boolean[] dirty = mChunkDirty;
+        for (int chunkY = 0; chunkY < mChunksDown; chunkY++) {
+            for (int chunkX = 0; chunkX < mChunksAcross; chunkX++) {
+                final int chunk = chunkY * mChunksAcross + chunkX;
+                if (dirty[chunk]) {
+                    // Cleared first so that a change made during the rebuild isn't lost.
+                    dirty[chunk] = false;
+                    buildChunk(gl, chunkX, chunkY);
+                }
+            }
+        }
+    }
+    
+    /** 
+     * Fills in the mesh for one chunk.  The chunk's grid is created the first time it has any 
+     * tiles; a chunk whose tiles have all been removed keeps its grid but isn't drawn.
+     */
+    private void buildChunk(GL10 gl, int chunkX, int chunkY) {
+        final int chunk = chunkY * mChunksAcross + chunkX;
+        final int startTileX = chunkX * CHUNK_SIZE;
+        final int startTileY = chunkY * CHUNK_SIZE;
+        final int tilesAcross = Math.min(CHUNK_SIZE, mTilesPerRow - startTileX);
+        final int tilesDown = Math.min(CHUNK_SIZE, mTilesPerColumn - startTileY);
         final int tilesPerWorldColumn = mWorld.getHeight();
-        final int totalTextureTiles = textureTilesAcross * textureTilesDown;
-        // Check to see if this entire grid is empty tiles.  If so, we don't need to do anything.
+        final byte[] row = mRowWorkspace;
+        // Check to see if this entire chunk is empty tiles.  If so, we don't need to do anything.
         boolean entirelyEmpty = true;
         for (int tileY = 0; tileY < tilesDown && entirelyEmpty; tileY++) {
-            for (int tileX = 0; tileX < tilesAcross && entirelyEmpty; tileX++) {
-                int tileIndex = mWorld.getTile(startTileX + tileX, 
-                        (tilesPerWorldColumn - 1 - (startTileY + tileY)));
-                if (tileIndex >= 0) {
+            mWorld.getRow(tilesPerWorldColumn - 1 - (startTileY + tileY), startTileX, 
+                    tilesAcross, row);
+            for (int tileX = 0; tileX < tilesAcross; tileX++) {
+                if (row[tileX] >= 0) {
                     entirelyEmpty = false;
                     break;
                 }
             }
         }
         
-        Grid grid = null;
+        mChunkEmpty[chunk] = entirelyEmpty;
         if (!entirelyEmpty) {
-            grid = new Grid(tilesAcross, tilesDown, false);
-            for (int tileY = 0; tileY < tilesDown; tileY++) {
-                for (int tileX = 0; tileX < tilesAcross; tileX++) {
-                    final float offsetX = tileX * tileWidth;
-                    final float offsetY = tileY * tileHeight;
-                    int tileIndex = mWorld.getTile(startTileX + tileX, 
-                            (tilesPerWorldColumn - 1 - (startTileY + tileY)));
-                    if (tileIndex < 0) {
-                        tileIndex = totalTextureTiles - 1; // Assume that the last tile is empty.
-                    }
-                    int textureOffsetX = (tileIndex % textureTilesAcross) * tileWidth;
-                    int textureOffsetY = (tileIndex / textureTilesAcross) * tileHeight;
-                    if (textureOffsetX < 0 || 
-                            textureOffsetX > texture.width - tileWidth ||
-                            textureOffsetY < 0 ||
-                            textureOffsetY > texture.height - tileHeight) {
-                        textureOffsetX = 0;
-                        textureOffsetY = 0; 
-                    }
-                    final float u = (textureOffsetX + GL_MAGIC_OFFSET) * texelWidth;
-                    final float v = (textureOffsetY + GL_MAGIC_OFFSET) * texelHeight;
-                    final float u2 = ((textureOffsetX + tileWidth - GL_MAGIC_OFFSET) * texelWidth);
-                    final float v2 = ((textureOffsetY + tileHeight - GL_MAGIC_OFFSET) * texelHeight);
-                    
-                    final float[] p0 = { offsetX, offsetY, 0.0f };
-                    final float[] p1 = { offsetX + tileWidth, offsetY, 0.0f };
-                    final float[] p2 = { offsetX, offsetY + tileHeight, 0.0f };
-                    final float[] p3 = { offsetX + tileWidth, offsetY + tileHeight, 0.0f };
-                    final float[] uv0 = { u, v2 };
-                    final float[] uv1 = { u2, v2 };
-                    final float[] uv2 = { u, v };
-                    final float[] uv3 = { u2, v };
-                    
-                    final float[][] positions = { p0, p1, p2, p3 };
-                    final float[][] uvs = { uv0, uv1, uv2, uv3 };
-
-                    grid.set(tileX, tileY, positions, uvs);
-                    
+            Grid grid = mChunks[chunk];
+            final boolean created = (grid == null);
+            if (created) {
+                grid = new Grid(tilesAcross, tilesDown, false);
+                mChunks[chunk] = grid;
+                sSystemRegistry.bufferLibrary.add(grid);
+            }
+            fillChunk(grid, startTileX, startTileY, tilesAcross, tilesDown);
+            if (created && sSystemRegistry.contextParameters.supportsVBOs) {
+                grid.generateHardwareBuffers(gl);
+            } else if (!created) {
+                grid.updateHardwareBuffers(gl);
+            }
+        }
+    }
+    
+    private void fillChunk(Grid grid, int startTileX, int startTileY, int tilesAcross, 
+            int tilesDown) {
+        final int tileWidth = mTileWidth;
+        final int tileHeight = mTileHeight;
+        final Texture texture = mTexture;
+        final float texelWidth = 1.0f / texture.width;
+        final float texelHeight = 1.0f / texture.height;
+        final int textureTilesAcross = texture.width / tileWidth;
+        final int textureTilesDown = texture.height / tileHeight;
+        final int tilesPerWorldColumn = mWorld.getHeight();
+        final int totalTextureTiles = textureTilesAcross * textureTilesDown;
+        final byte[] row = mRowWorkspace;
+        for (int tileY = 0; tileY < tilesDown; tileY++) {
+            mWorld.getRow(tilesPerWorldColumn - 1 - (startTileY + tileY), startTileX, 
+                    tilesAcross, row);
+            // Quads are placed in layer space so that every chunk is drawn with the same 
+            // transform.
+            final float bottom = (startTileY + tileY) * tileHeight;
+            for (int tileX = 0; tileX < tilesAcross; tileX++) {
+                final float left = (startTileX + tileX) * tileWidth;
+                int tileIndex = row[tileX];
+                if (tileIndex < 0) {
+                    tileIndex = totalTextureTiles - 1; // Assume that the last tile is empty.
+                }
+                int textureOffsetX = (tileIndex % textureTilesAcross) * tileWidth;
+                int textureOffsetY = (tileIndex / textureTilesAcross) * tileHeight;
+                if (textureOffsetX < 0 || 
+                        textureOffsetX > texture.width - tileWidth ||
+                        textureOffsetY < 0 ||
+                        textureOffsetY > texture.height - tileHeight) {
+                    textureOffsetX = 0;
+                    textureOffsetY = 0; 
                 }
+                final float u = (textureOffsetX + GL_MAGIC_OFFSET) * texelWidth;
+                final float v = (textureOffsetY + GL_MAGIC_OFFSET) * texelHeight;
+                final float u2 = ((textureOffsetX + tileWidth - GL_MAGIC_OFFSET) * texelWidth);
+                final float v2 = ((textureOffsetY + tileHeight - GL_MAGIC_OFFSET) * texelHeight);
+                
+                grid.setQuad(tileX, tileY, left, bottom, left + tileWidth, bottom + tileHeight,
+                        u, v2, u2, v);
             }
         }
-        return grid;
     }
    
     public void draw(float x, float y, float scrollOriginX, float scrollOriginY) {
         TiledWorld world = mWorld;
         GL10 gl = OpenGLSystem.getGL();
-        if (!mGenerated && world != null && gl != null && mTexture != null) {
+        if (mTexture != null) {
+            // Tile maps aren't scheduled with their texture, so the render system can't mark it
+            // as used.
+            sSystemRegistry.shortTermTextureLibrary.markUsed(mTexture);
+        }
+        // The mesh depends on the size of the texture, which isn't known until it has been
+        // streamed in.
+        if (!mGenerated && world != null && gl != null && mTexture != null 
+                && mTexture.loaded && !mTexture.placeholder) {
             final int tilesAcross = mWorld.getWidth();
             final int tilesDown = mWorld.getHeight();
             
@@ -139,25 +235,16 @@ public class TiledVertexGrid extends BaseObject {
             mTilesPerRow = tilesAcross;
             mTilesPerColumn = tilesDown;
             
-            
-            BufferLibrary bufferLibrary = sSystemRegistry.bufferLibrary;
-            
-            Grid grid = generateGrid((int)mWorldPixelWidth, (int)mWorldPixelHeight, 0, 0);
-            mTileMap = grid;
+            generateChunks(gl);
             mGenerated = true;
-            if (grid != null) {
-                bufferLibrary.add(grid);
-                if (sSystemRegistry.contextParameters.supportsVBOs) {
-                	grid.generateHardwareBuffers(gl);
-                }
-            }
-                       
+        } else if (mGenerated && mDirty && gl != null) {
+            rebuildDirtyChunks(gl);
         }
         
-        final Grid tileMap = mTileMap;
-        if (tileMap != null) {
+        final Grid[] chunks = mChunks;
+        if (chunks != null) {
             final Texture texture = mTexture;
-            if (gl != null && texture != null) {
+            if (gl != null && texture != null && texture.loaded) {
                 
                 int originX = (int) (x - scrollOriginX);
                 int originY = (int) (y - scrollOriginY);
@@ -184,15 +271,16 @@ public class TiledVertexGrid extends BaseObject {
 
                 
                 OpenGLSystem.bindTexture(GL10.GL_TEXTURE_2D, texture.name);
-                tileMap.beginDrawingStrips(gl, true);
 
                 final int horzTileCount = (int)Math.ceil((float)mWidth / mTileWidth);
                 final int vertTileCount = (int)Math.ceil((float)mHeight / mTileHeight);
                 // draw vertex strips
-                final int startX = leftTile;
-                final int startY = bottomTile;
-                final int endX = startX + horizontalSlop + horzTileCount;
-                final int endY = startY + verticalSlop +  vertTileCount;
+                final int startX = Math.max(0, leftTile);
+                final int startY = Math.max(0, bottomTile);
+                final int endX = Math.min(mTilesPerRow, 
+                        leftTile + horizontalSlop + horzTileCount);
+                final int endY = Math.min(mTilesPerColumn, 
+                        bottomTile + verticalSlop + vertTileCount);
                 
                 gl.glPushMatrix();
                 gl.glLoadIdentity();
@@ -202,13 +290,23 @@ public class TiledVertexGrid extends BaseObject {
                         0.0f);
                 
                 
-                final int indexesPerTile = 6;
-                final int indexesPerRow = mTilesPerRow * indexesPerTile;
-                final int startOffset = (startX * indexesPerTile);
-                final int count = (endX - startX) * indexesPerTile;
-                for (int tileY = startY; tileY < endY && tileY < mTilesPerColumn; tileY++) {
-                	final int row = tileY * indexesPerRow;
-                	tileMap.drawStrip(gl, true, row + startOffset, count);
+                // Each visible chunk draws whole rows of its tiles in one call; the parts of 
+                // the rows that are off screen are clipped.
+                for (int chunkY = startY / CHUNK_SIZE; chunkY * CHUNK_SIZE < endY; chunkY++) {
+                    final int chunkBottom = chunkY * CHUNK_SIZE;
+                    final int firstRow = Math.max(startY, chunkBottom) - chunkBottom;
+                    final int lastRow = Math.min(endY, chunkBottom + CHUNK_SIZE) - chunkBottom;
+                    for (int chunkX = startX / CHUNK_SIZE; chunkX * CHUNK_SIZE < endX; chunkX++) {
+                        final int chunk = chunkY * mChunksAcross + chunkX;
+                        final Grid grid = chunks[chunk];
+                        if (grid != null && !mChunkEmpty[chunk]) {
+                            final int quadsAcross = 
+                                Math.min(CHUNK_SIZE, mTilesPerRow - chunkX * CHUNK_SIZE);
+                            grid.beginDrawingStrips(gl, true);
+                            grid.drawStrip(gl, true, firstRow * quadsAcross * INDEXES_PER_TILE, 
+                                    (lastRow - firstRow) * quadsAcross * INDEXES_PER_TILE);
+                        }
+                    }
                 }
                 
                 gl.glPopMatrix();
@@ -18,30 +18,36 @@ package com.replica.replicaisland;
 
 import java.io.IOException;
 import java.io.InputStream;
-import android.content.res.AssetManager;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * TiledWorld manages a 2D map of tile indexes that define a "world" of tiles.  These may be 
  * foreground or background layers in a scrolling game, or a layer of collision tiles, or some other
  * type of tile map entirely.  The TiledWorld maps xy positions to tile indices and also handles
  * deserialization of tilemap files.
+ * Tiles are stored one byte per tile in a single flat array in row-major order (the same order
+ * that they appear in the map file), so a row of tiles is contiguous in memory.  A TiledWorld
+ * built from a ByteBuffer does not copy its tiles; it refers to them in place in the buffer's
+ * backing array, so several layers may share a single array holding a whole level.  Empty tiles are
+ * negative; the magnitude of an empty tile is the number of empty tiles in the run that starts
+ * with it (clamped to the range of a byte), which allows callers to skip over empty regions.
  */
 public class TiledWorld extends AllocationGuard {
-    private int[][] mTilesArray;
+    private byte[] mTiles;
+    private int mTileOffset;
     private int mRowCount;
     private int mColCount;
     private byte[] mWorkspaceBytes;
     
     public TiledWorld(int cols, int rows) {
         super();
-        mTilesArray = new int[cols][rows];
+        mTiles = new byte[cols * rows];
         mRowCount = rows;
         mColCount = cols;
 
-        for (int x = 0; x < cols; x++) {
-            for (int y = 0; y < rows; y++) {
-                mTilesArray[x][y] = -1;
-            }
+        for (int x = 0; x < mTiles.length; x++) {
+            mTiles[x] = -1;
         }
         
         mWorkspaceBytes = new byte[4];
@@ -55,66 +61,216 @@ public class TiledWorld extends AllocationGuard {
         parseInput(stream);
         calculateSkips();
     }
+    
+    /** 
+     * Builds a tiled world from a map stored in a buffer, starting at the buffer's current
+     * position.  On return the buffer is positioned just past the end of the map.  Buffers with an
+     * accessible backing array are used in place and will have their empty tiles rewritten by
+     * calculateSkips(); other buffers (such as direct buffers) are copied.
+     */
+    public TiledWorld(ByteBuffer buffer) {
+        super();
+        mWorkspaceBytes = new byte[4];
+        parseInput(buffer);
+        calculateSkips();
+    }
 
     public int getTile(int x, int y) {
         int result = -1;
         if (x >= 0 && x < mColCount && y >= 0 && y < mRowCount) {
-            result = mTilesArray[x][y];
+            result = mTiles[mTileOffset + (y * mColCount) + x];
         }
         return result;
     }
+    
+    /**
+     * Changes a tile, keeping the empty run lengths (see calculateSkips()) up to date.  Pass a 
+     * negative index to empty the tile.  Layers that draw this world must be told about the change;
+     * see TiledVertexGrid.invalidateTiles().
+     */
+    public void setTile(int x, int y, int index) {
+        if (x >= 0 && x < mColCount && y >= 0 && y < mRowCount) {
+            final byte[] tiles = mTiles;
+            final int start = mTileOffset;
+            final int end = start + (mRowCount * mColCount);
+            final int position = start + (y * mColCount) + x;
+            tiles[position] = (byte)(index < 0 ? -1 : index);
+            // Recount the run of empty tiles that ends at this tile (or just before it, if the 
+            // tile is no longer empty).  Runs are clamped, so the count can stop growing early.
+            int emptyTileCount = 0;
+            if (index < 0 && position + 1 < end && tiles[position + 1] < 0) {
+                emptyTileCount = -tiles[position + 1];
+            }
+            for (int i = position; i >= start; i--) {
+                if (tiles[i] < 0) {
+                    if (emptyTileCount >= -Byte.MIN_VALUE && tiles[i] == Byte.MIN_VALUE) {
+                        break;
+                    }
+                    emptyTileCount++;
+                    tiles[i] = (byte)-Math.min(emptyTileCount, -Byte.MIN_VALUE);
+                } else if (i != position) {
+                    break;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Copies a horizontal run of tiles into the output array.  Tiles that fall outside of the world
+     * are reported as empty (-1).
+     * @param y  The row to read.
+     * @param startX  The column of the first tile to read.
+     * @param count  The number of tiles to read.
+     * @param output  Receives the tiles, starting at index 0.
+     */
+    public void getRow(int y, int startX, int count, byte[] output) {
+        assert output.length >= count;
+        int x = 0;
+        if (y >= 0 && y < mRowCount) {
+            // Only the part of the run that lies inside the world needs to be copied.
+            final int firstInside = Math.max(0, -startX);
+            final int lastInside = Math.min(count, mColCount - startX);
+            for (; x < firstInside; x++) {
+                output[x] = -1;
+            }
+            if (lastInside > firstInside) {
+                System.arraycopy(mTiles, mTileOffset + (y * mColCount) + startX + firstInside, output, 
+                        firstInside, lastInside - firstInside);
+                x = lastInside;
+            }
+        }
+        for (; x < count; x++) {
+            output[x] = -1;
+        }
+    }
+    
+    /**
+     * Copies a vertical run of tiles into the output array.  Tiles that fall outside of the world
+     * are reported as empty (-1).
+     * @param x  The column to read.
+     * @param startY  The row of the first tile to read.
+     * @param count  The number of tiles to read.
+     * @param output  Receives the tiles, starting at index 0.
+     */
+    public void getColumn(int x, int startY, int count, byte[] output) {
+        assert output.length >= count;
+        final byte[] tiles = mTiles;
+        final int stride = mColCount;
+        final int offset = mTileOffset + x;
+        final boolean columnInside = x >= 0 && x < mColCount;
+        for (int i = 0; i < count; i++) {
+            final int y = startY + i;
+            if (columnInside && y >= 0 && y < mRowCount) {
+                output[i] = tiles[offset + (y * stride)];
+            } else {
+                output[i] = -1;
+            }
+        }
+    }
 
     // Builds a tiled world from a simple map file input source.  The map file format is as follows:
     // First byte: signature.  Must always be decimal 42.
-    // Second byte: width of the world in tiles.
-    // Third byte: height of the world in tiles.
-    // Subsequent bytes: actual tile data in column-major order.
+    // Next four bytes: width of the world in tiles.
+    // Next four bytes: height of the world in tiles.
+    // Subsequent bytes: actual tile data in row-major order, one signed byte per tile.
     // TODO: add a checksum in here somewhere.
     protected boolean parseInput(InputStream stream) {
         boolean success = false;
-        AssetManager.AssetInputStream byteStream = (AssetManager.AssetInputStream) stream;
         int signature;
         try {
-            signature = (byte)byteStream.read();
+            signature = (byte)stream.read();
             if (signature == 42) {
-                byteStream.read(mWorkspaceBytes, 0, 4);
+                stream.read(mWorkspaceBytes, 0, 4);
                 final int width = Utils.byteArrayToInt(mWorkspaceBytes);
-                byteStream.read(mWorkspaceBytes, 0, 4);
+                stream.read(mWorkspaceBytes, 0, 4);
                 final int height = Utils.byteArrayToInt(mWorkspaceBytes);
 
                 final int totalTiles = width * height;
-                final int bytesRemaining = byteStream.available();
-                assert bytesRemaining >= totalTiles;
-                if (bytesRemaining >= totalTiles) {
-                    mTilesArray = new int[width][height];
-                    mRowCount = height;
-                    mColCount = width;
-                    for (int y = 0; y < height; y++) {
-                        for (int x = 0; x < width; x++) {
-                            mTilesArray[x][y] = (byte)byteStream.read();
-                        }
+                mTiles = new byte[totalTiles];
+                mTileOffset = 0;
+                mRowCount = height;
+                mColCount = width;
+                
+                // The file layout matches our storage layout, so the tiles can be read in bulk.
+                int bytesRead = 0;
+                while (bytesRead < totalTiles) {
+                    final int result = stream.read(mTiles, bytesRead, totalTiles - bytesRead);
+                    if (result < 0) {
+                        break;
                     }
-                    success = true;
+                    bytesRead += result;
+                }
+                assert bytesRead == totalTiles;
+                success = (bytesRead == totalTiles);
+                // If the file was truncated, treat the missing tiles as empty.
+                for (int x = bytesRead; x < totalTiles; x++) {
+                    mTiles[x] = -1;
                 }
             }
 
         } catch (IOException e) {
             //TODO: figure out the best way to deal with this.  Assert?
         }
+        
+        if (!success && mTiles == null) {
+            mTiles = new byte[0];
+            mTileOffset = 0;
+            mRowCount = 0;
+            mColCount = 0;
+        }
 
         return success;
     }
     
+    // Builds a tiled world from a buffer containing the map file format described above.  Map files
+    // are little-endian, so the buffer's byte order is set accordingly.
+    protected boolean parseInput(ByteBuffer buffer) {
+        boolean success = false;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() >= 9 && buffer.get() == 42) {
+            final int width = buffer.getInt();
+            final int height = buffer.getInt();
+            final int totalTiles = width * height;
+            final int available = Math.min(totalTiles, buffer.remaining());
+            assert available == totalTiles;
+            
+            mRowCount = height;
+            mColCount = width;
+            if (available == totalTiles && buffer.hasArray()) {
+                // Refer to the tiles in place.
+                mTiles = buffer.array();
+                mTileOffset = buffer.arrayOffset() + buffer.position();
+                buffer.position(buffer.position() + totalTiles);
+            } else {
+                mTiles = new byte[totalTiles];
+                mTileOffset = 0;
+                buffer.get(mTiles, 0, available);
+                // If the file was truncated, treat the missing tiles as empty.
+                for (int x = available; x < totalTiles; x++) {
+                    mTiles[x] = -1;
+                }
+            }
+            success = (available == totalTiles);
+        } else {
+            mTiles = new byte[0];
+            mTileOffset = 0;
+            mRowCount = 0;
+            mColCount = 0;
+        }
+        
+        return success;
+    }
+    
     protected void calculateSkips() {
+        final byte[] tiles = mTiles;
+        final int start = mTileOffset;
         int emptyTileCount = 0;
-        for (int y = mRowCount - 1; y >= 0; y--) {
-            for (int x = mColCount - 1; x >= 0; x--) {
-                if (mTilesArray[x][y] < 0) {
-                    emptyTileCount++;
-                    mTilesArray[x][y] = -emptyTileCount;
-                } else {
-                    emptyTileCount = 0;
-                }
+        for (int x = start + (mRowCount * mColCount) - 1; x >= start; x--) {
+            if (tiles[x] < 0) {
+                emptyTileCount++;
+                tiles[x] = (byte)-Math.min(emptyTileCount, -Byte.MIN_VALUE);
+            } else {
+                emptyTileCount = 0;
             }
         }
     }
@@ -127,8 +283,19 @@ public class TiledWorld extends AllocationGuard {
         return mRowCount;
     }
     
-    public final int[][] getTiles() {
-        return mTilesArray;
+    /** 
+     * Returns the raw tile storage.  The tile at (x, y) is stored at index
+     * getTileDataOffset() + (y * getWidth()) + x.  Exposed so that tight loops can walk the tiles
+     * without the overhead of getTile(); this array may be shared with other layers and should be
+     * treated as read-only.
+     */
+    public final byte[] getTileData() {
+        return mTiles;
+    }
+    
+    /** Returns the index of the first tile of this world within getTileData(). */
+    public final int getTileDataOffset() {
+        return mTileOffset;
     }
 
 }
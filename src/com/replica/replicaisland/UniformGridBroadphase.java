@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import com.replica.replicaisland.GameObjectCollisionSystem.CollisionVolumeRecord;
+
+/**
+ * A broadphase based on a uniform grid of cells, stored as a spatial hash.  Each frame the
+ * vulnerability bounds of every record are binned into the cells they cover, and then the attack
+ * bounds of every record are used to look up the vulnerable records that share a cell with them.
+ * Only pairs where one record's attack bounds overlap the other's vulnerability bounds are
+ * reported, so objects stacked in the same column (which defeat sweep-and-prune) cost nothing
+ * unless they can actually hit each other.
+ *
+ * The hash is made of flat int arrays that are allocated up front.  Rather than clearing every
+ * bucket each frame, buckets are stamped with a frame counter and a bucket whose stamp is stale is
+ * treated as empty.  Records whose bounds cover too many cells to bin are kept on a separate list
+ * that is tested against every attacker.
+ */
+public class UniformGridBroadphase extends CollisionBroadphase {
+    // Match the level's tile size by default.
+    public static final int DEFAULT_CELL_SIZE = 32;
+    private static final int BUCKET_COUNT = 1024;   // Must be a power of two.
+    private static final int MAX_ENTRIES = 4096;
+    private static final int MAX_CELLS_PER_RECORD = 64;
+
+    private final float mInverseCellSize;
+
+    private final int[] mBucketHead;
+    private final int[] mBucketStamp;
+    private final int[] mEntryNext;
+    private final int[] mEntryCellX;
+    private final int[] mEntryCellY;
+    private final int[] mEntryRecord;
+    private int mEntryCount;
+
+    private final int[] mOversizedRecords;
+    private int mOversizedCount;
+
+    private final int[] mVisitStamp;
+    private int mFrameStamp;
+    private int mQueryStamp;
+    private int mPairsFound;
+
+    public UniformGridBroadphase(int maxRecords) {
+        this(maxRecords, DEFAULT_CELL_SIZE);
+    }
+
+    public UniformGridBroadphase(int maxRecords, int cellSize) {
+        super();
+        assert cellSize > 0;
+        mInverseCellSize = 1.0f / cellSize;
+
+        mBucketHead = new int[BUCKET_COUNT];
+        mBucketStamp = new int[BUCKET_COUNT];
+        mEntryNext = new int[MAX_ENTRIES];
+        mEntryCellX = new int[MAX_ENTRIES];
+        mEntryCellY = new int[MAX_ENTRIES];
+        mEntryRecord = new int[MAX_ENTRIES];
+
+        mOversizedRecords = new int[maxRecords];
+        mVisitStamp = new int[maxRecords];
+    }
+
+    @Override
+    public void findPairs(FixedSizeArray<CollisionVolumeRecord> records, PairVisitor visitor) {
+        final int count = records.getCount();
+        final Object[] recordArray = records.getArray();
+        assert count <= mVisitStamp.length;
+
+        advanceFrameStamp();
+        mEntryCount = 0;
+        mOversizedCount = 0;
+        mPairsFound = 0;
+
+        // Bin every vulnerable record into the cells that its vulnerability bounds cover.
+        for (int x = 0; x < count; x++) {
+            final CollisionVolumeRecord record = (CollisionVolumeRecord)recordArray[x];
+            if (record.hasVulnerabilityBounds) {
+                final int startCellX = toCell(record.vulnerabilityMinX);
+                final int endCellX = toCell(record.vulnerabilityMaxX);
+                final int startCellY = toCell(record.vulnerabilityMinY);
+                final int endCellY = toCell(record.vulnerabilityMaxY);
+                final int cellCount = (endCellX - startCellX + 1) * (endCellY - startCellY + 1);
+                if (cellCount > MAX_CELLS_PER_RECORD || mEntryCount + cellCount > MAX_ENTRIES) {
+                    mOversizedRecords[mOversizedCount] = x;
+                    mOversizedCount++;
+                } else {
+                    for (int cellY = startCellY; cellY <= endCellY; cellY++) {
+                        for (int cellX = startCellX; cellX <= endCellX; cellX++) {
+                            insert(x, cellX, cellY);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Look up the vulnerable records under every attacker.
+        for (int x = 0; x < count; x++) {
+            final CollisionVolumeRecord record = (CollisionVolumeRecord)recordArray[x];
+            if (record.hasAttackBounds) {
+                advanceQueryStamp();
+                final int startCellX = toCell(record.attackMinX);
+                final int endCellX = toCell(record.attackMaxX);
+                final int startCellY = toCell(record.attackMinY);
+                final int endCellY = toCell(record.attackMaxY);
+                final int cellCount = (endCellX - startCellX + 1) * (endCellY - startCellY + 1);
+                if (cellCount > MAX_CELLS_PER_RECORD) {
+                    // Walking this many cells is slower than just testing everything.
+                    for (int y = 0; y < count; y++) {
+                        testCandidate(recordArray, x, y, visitor);
+                    }
+                } else {
+                    final int frameStamp = mFrameStamp;
+                    for (int cellY = startCellY; cellY <= endCellY; cellY++) {
+                        for (int cellX = startCellX; cellX <= endCellX; cellX++) {
+                            final int bucket = hash(cellX, cellY);
+                            if (mBucketStamp[bucket] == frameStamp) {
+                                for (int entry = mBucketHead[bucket]; entry != -1;
+                                        entry = mEntryNext[entry]) {
+                                    if (mEntryCellX[entry] == cellX && mEntryCellY[entry] == cellY) {
+                                        testCandidate(recordArray, x, mEntryRecord[entry], visitor);
+                                    }
+                                }
+                            }
+                        }
+                    }
+                    for (int y = 0; y < mOversizedCount; y++) {
+                        testCandidate(recordArray, x, mOversizedRecords[y], visitor);
+                    }
+                }
+            }
+        }
+
+        setPairCount(mPairsFound);
+    }
+
+    /**
+     * Tests an attacker against a possible victim and reports the pair if their bounds overlap.
+     * Pairs where both records can hit each other are found twice (once from each side), so they
+     * are only reported from the side of the record with the lower index.
+     */
+    private final void testCandidate(Object[] recordArray, int attackerIndex, int victimIndex,
+            PairVisitor visitor) {
+        if (attackerIndex != victimIndex && mVisitStamp[victimIndex] != mQueryStamp) {
+            mVisitStamp[victimIndex] = mQueryStamp;
+            final CollisionVolumeRecord attacker = (CollisionVolumeRecord)recordArray[attackerIndex];
+            final CollisionVolumeRecord victim = (CollisionVolumeRecord)recordArray[victimIndex];
+            if (attackOverlaps(attacker, victim)) {
+                if (attackerIndex < victimIndex) {
+                    mPairsFound++;
+                    visitor.visit(attacker, victim);
+                } else if (!attackOverlaps(victim, attacker)) {
+                    mPairsFound++;
+                    visitor.visit(victim, attacker);
+                }
+            }
+        }
+    }
+
+    private final void insert(int recordIndex, int cellX, int cellY) {
+        final int bucket = hash(cellX, cellY);
+        final int entry = mEntryCount;
+        if (mBucketStamp[bucket] != mFrameStamp) {
+            mBucketStamp[bucket] = mFrameStamp;
+            mBucketHead[bucket] = -1;
+        }
+        mEntryCellX[entry] = cellX;
+        mEntryCellY[entry] = cellY;
+        mEntryRecord[entry] = recordIndex;
+        mEntryNext[entry] = mBucketHead[bucket];
+        mBucketHead[bucket] = entry;
+        mEntryCount++;
+    }
+
+    private final int toCell(float worldPosition) {
+        return (int)Math.floor(worldPosition * mInverseCellSize);
+    }
+
+    private static final int hash(int cellX, int cellY) {
+        return ((cellX * 73856093) ^ (cellY * 19349663)) & (BUCKET_COUNT - 1);
+    }
+
+    private final void advanceFrameStamp() {
+        if (mFrameStamp == Integer.MAX_VALUE) {
+            for (int x = 0; x < BUCKET_COUNT; x++) {
+                mBucketStamp[x] = 0;
+            }
+            mFrameStamp = 0;
+        }
+        mFrameStamp++;
+    }
+
+    private final void advanceQueryStamp() {
+        if (mQueryStamp == Integer.MAX_VALUE) {
+            for (int x = 0; x < mVisitStamp.length; x++) {
+                mVisitStamp[x] = 0;
+            }
+            mQueryStamp = 0;
+        }
+        mQueryStamp++;
+    }
+}
@@ -16,9 +16,15 @@
 
 package com.replica.replicaisland;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
 /** A collection of miscellaneous utility functions. */
 public class Utils {
     private static final float EPSILON = 0.0001f;
+    private static final Random sRandom = new Random();
 
     public final static boolean close(float a, float b) {
         return close(a, b, EPSILON);
@@ -84,6 +90,51 @@ public class Utils {
         return Float.intBitsToFloat(byteArrayToInt(b));
     }
     
+    /** 
+     * Reads the entire stream into a single array with as few read() calls as possible and
+     * returns it wrapped in a buffer.  Intended for load-time use only, as it allocates.
+     */
+    public final static ByteBuffer readStream(InputStream stream) throws IOException {
+        byte[] data = new byte[Math.max(stream.available(), 1024)];
+        int count = 0;
+        int read;
+        while ((read = stream.read(data, count, data.length - count)) >= 0) {
+            count += read;
+            if (count == data.length) {
+                // available() is only an estimate; grow the array if the stream has more data.
+                byte[] larger = new byte[data.length * 2];
+                System.arraycopy(data, 0, larger, 0, count);
+                data = larger;
+            }
+        }
+        return ByteBuffer.wrap(data, 0, count);
+    }
+    
+    /** 
+     * Reads a string stored as a length byte followed by that many ASCII bytes, as the tools 
+     * write them.  Load-time use only.
+     */
+    public final static String readString(ByteBuffer data) {
+        final int length = data.get() & 0xFF;
+        char[] chars = new char[length];
+        for (int x = 0; x < length; x++) {
+            chars[x] = (char)data.get();
+        }
+        return new String(chars);
+    }
+    
+    /** 
+     * Returns a pseudo-random number in the range [0, 1).  Game logic should use this rather than
+     * Math.random() so that a simulation can be made repeatable with setRandomSeed(). 
+     */
+    public final static float random() {
+        return sRandom.nextFloat();
+    }
+    
+    public final static void setRandomSeed(long seed) {
+        sRandom.setSeed(seed);
+    }
+    
     public final static float framesToTime(int framesPerSecond, int frameCount) {
         return (1.0f / framesPerSecond) * frameCount;
     }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+/**
+ * Sweeps the camera across the fixture level while a GameObjectManager full of (component-less)
+ * objects placed at the level's spawn points activates and deactivates them, which exercises the
+ * per-frame activation culling and the inactive list sort.
+ */
+public class ActivationBenchmark extends Benchmark {
+    private static final float ACTIVATION_RADIUS = 480.0f;
+    private static final float CAMERA_SPEED = 8.0f;
+
+    private GameObjectManager mManager;
+    private SweepingCamera mCamera;
+    private float mLevelWidth;
+
+    public ActivationBenchmark() {
+        super("gameObjectManager.activation");
+    }
+
+    @Override
+    public void setUp(BenchmarkFixtures fixtures) {
+        mCamera = new SweepingCamera();
+        BaseObject.sSystemRegistry.cameraSystem = mCamera;
+        mLevelWidth = fixtures.getLevelWidth();
+        mCamera.y = fixtures.getLevelHeight() / 2.0f;
+
+        mManager = new GameObjectManager(ACTIVATION_RADIUS);
+        final float[] spawns = fixtures.getSpawnPositions();
+        final int count = Math.min(spawns.length / 2, mManager.getObjects().getCapacity());
+        for (int x = 0; x < count; x++) {
+            GameObject object = new GameObject();
+            object.getPosition().set(spawns[x * 2], spawns[(x * 2) + 1]);
+            object.activationRadius = ACTIVATION_RADIUS;
+            mManager.add(object);
+        }
+        mManager.commitUpdates();
+    }
+
+    @Override
+    public int run() {
+        mCamera.x += CAMERA_SPEED;
+        if (mCamera.x > mLevelWidth) {
+            mCamera.x = 0.0f;
+        }
+        mManager.update(0.016f, null);
+        return mManager.getCount();
+    }
+
+    private static class SweepingCamera extends CameraSystem {
+        public float x;
+        public float y;
+
+        @Override
+        public float getFocusPositionX() {
+            return x;
+        }
+
+        @Override
+        public float getFocusPositionY() {
+            return y;
+        }
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.replica.replicaisland.GameObjectFactory.GameObjectType;
+
+/**
+ * Generates the archetype file read by ArchetypeLibrary from the current behavior of
+ * GameObjectFactory.  Every object type is spawned once in a headless game and the static data
+ * the spawn method built for it is written out.  The file is then checked by loading it into a
+ * second headless game, spawning every type again with static data built from the archetypes
+ * and comparing the result with the first pass, so a spawn method that builds something the
+ * format can't describe is reported rather than silently dropped.
+ *
+ * Build as described in BenchmarkRunner, then run from the root of the project:
+ *
+ *   java -cp out:android.jar com.replica.replicaisland.ArchetypeCompiler [options]
+ *
+ * Options:
+ *   -raw <directory>   The directory containing collision.bin (default res/raw).
+ *   -o <file>          Where to write the archetypes (default res/raw/archetypes.bin).
+ *
+ * Private fields of the engine classes are read with reflection so that the game code doesn't
+ * need accessors it otherwise has no use for.
+ */
+public class ArchetypeCompiler {
+    // The size Game bootstraps with; activation radii are derived from it.
+    private static final int GAME_WIDTH = 480;
+    private static final int GAME_HEIGHT = 320;
+
+    private final Map<Integer, String> mDrawableNames = new HashMap<Integer, String>();
+    private final List<String> mTextures = new ArrayList<String>();
+    private final Map<String, Integer> mTextureIndices = new HashMap<String, Integer>();
+    private final List<String> mErrors = new ArrayList<String>();
+
+    public static void main(String[] args) throws Exception {
+        File rawDirectory = new File("res/raw");
+        File output = new File("res/raw/archetypes.bin");
+        for (int x = 0; x < args.length; x++) {
+            if (args[x].equals("-raw")) {
+                rawDirectory = new File(args[++x]);
+            } else if (args[x].equals("-o")) {
+                output = new File(args[++x]);
+            } else {
+                System.err.println("Unknown option " + args[x]);
+                System.exit(1);
+            }
+        }
+
+        HeadlessGame game = new HeadlessGame(rawDirectory);
+        game.bootstrap(GAME_WIDTH, GAME_HEIGHT, 1, 0);
+        ArchetypeCompiler compiler = new ArchetypeCompiler();
+        final byte[] archetypes = compiler.compile();
+        if (!compiler.mErrors.isEmpty()) {
+            for (String error : compiler.mErrors) {
+                System.err.println(error);
+            }
+            System.exit(1);
+        }
+
+        // Check the round trip: objects spawned from the archetypes must compile to the same file.
+        HeadlessGame check = new HeadlessGame(rawDirectory);
+        check.bootstrap(GAME_WIDTH, GAME_HEIGHT, 1, 0);
+        ArchetypeLibrary library = check.enableArchetypes(new ByteArrayInputStream(archetypes));
+        ArchetypeCompiler checkCompiler = new ArchetypeCompiler();
+        final byte[] rebuilt = checkCompiler.compile();
+        if (!Arrays.equals(archetypes, rebuilt) || !checkCompiler.mErrors.isEmpty()) {
+            System.err.println("Objects built from the archetypes don't match the spawn methods.");
+            System.exit(1);
+        }
+
+        FileOutputStream stream = new FileOutputStream(output);
+        try {
+            stream.write(archetypes);
+        } finally {
+            stream.close();
+        }
+        System.out.println("Wrote " + library.getTypeCount() + " archetypes ("
+                + compiler.mTextures.size() + " textures, " + archetypes.length + " bytes) to "
+                + output);
+    }
+
+    public ArchetypeCompiler() throws IllegalAccessException {
+        Field[] drawables = R.drawable.class.getFields();
+        for (Field drawable : drawables) {
+            mDrawableNames.put(drawable.getInt(null), drawable.getName());
+        }
+    }
+
+    /** Spawns every object type with the factory in the system registry and serializes it. */
+    public byte[] compile() throws IOException {
+        final GameObjectFactory factory = BaseObject.sSystemRegistry.gameObjectFactory;
+        @SuppressWarnings("unchecked")
+        FixedSizeArray<GameComponentPool> pools =
+            (FixedSizeArray<GameComponentPool>)getField(factory, "mComponentPools");
+
+        final GameObjectType[] types = GameObjectType.values();
+        GameObject[] objects = new GameObject[types.length];
+        for (GameObjectType type : types) {
+            if (type != GameObjectType.INVALID && type != GameObjectType.OBJECT_COUNT) {
+                try {
+                    objects[type.ordinal()] = factory.spawn(type, 0.0f, 0.0f, false);
+                } catch (RuntimeException e) {
+                    mErrors.add(type + ": spawn failed: " + e);
+                }
+                if (objects[type.ordinal()] != null) {
+                    objects[type.ordinal()].commitUpdates();
+                }
+            }
+        }
+
+        ByteArrayOutputStream typeBytes = new ByteArrayOutputStream();
+        DataOutputStream typeData = new DataOutputStream(typeBytes);
+        int typeCount = 0;
+        for (GameObjectType type : types) {
+            if (type == GameObjectType.INVALID || type == GameObjectType.OBJECT_COUNT) {
+                continue;
+            }
+            final FixedSizeArray<BaseObject> staticData = factory.getStaticData(type);
+            if (staticData == null) {
+                continue;
+            }
+            writeString(typeData, type.name());
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            writeStaticData(new DataOutputStream(block), type, staticData);
+            typeData.writeInt(block.size());
+            block.writeTo(typeData);
+            typeCount++;
+        }
+
+        for (GameObject object : objects) {
+            if (object != null) {
+                factory.destroy(object);
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(ArchetypeLibrary.MAGIC);
+        data.writeInt(ArchetypeLibrary.VERSION);
+        data.writeShort(mTextures.size());
+        for (String texture : mTextures) {
+            writeString(data, texture);
+        }
+        data.writeShort(pools.getCount());
+        for (int x = 0; x < pools.getCount(); x++) {
+            writeString(data, pools.get(x).objectClass.getSimpleName());
+            data.writeShort(pools.get(x).getSize());
+        }
+        data.writeShort(typeCount);
+        typeData.flush();
+        typeBytes.writeTo(data);
+        data.flush();
+        return bytes.toByteArray();
+    }
+
+    private void writeStaticData(DataOutputStream data, GameObjectType type,
+            FixedSizeArray<BaseObject> staticData) throws IOException {
+        // Collision volume lists are shared between frames, so write each list once and refer to
+        // it by index.
+        final IdentityHashMap<FixedSizeArray<CollisionVolume>, Integer> volumeLists =
+            new IdentityHashMap<FixedSizeArray<CollisionVolume>, Integer>();
+        final List<FixedSizeArray<CollisionVolume>> volumeListOrder =
+            new ArrayList<FixedSizeArray<CollisionVolume>>();
+        for (int x = 0; x < staticData.getCount(); x++) {
+            if (staticData.get(x) instanceof SpriteAnimation) {
+                FixedSizeArray<AnimationFrame> frames = getFrames((SpriteAnimation)staticData.get(x));
+                for (int y = 0; y < frames.getCount(); y++) {
+                    addVolumeList(volumeLists, volumeListOrder, frames.get(y).attackVolumes);
+                    addVolumeList(volumeLists, volumeListOrder, frames.get(y).vulnerabilityVolumes);
+                }
+            }
+        }
+        data.writeByte(volumeListOrder.size());
+        for (FixedSizeArray<CollisionVolume> list : volumeListOrder) {
+            data.writeByte(list.getCount());
+            for (int x = 0; x < list.getCount(); x++) {
+                writeVolume(data, type, list.get(x));
+            }
+        }
+
+        data.writeByte(staticData.getCount());
+        for (int x = 0; x < staticData.getCount(); x++) {
+            final BaseObject entry = staticData.get(x);
+            final Class<?> entryClass = entry.getClass();
+            if (entryClass == SpriteAnimation.class) {
+                SpriteAnimation animation = (SpriteAnimation)entry;
+                FixedSizeArray<AnimationFrame> frames = getFrames(animation);
+                data.writeByte(ArchetypeLibrary.ENTRY_ANIMATION);
+                data.writeShort(animation.phase);
+                data.writeByte(animation.getLoop() ? 1 : 0);
+                data.writeShort(frames.getCapacity());
+                data.writeShort(frames.getCount());
+                for (int y = 0; y < frames.getCount(); y++) {
+                    AnimationFrame frame = frames.get(y);
+                    writeTexture(data, type, frame.texture);
+                    data.writeFloat(frame.holdTime);
+                    data.writeByte(getVolumeListIndex(volumeLists, frame.attackVolumes));
+                    data.writeByte(getVolumeListIndex(volumeLists, frame.vulnerabilityVolumes));
+                }
+            } else if (entryClass == InventoryComponent.UpdateRecord.class) {
+                InventoryComponent.UpdateRecord record = (InventoryComponent.UpdateRecord)entry;
+                data.writeByte(ArchetypeLibrary.ENTRY_UPDATE_RECORD);
+                data.writeShort(record.coinCount);
+                data.writeShort(record.rubyCount);
+                data.writeShort(record.diaryCount);
+            } else if (entryClass == GravityComponent.class) {
+                data.writeByte(ArchetypeLibrary.ENTRY_GRAVITY);
+                Vector2 gravity = ((GravityComponent)entry).getGravity();
+                data.writeFloat(gravity.x);
+                data.writeFloat(gravity.y);
+            } else if (entryClass == MovementComponent.class) {
+                data.writeByte(ArchetypeLibrary.ENTRY_MOVEMENT);
+            } else if (entryClass == PhysicsComponent.class) {
+                PhysicsComponent physics = (PhysicsComponent)entry;
+                data.writeByte(ArchetypeLibrary.ENTRY_PHYSICS);
+                data.writeFloat(physics.getMass());
+                data.writeFloat(physics.getBounciness());
+                data.writeFloat(physics.getInertia());
+                data.writeFloat(physics.getStaticFrictionCoeffecient());
+                data.writeFloat(physics.getDynamicFrictionCoeffecient());
+            } else if (entryClass == SimplePhysicsComponent.class) {
+                data.writeByte(ArchetypeLibrary.ENTRY_SIMPLE_PHYSICS);
+                data.writeFloat((Float)getField(entry, "mBounciness"));
+            } else if (entryClass == SolidSurfaceComponent.class) {
+                data.writeByte(ArchetypeLibrary.ENTRY_SOLID_SURFACE);
+                writeSolidSurface(data, entry);
+            } else if (entryClass == PopOutComponent.class) {
+                data.writeByte(ArchetypeLibrary.ENTRY_POP_OUT);
+                data.writeFloat((Float)getField(entry, "mAppearDistance"));
+                data.writeFloat((Float)getField(entry, "mHideDistance"));
+                data.writeFloat((Float)getField(entry, "mAttackDistance"));
+                data.writeFloat((Float)getField(entry, "mAttackDelay"));
+                data.writeFloat((Float)getField(entry, "mAttackLength"));
+            } else if (entryClass == RenderComponent.class) {
+                data.writeByte(ArchetypeLibrary.ENTRY_RENDER);
+                writeRender(data, type, (RenderComponent)entry);
+            } else if (entryClass == CameraBiasComponent.class) {
+                data.writeByte(ArchetypeLibrary.ENTRY_CAMERA_BIAS);
+            } else if (entryClass == GhostComponent.class) {
+                data.writeByte(ArchetypeLibrary.ENTRY_GHOST);
+                writeGhost(data, type, entry);
+            } else {
+                mErrors.add(type + ": static data of type " + entryClass.getSimpleName()
+                        + " can't be compiled");
+            }
+        }
+        data.flush();
+    }
+
+    private static void addVolumeList(Map<FixedSizeArray<CollisionVolume>, Integer> indices,
+            List<FixedSizeArray<CollisionVolume>> order, FixedSizeArray<CollisionVolume> list) {
+        if (list != null && !indices.containsKey(list)) {
+            indices.put(list, order.size());
+            order.add(list);
+        }
+    }
+
+    private static int getVolumeListIndex(Map<FixedSizeArray<CollisionVolume>, Integer> indices,
+            FixedSizeArray<CollisionVolume> list) {
+        return list != null ? indices.get(list) : ArchetypeLibrary.NONE;
+    }
+
+    private void writeVolume(DataOutputStream data, GameObjectType type, CollisionVolume volume)
+            throws IOException {
+        if (volume.getClass() == SphereCollisionVolume.class) {
+            SphereCollisionVolume sphere = (SphereCollisionVolume)volume;
+            data.writeByte(ArchetypeLibrary.VOLUME_SPHERE);
+            data.writeByte(volume.getHitType());
+            data.writeFloat(sphere.getRadius());
+            data.writeFloat(sphere.getCenter().x);
+            data.writeFloat(sphere.getCenter().y);
+        } else if (volume.getClass() == AABoxCollisionVolume.class) {
+            AABoxCollisionVolume box = (AABoxCollisionVolume)volume;
+            data.writeByte(ArchetypeLibrary.VOLUME_BOX);
+            data.writeByte(volume.getHitType());
+            data.writeFloat(box.getMinX());
+            data.writeFloat(box.getMinY());
+            data.writeFloat(box.getMaxX() - box.getMinX());
+            data.writeFloat(box.getMaxY() - box.getMinY());
+        } else {
+            mErrors.add(type + ": collision volume of type " + volume.getClass().getSimpleName()
+                    + " can't be compiled");
+        }
+    }
+
+    private void writeTexture(DataOutputStream data, GameObjectType type, Texture texture)
+            throws IOException {
+        if (texture == null) {
+            data.writeShort(ArchetypeLibrary.NONE);
+            data.writeByte(0);
+        } else {
+            final String name = mDrawableNames.get(texture.resource);
+            Integer index = mTextureIndices.get(name);
+            if (index == null) {
+                index = mTextures.size();
+                mTextures.add(name);
+                mTextureIndices.put(name, index);
+            }
+            if (name == null) {
+                mErrors.add(type + ": texture " + texture.resource + " isn't a drawable");
+            }
+            final TextureLibrary longTerm = BaseObject.sSystemRegistry.longTermTextureLibrary;
+            data.writeShort(index);
+            data.writeByte(longTerm.getTextureByResource(texture.resource) == texture ? 1 : 0);
+        }
+    }
+
+    private void writeSolidSurface(DataOutputStream data, BaseObject surface)
+            throws IOException {
+        @SuppressWarnings("unchecked")
+        FixedSizeArray<Vector2> starts = (FixedSizeArray<Vector2>)getField(surface, "mStartPoints");
+        @SuppressWarnings("unchecked")
+        FixedSizeArray<Vector2> ends = (FixedSizeArray<Vector2>)getField(surface, "mEndPoints");
+        @SuppressWarnings("unchecked")
+        FixedSizeArray<Vector2> normals = (FixedSizeArray<Vector2>)getField(surface, "mNormals");
+        data.writeByte(starts.getCount());
+        for (int x = 0; x < starts.getCount(); x++) {
+            data.writeFloat(starts.get(x).x);
+            data.writeFloat(starts.get(x).y);
+            data.writeFloat(ends.get(x).x);
+            data.writeFloat(ends.get(x).y);
+            data.writeFloat(normals.get(x).x);
+            data.writeFloat(normals.get(x).y);
+        }
+    }
+
+    private void writeRender(DataOutputStream data, GameObjectType type, RenderComponent render)
+            throws IOException {
+        data.writeInt(render.getPriority());
+        data.writeByte((Boolean)getField(render, "mCameraRelative") ? 1 : 0);
+        Vector2 offset = (Vector2)getField(render, "mDrawOffset");
+        data.writeFloat(offset.x);
+        data.writeFloat(offset.y);
+        final DrawableObject drawable = render.getDrawable();
+        if (drawable == null) {
+            data.writeByte(0);
+        } else if (drawable.getClass() == DrawableBitmap.class) {
+            DrawableBitmap bitmap = (DrawableBitmap)drawable;
+            data.writeByte(1);
+            writeTexture(data, type, bitmap.getTexture());
+            data.writeShort(bitmap.getWidth());
+            data.writeShort(bitmap.getHeight());
+        } else {
+            mErrors.add(type + ": drawable of type " + drawable.getClass().getSimpleName()
+                    + " can't be compiled");
+        }
+    }
+
+    private void writeGhost(DataOutputStream data, GameObjectType type, BaseObject ghost)
+            throws IOException {
+        if (getField(ghost, "mAmbientSound") != null) {
+            mErrors.add(type + ": shared GhostComponent sounds can't be compiled");
+        }
+        data.writeFloat((Float)getField(ghost, "mMovementSpeed"));
+        data.writeFloat((Float)getField(ghost, "mJumpImpulse"));
+        data.writeFloat((Float)getField(ghost, "mAcceleration"));
+        data.writeByte((Boolean)getField(ghost, "mUseOrientationSensor") ? 1 : 0);
+        data.writeFloat((Float)getField(ghost, "mDelayOnRelease"));
+        data.writeByte((Boolean)getField(ghost, "mKillOnRelease") ? 1 : 0);
+        data.writeByte(((GameObject.ActionType)getField(ghost, "mTargetAction")).ordinal());
+        data.writeFloat((Float)getField(ghost, "mLifeTime"));
+        if ((Boolean)getField(ghost, "mChangeActionOnButton")) {
+            data.writeByte(((GameObject.ActionType)getField(ghost, "mButtonPressedAction"))
+                    .ordinal());
+        } else {
+            data.writeByte(ArchetypeLibrary.NONE);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static FixedSizeArray<AnimationFrame> getFrames(SpriteAnimation animation) {
+        return (FixedSizeArray<AnimationFrame>)getField(animation, "mFrames");
+    }
+
+    private static Object getField(Object object, String name) {
+        Class<?> type = object.getClass();
+        Object value = null;
+        boolean found = false;
+        while (!found && type != null) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                value = field.get(object);
+                found = true;
+            } catch (NoSuchFieldException e) {
+                type = type.getSuperclass();
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Can't read " + name, e);
+            }
+        }
+        if (!found) {
+            throw new IllegalStateException(object.getClass().getSimpleName() + " has no field "
+                    + name + "; update ArchetypeCompiler to match it.");
+        }
+        return value;
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        data.writeByte(value.length());
+        data.writeBytes(value);
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+/**
+ * A single benchmark run by BenchmarkRunner.  setUp() is called once before any measurement and
+ * may allocate freely; run() performs one operation and is called repeatedly while timing and
+ * allocation are measured.  run() returns a value derived from its work so that the JIT cannot
+ * discard the work as dead code.
+ */
+public abstract class Benchmark {
+    private final String mName;
+
+    public Benchmark(String name) {
+        mName = name;
+    }
+
+    public final String getName() {
+        return mName;
+    }
+
+    public void setUp(BenchmarkFixtures fixtures) {
+
+    }
+
+    public abstract int run();
+}
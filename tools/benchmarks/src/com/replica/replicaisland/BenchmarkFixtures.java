@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Loads the level data in res/raw that the benchmarks use as fixtures, and sets up the minimal
+ * set of systems in the object registry that the benchmarked code paths require.
+ */
+public class BenchmarkFixtures {
+    public static final int TILE_SIZE = 32;
+
+    private final File mRawDirectory;
+    private final String mLevelName;
+    private byte[] mLevelData;
+    private CollisionSystem mCollisionSystem;
+    private TiledWorld mCollisionWorld;
+    private TiledWorld mSpawnWorld;
+
+    public BenchmarkFixtures(File rawDirectory, String levelName) {
+        mRawDirectory = rawDirectory;
+        mLevelName = levelName;
+    }
+
+    public void load() throws IOException {
+        ObjectRegistry registry = BaseObject.sSystemRegistry;
+        registry.vectorPool = new VectorPool();
+        registry.hitPointPool = new HitPointPool();
+
+        ByteBuffer level = LevelSystem.readLevelFile(new File(mRawDirectory, mLevelName));
+        mLevelData = new byte[level.remaining()];
+        level.duplicate().get(mLevelData);
+
+        mCollisionSystem = new CollisionSystem();
+        FileInputStream collision = new FileInputStream(new File(mRawDirectory, "collision.bin"));
+        try {
+            if (!mCollisionSystem.loadCollisionTiles(collision)) {
+                throw new IOException("Unable to load collision.bin");
+            }
+        } finally {
+            collision.close();
+        }
+        registry.collisionSystem = mCollisionSystem;
+
+        // Walk the layers ourselves so that the collision and spawn layers can be kept around.
+        ByteBuffer buffer = ByteBuffer.wrap(getLevelData());
+        buffer.get();   // signature
+        final int layerCount = buffer.get();
+        buffer.get();   // background index
+        for (int x = 0; x < layerCount; x++) {
+            final int type = buffer.get();
+            buffer.get();       // tile index
+            buffer.getFloat();  // scroll speed
+            TiledWorld world = new TiledWorld(buffer);
+            if (type == 1) {
+                mCollisionWorld = world;
+            } else if (type == 2) {
+                mSpawnWorld = world;
+            }
+        }
+        if (mCollisionWorld == null) {
+            throw new IOException(mLevelName + " has no collision layer");
+        }
+        mCollisionSystem.initialize(mCollisionWorld, TILE_SIZE, TILE_SIZE);
+    }
+
+    /** Returns a fresh copy of the level file, since parsing a level rewrites it in place. */
+    public byte[] getLevelData() {
+        byte[] copy = new byte[mLevelData.length];
+        System.arraycopy(mLevelData, 0, copy, 0, mLevelData.length);
+        return copy;
+    }
+
+    public String getLevelName() {
+        return mLevelName;
+    }
+
+    public CollisionSystem getCollisionSystem() {
+        return mCollisionSystem;
+    }
+
+    public TiledWorld getCollisionWorld() {
+        return mCollisionWorld;
+    }
+
+    public float getLevelWidth() {
+        return mCollisionWorld.getWidth() * TILE_SIZE;
+    }
+
+    public float getLevelHeight() {
+        return mCollisionWorld.getHeight() * TILE_SIZE;
+    }
+
+    /**
+     * Returns the world positions of every object spawn point in the level as pairs of x, y
+     * coordinates.
+     */
+    public float[] getSpawnPositions() {
+        int count = 0;
+        final int width = mSpawnWorld != null ? mSpawnWorld.getWidth() : 0;
+        final int height = mSpawnWorld != null ? mSpawnWorld.getHeight() : 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (mSpawnWorld.getTile(x, y) >= 0) {
+                    count++;
+                }
+            }
+        }
+        float[] positions = new float[count * 2];
+        int index = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (mSpawnWorld.getTile(x, y) >= 0) {
+                    positions[index++] = x * TILE_SIZE;
+                    positions[index++] = (height - 1 - y) * TILE_SIZE;
+                }
+            }
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+
+/**
+ * Runs the engine benchmarks on a desktop JVM.  Each benchmark is warmed up and then measured over
+ * several fixed-length iterations; for each one the runner reports throughput in operations per
+ * second and the number of bytes allocated per operation.  The engine's hot paths are meant to be
+ * allocation-free, so any benchmark reporting a non-zero allocation rate is a regression.
+ *
+ * The benchmarks are compiled together with the game sources and an android.jar, and run from the
+ * root of the project:
+ *
+ *   javac -cp android.jar -d out src/com/replica/replicaisland/*.java \
+ *       gen/com/replica/replicaisland/R.java \
+ *       tools/benchmarks/src/com/replica/replicaisland/*.java
+ *   java -cp out:android.jar com.replica.replicaisland.BenchmarkRunner [options] [name filter]
+ *
+ * Options:
+ *   -raw <directory>   The directory containing the level fixtures (default res/raw).
+ *   -level <file>      The level used as a fixture (default level_1_1_island.bin).
+ *   -w <ms>            Warm-up time per benchmark (default 2000).
+ *   -i <count>         Measurement iterations per benchmark (default 5).
+ *   -t <ms>            Time per measurement iteration (default 1000).
+ */
+public class BenchmarkRunner {
+    private static volatile int sSink;
+
+    public static void main(String[] args) throws Exception {
+        File rawDirectory = new File("res/raw");
+        String level = "level_1_1_island.bin";
+        long warmupMs = 2000;
+        int iterations = 5;
+        long iterationMs = 1000;
+        String filter = null;
+        for (int x = 0; x < args.length; x++) {
+            if (args[x].equals("-raw")) {
+                rawDirectory = new File(args[++x]);
+            } else if (args[x].equals("-level")) {
+                level = args[++x];
+            } else if (args[x].equals("-w")) {
+                warmupMs = Long.parseLong(args[++x]);
+            } else if (args[x].equals("-i")) {
+                iterations = Integer.parseInt(args[++x]);
+            } else if (args[x].equals("-t")) {
+                iterationMs = Long.parseLong(args[++x]);
+            } else {
+                filter = args[x];
+            }
+        }
+
+        BenchmarkFixtures fixtures = new BenchmarkFixtures(rawDirectory, level);
+        fixtures.load();
+
+        ArrayList<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.add(new SortBenchmark("sort.quick", new QuickSorter<SortBenchmark.Key>()));
+        benchmarks.add(new SortBenchmark("sort.shell", new ShellSorter<SortBenchmark.Key>()));
+        benchmarks.add(new SortBenchmark("sort.standard", new StandardSorter<SortBenchmark.Key>()));
+        benchmarks.add(new RenderQueueSortBenchmark("renderQueue.sort.phase", false));
+        benchmarks.add(new RenderQueueSortBenchmark("renderQueue.sort.radix", true));
+        benchmarks.add(new PhasedObjectManagerBenchmark());
+        benchmarks.add(new ComponentLookupBenchmark("componentLookup.findByClass", false));
+        benchmarks.add(new ComponentLookupBenchmark("componentLookup.index", true));
+        benchmarks.add(new GameObjectCollisionBenchmark("objectCollision.grid",
+                new UniformGridBroadphase(GameObjectCollisionBenchmark.OBJECT_COUNT)));
+        benchmarks.add(new GameObjectCollisionBenchmark("objectCollision.sweepAndPrune",
+                new SweepAndPruneBroadphase()));
+        benchmarks.add(new CollisionSystemBenchmark("collision.castRay", false));
+        benchmarks.add(new CollisionSystemBenchmark("collision.testBox", true));
+        benchmarks.add(new TiledWorldParseBenchmark());
+        benchmarks.add(new ActivationBenchmark());
+        benchmarks.add(new InactiveListBenchmark("inactiveList.resort", false));
+        benchmarks.add(new InactiveListBenchmark("inactiveList.window", true));
+
+        System.out.println("Fixture: " + fixtures.getLevelName());
+        System.out.println(String.format("%-32s %14s %10s %12s",
+                "Benchmark", "ops/s", "error %", "bytes/op"));
+        for (int x = 0; x < benchmarks.size(); x++) {
+            Benchmark benchmark = benchmarks.get(x);
+            if (filter == null || benchmark.getName().contains(filter)) {
+                benchmark.setUp(fixtures);
+                measure(benchmark, warmupMs, iterations, iterationMs);
+            }
+        }
+    }
+
+    private static void measure(Benchmark benchmark, long warmupMs, int iterations,
+            long iterationMs) {
+        runFor(benchmark, warmupMs * 1000000L);
+
+        final boolean allocationsMeasured = getAllocatedBytes() >= 0;
+        double[] opsPerSecond = new double[iterations];
+        long totalOps = 0;
+        long totalBytes = 0;
+        for (int x = 0; x < iterations; x++) {
+            final long startBytes = getAllocatedBytes();
+            final long startTime = System.nanoTime();
+            final long ops = runFor(benchmark, iterationMs * 1000000L);
+            final long elapsed = System.nanoTime() - startTime;
+            totalBytes += getAllocatedBytes() - startBytes;
+            totalOps += ops;
+            opsPerSecond[x] = ops * 1000000000.0 / elapsed;
+        }
+
+        double mean = 0.0;
+        for (int x = 0; x < iterations; x++) {
+            mean += opsPerSecond[x];
+        }
+        mean /= iterations;
+        double variance = 0.0;
+        for (int x = 0; x < iterations; x++) {
+            variance += (opsPerSecond[x] - mean) * (opsPerSecond[x] - mean);
+        }
+        final double deviation = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0.0;
+        final String bytesPerOp = allocationsMeasured ?
+                String.format("%12.2f", (double)totalBytes / totalOps) : String.format("%12s", "n/a");
+        System.out.println(String.format("%-32s %14.1f %10.2f %s", benchmark.getName(), mean,
+                mean > 0.0 ? (deviation / mean) * 100.0 : 0.0, bytesPerOp));
+    }
+
+    // Runs the benchmark in batches until the time budget is used up, and returns the op count.
+    private static long runFor(Benchmark benchmark, long durationNs) {
+        final long end = System.nanoTime() + durationNs;
+        long ops = 0;
+        int sink = 0;
+        int batch = 1;
+        while (System.nanoTime() < end) {
+            for (int x = 0; x < batch; x++) {
+                sink += benchmark.run();
+            }
+            ops += batch;
+            if (batch < 1024) {
+                batch *= 2;
+            }
+        }
+        sSink += sink;
+        return ops;
+    }
+
+    // Returns the number of bytes allocated so far by this thread, or -1 if the JVM can't say.
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        long result = -1;
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            result = ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return result;
+    }
+}
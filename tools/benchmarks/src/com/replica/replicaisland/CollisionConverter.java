@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Rewrites a collision tile file in the packed format (see CollisionTileSet.write()), which the
+ * game loads with a few bulk reads instead of walking the original format twice.  The input may
+ * be in either format, so the file written by tools/ExtractPoints.js can be converted in place
+ * and converting an already packed file is harmless.  The packed file is decoded again and
+ * compared with the input before it is written.
+ *
+ * Build as described in BenchmarkRunner, then run from the root of the project:
+ *
+ *   java -cp out:android.jar com.replica.replicaisland.CollisionConverter [options]
+ *
+ * Options:
+ *   -i <file>   The collision file to read (default res/raw/collision.bin).
+ *   -o <file>   Where to write the packed file (default: over the input).
+ */
+public class CollisionConverter {
+    public static void main(String[] args) throws IOException {
+        File input = new File("res/raw/collision.bin");
+        File output = null;
+        for (int x = 0; x < args.length; x++) {
+            if (args[x].equals("-i")) {
+                input = new File(args[++x]);
+            } else if (args[x].equals("-o")) {
+                output = new File(args[++x]);
+            } else {
+                System.err.println("Unknown option " + args[x]);
+                System.exit(1);
+            }
+        }
+        if (output == null) {
+            output = input;
+        }
+
+        FileInputStream stream = new FileInputStream(input);
+        ByteBuffer file;
+        try {
+            file = Utils.readStream(stream);
+        } finally {
+            stream.close();
+        }
+        final int inputSize = file.remaining();
+        CollisionTileSet tiles = CollisionTileSet.decode(file);
+        if (tiles == null) {
+            System.err.println(input + " is not a collision file.");
+            System.exit(1);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        tiles.write(bytes);
+        final byte[] packed = bytes.toByteArray();
+        CollisionTileSet check = CollisionTileSet.decode(ByteBuffer.wrap(packed));
+        if (check == null || !isSame(tiles, check)) {
+            System.err.println("The packed tiles don't match " + input + ".");
+            System.exit(1);
+        }
+
+        FileOutputStream out = new FileOutputStream(output);
+        try {
+            out.write(packed);
+        } finally {
+            out.close();
+        }
+        System.out.println("Packed " + tiles.getSegmentCount() + " segments (" + inputSize
+                + " bytes) into " + output + " (" + packed.length + " bytes)");
+    }
+
+    private static boolean isSame(CollisionTileSet a, CollisionTileSet b) {
+        boolean same = a.getSegmentCount() == b.getSegmentCount();
+        for (int x = 0; x <= CollisionTileSet.MAX_TILES && same; x++) {
+            same = a.getFirstSegment(x) == b.getFirstSegment(x);
+        }
+        return same
+                && Arrays.equals(a.getStartX(), b.getStartX())
+                && Arrays.equals(a.getStartY(), b.getStartY())
+                && Arrays.equals(a.getEndX(), b.getEndX())
+                && Arrays.equals(a.getEndY(), b.getEndY())
+                && Arrays.equals(a.getNormalX(), b.getNormalX())
+                && Arrays.equals(a.getNormalY(), b.getNormalY());
+    }
+}
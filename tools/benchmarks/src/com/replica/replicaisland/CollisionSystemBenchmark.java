@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.util.Random;
+
+/**
+ * Runs background collision queries against the fixture level's collision layer: either ray casts
+ * (the kind made by the movement and ground-detection components) or box tests (the kind made by
+ * SolidSurfaceComponent-style queries).  Query positions are generated up front and cycled.
+ */
+public class CollisionSystemBenchmark extends Benchmark {
+    private static final int QUERY_COUNT = 1024;
+    private static final float QUERY_LENGTH = 64.0f;
+
+    private final boolean mTestBoxes;
+    private CollisionSystem mCollision;
+    private float[] mQueries;
+    private Vector2 mStart;
+    private Vector2 mEnd;
+    private Vector2 mDirection;
+    private Vector2 mHitPoint;
+    private Vector2 mHitNormal;
+    private FixedSizeArray<HitPoint> mHitPoints;
+    private int mIndex;
+
+    public CollisionSystemBenchmark(String name, boolean testBoxes) {
+        super(name);
+        mTestBoxes = testBoxes;
+    }
+
+    @Override
+    public void setUp(BenchmarkFixtures fixtures) {
+        mCollision = fixtures.getCollisionSystem();
+        mStart = new Vector2();
+        mEnd = new Vector2();
+        mDirection = new Vector2();
+        mHitPoint = new Vector2();
+        mHitNormal = new Vector2();
+        mHitPoints = new FixedSizeArray<HitPoint>(16);
+
+        Random random = new Random(7);
+        mQueries = new float[QUERY_COUNT * 4];
+        for (int x = 0; x < QUERY_COUNT; x++) {
+            mQueries[x * 4] = random.nextFloat() * fixtures.getLevelWidth();
+            mQueries[(x * 4) + 1] = random.nextFloat() * fixtures.getLevelHeight();
+            final double angle = random.nextDouble() * Math.PI * 2.0;
+            mQueries[(x * 4) + 2] = (float)Math.cos(angle);
+            mQueries[(x * 4) + 3] = (float)Math.sin(angle);
+        }
+    }
+
+    @Override
+    public int run() {
+        final int query = mIndex * 4;
+        mIndex = (mIndex + 1) % QUERY_COUNT;
+        final float x = mQueries[query];
+        final float y = mQueries[query + 1];
+        mDirection.set(mQueries[query + 2], mQueries[query + 3]);
+        int result = 0;
+        if (mTestBoxes) {
+            final float half = QUERY_LENGTH / 2.0f;
+            if (mCollision.testBox(x - half, x + half, y + half, y - half, mDirection, 
+                    mHitPoints, null, false)) {
+                result = mHitPoints.getCount();
+            }
+            releaseHitPoints();
+        } else {
+            mStart.set(x, y);
+            mEnd.set(x + (mDirection.x * QUERY_LENGTH), y + (mDirection.y * QUERY_LENGTH));
+            if (mCollision.castRay(mStart, mEnd, mDirection, mHitPoint, mHitNormal, null)) {
+                result = 1;
+            }
+        }
+        return result;
+    }
+
+    private void releaseHitPoints() {
+        VectorPool vectorPool = BaseObject.sSystemRegistry.vectorPool;
+        HitPointPool hitPool = BaseObject.sSystemRegistry.hitPointPool;
+        final int count = mHitPoints.getCount();
+        for (int x = 0; x < count; x++) {
+            HitPoint hit = mHitPoints.get(x);
+            vectorPool.release(hit.hitPoint);
+            vectorPool.release(hit.hitNormal);
+            hitPool.release(hit);
+        }
+        mHitPoints.clear();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+/**
+ * Looks up components by type in a GameObject carrying a typical enemy's set of components, either
+ * with the linear findByClass() search or with the indexed getComponent().  Some of the types
+ * looked up are missing, which is the worst case for the linear search.
+ */
+public class ComponentLookupBenchmark extends Benchmark {
+    private final boolean mIndexed;
+    private GameObject mObject;
+
+    public ComponentLookupBenchmark(String name, boolean indexed) {
+        super(name);
+        mIndexed = indexed;
+    }
+
+    @Override
+    public void setUp(BenchmarkFixtures fixtures) {
+        mObject = new GameObject();
+        mObject.add(new RenderComponent());
+        mObject.add(new SpriteComponent());
+        mObject.add(new BackgroundCollisionComponent());
+        mObject.add(new DynamicCollisionComponent());
+        mObject.add(new HitReactionComponent());
+        mObject.add(new PatrolComponent());
+        mObject.add(new GravityComponent());
+        mObject.add(new MovementComponent());
+        mObject.add(new SimplePhysicsComponent());
+        mObject.add(new LifetimeComponent());
+        mObject.add(new ChangeComponentsComponent());
+        mObject.add(new EnemyAnimationComponent());
+        mObject.commitUpdates();
+    }
+
+    @Override
+    public int run() {
+        final GameObject object = mObject;
+        int found = 0;
+        if (mIndexed) {
+            found += object.getComponent(GravityComponent.TYPE) != null ? 1 : 0;
+            found += object.getComponent(SpriteComponent.TYPE) != null ? 1 : 0;
+            found += object.getComponent(ChangeComponentsComponent.TYPE) != null ? 1 : 0;
+            found += object.getComponent(LifetimeComponent.TYPE) != null ? 1 : 0;
+            found += object.getComponent(GhostComponent.TYPE) != null ? 1 : 0;
+            found += object.getComponent(InventoryComponent.TYPE) != null ? 1 : 0;
+        } else {
+            found += object.findByClass(GravityComponent.class) != null ? 1 : 0;
+            found += object.findByClass(SpriteComponent.class) != null ? 1 : 0;
+            found += object.findByClass(ChangeComponentsComponent.class) != null ? 1 : 0;
+            found += object.findByClass(LifetimeComponent.class) != null ? 1 : 0;
+            found += object.findByClass(GhostComponent.class) != null ? 1 : 0;
+            found += object.findByClass(InventoryComponent.class) != null ? 1 : 0;
+        }
+        return found;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import com.replica.replicaisland.CollisionParameters.HitType;
+
+/**
+ * Registers a crowd of objects placed at the level's spawn points with the
+ * GameObjectCollisionSystem and runs one update, as happens once per frame.  Every object has a
+ * vulnerability volume and every fourth object has an attack volume.  The objects are jittered
+ * each operation so that the broadphase sees a different (but repeatable) arrangement.
+ */
+public class GameObjectCollisionBenchmark extends Benchmark {
+    public static final int OBJECT_COUNT = 256;
+
+    private final CollisionBroadphase mBroadphase;
+    private GameObjectCollisionSystem mSystem;
+    private GameObject[] mObjects;
+    private float[] mHomePositions;
+    private FixedSizeArray<CollisionVolume> mAttackVolumes;
+    private FixedSizeArray<CollisionVolume> mVulnerabilityVolumes;
+    private CollisionVolume mBoundingVolume;
+    private int mFrame;
+
+    public GameObjectCollisionBenchmark(String name, CollisionBroadphase broadphase) {
+        super(name);
+        mBroadphase = broadphase;
+    }
+
+    @Override
+    public void setUp(BenchmarkFixtures fixtures) {
+        mSystem = new GameObjectCollisionSystem();
+        mSystem.setBroadphase(mBroadphase);
+
+        mBoundingVolume = new AABoxCollisionVolume(0, 0, 64, 64);
+        mAttackVolumes = new FixedSizeArray<CollisionVolume>(1);
+        mAttackVolumes.add(new AABoxCollisionVolume(16, 0, 32, 32, HitType.HIT));
+        mVulnerabilityVolumes = new FixedSizeArray<CollisionVolume>(1);
+        mVulnerabilityVolumes.add(new AABoxCollisionVolume(8, 0, 48, 56));
+
+        // Objects are packed into the first screens of the level, around its spawn points.
+        final float[] spawns = fixtures.getSpawnPositions();
+        mObjects = new GameObject[OBJECT_COUNT];
+        mHomePositions = new float[OBJECT_COUNT * 2];
+        for (int x = 0; x < OBJECT_COUNT; x++) {
+            mObjects[x] = new GameObject();
+            mObjects[x].width = 64;
+            mObjects[x].height = 64;
+            if (spawns.length > 0) {
+                final int spawn = (x % (spawns.length / 2)) * 2;
+                mHomePositions[x * 2] = spawns[spawn] % 1920.0f;
+                mHomePositions[(x * 2) + 1] = spawns[spawn + 1];
+            } else {
+                mHomePositions[x * 2] = (x * 37) % 1920;
+                mHomePositions[(x * 2) + 1] = (x * 53) % 480;
+            }
+        }
+    }
+
+    @Override
+    public int run() {
+        mFrame++;
+        for (int x = 0; x < OBJECT_COUNT; x++) {
+            final GameObject object = mObjects[x];
+            final float jitter = ((x + mFrame) & 15) * 2.0f;
+            object.getPosition().set(mHomePositions[x * 2] + jitter, 
+                    mHomePositions[(x * 2) + 1] - jitter);
+            mSystem.registerForCollisions(object, null, mBoundingVolume,
+                    (x & 3) == 0 ? mAttackVolumes : null, mVulnerabilityVolumes);
+        }
+        mSystem.update(0.016f, null);
+        return mSystem.getCandidatePairCount();
+    }
+}
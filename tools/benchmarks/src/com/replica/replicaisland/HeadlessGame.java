@@ -0,0 +1,553 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import android.content.Context;
+import android.graphics.BitmapFactory;
+
+/**
+ * Builds the game graph the way Game.bootstrap() does, but without an Activity, a GL surface or
+ * any audio hardware, so that game logic can be run on a desktop JVM.  The Android-backed systems
+ * are replaced with silent stand-ins, nothing is rendered (draw queues are built, sorted and then
+ * discarded) and time only advances when step() is called.  Each system under MainLoop is wrapped
+ * in a PhaseTimer so that the cost of each phase of the frame can be reported.
+ *
+ * Optionally, each frame's draw queue can be drawn by a real GameRenderer into a RecordingGL, which
+ * counts the GL calls the renderer would make; see enableRendering().
+ */
+public class HeadlessGame {
+    private final File mRawDirectory;
+    private MainLoop mGameRoot;
+    private PhaseTimer[] mPhases;
+    private PhaseTimer mRenderPhase;
+    private PhaseTimer mFramePhase;
+    private GameRenderer mRenderer;
+    private RecordingGL mRecordingGL;
+    private SpriteBatch mSpriteBatch;
+    private int mGameWidth;
+    private int mGameHeight;
+
+    public HeadlessGame(File rawDirectory) {
+        mRawDirectory = rawDirectory;
+    }
+
+    public void bootstrap(int gameWidth, int gameHeight, int difficulty, int maxFrames)
+            throws IOException {
+        // There is no android.util.Log off the device.
+        DebugLog.setDebugLogging(false);
+
+        ObjectRegistry registry = new ObjectRegistry();
+        BaseObject.sSystemRegistry = registry;
+
+        registry.openGLSystem = new OpenGLSystem();
+        registry.customToastSystem = new CustomToastSystem();
+
+        ContextParameters params = new ContextParameters();
+        params.viewWidth = gameWidth;
+        params.viewHeight = gameHeight;
+        params.gameWidth = gameWidth;
+        params.gameHeight = gameHeight;
+        params.viewScaleX = 1.0f;
+        params.viewScaleY = 1.0f;
+        params.difficulty = difficulty;
+        registry.contextParameters = params;
+
+        registry.shortTermTextureLibrary = new HeadlessTextureLibrary();
+        registry.longTermTextureLibrary = new HeadlessTextureLibrary();
+        mGameWidth = gameWidth;
+        mGameHeight = gameHeight;
+        registry.bufferLibrary = new BufferLibrary();
+        registry.soundSystem = new SilentSoundSystem();
+
+        MainLoop gameRoot = new MainLoop();
+
+        InputSystem input = new InputSystem();
+        registry.inputSystem = input;
+        registry.registerForReset(input);
+
+        InputGameInterface inputInterface = new InputGameInterface();
+        registry.inputGameInterface = inputInterface;
+
+        registry.levelSystem = new LevelSystem();
+
+        CollisionSystem collision = new CollisionSystem();
+        registry.collisionSystem = collision;
+        registry.hitPointPool = new HitPointPool();
+        FileInputStream collisionStream = new FileInputStream(new File(mRawDirectory, "collision.bin"));
+        try {
+            if (!collision.loadCollisionTiles(collisionStream)) {
+                throw new IOException("Unable to load collision.bin");
+            }
+        } finally {
+            collisionStream.close();
+        }
+
+        GameObjectManager gameManager = new GameObjectManager(params.viewWidth * 2);
+        registry.gameObjectManager = gameManager;
+
+        GameObjectFactory objectFactory = new GameObjectFactory();
+        registry.gameObjectFactory = objectFactory;
+
+        registry.hotSpotSystem = new HotSpotSystem();
+        registry.levelBuilder = new LevelBuilder();
+
+        registry.channelSystem = new ChannelSystem();
+        registry.registerForReset(registry.channelSystem);
+
+        CameraSystem camera = new CameraSystem();
+        registry.cameraSystem = camera;
+        registry.registerForReset(camera);
+
+        GameObjectCollisionSystem dynamicCollision = new GameObjectCollisionSystem();
+        registry.gameObjectCollisionSystem = dynamicCollision;
+
+        registry.renderSystem = new RenderSystem();
+        registry.vectorPool = new VectorPool();
+        registry.drawableFactory = new DrawableFactory();
+
+        // Textures are only bookkeeping until they are loaded by the renderer, so the HUD can be
+        // given its drawables even though nothing will be drawn.
+        TextureLibrary longTermTextureLibrary = registry.longTermTextureLibrary;
+        HudSystem hud = new HudSystem();
+        hud.setFuelDrawable(
+                new DrawableBitmap(longTermTextureLibrary.allocateTexture(
+                        R.drawable.ui_bar), 0, 0),
+                new DrawableBitmap(longTermTextureLibrary.allocateTexture(
+                        R.drawable.ui_bar_bg), 0, 0));
+        hud.setFadeTexture(longTermTextureLibrary.allocateTexture(R.drawable.black));
+        hud.setButtonDrawables(
+                new DrawableBitmap(longTermTextureLibrary.allocateTexture(
+                        R.drawable.ui_button_fly_disabled), 0, 0), 
+                new DrawableBitmap(longTermTextureLibrary.allocateTexture(
+                        R.drawable.ui_button_fly_off), 0, 0),
+                new DrawableBitmap(longTermTextureLibrary.allocateTexture(
+                        R.drawable.ui_button_fly_on), 0, 0),
+                new DrawableBitmap(longTermTextureLibrary.allocateTexture(
+                        R.drawable.ui_button_stomp_off), 0, 0),
+                new DrawableBitmap(longTermTextureLibrary.allocateTexture(
+                        R.drawable.ui_button_stomp_on), 0, 0),
+                new DrawableBitmap(longTermTextureLibrary.allocateTexture(
+                        R.drawable.ui_movement_slider_base), 0, 0),
+                new DrawableBitmap(longTermTextureLibrary.allocateTexture(
+                        R.drawable.ui_movement_slider_button_off), 0, 0),
+                new DrawableBitmap(longTermTextureLibrary.allocateTexture(
+                        R.drawable.ui_movement_slider_button_on), 0, 0));
+        Texture[] digitTextures = {
+                longTermTextureLibrary.allocateTexture(R.drawable.ui_0),
+                longTermTextureLibrary.allocateTexture(R.drawable.ui_1),
+                longTermTextureLibrary.allocateTexture(R.drawable.ui_2),
+                longTermTextureLibrary.allocateTexture(R.drawable.ui_3),
+                longTermTextureLibrary.allocateTexture(R.drawable.ui_4),
+                longTermTextureLibrary.allocateTexture(R.drawable.ui_5),
+                longTermTextureLibrary.allocateTexture(R.drawable.ui_6),
+                longTermTextureLibrary.allocateTexture(R.drawable.ui_7),
+                longTermTextureLibrary.allocateTexture(R.drawable.ui_8),
+                longTermTextureLibrary.allocateTexture(R.drawable.ui_9)
+        };
+        DrawableBitmap[] digits = {
+                new DrawableBitmap(digitTextures[0], 0, 0),
+                new DrawableBitmap(digitTextures[1], 0, 0),
+                new DrawableBitmap(digitTextures[2], 0, 0),
+                new DrawableBitmap(digitTextures[3], 0, 0),
+                new DrawableBitmap(digitTextures[4], 0, 0),
+                new DrawableBitmap(digitTextures[5], 0, 0),
+                new DrawableBitmap(digitTextures[6], 0, 0),
+                new DrawableBitmap(digitTextures[7], 0, 0),
+                new DrawableBitmap(digitTextures[8], 0, 0),
+                new DrawableBitmap(digitTextures[9], 0, 0)
+        };
+        DrawableBitmap xDrawable = new DrawableBitmap(
+                longTermTextureLibrary.allocateTexture(R.drawable.ui_x), 0, 0);
+        
+        hud.setDigitDrawables(digits, xDrawable);
+        hud.setCollectableDrawables(
+                new DrawableBitmap(
+                        longTermTextureLibrary.allocateTexture(R.drawable.ui_pearl), 0, 0), 
+                new DrawableBitmap(
+                        longTermTextureLibrary.allocateTexture(R.drawable.ui_gem), 0, 0));
+        
+        registry.hudSystem = hud;
+
+        registry.vibrationSystem = new SilentVibrationSystem();
+
+        EventRecorder eventRecorder = new EventRecorder();
+        registry.eventRecorder = eventRecorder;
+        registry.registerForReset(eventRecorder);
+
+        // Same order as Game.bootstrap().
+        mPhases = new PhaseTimer[] {
+                new PhaseTimer("input", inputInterface, maxFrames),
+                new PhaseTimer("gameObjects", gameManager, maxFrames),
+                new PhaseTimer("camera", camera, maxFrames),
+                new PhaseTimer("objectCollision", dynamicCollision, maxFrames),
+                new PhaseTimer("hud", hud, maxFrames),
+                new PhaseTimer("collision", collision, maxFrames),
+        };
+        for (int x = 0; x < mPhases.length; x++) {
+            gameRoot.add(mPhases[x]);
+        }
+        gameRoot.commitUpdates();
+        mRenderPhase = new PhaseTimer("renderSwap", registry.renderSystem, maxFrames);
+        mFramePhase = new PhaseTimer("frame", gameRoot, maxFrames);
+
+        objectFactory.preloadEffects();
+
+        mGameRoot = gameRoot;
+    }
+
+    /** Loads a level file and spawns its objects, as Game.goToLevel() does. */
+    public void loadLevel(File levelFile) throws IOException {
+        LevelTree.Level level = new LevelTree.Level(0, null, levelFile.getName(), "", false, true,
+                false);
+        if (!BaseObject.sSystemRegistry.levelSystem.loadLevel(level, 
+                LevelSystem.readLevelFile(levelFile), mGameRoot)) {
+            throw new IOException("Unable to load " + levelFile);
+        }
+        mGameRoot.commitUpdates();
+        BaseObject.sSystemRegistry.timeSystem.reset();
+    }
+
+    /**
+     * Installs a FrameProfiler at the end of the game graph so that component updates are timed
+     * by phase and by class.  Call after bootstrap().
+     */
+    public FrameProfiler enableFrameProfiler() {
+        FrameProfiler profiler = new FrameProfiler();
+        BaseObject.sSystemRegistry.frameProfiler = profiler;
+        mGameRoot.add(profiler);
+        mGameRoot.commitUpdates();
+        return profiler;
+    }
+
+    /**
+     * Packs drawables into the pages of a texture atlas (see TextureAtlas), so that rendering
+     * binds pages rather than individual textures.  Pages are never read; they get made-up names
+     * like every other texture.  Call after bootstrap() and before enableRendering().
+     */
+    public TextureAtlas enableTextureAtlas(InputStream stream) throws IOException {
+        TextureAtlas atlas = new HeadlessTextureAtlas();
+        if (!atlas.load(stream)) {
+            throw new IOException("Not a usable atlas table");
+        }
+        final TextureLibrary longTerm = BaseObject.sSystemRegistry.longTermTextureLibrary;
+        longTerm.setAtlas(atlas, longTerm);
+        BaseObject.sSystemRegistry.shortTermTextureLibrary.setAtlas(atlas, longTerm);
+        return atlas;
+    }
+
+    /**
+     * Streams short-term textures in through a TextureStreamer whose workers pretend to decode
+     * each texture for decodeMillis milliseconds, so that the queue and the per-frame uploads can
+     * be watched.  Call after bootstrap() and before enableRendering().
+     */
+    public TextureStreamer enableTextureStreaming(int decodeMillis) {
+        TextureStreamer streamer = new HeadlessTextureStreamer(decodeMillis);
+        BaseObject.sSystemRegistry.textureStreamer = streamer;
+        BaseObject.sSystemRegistry.shortTermTextureLibrary.setStreamer(streamer);
+        return streamer;
+    }
+
+    /**
+     * Gives the short-term texture library a budget (see TextureLibrary.setBudget()) shared with
+     * the long-term library.  Every made-up texture is 256x256 at 32 bits, or 256 KB.
+     */
+    public void setTextureBudget(int bytes) {
+        ObjectRegistry registry = BaseObject.sSystemRegistry;
+        registry.shortTermTextureLibrary.setBudget(bytes, registry.longTermTextureLibrary);
+    }
+
+    /**
+     * Draws every frame with a GameRenderer into a RecordingGL, optionally through a SpriteBatch
+     * using hardware buffers.  Textures are given made-up names and sizes instead of being loaded.
+     * Call after bootstrap().
+     */
+    public RecordingGL enableRendering(boolean spriteBatching) {
+        mRecordingGL = new RecordingGL();
+        final GL10 gl = mRecordingGL.getGL();
+        mRenderer = new GameRenderer(null, null, mGameWidth, mGameHeight);
+        if (spriteBatching) {
+            mSpriteBatch = new SpriteBatch(384);
+            mSpriteBatch.generateHardwareBuffers(gl);
+            mRenderer.setSpriteBatch(mSpriteBatch);
+        }
+        ObjectRegistry registry = BaseObject.sSystemRegistry;
+        ((HeadlessTextureLibrary)registry.longTermTextureLibrary).enableLoading(gl);
+        ((HeadlessTextureLibrary)registry.shortTermTextureLibrary).enableLoading(gl);
+        return mRecordingGL;
+    }
+
+    /**
+     * Starts recording frame times and input to the stream (see InputRecorder) and reseeds the
+     * random number source.  Call after loadLevel() so that the log starts with the level.
+     */
+    public InputRecorder enableInputRecording(OutputStream stream, long seed) throws IOException {
+        InputRecorder recorder = new InputRecorder();
+        if (!recorder.start(stream, seed)) {
+            throw new IOException("Unable to write input log");
+        }
+        BaseObject.sSystemRegistry.inputRecorder = recorder;
+        return recorder;
+    }
+
+    /**
+     * Plays back an input log written by InputRecorder, replacing the fixed timestep with the
+     * recorded frame times until the log runs out.  Call after loadLevel().
+     */
+    public InputPlayback enableInputPlayback(InputStream stream) throws IOException {
+        InputPlayback playback = new InputPlayback();
+        if (!playback.load(stream)) {
+            throw new IOException("Not an input log");
+        }
+        playback.start();
+        BaseObject.sSystemRegistry.inputPlayback = playback;
+        return playback;
+    }
+
+    /**
+     * Builds object static data from an archetype file (see ArchetypeLibrary) rather than in the
+     * spawn methods.  Call after bootstrap() and before loadLevel().
+     */
+    public ArchetypeLibrary enableArchetypes(InputStream stream) throws IOException {
+        ArchetypeLibrary archetypes = new HeadlessArchetypeLibrary();
+        if (!archetypes.load(stream)) {
+            throw new IOException("Not a usable archetype file");
+        }
+        BaseObject.sSystemRegistry.gameObjectFactory.setArchetypes(archetypes);
+        return archetypes;
+    }
+
+    /**
+     * Spawns simple objects as the camera approaches them rather than at load (see 
+     * SpawnStreamer).  Call after bootstrap() and before loadLevel().
+     */
+    public SpawnStreamer enableSpawnStreaming() {
+        SpawnStreamer streamer = new SpawnStreamer();
+        BaseObject.sSystemRegistry.spawnStreamer = streamer;
+        return streamer;
+    }
+
+    /**
+     * Simulates dust, smoke and gem sparkles with a ParticleSystem rather than as game objects.
+     * Call after bootstrap() and before loadLevel().
+     */
+    public ParticleSystem enableParticles() {
+        ParticleSystem particles = new ParticleSystem();
+        BaseObject.sSystemRegistry.particleSystem = particles;
+        BaseObject.sSystemRegistry.registerForReset(particles);
+        mGameRoot.add(particles);
+        mGameRoot.commitUpdates();
+        return particles;
+    }
+
+    public SpriteBatch getSpriteBatch() {
+        return mSpriteBatch;
+    }
+
+    /** Runs a single frame of the game graph, advancing time by exactly timeDelta seconds. */
+    public void step(float timeDelta) {
+        final long start = System.nanoTime();
+        mGameRoot.update(timeDelta, null);
+
+        final long renderStart = System.nanoTime();
+        CameraSystem camera = BaseObject.sSystemRegistry.cameraSystem;
+        BaseObject.sSystemRegistry.renderSystem.swap(mRenderer, camera.getInterpolatedFocusPositionX(),
+                camera.getInterpolatedFocusPositionY());
+        if (mRenderer != null) {
+            mRenderer.drawScene(mRecordingGL.getGL());
+            mRecordingGL.endFrame();
+        }
+        final long end = System.nanoTime();
+
+        mRenderPhase.record(end - renderStart);
+        mFramePhase.record(end - start);
+    }
+
+    public PhaseTimer[] getPhases() {
+        return mPhases;
+    }
+
+    public PhaseTimer getRenderPhase() {
+        return mRenderPhase;
+    }
+
+    public PhaseTimer getFramePhase() {
+        return mFramePhase;
+    }
+
+    /**
+     * A texture library that never touches bitmaps.  Once loading is enabled, every texture is
+     * "loaded" with a made-up name and size as soon as it is allocated.
+     */
+    private static class HeadlessTextureLibrary extends TextureLibrary {
+        private static final int TEXTURE_SIZE = 256;
+        private static int sNextName = 1;
+        private GL10 mGL;
+
+        public void enableLoading(GL10 gl) {
+            mGL = gl;
+            loadAll(null, gl);
+        }
+
+        @Override
+        public Texture allocateTexture(int resourceID) {
+            Texture texture = super.allocateTexture(resourceID);
+            if (mGL != null && !texture.loaded) {
+                loadBitmap(null, mGL, texture);
+            }
+            return texture;
+        }
+
+        @Override
+        protected Texture loadBitmap(Context context, GL10 gl, Texture texture) {
+            if (getStreamer() != null) {
+                // The streamer makes the textures up instead.
+                return super.loadBitmap(context, gl, texture);
+            }
+            final int region = (!texture.loaded && texture.resource != -1)
+                    ? findAtlasRegion(texture) : TextureAtlas.NONE;
+            if (region != TextureAtlas.NONE) {
+                loadAtlasRegion(context, gl, texture, region);
+            } else if (!texture.loaded && texture.resource != -1) {
+                texture.name = sNextName++;
+                texture.width = TEXTURE_SIZE;
+                texture.height = TEXTURE_SIZE;
+                texture.pageWidth = TEXTURE_SIZE;
+                texture.pageHeight = TEXTURE_SIZE;
+                texture.loaded = true;
+                setResidentSize(texture, TEXTURE_SIZE * TEXTURE_SIZE * 4);
+            }
+            return texture;
+        }
+
+        @Override
+        protected String getResourceName(int resource) {
+            String name = HeadlessGame.getResourceName(R.drawable.class, resource);
+            if (name == null) {
+                name = HeadlessGame.getResourceName(R.raw.class, resource);
+            }
+            return name != null ? name : super.getResourceName(resource);
+        }
+    }
+
+    /** A texture streamer that decodes every texture into a blank image of the same made-up size. */
+    private static class HeadlessTextureStreamer extends TextureStreamer {
+        private final int mDecodeMillis;
+
+        public HeadlessTextureStreamer(int decodeMillis) {
+            super();
+            mDecodeMillis = decodeMillis;
+        }
+
+        @Override
+        protected boolean decode(PixelBuffer buffer, BitmapFactory.Options options) {
+            if (mDecodeMillis > 0) {
+                try {
+                    Thread.sleep(mDecodeMillis);
+                } catch (InterruptedException e) {
+                    // Decode faster, then.
+                }
+            }
+            // Sprites have alpha, so they decode to 32-bit pixels even though RGB565 is asked for.
+            buffer.setSize(HeadlessTextureLibrary.TEXTURE_SIZE, 
+                    HeadlessTextureLibrary.TEXTURE_SIZE, 4);
+            return true;
+        }
+    }
+
+    /** 
+     * Looks drawables up in R rather than in the resources of a Context.  Pages that aren't in R
+     * (because R predates the atlas) get made-up ids, since they are never read.
+     */
+    private static class HeadlessTextureAtlas extends TextureAtlas {
+        private static final int FIRST_PAGE_ID = 0x7f7f0000;
+        private int mNextPageId = FIRST_PAGE_ID;
+
+        @Override
+        protected int getDrawableId(String name) {
+            return getResourceId(R.drawable.class, name);
+        }
+
+        @Override
+        protected int getPageId(String name) {
+            int id = getResourceId(R.raw.class, name);
+            if (id == 0) {
+                id = mNextPageId++;
+            }
+            return id;
+        }
+    }
+
+    private static int getResourceId(Class<?> type, String name) {
+        int id = 0;
+        try {
+            id = type.getField(name).getInt(null);
+        } catch (NoSuchFieldException e) {
+            // No such resource.
+        } catch (IllegalAccessException e) {
+            // No such resource.
+        }
+        return id;
+    }
+
+    private static String getResourceName(Class<?> type, int id) {
+        String name = null;
+        try {
+            final Field[] fields = type.getFields();
+            for (int x = 0; x < fields.length && name == null; x++) {
+                if (fields[x].getInt(null) == id) {
+                    name = fields[x].getName();
+                }
+            }
+        } catch (IllegalAccessException e) {
+            // No such resource.
+        }
+        return name;
+    }
+
+    /** Looks drawables up in R rather than in the resources of a Context. */
+    private static class HeadlessArchetypeLibrary extends ArchetypeLibrary {
+        @Override
+        protected int getDrawableId(String name) {
+            return getResourceId(R.drawable.class, name);
+        }
+    }
+
+    /** A sound system that loads and plays nothing. */
+    private static class SilentSoundSystem extends SoundSystem {
+        public SilentSoundSystem() {
+            super(false);
+            setSoundEnabled(false);
+        }
+    }
+
+    /** A vibration system with no vibrator. */
+    private static class SilentVibrationSystem extends VibrationSystem {
+        @Override
+        public void vibrate(float seconds) {
+
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.util.Comparator;
+
+/**
+ * Compares two ways of maintaining GameObjectManager's list of inactive objects while the camera
+ * sweeps across the fixture level.  The "resort" mode is the original approach: deactivated
+ * objects are appended, the list is resorted with StandardSorter whenever it has changed, and it
+ * is scanned from the right until the scan passes the camera.  The "window" mode is the current
+ * approach: the list stays sorted as objects are inserted and removed, and only the objects
+ * within the activation radius on either side of the camera, found with binary searches, are
+ * visited.
+ */
+public class InactiveListBenchmark extends Benchmark {
+    private static final float ACTIVATION_RADIUS = 480.0f;
+    private static final float CAMERA_SPEED = 8.0f;
+
+    private final boolean mWindow;
+    private FixedSizeArray<GameObject> mActive;
+    private FixedSizeArray<GameObject> mInactive;
+    private float mCameraX;
+    private float mCameraY;
+    private float mLevelWidth;
+
+    public InactiveListBenchmark(String name, boolean window) {
+        super(name);
+        mWindow = window;
+    }
+
+    @Override
+    public void setUp(BenchmarkFixtures fixtures) {
+        final float[] spawns = fixtures.getSpawnPositions();
+        final int count = Math.max(1, spawns.length / 2);
+        mActive = new FixedSizeArray<GameObject>(count);
+        mInactive = new FixedSizeArray<GameObject>(count, new PositionComparator());
+        if (mWindow) {
+            mInactive.setSorter(new InsertionSorter<GameObject>());
+            mInactive.setKeepSorted(true);
+        }
+        for (int x = 0; x < spawns.length / 2; x++) {
+            GameObject object = new GameObject();
+            object.getPosition().set(spawns[x * 2], spawns[(x * 2) + 1]);
+            object.activationRadius = ACTIVATION_RADIUS;
+            mActive.add(object);
+        }
+        mLevelWidth = fixtures.getLevelWidth();
+        mCameraY = fixtures.getLevelHeight() / 2.0f;
+        mCameraX = 0.0f;
+    }
+
+    @Override
+    public int run() {
+        mCameraX += CAMERA_SPEED;
+        if (mCameraX > mLevelWidth) {
+            mCameraX = 0.0f;
+        }
+
+        final float radius2 = ACTIVATION_RADIUS * ACTIVATION_RADIUS;
+        final Object[] active = mActive.getArray();
+        for (int i = mActive.getCount() - 1; i >= 0; i--) {
+            final GameObject object = (GameObject)active[i];
+            if (distance2(object) >= radius2) {
+                mActive.swapWithLast(i);
+                mActive.removeLast();
+                mInactive.add(object);
+            }
+        }
+
+        mInactive.sort(false);
+        final Object[] inactive = mInactive.getArray();
+        if (mWindow) {
+            final int first = findBound(mCameraX - ACTIVATION_RADIUS, false);
+            final int end = findBound(mCameraX + ACTIVATION_RADIUS, true);
+            for (int i = end - 1; i >= first; i--) {
+                final GameObject object = (GameObject)inactive[i];
+                if (distance2(object) < radius2) {
+                    mInactive.remove(i);
+                    mActive.add(object);
+                }
+            }
+        } else {
+            for (int i = mInactive.getCount() - 1; i >= 0; i--) {
+                final GameObject object = (GameObject)inactive[i];
+                if (distance2(object) < radius2) {
+                    mInactive.swapWithLast(i);
+                    mInactive.removeLast();
+                    mActive.add(object);
+                } else if (object.getPosition().x - mCameraX < -ACTIVATION_RADIUS) {
+                    break;
+                }
+            }
+        }
+        return mActive.getCount();
+    }
+
+    private float distance2(GameObject object) {
+        final Vector2 position = object.getPosition();
+        final float x = position.x - mCameraX;
+        final float y = position.y - mCameraY;
+        return (x * x) + (y * y);
+    }
+
+    private int findBound(float x, boolean inclusive) {
+        final Object[] inactive = mInactive.getArray();
+        int low = 0;
+        int high = mInactive.getCount();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            final float objectX = ((GameObject)inactive[middle]).getPosition().x;
+            if (objectX < x || (inclusive && objectX == x)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static class PositionComparator implements Comparator<GameObject> {
+        public int compare(GameObject object1, GameObject object2) {
+            return Float.compare(object1.getPosition().x, object2.getPosition().x);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.util.Arrays;
+
+/**
+ * Wraps a node of the game graph and records how long each of its updates takes.  Samples are
+ * stored in an array allocated up front, so timing a phase adds no allocations to the frame.
+ */
+public class PhaseTimer extends BaseObject {
+    private final String mName;
+    private final BaseObject mTarget;
+    private final long[] mSamples;
+    private int mSampleCount;
+    private long mTotalTime;
+
+    public PhaseTimer(String name, BaseObject target, int maxSamples) {
+        super();
+        mName = name;
+        mTarget = target;
+        mSamples = new long[maxSamples];
+    }
+
+    @Override
+    public void reset() {
+        mSampleCount = 0;
+        mTotalTime = 0;
+    }
+
+    @Override
+    public void update(float timeDelta, BaseObject parent) {
+        final long start = System.nanoTime();
+        mTarget.update(timeDelta, parent);
+        record(System.nanoTime() - start);
+    }
+
+    /** Records a sample directly, for timing work that isn't a node of the game graph. */
+    public void record(long nanoseconds) {
+        if (mSampleCount < mSamples.length) {
+            mSamples[mSampleCount] = nanoseconds;
+            mSampleCount++;
+        }
+        mTotalTime += nanoseconds;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public BaseObject getTarget() {
+        return mTarget;
+    }
+
+    public long getTotalTime() {
+        return mTotalTime;
+    }
+
+    /** Returns the sample at the passed percentile (0 - 100), in nanoseconds.  Allocates. */
+    public long getPercentile(float percentile) {
+        long result = 0;
+        if (mSampleCount > 0) {
+            long[] sorted = Arrays.copyOf(mSamples, mSampleCount);
+            Arrays.sort(sorted);
+            final int index = Math.min(mSampleCount - 1,
+                    (int)Math.ceil((percentile / 100.0f) * mSampleCount) - 1);
+            result = sorted[Math.max(0, index)];
+        }
+        return result;
+    }
+
+    public int getSampleCount() {
+        return mSampleCount;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+/**
+ * Looks up every phase in a PhasedObjectManager populated like a GameObject with a full set of
+ * components, which is what the components do each frame when they search for their siblings.
+ */
+public class PhasedObjectManagerBenchmark extends Benchmark {
+    private static final int COUNT = 32;
+
+    private PhasedObjectManager mManager;
+
+    public PhasedObjectManagerBenchmark() {
+        super("phasedObjectManager.find");
+    }
+
+    @Override
+    public void setUp(BenchmarkFixtures fixtures) {
+        mManager = new PhasedObjectManager(COUNT);
+        for (int x = 0; x < COUNT; x++) {
+            PhasedObject object = new PhasedObject();
+            object.setPhase(x * 3);
+            mManager.add(object);
+        }
+        mManager.commitUpdates();
+    }
+
+    @Override
+    public int run() {
+        int found = 0;
+        // Search for every phase, including the ones that are missing.
+        for (int x = 0; x < COUNT * 3; x++) {
+            if (mManager.find(x) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
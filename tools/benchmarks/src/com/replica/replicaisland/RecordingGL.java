@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+import javax.microedition.khronos.opengles.GL11Ext;
+
+/**
+ * A stand-in OpenGL ES context that draws nothing but counts the calls made to it, so that the
+ * renderer can be exercised headlessly.  Calls are sorted into draw calls (glDraw*), texture binds
+ * and other state changes; queries such as glGet* and glGen* are not counted.  Buffer and texture
+ * names are handed out from a counter, and glGetError() always succeeds.
+ *
+ * Counts accumulate per frame; endFrame() folds the frame into the totals and maximums.
+ */
+public class RecordingGL implements InvocationHandler {
+    private final GL10 mGL;
+    private int mNextName;
+
+    private int mFrameDrawCalls;
+    private int mFrameTextureBinds;
+    private int mFrameStateChanges;
+
+    private int mFrames;
+    private long mTotalDrawCalls;
+    private long mTotalTextureBinds;
+    private long mTotalStateChanges;
+    private int mMaxDrawCalls;
+    private int mMaxStateChanges;
+
+    public RecordingGL() {
+        mNextName = 1;
+        mGL = (GL10)Proxy.newProxyInstance(GL10.class.getClassLoader(),
+                new Class<?>[] { GL10.class, GL11.class, GL11Ext.class }, this);
+    }
+
+    /** Returns the recording context, which implements GL10, GL11 and GL11Ext. */
+    public GL10 getGL() {
+        return mGL;
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        final String name = method.getName();
+        Object result = null;
+        if (name.startsWith("glDraw")) {
+            mFrameDrawCalls++;
+        } else if (name.equals("glBindTexture")) {
+            mFrameTextureBinds++;
+        } else if (name.startsWith("glGen")) {
+            // glGenBuffers(n, int[] names, offset) and glGenTextures(...)
+            if (args.length == 3 && args[1] instanceof int[]) {
+                final int[] names = (int[])args[1];
+                final int count = (Integer)args[0];
+                final int offset = (Integer)args[2];
+                for (int x = 0; x < count; x++) {
+                    names[offset + x] = mNextName++;
+                }
+            }
+        } else if (name.equals("glGetString")) {
+            result = "";
+        } else if (!name.startsWith("glGet") && !name.startsWith("glIs")) {
+            mFrameStateChanges++;
+        }
+
+        final Class<?> returnType = method.getReturnType();
+        if (result == null && returnType != void.class) {
+            if (returnType == boolean.class) {
+                result = Boolean.FALSE;
+            } else if (returnType == int.class) {
+                result = 0;
+            } else if (returnType == float.class) {
+                result = 0.0f;
+            }
+        }
+        return result;
+    }
+
+    public void endFrame() {
+        mFrames++;
+        mTotalDrawCalls += mFrameDrawCalls;
+        mTotalTextureBinds += mFrameTextureBinds;
+        mTotalStateChanges += mFrameStateChanges;
+        mMaxDrawCalls = Math.max(mMaxDrawCalls, mFrameDrawCalls);
+        mMaxStateChanges = Math.max(mMaxStateChanges, mFrameStateChanges);
+        mFrameDrawCalls = 0;
+        mFrameTextureBinds = 0;
+        mFrameStateChanges = 0;
+    }
+
+    public int getFrameCount() {
+        return mFrames;
+    }
+
+    public int getFrameDrawCalls() {
+        return mFrameDrawCalls;
+    }
+
+    public int getFrameTextureBinds() {
+        return mFrameTextureBinds;
+    }
+
+    public int getFrameStateChanges() {
+        return mFrameStateChanges;
+    }
+
+    public long getTotalDrawCalls() {
+        return mTotalDrawCalls;
+    }
+
+    public long getTotalTextureBinds() {
+        return mTotalTextureBinds;
+    }
+
+    public long getTotalStateChanges() {
+        return mTotalStateChanges;
+    }
+
+    public int getMaxDrawCalls() {
+        return mMaxDrawCalls;
+    }
+
+    public int getMaxStateChanges() {
+        return mMaxStateChanges;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.util.Comparator;
+import java.util.Random;
+
+import com.replica.replicaisland.RenderSystem.RenderElement;
+
+/**
+ * Sorts a full frame's worth of render elements, spread over the usual draw priorities and a
+ * handful of textures, either with the comparator sort on the element phase or with the radix
+ * sort on the element key.  The queue is refilled in submission order before each sort.
+ */
+public class RenderQueueSortBenchmark extends Benchmark {
+    private static final int COUNT = 384;
+    private static final int TEXTURE_COUNT = 24;
+    private static final int[] PRIORITIES = {
+        SortConstants.BACKGROUND_START, SortConstants.FOREGROUND, SortConstants.EFFECT,
+        SortConstants.GENERAL_OBJECT, SortConstants.GENERAL_ENEMY, SortConstants.PLAYER,
+        SortConstants.PROJECTILE, SortConstants.HUD
+    };
+
+    private final boolean mRadix;
+    private FixedSizeArray<BaseObject> mQueue;
+    private RenderElement[] mTemplate;
+
+    public RenderQueueSortBenchmark(String name, boolean radix) {
+        super(name);
+        mRadix = radix;
+    }
+
+    @Override
+    public void setUp(BenchmarkFixtures fixtures) {
+        mQueue = new FixedSizeArray<BaseObject>(COUNT, new PhaseComparator());
+        if (mRadix) {
+            mQueue.setSorter(new RenderSystem.RenderElementSorter(COUNT));
+        }
+        Texture[] textures = new Texture[TEXTURE_COUNT];
+        for (int x = 0; x < TEXTURE_COUNT; x++) {
+            textures[x] = new Texture();
+            textures[x].resource = 0x7f020000 + x;
+            textures[x].name = x + 1;
+        }
+        RenderSystem system = new RenderSystem();
+        Vector2 position = new Vector2();
+        Random random = new Random(42);
+        mTemplate = new RenderElement[COUNT];
+        for (int x = 0; x < COUNT; x++) {
+            DrawableBitmap bitmap = new DrawableBitmap(
+                    textures[random.nextInt(TEXTURE_COUNT)], 16, 16);
+            final int priority = PRIORITIES[random.nextInt(PRIORITIES.length)];
+            RenderElement element = system.new RenderElement();
+            element.set(bitmap, position, priority, true);
+            if (mRadix) {
+                element.setSortKey(priority, x);
+            }
+            mTemplate[x] = element;
+            mQueue.add(element);
+        }
+    }
+
+    @Override
+    public int run() {
+        final RenderElement[] template = mTemplate;
+        for (int x = 0; x < COUNT; x++) {
+            mQueue.set(x, template[x]);
+        }
+        mQueue.sort(true);
+        return ((RenderElement)mQueue.get(0)).phase;
+    }
+
+    private static class PhaseComparator implements Comparator<BaseObject> {
+        public int compare(BaseObject object1, BaseObject object2) {
+            return ((PhasedObject)object1).phase - ((PhasedObject)object2).phase;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+
+/**
+ * Runs a level headless for a fixed number of frames with a fixed timestep and reports how long
+ * each phase of the frame took.  Since the clock only advances by the fixed step and the random
+ * number source is seeded, runs are repeatable, which makes this suitable for soak-testing levels
+ * on a build machine and for profiling game logic separately from rendering.
+ *
+ * Build as described in BenchmarkRunner, then run from the root of the project:
+ *
+ *   java -cp out:android.jar com.replica.replicaisland.SimulationRunner [options] <level file>
+ *
+ * The level may be a path or the name of a file in the raw directory.  Options:
+ *   -raw <directory>   The directory containing collision.bin (default res/raw).
+ *   -frames <count>    Number of frames to simulate (default 10000).
+ *   -step <seconds>    The fixed timestep (default 1/60).
+ *   -seed <value>      Seed for the game's random number source (default 0).
+ *   -difficulty <n>    Difficulty level (default 1).
+ *   -profile           Time every component update and report the cost of each component phase
+ *                      and component class (see FrameProfiler).
+ *   -render <mode>     Draw every frame into a call-counting GL stand-in and report GL calls per
+ *                      frame.  The mode is "direct" (one call per bitmap) or "batch" (SpriteBatch).
+ *   -record <file>     Write the frame times and input of the run to an input log (see
+ *                      InputRecorder).  The headless game gets no input of its own, so this is
+ *                      mostly useful for checking that playback reproduces a run.
+ *   -replay <file>     Play back an input log, such as one recorded on a device, instead of using
+ *                      the fixed timestep.  The run stops early if the log runs out.  The log
+ *                      should have been recorded from the start of the same level.
+ *   -archetypes <file> Build object static data from an archetype file (see ArchetypeCompiler)
+ *                      instead of in the spawn methods.
+ *   -atlas <file>      Pack drawables into the pages of a texture atlas table (see
+ *                      TextureAtlasBuilder); mostly useful with -render.
+ *   -textures <ms>     Stream textures in the background (see TextureStreamer), pretending that
+ *                      each takes the given number of milliseconds to decode, and report the
+ *                      texture queue and upload times; only useful with -render.
+ *   -texture-budget <KB>  Unload short-term textures that haven't been drawn recently whenever
+ *                      the two texture libraries hold more than this (see
+ *                      TextureLibrary.setBudget()); only useful with -render.
+ *   -pools             Report the use of each object pool (see ObjectPool.dumpStatistics()).
+ *   -stream            Spawn simple objects as the camera approaches them (see SpawnStreamer) and
+ *                      report how many were spawned and unloaded.
+ *   -particles         Simulate dust, smoke and gem sparkles as particles (see ParticleSystem)
+ *                      rather than game objects, and report how many were emitted.
+ */
+public class SimulationRunner {
+    public static void main(String[] args) throws Exception {
+        File rawDirectory = new File("res/raw");
+        int frames = 10000;
+        float step = 1.0f / 60.0f;
+        long seed = 0;
+        int difficulty = 1;
+        boolean profile = false;
+        String renderMode = null;
+        String recordName = null;
+        String replayName = null;
+        String archetypeName = null;
+        String atlasName = null;
+        int textureDecodeTime = -1;
+        int textureBudget = 0;
+        boolean stream = false;
+        boolean pools = false;
+        boolean particles = false;
+        String levelName = null;
+        for (int x = 0; x < args.length; x++) {
+            if (args[x].equals("-raw")) {
+                rawDirectory = new File(args[++x]);
+            } else if (args[x].equals("-frames")) {
+                frames = Integer.parseInt(args[++x]);
+            } else if (args[x].equals("-step")) {
+                step = Float.parseFloat(args[++x]);
+            } else if (args[x].equals("-seed")) {
+                seed = Long.parseLong(args[++x]);
+            } else if (args[x].equals("-difficulty")) {
+                difficulty = Integer.parseInt(args[++x]);
+            } else if (args[x].equals("-profile")) {
+                profile = true;
+            } else if (args[x].equals("-render")) {
+                renderMode = args[++x];
+            } else if (args[x].equals("-record")) {
+                recordName = args[++x];
+            } else if (args[x].equals("-replay")) {
+                replayName = args[++x];
+            } else if (args[x].equals("-archetypes")) {
+                archetypeName = args[++x];
+            } else if (args[x].equals("-atlas")) {
+                atlasName = args[++x];
+            } else if (args[x].equals("-textures")) {
+                textureDecodeTime = Integer.parseInt(args[++x]);
+            } else if (args[x].equals("-texture-budget")) {
+                textureBudget = Integer.parseInt(args[++x]) * 1024;
+            } else if (args[x].equals("-pools")) {
+                pools = true;
+            } else if (args[x].equals("-stream")) {
+                stream = true;
+            } else if (args[x].equals("-particles")) {
+                particles = true;
+            } else {
+                levelName = args[x];
+            }
+        }
+        if (levelName == null) {
+            System.err.println("Usage: SimulationRunner [options] <level file>");
+            System.exit(1);
+        }
+        File levelFile = new File(levelName);
+        if (!levelFile.exists()) {
+            levelFile = new File(rawDirectory, levelName);
+        }
+
+        Utils.setRandomSeed(seed);
+        HeadlessGame game = new HeadlessGame(rawDirectory);
+        game.bootstrap(480, 320, difficulty, frames);
+        FrameProfiler profiler = profile ? game.enableFrameProfiler() : null;
+        if (atlasName != null) {
+            FileInputStream atlasStream = new FileInputStream(atlasName);
+            try {
+                TextureAtlas atlas = game.enableTextureAtlas(atlasStream);
+                System.out.println(String.format("Atlas: %d drawables on %d pages",
+                        atlas.getRegionCount(), atlas.getPageCount()));
+            } finally {
+                atlasStream.close();
+            }
+        }
+        TextureStreamer textureStreamer = textureDecodeTime >= 0 
+                ? game.enableTextureStreaming(textureDecodeTime) : null;
+        if (textureBudget > 0) {
+            game.setTextureBudget(textureBudget);
+        }
+        RecordingGL gl = renderMode != null ? game.enableRendering(renderMode.equals("batch")) : null;
+        if (archetypeName != null) {
+            FileInputStream archetypeStream = new FileInputStream(archetypeName);
+            try {
+                game.enableArchetypes(archetypeStream);
+            } finally {
+                archetypeStream.close();
+            }
+        }
+        SpawnStreamer streamer = stream ? game.enableSpawnStreaming() : null;
+        ParticleSystem particleSystem = particles ? game.enableParticles() : null;
+        game.loadLevel(levelFile);
+        InputPlayback playback = null;
+        if (replayName != null) {
+            FileInputStream replayStream = new FileInputStream(replayName);
+            try {
+                playback = game.enableInputPlayback(replayStream);
+            } finally {
+                replayStream.close();
+            }
+            seed = playback.getSeed();
+        }
+        InputRecorder recorder = null;
+        if (recordName != null) {
+            recorder = game.enableInputRecording(new FileOutputStream(recordName), seed);
+        }
+
+        float gameTime = 0.0f;
+        int texturesLoadedFrame = -1;
+        final long start = System.nanoTime();
+        for (int x = 0; x < frames; x++) {
+            if (playback != null && !playback.hasNextFrame()) {
+                frames = x;
+                break;
+            }
+            game.step(step);
+            if (textureStreamer != null && texturesLoadedFrame < 0 
+                    && textureStreamer.getQueueDepth() == 0) {
+                texturesLoadedFrame = x;
+            }
+            gameTime += BaseObject.sSystemRegistry.timeSystem.getRealTimeFrameDelta();
+        }
+        final long elapsed = System.nanoTime() - start;
+        if (recorder != null) {
+            recorder.stop();
+            System.out.println(String.format("Recorded %d frames and %d input events to %s",
+                    recorder.getFrameCount(), recorder.getEventCount(), recordName));
+        }
+        if (playback != null) {
+            System.out.println(String.format("Played back %d frames from %s",
+                    playback.getFrameCount(), replayName));
+        }
+
+        System.out.println(String.format("%s: %d frames (%.1f game seconds) in %.1f ms, %.0f frames/s",
+                levelFile.getName(), frames, gameTime, elapsed / 1000000.0,
+                frames * 1000000000.0 / elapsed));
+        LevelSystem level = BaseObject.sSystemRegistry.levelSystem;
+        System.out.println(String.format("Pre-warmed %d object types in %.1f ms at load",
+                level.getPrewarmedTypeCount(), level.getPrewarmTime()));
+        if (streamer != null) {
+            System.out.println(String.format(
+                    "Streamed %d spawn records: %d live, %d spawned, %d unloaded",
+                    streamer.getRecordCount(), streamer.getLiveCount(),
+                    streamer.getSpawnedCount(), streamer.getUnloadedCount()));
+        }
+        if (particleSystem != null) {
+            System.out.println(String.format(
+                    "Emitted %d particles: peak %d of %d live, %d dropped",
+                    particleSystem.getEmittedCount(), particleSystem.getPeakCount(),
+                    particleSystem.getMaxCount(), particleSystem.getDroppedCount()));
+        }
+        if (textureStreamer != null) {
+            System.out.println(String.format(
+                    "Streamed %d textures (queue peak %d, %d left, first empty at frame %d): "
+                    + "%.2f ms per decode, %.3f ms per upload (max %.3f)",
+                    textureStreamer.getUploadCount(), textureStreamer.getPeakQueueDepth(),
+                    textureStreamer.getQueueDepth(), texturesLoadedFrame,
+                    textureStreamer.getAverageDecodeTime(), textureStreamer.getAverageUploadTime(),
+                    textureStreamer.getMaxUploadTime()));
+        }
+        System.out.println(String.format("%-18s %10s %10s %10s %10s %10s", "Phase", "total ms",
+                "mean us", "p50 us", "p95 us", "max us"));
+        PhaseTimer[] phases = game.getPhases();
+        for (int x = 0; x < phases.length; x++) {
+            report(phases[x]);
+        }
+        report(game.getRenderPhase());
+        report(game.getFramePhase());
+        if (profiler != null) {
+            System.out.print(profiler.dump());
+        }
+        if (pools) {
+            System.out.print(BaseObject.sSystemRegistry.gameObjectFactory.getPoolReport());
+        }
+        if (gl != null) {
+            final int glFrames = Math.max(1, gl.getFrameCount());
+            System.out.println(String.format(
+                    "GL (%s): %.1f draw calls/frame (max %d), %.1f texture binds/frame, "
+                    + "%.1f state changes/frame (max %d)", renderMode,
+                    (double)gl.getTotalDrawCalls() / glFrames, gl.getMaxDrawCalls(),
+                    (double)gl.getTotalTextureBinds() / glFrames,
+                    (double)gl.getTotalStateChanges() / glFrames, gl.getMaxStateChanges()));
+            ObjectRegistry registry = BaseObject.sSystemRegistry;
+            System.out.print(registry.longTermTextureLibrary.getMemoryReport(
+                    "Long-term textures", 0));
+            System.out.print(registry.shortTermTextureLibrary.getMemoryReport(
+                    "Short-term textures", 10));
+            SpriteBatch batch = game.getSpriteBatch();
+            if (batch != null) {
+                System.out.println(String.format("Sprite batch: %.1f quads in %.1f runs per frame",
+                        (double)batch.getBatchedQuadCount() / glFrames,
+                        (double)batch.getDrawnRunCount() / glFrames));
+            }
+        }
+
+        GameObjectManager manager = BaseObject.sSystemRegistry.gameObjectManager;
+        System.out.println("Active objects at end: " + manager.getCount());
+        EventRecorder events = BaseObject.sSystemRegistry.eventRecorder;
+        System.out.println("Pearls: " + events.getPearlsCollected() + " of " 
+                + events.getPearlsTotal());
+        // Useful for checking that two runs with the same seed are identical.
+        GameObject player = manager.getPlayer();
+        if (player != null) {
+            System.out.println("Player at end: " + player.getPosition().x + ", " 
+                    + player.getPosition().y + " life " + player.life);
+        }
+    }
+
+    private static void report(PhaseTimer phase) {
+        final int count = Math.max(1, phase.getSampleCount());
+        System.out.println(String.format("%-18s %10.2f %10.2f %10.2f %10.2f %10.2f",
+                phase.getName(),
+                phase.getTotalTime() / 1000000.0,
+                phase.getTotalTime() / 1000.0 / count,
+                phase.getPercentile(50) / 1000.0,
+                phase.getPercentile(95) / 1000.0,
+                phase.getPercentile(100) / 1000.0));
+    }
+}
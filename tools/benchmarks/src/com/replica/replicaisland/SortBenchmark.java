@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Sorts a FixedSizeArray of randomly ordered keys with one of the engine's Sorter
+ * implementations.  The array is refilled from the same unsorted template before each sort, so
+ * every operation sorts the same input.
+ */
+public class SortBenchmark extends Benchmark {
+    private static final int COUNT = 256;
+
+    private final Sorter<Key> mSorter;
+    private FixedSizeArray<Key> mArray;
+    private Key[] mTemplate;
+
+    public SortBenchmark(String name, Sorter<Key> sorter) {
+        super(name);
+        mSorter = sorter;
+    }
+
+    @Override
+    public void setUp(BenchmarkFixtures fixtures) {
+        mArray = new FixedSizeArray<Key>(COUNT, new KeyComparator());
+        mArray.setSorter(mSorter);
+        mTemplate = new Key[COUNT];
+        Random random = new Random(42);
+        for (int x = 0; x < COUNT; x++) {
+            mTemplate[x] = new Key(random.nextFloat() * 1000.0f);
+            mArray.add(mTemplate[x]);
+        }
+    }
+
+    @Override
+    public int run() {
+        final Key[] template = mTemplate;
+        for (int x = 0; x < COUNT; x++) {
+            mArray.set(x, template[x]);
+        }
+        mArray.sort(true);
+        return (int)mArray.get(0).value;
+    }
+
+    public static class Key {
+        public final float value;
+
+        public Key(float keyValue) {
+            value = keyValue;
+        }
+    }
+
+    private static class KeyComparator implements Comparator<Key> {
+        public int compare(Key object1, Key object2) {
+            return Float.compare(object1.value, object2.value);
+        }
+    }
+}
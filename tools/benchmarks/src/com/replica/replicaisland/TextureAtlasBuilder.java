@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+
+import com.replica.replicaisland.GameObjectFactory.GameObjectType;
+
+/**
+ * Packs the small images in res/drawable into a few large atlas pages and writes the pages and
+ * the table read by TextureAtlas.  Once the atlas is installed, every drawable on a page shares
+ * one OpenGL texture, so sprites that are drawn together no longer need a texture bind each.
+ *
+ * Images are sorted by height and packed onto shelves, which suits sets of same-sized animation
+ * frames.  Each image is surrounded by a border of copies of its edge pixels, so that filtering
+ * at the edge of a sprite never picks up its neighbors.  Pages are square with power-of-two
+ * sides, except that the last page is cut down to the smallest power-of-two height that holds
+ * its images.  Drawables used by the long-term texture library are packed onto pages of their
+ * own, flagged as long-term in the table, so that the long-term library can own those pages and
+ * the short-term library only shares them (see TextureLibrary.setAtlas()).  Which drawables those
+ * are is found out by bootstrapping a headless game and spawning every object type, as
+ * ArchetypeCompiler does.  Large images (backgrounds, tile sets, the ending screens) are left alone: they
+ * are drawn on their own or tiled by texture coordinates, and would waste most of a page.
+ *
+ * Build as described in BenchmarkRunner, then run from the root of the project:
+ *
+ *   java -cp out:android.jar com.replica.replicaisland.TextureAtlasBuilder [options]
+ *
+ * Options:
+ *   -src <directory>   The directory of images to pack (default res/drawable).
+ *   -raw <directory>   The directory containing collision.bin (default res/raw).
+ *   -o <directory>     Where to write atlas.bin and atlas_page<n>.png (default res/raw).  Pages
+ *                      left over from an earlier, larger atlas are deleted.
+ *   -size <pixels>     The side of a page (default 1024, the largest texture some older devices
+ *                      support).
+ *   -max <pixels>      The largest width or height of an image to pack (default 128).
+ *   -border <pixels>   The width of the border around each image (default 2).
+ *   -exclude <names>   A comma-separated list of drawables (without .png) to leave alone.
+ */
+public class TextureAtlasBuilder {
+    private static final String PAGE_PREFIX = "atlas_page";
+    // The size Game bootstraps with.
+    private static final int GAME_WIDTH = 480;
+    private static final int GAME_HEIGHT = 320;
+
+    private final int mPageSize;
+    private final int mBorder;
+    private final List<Page> mPages = new ArrayList<Page>();
+
+    public static void main(String[] args) throws Exception {
+        File source = new File("res/drawable");
+        File rawDirectory = new File("res/raw");
+        File output = new File("res/raw");
+        int pageSize = 1024;
+        int maxSize = 128;
+        int border = 2;
+        Set<String> excluded = new HashSet<String>();
+        for (int x = 0; x < args.length; x++) {
+            if (args[x].equals("-src")) {
+                source = new File(args[++x]);
+            } else if (args[x].equals("-raw")) {
+                rawDirectory = new File(args[++x]);
+            } else if (args[x].equals("-o")) {
+                output = new File(args[++x]);
+            } else if (args[x].equals("-size")) {
+                pageSize = Integer.parseInt(args[++x]);
+            } else if (args[x].equals("-max")) {
+                maxSize = Integer.parseInt(args[++x]);
+            } else if (args[x].equals("-border")) {
+                border = Integer.parseInt(args[++x]);
+            } else if (args[x].equals("-exclude")) {
+                excluded.addAll(Arrays.asList(args[++x].split(",")));
+            } else {
+                System.err.println("Unknown option " + args[x]);
+                System.exit(1);
+            }
+        }
+        if (Integer.bitCount(pageSize) != 1 || maxSize + border * 2 > pageSize) {
+            System.err.println("The page size must be a power of two larger than the images.");
+            System.exit(1);
+        }
+
+        File[] files = source.listFiles();
+        if (files == null) {
+            System.err.println("Can't read " + source);
+            System.exit(1);
+        }
+        Arrays.sort(files);
+        final Set<String> longTermNames = findLongTermDrawables(rawDirectory);
+        List<Region> longTermRegions = new ArrayList<Region>();
+        List<Region> shortTermRegions = new ArrayList<Region>();
+        int skipped = 0;
+        for (File file : files) {
+            final String fileName = file.getName();
+            // Nine-patches are stretched by Android views, not drawn by the game.
+            if (!fileName.endsWith(".png") || fileName.endsWith(".9.png")) {
+                continue;
+            }
+            final String name = fileName.substring(0, fileName.length() - ".png".length());
+            if (name.startsWith(PAGE_PREFIX) || excluded.contains(name)) {
+                skipped++;
+                continue;
+            }
+            BufferedImage image = ImageIO.read(file);
+            if (image == null) {
+                System.err.println("Can't decode " + file);
+                System.exit(1);
+            }
+            if (image.getWidth() > maxSize || image.getHeight() > maxSize) {
+                skipped++;
+            } else if (longTermNames.contains(name)) {
+                longTermRegions.add(new Region(name, image));
+            } else {
+                shortTermRegions.add(new Region(name, image));
+            }
+        }
+
+        TextureAtlasBuilder builder = new TextureAtlasBuilder(pageSize, border);
+        builder.pack(longTermRegions, true);
+        builder.pack(shortTermRegions, false);
+        List<Region> regions = new ArrayList<Region>(longTermRegions);
+        regions.addAll(shortTermRegions);
+        int longTermPages = 0;
+        for (Page page : builder.mPages) {
+            longTermPages += page.mLongTerm ? 1 : 0;
+        }
+
+        final int pageCount = builder.mPages.size();
+        long usedTexels = 0;
+        long pageTexels = 0;
+        for (int x = 0; x < pageCount; x++) {
+            Page page = builder.mPages.get(x);
+            ImageIO.write(builder.render(page, regions), "png",
+                    new File(output, PAGE_PREFIX + x + ".png"));
+            usedTexels += page.mUsedTexels;
+            pageTexels += (long)page.mWidth * page.mHeight;
+        }
+        // Remove pages from an earlier atlas that needed more of them.
+        for (int x = pageCount; ; x++) {
+            File stale = new File(output, PAGE_PREFIX + x + ".png");
+            if (!stale.exists()) {
+                break;
+            }
+            if (!stale.delete()) {
+                System.err.println("Can't delete " + stale);
+            }
+        }
+
+        File table = new File(output, "atlas.bin");
+        FileOutputStream stream = new FileOutputStream(table);
+        try {
+            stream.write(builder.writeTable(regions));
+        } finally {
+            stream.close();
+        }
+        System.out.println(String.format(
+                "Packed %d images into %d pages (%d long-term, %.0f%% full), left %d alone; "
+                + "wrote %s", regions.size(), pageCount, longTermPages,
+                100.0 * usedTexels / Math.max(1, pageTexels), skipped, table));
+    }
+
+    /** Returns the names of the drawables the game allocates from the long-term library. */
+    private static Set<String> findLongTermDrawables(File rawDirectory) throws Exception {
+        HeadlessGame game = new HeadlessGame(rawDirectory);
+        game.bootstrap(GAME_WIDTH, GAME_HEIGHT, 1, 0);
+        final GameObjectFactory factory = BaseObject.sSystemRegistry.gameObjectFactory;
+        for (GameObjectType type : GameObjectType.values()) {
+            if (type != GameObjectType.INVALID && type != GameObjectType.OBJECT_COUNT) {
+                GameObject object = factory.spawn(type, 0.0f, 0.0f, false);
+                if (object != null) {
+                    factory.destroy(object);
+                }
+            }
+        }
+
+        Set<Integer> ids = new HashSet<Integer>();
+        for (Texture texture : BaseObject.sSystemRegistry.longTermTextureLibrary.mTextureHash) {
+            if (texture.resource != -1) {
+                ids.add(texture.resource);
+            }
+        }
+        Set<String> names = new HashSet<String>();
+        for (Field drawable : R.drawable.class.getFields()) {
+            if (ids.contains(drawable.getInt(null))) {
+                names.add(drawable.getName());
+            }
+        }
+        return names;
+    }
+
+    public TextureAtlasBuilder(int pageSize, int border) {
+        mPageSize = pageSize;
+        mBorder = border;
+    }
+
+    /** 
+     * Assigns every region a page and a position.  The regions are packed onto new pages, never
+     * onto pages filled by an earlier call, so that long-term and short-term drawables can be
+     * kept apart.
+     */
+    public void pack(List<Region> regions, boolean longTerm) {
+        final int firstPage = mPages.size();
+        List<Region> sorted = new ArrayList<Region>(regions);
+        Collections.sort(sorted, new Comparator<Region>() {
+            public int compare(Region a, Region b) {
+                int result = b.mHeight - a.mHeight;
+                if (result == 0) {
+                    result = b.mWidth - a.mWidth;
+                }
+                if (result == 0) {
+                    result = a.mName.compareTo(b.mName);
+                }
+                return result;
+            }
+        });
+        for (Region region : sorted) {
+            final int width = region.mWidth + mBorder * 2;
+            final int height = region.mHeight + mBorder * 2;
+            boolean placed = false;
+            for (int x = firstPage; x < mPages.size() && !placed; x++) {
+                placed = mPages.get(x).place(region, x, width, height, mBorder);
+            }
+            if (!placed) {
+                Page page = new Page(mPageSize, longTerm);
+                mPages.add(page);
+                placed = page.place(region, mPages.size() - 1, width, height, mBorder);
+                assert placed;
+            }
+        }
+        // The last page only needs to be tall enough for its shelves.
+        if (mPages.size() > firstPage) {
+            Page last = mPages.get(mPages.size() - 1);
+            int height = 1;
+            while (height < last.mShelfTop) {
+                height *= 2;
+            }
+            last.mHeight = height;
+        }
+    }
+
+    /** Draws a page: each of its images plus a border of copies of the image's edge pixels. */
+    public BufferedImage render(Page page, List<Region> regions) {
+        final int pageIndex = mPages.indexOf(page);
+        BufferedImage image =
+            new BufferedImage(page.mWidth, page.mHeight, BufferedImage.TYPE_INT_ARGB);
+        final int border = mBorder;
+        for (Region region : regions) {
+            if (region.mPage == pageIndex) {
+                final BufferedImage source = region.mImage;
+                final int width = region.mWidth;
+                final int height = region.mHeight;
+                for (int y = -border; y < height + border; y++) {
+                    final int sourceY = Math.min(Math.max(y, 0), height - 1);
+                    for (int x = -border; x < width + border; x++) {
+                        final int sourceX = Math.min(Math.max(x, 0), width - 1);
+                        image.setRGB(region.mX + x, region.mY + y,
+                                source.getRGB(sourceX, sourceY));
+                    }
+                }
+            }
+        }
+        return image;
+    }
+
+    /** Serializes the page and region table in the format read by TextureAtlas. */
+    public byte[] writeTable(List<Region> regions) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(TextureAtlas.MAGIC);
+        out.writeInt(TextureAtlas.VERSION);
+        out.writeShort(mPages.size());
+        for (int x = 0; x < mPages.size(); x++) {
+            writeString(out, PAGE_PREFIX + x);
+            out.writeShort(mPages.get(x).mWidth);
+            out.writeShort(mPages.get(x).mHeight);
+            out.writeByte(mPages.get(x).mLongTerm ? 1 : 0);
+        }
+        out.writeShort(regions.size());
+        for (Region region : regions) {
+            writeString(out, region.mName);
+            out.writeByte(region.mPage);
+            out.writeShort(region.mX);
+            out.writeShort(region.mY);
+            out.writeShort(region.mWidth);
+            out.writeShort(region.mHeight);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeByte(value.length());
+        out.writeBytes(value);
+    }
+
+    /** An image to be packed, and where it ended up. */
+    public static class Region {
+        final String mName;
+        final BufferedImage mImage;
+        final int mWidth;
+        final int mHeight;
+        int mPage;
+        int mX;
+        int mY;
+
+        public Region(String name, BufferedImage image) {
+            mName = name;
+            mImage = image;
+            mWidth = image.getWidth();
+            mHeight = image.getHeight();
+            mPage = -1;
+        }
+    }
+
+    /** A page divided into horizontal shelves, each as tall as the first image placed on it. */
+    public static class Page {
+        final int mWidth;
+        int mHeight;
+        final boolean mLongTerm;
+        final List<int[]> mShelves = new ArrayList<int[]>(); // { top, height, used width }
+        int mShelfTop;
+        long mUsedTexels;
+
+        public Page(int size, boolean longTerm) {
+            mWidth = size;
+            mHeight = size;
+            mLongTerm = longTerm;
+        }
+
+        /** Places a region (plus its border) on the best-fitting shelf, if there's room. */
+        boolean place(Region region, int pageIndex, int width, int height, int border) {
+            int[] best = null;
+            for (int[] shelf : mShelves) {
+                if (shelf[1] >= height && shelf[2] + width <= mWidth
+                        && (best == null || shelf[1] < best[1])) {
+                    best = shelf;
+                }
+            }
+            if (best == null && mShelfTop + height <= mHeight) {
+                best = new int[] { mShelfTop, height, 0 };
+                mShelves.add(best);
+                mShelfTop += height;
+            }
+            boolean placed = false;
+            if (best != null) {
+                region.mPage = pageIndex;
+                region.mX = best[2] + border;
+                region.mY = best[0] + border;
+                best[2] += width;
+                mUsedTexels += (long)region.mWidth * region.mHeight;
+                placed = true;
+            }
+            return placed;
+        }
+    }
+}
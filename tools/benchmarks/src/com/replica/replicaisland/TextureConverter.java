@@ -0,0 +1,576 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Re-encodes the game's images into the 16-bit and ETC1 files read by CompressedTexture, so that
+ * TextureLibrary can upload them without decoding a PNG into a 32-bit bitmap.  Each image gets
+ * the smallest format that keeps what it has:
+ *
+ *   - opaque images become RGB565, or ETC1 with -etc1 if ETC1 is good enough (see -quality);
+ *   - images whose pixels are either opaque or fully transparent become RGBA5551;
+ *   - images with partial transparency become RGBA4444.
+ *
+ * Color is premultiplied by alpha before it is quantized, as the renderer blends with
+ * (GL_ONE, GL_ONE_MINUS_SRC_ALPHA) and Android premultiplies the bitmaps it decodes from PNGs.
+ * ETC1 has no alpha channel, and the renderer draws each sprite from a single texture, so ETC1 is
+ * only ever used for opaque images.  An image that would lose too much in its format (its PSNR
+ * falls below -quality) is left alone and keeps being loaded from its PNG.  Every file written is
+ * read back through CompressedTexture to check it.
+ *
+ * Build as described in BenchmarkRunner, then run from the root of the project:
+ *
+ *   java -cp out:android.jar com.replica.replicaisland.TextureConverter [options]
+ *
+ * Options:
+ *   -src <directory>   A directory of images to convert; may be repeated.  The default is
+ *                      res/drawable plus the atlas pages in res/raw.
+ *   -o <directory>     Where to write <name>_tex.bin (default res/raw).  Files for images that are
+ *                      no longer converted are deleted.
+ *   -etc1              Encode opaque images as ETC1 rather than RGB565.  ETC1 is half the size,
+ *                      but lossy in ways that show on pixel art.
+ *   -quality <dB>      The lowest PSNR at which an image is converted (default 30).
+ *   -exclude <names>   A comma-separated list of images (without .png) to leave alone.
+ */
+public class TextureConverter {
+    private static final String ATLAS_PAGE_PREFIX = "atlas_page";
+    private static final String EXTENSION = ".bin";
+
+    private static final int[][] ETC1_MODIFIERS = {
+        { 2, 8, -2, -8 }, { 5, 17, -5, -17 }, { 9, 29, -9, -29 }, { 13, 42, -13, -42 },
+        { 18, 60, -18, -60 }, { 24, 80, -24, -80 }, { 33, 106, -33, -106 }, { 47, 183, -47, -183 }
+    };
+
+    private static final String[] FORMAT_NAMES = { "none", "RGB565", "RGBA4444", "RGBA5551", "ETC1" };
+
+    public static void main(String[] args) throws IOException {
+        List<File> sources = new ArrayList<File>();
+        File output = new File("res/raw");
+        boolean etc1 = false;
+        double quality = 30.0;
+        Set<String> excluded = new HashSet<String>();
+        for (int x = 0; x < args.length; x++) {
+            if (args[x].equals("-src")) {
+                sources.add(new File(args[++x]));
+            } else if (args[x].equals("-o")) {
+                output = new File(args[++x]);
+            } else if (args[x].equals("-etc1")) {
+                etc1 = true;
+            } else if (args[x].equals("-quality")) {
+                quality = Double.parseDouble(args[++x]);
+            } else if (args[x].equals("-exclude")) {
+                excluded.addAll(Arrays.asList(args[++x].split(",")));
+            } else {
+                System.err.println("Unknown option " + args[x]);
+                System.exit(1);
+            }
+        }
+
+        List<File> files = new ArrayList<File>();
+        if (sources.isEmpty()) {
+            addImages(new File("res/drawable"), null, files);
+            addImages(new File("res/raw"), ATLAS_PAGE_PREFIX, files);
+        } else {
+            for (File source : sources) {
+                addImages(source, null, files);
+            }
+        }
+
+        CompressedTexture check = new CompressedTexture();
+        int[] formatCounts = new int[FORMAT_NAMES.length];
+        long originalBytes = 0;
+        long convertedBytes = 0;
+        int skipped = 0;
+        double worst = Double.MAX_VALUE;
+        String worstName = null;
+        for (File file : files) {
+            final String fileName = file.getName();
+            final String name = fileName.substring(0, fileName.length() - ".png".length());
+            final File target = new File(output, name + CompressedTexture.SUFFIX + EXTENSION);
+            BufferedImage image = ImageIO.read(file);
+            if (image == null) {
+                System.err.println("Can't decode " + file);
+                System.exit(1);
+            }
+            final int width = image.getWidth();
+            final int height = image.getHeight();
+            final int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+            Encoding encoding = null;
+            if (!excluded.contains(name)) {
+                encoding = encode(pixels, width, height, etc1, quality);
+            }
+            if (encoding == null || encoding.mQuality < quality) {
+                if (target.exists() && !target.delete()) {
+                    System.err.println("Can't delete " + target);
+                }
+                if (encoding != null) {
+                    System.out.println(String.format("Leaving %s alone: %s would be %.1f dB",
+                            name, FORMAT_NAMES[encoding.mFormat], encoding.mQuality));
+                }
+                skipped++;
+                continue;
+            }
+
+            byte[] bytes = write(encoding.mFormat, width, height, encoding.mData);
+            if (!check.parse(ByteBuffer.wrap(bytes)) || check.getFormat() != encoding.mFormat
+                    || check.getWidth() != width || check.getHeight() != height
+                    || check.getDataSize() != encoding.mData.length) {
+                System.err.println("Can't read back " + target + ": " + check.getError());
+                System.exit(1);
+            }
+            FileOutputStream stream = new FileOutputStream(target);
+            try {
+                stream.write(bytes);
+            } finally {
+                stream.close();
+            }
+            formatCounts[encoding.mFormat]++;
+            originalBytes += width * height * 4;
+            convertedBytes += encoding.mData.length;
+            if (encoding.mQuality < worst) {
+                worst = encoding.mQuality;
+                worstName = name;
+            }
+        }
+
+        StringBuilder formats = new StringBuilder();
+        for (int x = 1; x < FORMAT_NAMES.length; x++) {
+            formats.append(x > 1 ? ", " : "").append(formatCounts[x]).append(' ');
+            formats.append(FORMAT_NAMES[x]);
+        }
+        System.out.println(String.format(
+                "Converted %d images (%s), left %d alone: %d KB at 32 bits is now %d KB (%.1fx "
+                + "smaller)", files.size() - skipped, formats, skipped, originalBytes / 1024,
+                convertedBytes / 1024, (double)originalBytes / Math.max(1, convertedBytes)));
+        if (worstName != null) {
+            System.out.println(String.format("Lowest quality: %s at %.1f dB", worstName, worst));
+        }
+    }
+
+    private static void addImages(File directory, String prefix, List<File> files) {
+        File[] list = directory.listFiles();
+        if (list == null) {
+            System.err.println("Can't read " + directory);
+            System.exit(1);
+        }
+        Arrays.sort(list);
+        for (File file : list) {
+            final String fileName = file.getName();
+            // Nine-patches are stretched by Android views, not drawn by the game.
+            if (fileName.endsWith(".png") && !fileName.endsWith(".9.png")
+                    && (prefix == null || fileName.startsWith(prefix))) {
+                files.add(file);
+            }
+        }
+    }
+
+    /** An image encoded in one of the CompressedTexture formats. */
+    public static class Encoding {
+        public int mFormat;
+        public byte[] mData;
+        // PSNR, in dB, of the decoded data against the original image.
+        public double mQuality;
+    }
+
+    /** 
+     * Encodes ARGB pixels, as read from a PNG, in the format that best suits their alpha channel.
+     */
+    public static Encoding encode(int[] pixels, int width, int height, boolean etc1,
+            double quality) {
+        boolean opaque = true;
+        boolean binaryAlpha = true;
+        for (int pixel : pixels) {
+            final int alpha = pixel >>> 24;
+            opaque &= alpha == 0xFF;
+            binaryAlpha &= alpha == 0 || alpha == 0xFF;
+        }
+        if (!opaque) {
+            pixels = premultiply(pixels);
+        }
+        Encoding encoding = null;
+        if (opaque && etc1) {
+            encoding = encode(pixels, width, height, CompressedTexture.FORMAT_ETC1);
+        }
+        if (encoding == null || encoding.mQuality < quality) {
+            int format = CompressedTexture.FORMAT_RGBA4444;
+            if (opaque) {
+                format = CompressedTexture.FORMAT_RGB565;
+            } else if (binaryAlpha) {
+                format = CompressedTexture.FORMAT_RGBA5551;
+            }
+            encoding = encode(pixels, width, height, format);
+        }
+        return encoding;
+    }
+
+    /** 
+     * Encodes ARGB pixels, with color already premultiplied by alpha, in a particular format and
+     * measures the result.
+     */
+    public static Encoding encode(int[] pixels, int width, int height, int format) {
+        Encoding encoding = new Encoding();
+        encoding.mFormat = format;
+        int[] decoded = new int[pixels.length];
+        if (format == CompressedTexture.FORMAT_ETC1) {
+            encoding.mData = encodeEtc1(pixels, width, height, decoded);
+        } else {
+            encoding.mData = new byte[width * height * 2];
+            for (int x = 0; x < pixels.length; x++) {
+                final int texel = encodeTexel(pixels[x], format);
+                decoded[x] = decodeTexel(texel, format);
+                // Little-endian; see CompressedTexture.
+                encoding.mData[x * 2] = (byte)texel;
+                encoding.mData[x * 2 + 1] = (byte)(texel >> 8);
+            }
+        }
+        encoding.mQuality = measure(pixels, decoded);
+        return encoding;
+    }
+
+    /** Serializes an encoded image in the format read by CompressedTexture. */
+    public static byte[] write(int format, int width, int height, byte[] data)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(CompressedTexture.MAGIC);
+        out.writeInt(CompressedTexture.VERSION);
+        out.writeShort(format);
+        out.writeShort(width);
+        out.writeShort(height);
+        out.writeInt(data.length);
+        out.write(data);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /** Returns a copy of ARGB pixels with each color channel multiplied by alpha. */
+    public static int[] premultiply(int[] pixels) {
+        int[] result = new int[pixels.length];
+        for (int x = 0; x < pixels.length; x++) {
+            final int pixel = pixels[x];
+            final int a = pixel >>> 24;
+            final int r = (((pixel >> 16) & 0xFF) * a + 127) / 255;
+            final int g = (((pixel >> 8) & 0xFF) * a + 127) / 255;
+            final int b = ((pixel & 0xFF) * a + 127) / 255;
+            result[x] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+        return result;
+    }
+
+    private static int quantize(int value, int bits) {
+        final int max = (1 << bits) - 1;
+        return (value * max + 127) / 255;
+    }
+
+    private static int expand(int value, int bits) {
+        return (value << (8 - bits)) | (value >> (bits * 2 - 8));
+    }
+
+    private static int encodeTexel(int pixel, int format) {
+        final int a = pixel >>> 24;
+        final int r = (pixel >> 16) & 0xFF;
+        final int g = (pixel >> 8) & 0xFF;
+        final int b = pixel & 0xFF;
+        int texel = 0;
+        switch (format) {
+            case CompressedTexture.FORMAT_RGB565:
+                texel = (quantize(r, 5) << 11) | (quantize(g, 6) << 5) | quantize(b, 5);
+                break;
+            case CompressedTexture.FORMAT_RGBA4444:
+                texel = (quantize(r, 4) << 12) | (quantize(g, 4) << 8) | (quantize(b, 4) << 4)
+                        | quantize(a, 4);
+                break;
+            case CompressedTexture.FORMAT_RGBA5551:
+                texel = (quantize(r, 5) << 11) | (quantize(g, 5) << 6) | (quantize(b, 5) << 1)
+                        | (a >= 0x80 ? 1 : 0);
+                break;
+        }
+        return texel;
+    }
+
+    private static int decodeTexel(int texel, int format) {
+        int a = 0xFF;
+        int r = 0;
+        int g = 0;
+        int b = 0;
+        switch (format) {
+            case CompressedTexture.FORMAT_RGB565:
+                r = expand(texel >> 11, 5);
+                g = expand((texel >> 5) & 0x3F, 6);
+                b = expand(texel & 0x1F, 5);
+                break;
+            case CompressedTexture.FORMAT_RGBA4444:
+                r = expand(texel >> 12, 4);
+                g = expand((texel >> 8) & 0xF, 4);
+                b = expand((texel >> 4) & 0xF, 4);
+                a = expand(texel & 0xF, 4);
+                break;
+            case CompressedTexture.FORMAT_RGBA5551:
+                r = expand(texel >> 11, 5);
+                g = expand((texel >> 6) & 0x1F, 5);
+                b = expand((texel >> 1) & 0x1F, 5);
+                a = (texel & 1) != 0 ? 0xFF : 0;
+                break;
+        }
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Returns the PSNR of a decoded image against the original, both premultiplied.  A 
+     * premultiplied color is exactly what the blend adds to the screen, so every channel 
+     * counts the same and transparent pixels need no special treatment.
+     */
+    private static double measure(int[] original, int[] decoded) {
+        double error = 0.0;
+        for (int x = 0; x < original.length; x++) {
+            final int da = (original[x] >>> 24) - (decoded[x] >>> 24);
+            final int dr = ((original[x] >> 16) & 0xFF) - ((decoded[x] >> 16) & 0xFF);
+            final int dg = ((original[x] >> 8) & 0xFF) - ((decoded[x] >> 8) & 0xFF);
+            final int db = (original[x] & 0xFF) - (decoded[x] & 0xFF);
+            error += dr * dr + dg * dg + db * db + da * da;
+        }
+        final double meanError = error / Math.max(1, original.length * 4);
+        return meanError > 0.0 ? 10.0 * Math.log10(255.0 * 255.0 / meanError) : 99.0;
+    }
+
+    /**
+     * Encodes opaque pixels as ETC1 blocks, trying both block orientations and both base color
+     * modes and keeping whichever is closest.  Also fills decoded with the result.
+     */
+    public static byte[] encodeEtc1(int[] pixels, int width, int height, int[] decoded) {
+        final int blocksWide = (width + 3) / 4;
+        final int blocksHigh = (height + 3) / 4;
+        byte[] data = new byte[blocksWide * blocksHigh * 8];
+        int[] r = new int[16];
+        int[] g = new int[16];
+        int[] b = new int[16];
+        int[] block = new int[16];
+        int offset = 0;
+        for (int blockY = 0; blockY < blocksHigh; blockY++) {
+            for (int blockX = 0; blockX < blocksWide; blockX++) {
+                // Pixels are numbered down each column, as in the block's index bits.  Blocks
+                // that overhang the image repeat its edge pixels.
+                for (int i = 0; i < 16; i++) {
+                    final int x = Math.min(blockX * 4 + i / 4, width - 1);
+                    final int y = Math.min(blockY * 4 + i % 4, height - 1);
+                    final int pixel = pixels[y * width + x];
+                    r[i] = (pixel >> 16) & 0xFF;
+                    g[i] = (pixel >> 8) & 0xFF;
+                    b[i] = pixel & 0xFF;
+                }
+                final long bits = encodeEtc1Block(r, g, b);
+                for (int x = 0; x < 8; x++) {
+                    data[offset++] = (byte)(bits >>> (56 - x * 8));
+                }
+                decodeEtc1Block(bits, block);
+                for (int i = 0; i < 16; i++) {
+                    final int x = blockX * 4 + i / 4;
+                    final int y = blockY * 4 + i % 4;
+                    if (x < width && y < height) {
+                        decoded[y * width + x] = block[i];
+                    }
+                }
+            }
+        }
+        return data;
+    }
+
+    private static boolean isSecondSubBlock(int pixel, boolean flip) {
+        // Without flip the sub-blocks are the left and right halves, with it the top and bottom.
+        return flip ? (pixel % 4) >= 2 : (pixel / 4) >= 2;
+    }
+
+    private static long encodeEtc1Block(int[] r, int[] g, int[] b) {
+        long best = 0;
+        long bestError = Long.MAX_VALUE;
+        int[] indices = new int[16];
+        int[] tables = new int[2];
+        int[][] average = new int[2][3];
+        int[][] base = new int[2][3];
+        for (int flipIndex = 0; flipIndex < 2; flipIndex++) {
+            final boolean flip = flipIndex == 1;
+            for (int sub = 0; sub < 2; sub++) {
+                Arrays.fill(average[sub], 0);
+            }
+            for (int i = 0; i < 16; i++) {
+                final int sub = isSecondSubBlock(i, flip) ? 1 : 0;
+                average[sub][0] += r[i];
+                average[sub][1] += g[i];
+                average[sub][2] += b[i];
+            }
+            for (int sub = 0; sub < 2; sub++) {
+                for (int c = 0; c < 3; c++) {
+                    average[sub][c] = (average[sub][c] + 4) / 8;
+                }
+            }
+
+            // Individual mode: two 4-bit base colors.
+            int[][] colors = new int[2][3];
+            for (int sub = 0; sub < 2; sub++) {
+                for (int c = 0; c < 3; c++) {
+                    colors[sub][c] = quantize(average[sub][c], 4);
+                    base[sub][c] = expand(colors[sub][c], 4);
+                }
+            }
+            long error = fitEtc1(r, g, b, flip, base, tables, indices);
+            if (error < bestError) {
+                bestError = error;
+                best = packEtc1Block(false, flip, colors, tables, indices);
+            }
+
+            // Differential mode: a 5-bit base color and a 3-bit signed difference.
+            boolean fits = true;
+            for (int sub = 0; sub < 2; sub++) {
+                for (int c = 0; c < 3; c++) {
+                    colors[sub][c] = quantize(average[sub][c], 5);
+                }
+            }
+            for (int c = 0; c < 3; c++) {
+                final int difference = colors[1][c] - colors[0][c];
+                fits &= difference >= -4 && difference <= 3;
+            }
+            if (fits) {
+                for (int sub = 0; sub < 2; sub++) {
+                    for (int c = 0; c < 3; c++) {
+                        base[sub][c] = expand(colors[sub][c], 5);
+                    }
+                }
+                error = fitEtc1(r, g, b, flip, base, tables, indices);
+                if (error < bestError) {
+                    bestError = error;
+                    best = packEtc1Block(true, flip, colors, tables, indices);
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Picks the best modifier table and pixel indices for each sub-block; returns the error. */
+    private static long fitEtc1(int[] r, int[] g, int[] b, boolean flip, int[][] base,
+            int[] tables, int[] indices) {
+        long total = 0;
+        for (int sub = 0; sub < 2; sub++) {
+            long bestError = Long.MAX_VALUE;
+            for (int table = 0; table < ETC1_MODIFIERS.length; table++) {
+                long error = 0;
+                for (int i = 0; i < 16; i++) {
+                    if ((isSecondSubBlock(i, flip) ? 1 : 0) == sub) {
+                        error += fitEtc1Pixel(r[i], g[i], b[i], base[sub], table, null, i);
+                    }
+                }
+                if (error < bestError) {
+                    bestError = error;
+                    tables[sub] = table;
+                }
+            }
+            for (int i = 0; i < 16; i++) {
+                if ((isSecondSubBlock(i, flip) ? 1 : 0) == sub) {
+                    fitEtc1Pixel(r[i], g[i], b[i], base[sub], tables[sub], indices, i);
+                }
+            }
+            total += bestError;
+        }
+        return total;
+    }
+
+    private static int fitEtc1Pixel(int r, int g, int b, int[] base, int table, int[] indices,
+            int pixel) {
+        int bestError = Integer.MAX_VALUE;
+        for (int index = 0; index < 4; index++) {
+            final int modifier = ETC1_MODIFIERS[table][index];
+            final int dr = r - clamp(base[0] + modifier);
+            final int dg = g - clamp(base[1] + modifier);
+            final int db = b - clamp(base[2] + modifier);
+            final int error = dr * dr + dg * dg + db * db;
+            if (error < bestError) {
+                bestError = error;
+                if (indices != null) {
+                    indices[pixel] = index;
+                }
+            }
+        }
+        return bestError;
+    }
+
+    private static long packEtc1Block(boolean differential, boolean flip, int[][] colors,
+            int[] tables, int[] indices) {
+        long high;
+        if (differential) {
+            high = (colors[0][0] << 27) | (((colors[1][0] - colors[0][0]) & 7) << 24)
+                    | (colors[0][1] << 19) | (((colors[1][1] - colors[0][1]) & 7) << 16)
+                    | (colors[0][2] << 11) | (((colors[1][2] - colors[0][2]) & 7) << 8)
+                    | 2;
+        } else {
+            high = (colors[0][0] << 28) | (colors[1][0] << 24) | (colors[0][1] << 20)
+                    | (colors[1][1] << 16) | (colors[0][2] << 12) | (colors[1][2] << 8);
+        }
+        high |= (tables[0] << 5) | (tables[1] << 2) | (flip ? 1 : 0);
+        long low = 0;
+        for (int i = 0; i < 16; i++) {
+            low |= ((long)(indices[i] >> 1) << (16 + i)) | ((long)(indices[i] & 1) << i);
+        }
+        return ((high & 0xFFFFFFFFL) << 32) | low;
+    }
+
+    /** Decodes an ETC1 block into opaque ARGB pixels, numbered down each column. */
+    public static void decodeEtc1Block(long bits, int[] pixels) {
+        final int high = (int)(bits >>> 32);
+        final boolean flip = (high & 1) != 0;
+        final boolean differential = (high & 2) != 0;
+        int[][] base = new int[2][3];
+        for (int c = 0; c < 3; c++) {
+            final int shift = 24 - c * 8;
+            if (differential) {
+                final int first = (high >>> (shift + 3)) & 0x1F;
+                final int difference = ((high >>> shift) & 7) << 29 >> 29;
+                base[0][c] = expand(first, 5);
+                base[1][c] = expand((first + difference) & 0x1F, 5);
+            } else {
+                base[0][c] = expand((high >>> (shift + 4)) & 0xF, 4);
+                base[1][c] = expand((high >>> shift) & 0xF, 4);
+            }
+        }
+        final int[] tables = { (high >>> 5) & 7, (high >>> 2) & 7 };
+        for (int i = 0; i < 16; i++) {
+            final int sub = isSecondSubBlock(i, flip) ? 1 : 0;
+            final int index = (int)(((bits >>> (16 + i)) & 1) << 1 | ((bits >>> i) & 1));
+            final int modifier = ETC1_MODIFIERS[tables[sub]][index];
+            pixels[i] = 0xFF000000 | (clamp(base[sub][0] + modifier) << 16)
+                    | (clamp(base[sub][1] + modifier) << 8) | clamp(base[sub][2] + modifier);
+        }
+    }
+
+    private static int clamp(int value) {
+        return Math.min(Math.max(value, 0), 255);
+    }
+}
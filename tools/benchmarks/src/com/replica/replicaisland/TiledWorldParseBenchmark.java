@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.replica.replicaisland;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Parses every layer of the fixture level into TiledWorlds, as LevelSystem does on every level
+ * start.  Both the stream path and the in-place buffer path are measured in a single operation.
+ * Unlike the other benchmarks this one is expected to allocate.
+ */
+public class TiledWorldParseBenchmark extends Benchmark {
+    private byte[] mLevelData;
+    private byte[] mScratch;
+
+    public TiledWorldParseBenchmark() {
+        super("tiledWorld.parse");
+    }
+
+    @Override
+    public void setUp(BenchmarkFixtures fixtures) {
+        mLevelData = fixtures.getLevelData();
+        mScratch = new byte[mLevelData.length];
+    }
+
+    @Override
+    public int run() {
+        int tiles = 0;
+        // The buffer path rewrites the data in place, so parse a scratch copy.
+        System.arraycopy(mLevelData, 0, mScratch, 0, mLevelData.length);
+        tiles += parseLayers(mScratch, false);
+        tiles += parseLayers(mLevelData, true);
+        return tiles;
+    }
+
+    private static int parseLayers(byte[] data, boolean useStream) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.get();
+        final int layerCount = buffer.get();
+        buffer.get();
+        int tiles = 0;
+        for (int x = 0; x < layerCount; x++) {
+            buffer.position(buffer.position() + 6);
+            TiledWorld world;
+            if (useStream) {
+                ByteArrayInputStream stream = new ByteArrayInputStream(data, buffer.position(),
+                        data.length - buffer.position());
+                world = new TiledWorld(stream);
+                buffer.position(data.length - stream.available());
+            } else {
+                world = new TiledWorld(buffer);
+            }
+            tiles += world.getWidth() * world.getHeight();
+        }
+        return tiles;
+    }
+}